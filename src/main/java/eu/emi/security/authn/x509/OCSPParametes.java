@@ -21,6 +21,8 @@ public class OCSPParametes
 	protected boolean useNonce;
 	protected int cacheTtl;
 	protected String diskCachePath;
+	protected int hedgingDelay = -1;
+	protected int prefetchTime = -1;
 	
 	
 	/**
@@ -209,4 +211,54 @@ public class OCSPParametes
 	{
 		this.diskCachePath = diskCachePath;
 	}
+
+
+	/**
+	 * @return the hedgingDelay
+	 */
+	public int getHedgingDelay()
+	{
+		return hedgingDelay;
+	}
+
+
+	/**
+	 * Controls whether multiple OCSP responders are queried concurrently. By default (a negative value)
+	 * responders are queried one after another, and the next one is asked only after the previous one 
+	 * failed or returned the unknown status. With 0 all responders are queried at once. With a positive 
+	 * value the next responder is queried when the previous one did not answer within the given time 
+	 * (or failed). In the concurrent modes the first good or revoked answer is used and the remaining 
+	 * queries are cancelled. Responders are always started in the order of their priority, 
+	 * see {@link #setPreferLocalResponders(boolean)}.
+	 * @param hedgingDelay delay in ms after which the next responder is queried, 0 to query all 
+	 * responders at once, negative to query them sequentially
+	 */
+	public void setHedgingDelay(int hedgingDelay)
+	{
+		this.hedgingDelay = hedgingDelay;
+	}
+
+
+	/**
+	 * @return the prefetchTime
+	 */
+	public int getPrefetchTime()
+	{
+		return prefetchTime;
+	}
+
+
+	/**
+	 * Controls refreshing of the cached responses in background. When enabled, responses of the 
+	 * certificates checked since the last refresh are fetched again shortly before they expire 
+	 * from the cache, so that the frequently checked certificates are never validated with 
+	 * a blocking network query. Failed refreshes are ignored. Has effect only if caching is 
+	 * enabled, see {@link #setCacheTtl(int)}.
+	 * @param prefetchTime time in seconds before the cached response expiry, when it is refreshed. 
+	 * Negative or 0 value disables refreshing (the default).
+	 */
+	public void setPrefetchTime(int prefetchTime)
+	{
+		this.prefetchTime = prefetchTime;
+	}
 }
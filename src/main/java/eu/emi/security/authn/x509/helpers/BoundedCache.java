@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of elements loaded on demand, with a bounded size and with entries expiring after a time to live.
+ * Used by the stores which load trust material lazily. Contrary to a weak hash map entries are not
+ * dropped by the garbage collector, so the memory usage and the number of loads is predictable.
+ * <p>
+ * The time to live is given on lookup, so it can follow changes of the update interval of the owning store.
+ * When the size limit is reached, the entry which was loaded as the first one is removed: it is also
+ * the first one to expire. Besides the typical counters, the statistics include the number of loads
+ * and time spent on loading.
+ * <p>
+ * When values are obtained with {@link #getOrLoad(Object, long, Loader)} only one thread loads a missing
+ * value, the other threads requiring the same key wait for its result. Optionally expired values can be
+ * still returned for the maximum staleness period (see {@link #setMaxStaleness(long)}), while they are
+ * reloaded in background. Only values older then the time to live increased by the maximum staleness are
+ * reloaded synchronously.
+ * <p>
+ * This class is thread safe, lookups of cached values are not blocking.
+ *
+ * @author K. Benedyczak
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedCache<K, V>
+{
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	private static final Executor REFRESHER = createRefresher();
+
+	private final ConcurrentHashMap<K, CachedElement<V>> entries;
+	private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+	private volatile int maxEntries;
+	private volatile long maxStaleness;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+
+	/**
+	 * Loads values of the cache.
+	 * @param <K> key type
+	 * @param <V> value type
+	 */
+	public interface Loader<K, V>
+	{
+		/**
+		 * @param key key
+		 * @return value for the key, must not be null. Problems should be reported by the loader.
+		 */
+		V load(K key);
+	}
+
+	public BoundedCache(int maxEntries)
+	{
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive");
+		this.maxEntries = maxEntries;
+		this.entries = new ConcurrentHashMap<K, CachedElement<V>>(Math.min(maxEntries, 256));
+	}
+
+	/**
+	 * @param key key
+	 * @param ttl time to live of entries in ms
+	 * @return cached, not expired value or null
+	 */
+	public V get(K key, long ttl)
+	{
+		V ret = peek(key, ttl);
+		if (ret == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return ret;
+	}
+
+	/**
+	 * As {@link #get(Object, long)} but hits and misses are not counted. Useful to recheck
+	 * the cache after a miss was already counted.
+	 * @param key key
+	 * @param ttl time to live of entries in ms
+	 * @return cached, not expired value or null
+	 */
+	public V peek(K key, long ttl)
+	{
+		CachedElement<V> cached = getEntry(key, ttl);
+		if (cached == null || cached.isExpired(ttl))
+			return null;
+		return cached.getElement();
+	}
+
+	/**
+	 * Returns the cached value or loads it. If the cached value is expired, but not older then
+	 * the maximum staleness allows, it is returned and reloaded in background.
+	 * @param key key
+	 * @param ttl time to live of entries in ms
+	 * @param loader used to load missing or expired values
+	 * @return the value
+	 */
+	public V getOrLoad(K key, long ttl, Loader<K, V> loader)
+	{
+		CachedElement<V> cached = getEntry(key, ttl);
+		if (cached != null)
+		{
+			hits.incrementAndGet();
+			if (cached.isExpired(ttl))
+				refreshInBackground(key, loader);
+			return cached.getElement();
+		}
+		misses.incrementAndGet();
+		FutureTask<V> task = createLoadTask(key, ttl, loader);
+		FutureTask<V> running = loading.putIfAbsent(key, task);
+		if (running == null)
+		{
+			running = task;
+			runLoadTask(key, task);
+		}
+		return getUninterruptibly(running);
+	}
+
+	/**
+	 * Stores a freshly loaded value.
+	 * @param key key
+	 * @param value value
+	 * @param loadTime time spent on loading the value in nanoseconds
+	 */
+	public void put(K key, V value, long loadTime)
+	{
+		entries.put(key, new CachedElement<V>(value));
+		loads.incrementAndGet();
+		this.loadTime.addAndGet(loadTime);
+		while (entries.size() > maxEntries)
+			evictOldest();
+	}
+
+	public void remove(K key)
+	{
+		entries.remove(key);
+	}
+
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries)
+	{
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive");
+		this.maxEntries = maxEntries;
+		while (entries.size() > maxEntries)
+			evictOldest();
+	}
+
+	public long getMaxStaleness()
+	{
+		return maxStaleness;
+	}
+
+	/**
+	 * @param maxStaleness time in ms for which expired values are still returned by
+	 * {@link #getOrLoad(Object, long, Loader)}, while being reloaded in background.
+	 * Use a &lt;= 0 value to always reload expired values synchronously.
+	 */
+	public void setMaxStaleness(long maxStaleness)
+	{
+		this.maxStaleness = maxStaleness;
+	}
+
+	public CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), expirations.get(),
+				entries.size(), loads.get(), loadTime.get());
+	}
+
+	/**
+	 * @return the entry, if it is usable: either not expired or not older then the maximum
+	 * staleness allows. Otherwise the entry is removed and null is returned.
+	 */
+	private CachedElement<V> getEntry(K key, long ttl)
+	{
+		CachedElement<V> cached = entries.get(key);
+		if (cached == null)
+			return null;
+		long staleness = maxStaleness;
+		if (cached.isExpired(staleness > 0 ? ttl + staleness : ttl))
+		{
+			if (entries.remove(key, cached))
+				expirations.incrementAndGet();
+			return null;
+		}
+		return cached;
+	}
+
+	private void refreshInBackground(final K key, Loader<K, V> loader)
+	{
+		final FutureTask<V> task = createLoadTask(key, -1, loader);
+		if (loading.putIfAbsent(key, task) != null)
+			return;
+		try
+		{
+			REFRESHER.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runLoadTask(key, task);
+				}
+			});
+		} catch (RejectedExecutionException e)
+		{
+			loading.remove(key, task);
+		}
+	}
+
+	/**
+	 * @param ttl if not negative, the cache is checked before loading,
+	 * as the value might have been loaded in the meantime.
+	 */
+	private FutureTask<V> createLoadTask(final K key, final long ttl, final Loader<K, V> loader)
+	{
+		return new FutureTask<V>(new Callable<V>()
+		{
+			@Override
+			public V call()
+			{
+				if (ttl >= 0)
+				{
+					V current = peek(key, ttl);
+					if (current != null)
+						return current;
+				}
+				long start = System.nanoTime();
+				V value = loader.load(key);
+				put(key, value, System.nanoTime() - start);
+				return value;
+			}
+		});
+	}
+
+	private void runLoadTask(K key, FutureTask<V> task)
+	{
+		try
+		{
+			task.run();
+		} finally
+		{
+			loading.remove(key, task);
+		}
+	}
+
+	private static <T> T getUninterruptibly(FutureTask<T> future)
+	{
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				} catch (InterruptedException e)
+				{
+					interrupted = true;
+				} catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					if (e.getCause() instanceof Error)
+						throw (Error) e.getCause();
+					throw new IllegalStateException("Loading of a cached value failed", e.getCause());
+				}
+			}
+		} finally
+		{
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Linear, but invoked only when a new entry was loaded, what is far more expensive.
+	 */
+	private void evictOldest()
+	{
+		Map.Entry<K, CachedElement<V>> oldest = null;
+		for (Map.Entry<K, CachedElement<V>> entry: entries.entrySet())
+		{
+			if (oldest == null || entry.getValue().getCreationTs() < oldest.getValue().getCreationTs())
+				oldest = entry;
+		}
+		if (oldest != null && entries.remove(oldest.getKey(), oldest.getValue()))
+			evictions.incrementAndGet();
+	}
+
+	private static Executor createRefresher()
+	{
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor ret = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "caNl cache refresher " + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		ret.allowCoreThreadTimeOut(true);
+		return ret;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+/**
+ * Immutable snapshot of counters of an in-memory cache. Used to report how effective
+ * the various caches of the library are.
+ *
+ * @author K. Benedyczak
+ */
+public class CacheStatistics
+{
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long expirations;
+	private final int size;
+	private final long loads;
+	private final long totalLoadTime;
+
+	/**
+	 * @param hits number of lookups answered from the cache
+	 * @param misses number of lookups which were not answered from the cache
+	 * @param evictions number of entries removed from the cache because of its size limit
+	 * @param expirations number of entries removed from the cache because they became outdated
+	 * @param size current number of cached entries
+	 */
+	public CacheStatistics(long hits, long misses, long evictions, long expirations, int size)
+	{
+		this(hits, misses, evictions, expirations, size, 0, 0);
+	}
+
+	/**
+	 * @param hits number of lookups answered from the cache
+	 * @param misses number of lookups which were not answered from the cache
+	 * @param evictions number of entries removed from the cache because of its size limit
+	 * @param expirations number of entries removed from the cache because they became outdated
+	 * @param size current number of cached entries
+	 * @param loads number of entries loaded into the cache
+	 * @param totalLoadTime time spent on loading entries, in nanoseconds
+	 */
+	public CacheStatistics(long hits, long misses, long evictions, long expirations, int size,
+			long loads, long totalLoadTime)
+	{
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.expirations = expirations;
+		this.size = size;
+		this.loads = loads;
+		this.totalLoadTime = totalLoadTime;
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	public long getExpirations()
+	{
+		return expirations;
+	}
+
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return number of entries loaded into the cache. Zero for caches which do not load entries themselves.
+	 */
+	public long getLoads()
+	{
+		return loads;
+	}
+
+	/**
+	 * @return time spent on loading entries, in nanoseconds
+	 */
+	public long getTotalLoadTime()
+	{
+		return totalLoadTime;
+	}
+
+	/**
+	 * @return average time of loading an entry, in nanoseconds. 0 is returned if nothing was loaded.
+	 */
+	public double getAverageLoadTime()
+	{
+		return loads == 0 ? 0 : ((double)totalLoadTime)/loads;
+	}
+
+	/**
+	 * @return ratio of hits to all lookups, in range [0, 1]. 0 is returned if there were no lookups.
+	 */
+	public double getHitRate()
+	{
+		long all = hits + misses;
+		return all == 0 ? 0 : ((double)hits)/all;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions +
+				", expirations=" + expirations + ", size=" + size + 
+				", loads=" + loads + ", totalLoadTime=" + totalLoadTime + "ns";
+	}
+}
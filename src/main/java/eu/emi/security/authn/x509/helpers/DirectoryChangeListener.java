@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Receives notifications about changes of files in directories observed by {@link DirectoryWatcher}.
+ * 
+ * @author K. Benedyczak
+ */
+public interface DirectoryChangeListener
+{
+	/**
+	 * @param changedFiles files which were created, modified or removed since the last notification.
+	 * @param overflow if true then some changes were lost and the whole observed directories 
+	 * should be rescanned. 
+	 */
+	public void filesChanged(Set<File> changedFiles, boolean overflow);
+}
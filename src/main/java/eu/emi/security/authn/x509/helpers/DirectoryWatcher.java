@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observes directories for changes using the {@link WatchService} (i.e. inotify on Linux) and informs 
+ * a {@link DirectoryChangeListener} about modified files. Notifications are debounced: the listener is 
+ * invoked only after no further changes were reported for the configured delay, so a tool rewriting 
+ * many files at once (as fetch-crl) causes a single notification.
+ * <p>
+ * Each watcher uses its own daemon thread. The listener is referenced weakly, so the watcher doesn't
+ * prevent garbage collection of the listener's owner (which must keep a strong reference to the listener).
+ * In such case the thread finishes after the next change. 
+ * <p>
+ * This class requires Java 7 or newer. It is loaded only when directory watching is enabled.  
+ *  
+ * @author K. Benedyczak
+ */
+public class DirectoryWatcher
+{
+	private final WatchService watchService;
+	
+	/**
+	 * Starts watching the given directories.
+	 * @param directories directories to watch
+	 * @param delay time in ms without new changes, after which the listener is notified
+	 * @param listener listener to be notified
+	 * @throws IOException if the directories can not be watched
+	 */
+	public DirectoryWatcher(Collection<File> directories, long delay, DirectoryChangeListener listener) 
+			throws IOException
+	{
+		watchService = FileSystems.getDefault().newWatchService();
+		try
+		{
+			for (File directory: directories)
+				directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		} catch (IOException e)
+		{
+			watchService.close();
+			throw e;
+		}
+		Thread thread = new Thread(new WatchTask(watchService, delay, listener), 
+				"caNl directory watcher " + directories);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops watching. No notification will be produced after this method returns, except for 
+	 * the one which is possibly being delivered. 
+	 */
+	public void dispose()
+	{
+		try
+		{
+			watchService.close();
+		} catch (IOException e)
+		{
+			//ignored, nothing more can be done
+		}
+	}
+	
+	/**
+	 * Important: static nested class, weak reference to the listener.
+	 * @author K. Benedyczak
+	 */
+	private static class WatchTask implements Runnable
+	{
+		private final WatchService watchService;
+		private final long delay;
+		private final WeakReference<DirectoryChangeListener> listenerRef;
+		
+		public WatchTask(WatchService watchService, long delay, DirectoryChangeListener listener)
+		{
+			this.watchService = watchService;
+			this.delay = delay;
+			this.listenerRef = new WeakReference<DirectoryChangeListener>(listener);
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					Set<File> changed = new HashSet<File>();
+					boolean overflow = collect(watchService.take(), changed);
+					WatchKey next;
+					while ((next = watchService.poll(delay, TimeUnit.MILLISECONDS)) != null)
+						overflow |= collect(next, changed);
+					
+					DirectoryChangeListener listener = listenerRef.get();
+					if (listener == null)
+					{
+						watchService.close();
+						return;
+					}
+					try
+					{
+						listener.filesChanged(changed, overflow);
+					} catch (RuntimeException e)
+					{
+						//here we are really screwed up - there is a bug and no way to report it
+						e.printStackTrace();
+					}
+				}
+			} catch (ClosedWatchServiceException e)
+			{
+				//disposed
+			} catch (InterruptedException e)
+			{
+				//finishing
+			} catch (IOException e)
+			{
+				//failed to close - only possible after the listener was garbage collected
+			}
+		}
+		
+		private boolean collect(WatchKey key, Set<File> changed)
+		{
+			boolean overflow = false;
+			Path directory = (Path) key.watchable();
+			for (WatchEvent<?> event: key.pollEvents())
+			{
+				if (event.kind() == OVERFLOW)
+					overflow = true;
+				else
+					changed.add(directory.resolve((Path) event.context()).toFile());
+			}
+			key.reset();
+			return overflow;
+		}
+	}
+}
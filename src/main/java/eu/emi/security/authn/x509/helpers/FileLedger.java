@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers objects parsed from local files together with the state of each file
+ * (modification time, size and SHA-256 digest of the contents). Subsequent requests for the same file
+ * return the remembered object as long as the file was not changed, so stores which are periodically
+ * refreshed need only to stat their files when nothing was modified.
+ * <p>
+ * A file is considered unchanged if its modification time and size are the same as recorded.
+ * If any of them changed, or the file was modified so recently that a subsequent modification
+ * could go unnoticed due to the file system timestamp granularity, the digest of the contents is compared.
+ * The file is parsed again only when the contents differ.
+ * <p>
+ * Objects are not recorded when the loader fails (returns null) or when the file is modified
+ * during loading. This class is thread safe, loaders are invoked without holding any lock.
+ *
+ * @author K. Benedyczak
+ * @param <T> type of objects parsed from files
+ */
+public class FileLedger<T>
+{
+	/**
+	 * Modifications of files which are younger then this period (in ms) are always verified with
+	 * a content digest, as a subsequent modification may not change the file's timestamp.
+	 */
+	public static final long RACY_PERIOD = 2000;
+
+	private final Map<File, Entry<T>> entries = new HashMap<File, Entry<T>>();
+	private long modifications;
+
+	/**
+	 * Parses files for the ledger.
+	 * @param <T> type of parsed objects
+	 */
+	public interface Loader<T>
+	{
+		/**
+		 * @param file file to be parsed
+		 * @return parsed object or null if the file can not be parsed. Problems should be
+		 * reported by the loader.
+		 */
+		T load(File file);
+	}
+
+	/**
+	 * Returns the object recorded for the file if the file was not changed or loads it otherwise.
+	 * @param file file
+	 * @param loader used to parse the file if it was changed since it was recorded
+	 * @return object parsed from the file, possibly the recorded one. Null if the file was
+	 * changed and the loader returned null.
+	 */
+	public T get(File file, Loader<T> loader)
+	{
+		File key = file.getAbsoluteFile();
+		long lastModified = key.lastModified();
+		long length = key.length();
+		Entry<T> entry;
+		synchronized (this)
+		{
+			entry = entries.get(key);
+		}
+		if (entry != null && !entry.racy && entry.lastModified == lastModified &&
+				entry.length == length)
+			return entry.value;
+
+		byte[] digest = digest(key);
+		if (digest == null)
+		{
+			remove(key);
+			return loader.load(file);
+		}
+		if (entry != null && Arrays.equals(entry.digest, digest))
+		{
+			synchronized (this)
+			{
+				if (entries.get(key) == entry)
+					entries.put(key, new Entry<T>(lastModified, length, digest, entry.value));
+			}
+			return entry.value;
+		}
+
+		T value = loader.load(file);
+		synchronized (this)
+		{
+			Entry<T> previous;
+			if (value != null && key.lastModified() == lastModified && key.length() == length)
+				previous = entries.put(key, new Entry<T>(lastModified, length, digest, value));
+			else
+				previous = entries.remove(key);
+			if (value != null || previous != null)
+				modifications++;
+		}
+		return value;
+	}
+
+	/**
+	 * Records an object which was parsed from a file earlier, e.g. restored from a snapshot. The file 
+	 * is not accessed: if its state is different from the given one, the object will be verified 
+	 * or parsed again by the next {@link #get(File, Loader)}.
+	 * @param file file
+	 * @param lastModified modification time of the file when it was parsed
+	 * @param length size of the file when it was parsed
+	 * @param digest SHA-256 digest of the file contents, see {@link #digest(File)}
+	 * @param value object parsed from the file
+	 */
+	public synchronized void put(File file, long lastModified, long length, byte[] digest, T value)
+	{
+		entries.put(file.getAbsoluteFile(), new Entry<T>(lastModified, length, digest, value));
+		modifications++;
+	}
+
+	/**
+	 * @param file file
+	 * @return true if an object parsed from the file is recorded
+	 */
+	public synchronized boolean contains(File file)
+	{
+		return entries.containsKey(file.getAbsoluteFile());
+	}
+
+	/**
+	 * Forgets a file.
+	 * @param file file
+	 */
+	public synchronized void remove(File file)
+	{
+		if (entries.remove(file.getAbsoluteFile()) != null)
+			modifications++;
+	}
+
+	/**
+	 * Forgets all files which are not in the given collection.
+	 * @param files files which should be remembered
+	 */
+	public synchronized void retainAll(Collection<File> files)
+	{
+		Set<File> retained = new HashSet<File>(files.size());
+		for (File file: files)
+			retained.add(file.getAbsoluteFile());
+		Iterator<File> it = entries.keySet().iterator();
+		while (it.hasNext())
+		{
+			if (!retained.contains(it.next()))
+			{
+				it.remove();
+				modifications++;
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		if (!entries.isEmpty())
+			modifications++;
+		entries.clear();
+	}
+
+	/**
+	 * @return counter which is increased whenever a recorded object is added, replaced or removed.
+	 * Useful to check whether anything was changed by a sequence of operations.
+	 */
+	public synchronized long getModificationCount()
+	{
+		return modifications;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @param file file
+	 * @return SHA-256 digest of the file contents, as used by the ledger, or null if the file can not be read
+	 */
+	public static byte[] digest(File file)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("JDK problem: SHA-256 hash not supported by any provider!", e);
+		}
+		InputStream is = null;
+		try
+		{
+			is = new BufferedInputStream(new FileInputStream(file));
+			byte[] buf = new byte[4096];
+			int read;
+			while ((read = is.read(buf)) > 0)
+				digest.update(buf, 0, read);
+			return digest.digest();
+		} catch (IOException e)
+		{
+			return null;
+		} finally
+		{
+			if (is != null)
+				try
+				{
+					is.close();
+				} catch (IOException e)
+				{
+					//ignored
+				}
+		}
+	}
+
+	private static class Entry<T>
+	{
+		private final long lastModified;
+		private final long length;
+		private final byte[] digest;
+		private final T value;
+		private final boolean racy;
+
+		public Entry(long lastModified, long length, byte[] digest, T value)
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.digest = digest;
+			this.value = value;
+			this.racy = System.currentTimeMillis() - lastModified < RACY_PERIOD;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads independent sources (files, URLs) of trust material in parallel, so the time of a full
+ * load of a store scales with the number of cores rather then with the number of files.
+ * <p>
+ * The calling thread takes part in loading, additional workers are run by a shared pool of daemon
+ * threads which are created on demand and terminated when idle. The parallelism given to
+ * {@link #loadAll(Collection, int, Task)} bounds the number of threads used by a single load,
+ * parallelism of 1 means loading in the calling thread only. The shared pool has at most 
+ * {@link #MAX_WORKERS} threads, so many concurrent loads can not exhaust the system: when all 
+ * of them are busy, loads get fewer workers and do more work in their calling threads.
+ * <p>
+ * Tasks are invoked concurrently, so they must be thread safe. Problems should be handled
+ * by tasks, a runtime exception thrown by a task is rethrown by the loading method
+ * after all other sources were loaded.
+ *
+ * @author K. Benedyczak
+ */
+public class ParallelLoader
+{
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Maximum number of threads of the shared pool. Allows for a few concurrent remote loads,
+	 * which are not bound by CPU.
+	 */
+	public static final int MAX_WORKERS = Math.max(64, 4 * DEFAULT_PARALLELISM);
+	private static final Executor WORKERS = createWorkers();
+
+	/**
+	 * Loads a single source.
+	 * @param <S> source type
+	 * @param <T> result type
+	 */
+	public interface Task<S, T>
+	{
+		/**
+		 * @param source source to be loaded
+		 * @return loaded object, may be null
+		 */
+		T load(S source);
+	}
+
+	/**
+	 * Loads all sources.
+	 * @param sources sources to be loaded
+	 * @param parallelism maximum number of threads used, including the calling one
+	 * @param task loads a single source
+	 * @return results in the order of sources
+	 */
+	public static <S, T> List<T> loadAll(Collection<? extends S> sources, int parallelism,
+			final Task<S, T> task)
+	{
+		final List<S> input = new ArrayList<S>(sources);
+		final List<T> results = new ArrayList<T>(input.size());
+		for (int i=0; i<input.size(); i++)
+			results.add(null);
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(input.size());
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		Runnable worker = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				int i;
+				while ((i = next.getAndIncrement()) < input.size())
+				{
+					try
+					{
+						T result = task.load(input.get(i));
+						synchronized (results)
+						{
+							results.set(i, result);
+						}
+					} catch (RuntimeException e)
+					{
+						failure.compareAndSet(null, e);
+					} finally
+					{
+						done.countDown();
+					}
+				}
+			}
+		};
+
+		int workers = Math.min(parallelism, input.size()) - 1;
+		for (int i=0; i<workers; i++)
+		{
+			try
+			{
+				WORKERS.execute(worker);
+			} catch (RejectedExecutionException e)
+			{
+				break;
+			}
+		}
+		worker.run();
+		awaitUninterruptibly(done);
+		if (failure.get() != null)
+			throw failure.get();
+		synchronized (results)
+		{
+			return results;
+		}
+	}
+
+	/**
+	 * Workers which start after all sources were taken finish immediately, so it is enough to
+	 * wait for the sources which are being loaded.
+	 */
+	private static void awaitUninterruptibly(CountDownLatch latch)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				latch.await();
+				break;
+			} catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private static Executor createWorkers()
+	{
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(0, MAX_WORKERS, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "caNl loader " + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
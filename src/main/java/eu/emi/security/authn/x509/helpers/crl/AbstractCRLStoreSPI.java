@@ -4,9 +4,17 @@
  */
 package eu.emi.security.authn.x509.helpers.crl;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchProviderException;
 import java.security.cert.CRL;
+import java.security.cert.CRLException;
 import java.security.cert.CRLSelector;
 import java.security.cert.CertSelector;
 import java.security.cert.CertStoreException;
@@ -19,10 +27,16 @@ import java.security.cert.X509CRLSelector;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import eu.emi.security.authn.x509.StoreUpdateListener;
@@ -38,14 +52,122 @@ public abstract class AbstractCRLStoreSPI extends CertStoreSpi
 {
 	protected ObserversHandler observers;
 	protected CRLParameters params;
-	protected final CertificateFactory factory;
 	protected long updateInterval;
+	protected MappedCRLCache mappedCache;
+	private final Map<String, Set<ByteBuffer>> loadedSignatures = new HashMap<String, Set<ByteBuffer>>();
+	private final AtomicLong contentGeneration = new AtomicLong();
 	
 	public AbstractCRLStoreSPI(CRLParameters params, ObserversHandler observers) throws InvalidAlgorithmParameterException
 	{
 		super(params);
 		this.observers = observers;
 		this.params = params.clone();
+		updateInterval = this.params.getCrlUpdateInterval();
+		if (this.params.getMappedCachePath() != null)
+		{
+			try
+			{
+				mappedCache = new MappedCRLCache(new File(this.params.getMappedCachePath()));
+			} catch (IOException e)
+			{
+				throw new InvalidAlgorithmParameterException("Can not use the CRL mapped cache directory", e);
+			}
+		}
+	}
+
+	/**
+	 * Loads a CRL from a local file. If the mapped cache is enabled the CRL is taken from 
+	 * the cache, unless the file was modified. Otherwise the file is parsed and the CRL is stored 
+	 * in the cache.
+	 * @param file CRL file
+	 * @return the CRL
+	 * @throws IOException if the file can not be read
+	 * @throws CRLException if the CRL can not be parsed
+	 */
+	protected X509CRL loadCRLFile(File file) throws IOException, CRLException
+	{
+		String location = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		if (mappedCache != null)
+		{
+			X509CRL cached = mappedCache.get(location, lastModified, length);
+			if (cached != null)
+				return cached;
+		}
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		X509CRL ret;
+		try
+		{
+			ret = generateCRL(is);
+		} finally
+		{
+			is.close();
+		}
+		return storeInMappedCache(location, lastModified, length, ret);
+	}
+
+	/**
+	 * Stores a CRL in the mapped cache, if it is enabled.
+	 * @param location CRL location
+	 * @param lastModified modification time of the CRL source or -1 if the CRL should not be 
+	 * found in the cache later (e.g. it was downloaded)
+	 * @param length length of the CRL source or -1
+	 * @param crl the CRL
+	 * @return the memory mapped CRL or the argument if the cache is disabled or the CRL can not be stored
+	 */
+	protected X509CRL storeInMappedCache(String location, long lastModified, long length, X509CRL crl)
+	{
+		if (mappedCache == null || !(crl instanceof IndexedX509CRL))
+			return crl;
+		try
+		{
+			return mappedCache.put(location, lastModified, length, (IndexedX509CRL) crl);
+		} catch (IOException e)
+		{
+			notifyObservers(location, Severity.WARNING, 
+					new IOException("CRL can not be stored in the mapped cache, it is kept in memory", e));
+			return crl;
+		}
+	}
+
+	/**
+	 * Parses a CRL. The returned CRL keeps only a compact index of the revoked certificates, 
+	 * see {@link IndexedX509CRL}. The CRL is read with {@link CRLReader}, only CRLs 
+	 * which are not supported by it are parsed with the JCA certificate factory.
+	 * @param is input stream with the CRL, it is not closed
+	 * @return parsed CRL
+	 * @throws CRLException if the CRL can not be parsed
+	 */
+	protected X509CRL generateCRL(InputStream is) throws CRLException
+	{
+		byte[] data;
+		try
+		{
+			data = IOUtils.toByteArray(is);
+		} catch (IOException e)
+		{
+			throw new CRLException("Can not read the CRL", e);
+		}
+		try
+		{
+			return CRLReader.read(data);
+		} catch (CRLException e)
+		{
+			return new IndexedX509CRL(parseCRL(new ByteArrayInputStream(data)));
+		}
+	}
+
+	/**
+	 * Parses a CRL with the BouncyCastle provider. A new factory is used for each CRL, 
+	 * as factories are not thread safe and CRLs can be loaded concurrently.
+	 * @param is input stream with the CRL, it is not closed
+	 * @return parsed CRL
+	 * @throws CRLException if the CRL can not be parsed
+	 */
+	static X509CRL parseCRL(InputStream is) throws CRLException
+	{
+		CertificateFactory factory;
 		try
 		{
 			factory = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);
@@ -58,7 +180,41 @@ public abstract class AbstractCRLStoreSPI extends CertStoreSpi
 			throw new RuntimeException("Can't load Bouncycastle CertificateFacotory" +
 					" for alg. X.509, BouncyCastle is misconfigured?", e);
 		}
-		updateInterval = this.params.getCrlUpdateInterval();
+		X509CRL ret = (X509CRL)factory.generateCRL(is);
+		if (ret == null)
+			throw new CRLException("Unknown problem when parsing/loading the CRL");
+		return ret;
+	}
+
+	/**
+	 * Records CRLs which were (re)loaded from a location. If the CRLs differ from the ones recorded 
+	 * previously for the location, the content generation of the store is increased. 
+	 * CRLs are compared using their signatures.
+	 * @param location CRL location or other key grouping the CRLs, e.g. issuer hash
+	 * @param crls loaded CRLs, empty if the location does not provide CRLs anymore
+	 */
+	protected void recordLoadedCRLs(String location, Collection<X509CRL> crls)
+	{
+		Set<ByteBuffer> signatures = new HashSet<ByteBuffer>(crls.size());
+		for (X509CRL crl: crls)
+			signatures.add(ByteBuffer.wrap(crl.getSignature()));
+		synchronized (loadedSignatures)
+		{
+			Set<ByteBuffer> previous = signatures.isEmpty() ? loadedSignatures.remove(location) :
+				loadedSignatures.put(location, signatures);
+			if (previous == null ? !signatures.isEmpty() : !previous.equals(signatures))
+				contentGeneration.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return number which is changed whenever the content of the store is changed, i.e. when
+	 * a new or different CRL is loaded or a CRL is removed. Reloading of an unchanged CRL 
+	 * does not change the generation.
+	 */
+	public long getContentGeneration()
+	{
+		return contentGeneration.get();
 	}
 
 	protected void notifyObservers(String url, Severity level, Exception e)
@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.cert.CRLException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Reads DER or PEM encoded CRLs into {@link IndexedX509CRL}, in a single pass over the encoding.
+ * In contrast to the JCA certificate factory, the ASN.1 object tree of the CRL is never created:
+ * the revoked entries are added directly to a {@link RevokedCertificatesIndex}, so the memory
+ * needed to load a CRL is the encoding plus a small amount per revoked certificate.
+ * <p>
+ * Only DER is supported. Other encodings (e.g. BER with indefinite lengths) are rejected with
+ * {@link CRLException}, such CRLs can be still loaded with the JCA factory.
+ *
+ * @author K. Benedyczak
+ */
+public class CRLReader
+{
+	private static final int TAG_BOOLEAN = 0x01;
+	private static final int TAG_INTEGER = 0x02;
+	private static final int TAG_BIT_STRING = 0x03;
+	private static final int TAG_OCTET_STRING = 0x04;
+	private static final int TAG_OID = 0x06;
+	private static final int TAG_UTC_TIME = 0x17;
+	private static final int TAG_GENERALIZED_TIME = 0x18;
+	private static final int TAG_SEQUENCE = 0x30;
+	private static final int TAG_EXTENSIONS = 0xa0;
+
+	private static final byte[] REASON_CODE_OID = {0x55, 0x1d, 0x15};
+	private static final byte[] CERTIFICATE_ISSUER_OID = {0x55, 0x1d, 0x1d};
+	private static final String PEM_BEGIN = "-----BEGIN";
+	private static final String PEM_END = "-----END";
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final ByteBuffer der;
+
+	private CRLReader(ByteBuffer der)
+	{
+		this.der = der;
+	}
+
+	/**
+	 * @param data DER or PEM encoded CRL. If there are more CRLs, the first one is read.
+	 * @return the CRL
+	 * @throws CRLException if the CRL is malformed or is not DER encoded
+	 */
+	public static IndexedX509CRL read(byte[] data) throws CRLException
+	{
+		byte[] der = isPEM(data) ? decodePEM(data) : data;
+		CRLReader reader = new CRLReader(ByteBuffer.wrap(der));
+		int end = reader.end(0, der.length);
+		if (end != der.length)
+		{
+			byte[] first = new byte[end];
+			System.arraycopy(der, 0, first, 0, end);
+			reader = new CRLReader(ByteBuffer.wrap(first));
+		}
+		return reader.readCRL(null);
+	}
+
+	/**
+	 * Reads a CRL which revoked certificates were indexed previously. The revoked entries
+	 * are not read again.
+	 * @param encoding DER encoding of the CRL, starting at position 0, must not be modified later
+	 * @param index index of the revoked certificates of the CRL
+	 * @return the CRL using the given encoding buffer and index
+	 * @throws CRLException if the CRL is malformed
+	 */
+	static IndexedX509CRL read(ByteBuffer encoding, RevokedCertificatesIndex index) throws CRLException
+	{
+		return new CRLReader(encoding).readCRL(index);
+	}
+
+	/**
+	 * @param index index of the revoked certificates or null if it should be created
+	 */
+	private IndexedX509CRL readCRL(RevokedCertificatesIndex index) throws CRLException
+	{
+		expect(0, TAG_SEQUENCE);
+		int crlEnd = end(0, der.limit());
+		int tbs = contentStart(0);
+		expect(tbs, TAG_SEQUENCE);
+		int tbsEnd = end(tbs, crlEnd);
+		expect(tbsEnd, TAG_SEQUENCE);
+		int sigAlgEnd = end(tbsEnd, crlEnd);
+		expect(sigAlgEnd, TAG_BIT_STRING);
+		if (end(sigAlgEnd, crlEnd) != crlEnd)
+			throw new CRLException("Invalid CRL encoding: trailing data after the signature");
+
+		int pos = contentStart(tbs);
+		int version = 1;
+		if (tag(pos, tbsEnd) == TAG_INTEGER)
+		{
+			version = new BigInteger(content(pos)).intValue() + 1;
+			pos = end(pos, tbsEnd);
+		}
+		expect(pos, TAG_SEQUENCE);
+		pos = end(pos, tbsEnd);
+		expect(pos, TAG_SEQUENCE);
+		X500Principal issuer;
+		try
+		{
+			issuer = new X500Principal(slice(pos, end(pos, tbsEnd)));
+		} catch (IllegalArgumentException e)
+		{
+			throw new CRLException("Invalid CRL issuer", e);
+		}
+		pos = end(pos, tbsEnd);
+		Date thisUpdate = readTime(pos, tbsEnd);
+		pos = end(pos, tbsEnd);
+		Date nextUpdate = null;
+		int tag = tag(pos, tbsEnd);
+		if (tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME)
+		{
+			nextUpdate = readTime(pos, tbsEnd);
+			pos = end(pos, tbsEnd);
+		}
+		int revoked = -1;
+		if (tag(pos, tbsEnd) == TAG_SEQUENCE)
+		{
+			revoked = pos;
+			pos = end(pos, tbsEnd);
+		}
+		Map<String, byte[]> criticalExtensions = null;
+		Map<String, byte[]> nonCriticalExtensions = null;
+		if (tag(pos, tbsEnd) == TAG_EXTENSIONS)
+		{
+			criticalExtensions = new LinkedHashMap<String, byte[]>();
+			nonCriticalExtensions = new LinkedHashMap<String, byte[]>();
+			int extensions = contentStart(pos);
+			expect(extensions, TAG_SEQUENCE);
+			readExtensions(extensions, criticalExtensions, nonCriticalExtensions);
+			pos = end(pos, tbsEnd);
+		}
+		if (pos != tbsEnd)
+			throw new CRLException("Invalid CRL encoding: unexpected data in TBSCertList");
+
+		boolean indirect = isIndirect(criticalExtensions, nonCriticalExtensions);
+		if (index == null)
+		{
+			RevokedCertificatesIndex.Builder entries = new RevokedCertificatesIndex.Builder(indirect);
+			if (revoked != -1)
+				readEntries(revoked, entries);
+			index = entries.build();
+		}
+
+		byte[] sigAlgParams = readAlgorithmParameters(tbsEnd);
+		byte[] signature = readSignature(sigAlgEnd);
+		return new IndexedX509CRL(der, version, issuer, thisUpdate, nextUpdate, null,
+				readOID(contentStart(tbsEnd)), sigAlgParams, signature,
+				criticalExtensions, nonCriticalExtensions, indirect, index);
+	}
+
+	private void readEntries(int revoked, RevokedCertificatesIndex.Builder entries) throws CRLException
+	{
+		int revokedEnd = end(revoked, der.limit());
+		X500Principal certificateIssuer = null;
+		for (int entry = contentStart(revoked); entry < revokedEnd; entry = end(entry, revokedEnd))
+		{
+			expect(entry, TAG_SEQUENCE);
+			int entryEnd = end(entry, revokedEnd);
+			int pos = contentStart(entry);
+			expect(pos, TAG_INTEGER);
+			BigInteger serial = new BigInteger(content(pos));
+			pos = end(pos, entryEnd);
+			Date revocationDate = readTime(pos, entryEnd);
+			pos = end(pos, entryEnd);
+			int reason = RevokedCertificatesIndex.NO_REASON;
+			if (pos < entryEnd)
+			{
+				expect(pos, TAG_SEQUENCE);
+				int extensionsEnd = end(pos, entryEnd);
+				for (int ext = contentStart(pos); ext < extensionsEnd; ext = end(ext, extensionsEnd))
+				{
+					expect(ext, TAG_SEQUENCE);
+					int oid = contentStart(ext);
+					expect(oid, TAG_OID);
+					int value = skipCritical(end(oid, extensionsEnd), extensionsEnd);
+					if (contentEquals(oid, REASON_CODE_OID))
+						reason = RevokedCertificatesIndex.parseReason(slice(value,
+								end(value, extensionsEnd)));
+					else if (contentEquals(oid, CERTIFICATE_ISSUER_OID))
+						certificateIssuer = readCertificateIssuer(value);
+				}
+				pos = extensionsEnd;
+			}
+			if (pos != entryEnd)
+				throw new CRLException("Invalid CRL encoding: unexpected data in a revoked entry");
+			entries.add(serial, revocationDate.getTime(), reason, certificateIssuer);
+		}
+	}
+
+	private void readExtensions(int extensions, Map<String, byte[]> critical,
+			Map<String, byte[]> nonCritical) throws CRLException
+	{
+		int extensionsEnd = end(extensions, der.limit());
+		for (int ext = contentStart(extensions); ext < extensionsEnd; ext = end(ext, extensionsEnd))
+		{
+			expect(ext, TAG_SEQUENCE);
+			int oid = contentStart(ext);
+			expect(oid, TAG_OID);
+			int criticalPos = end(oid, extensionsEnd);
+			int value = skipCritical(criticalPos, extensionsEnd);
+			boolean isCritical = value != criticalPos && der.get(contentStart(criticalPos)) != 0;
+			byte[] encodedValue = slice(value, end(value, extensionsEnd));
+			if (isCritical)
+				critical.put(readOID(oid), encodedValue);
+			else
+				nonCritical.put(readOID(oid), encodedValue);
+		}
+	}
+
+	/**
+	 * @return position of the extension value, after the optional critical flag
+	 */
+	private int skipCritical(int pos, int limit) throws CRLException
+	{
+		if (tag(pos, limit) == TAG_BOOLEAN)
+		{
+			if (length(pos) != 1)
+				throw new CRLException("Invalid CRL encoding: malformed extension");
+			pos = end(pos, limit);
+		}
+		expect(pos, TAG_OCTET_STRING);
+		return pos;
+	}
+
+	private static boolean isIndirect(Map<String, byte[]> critical, Map<String, byte[]> nonCritical)
+			throws CRLException
+	{
+		if (critical == null)
+			return false;
+		String idpOid = Extension.issuingDistributionPoint.getId();
+		byte[] idp = critical.containsKey(idpOid) ? critical.get(idpOid) : nonCritical.get(idpOid);
+		if (idp == null)
+			return false;
+		try
+		{
+			return IssuingDistributionPoint.getInstance(
+					ASN1OctetString.getInstance(idp).getOctets()).isIndirectCRL();
+		} catch (Exception e)
+		{
+			throw new CRLException("Invalid issuing distribution point extension", e);
+		}
+	}
+
+	private X500Principal readCertificateIssuer(int value) throws CRLException
+	{
+		try
+		{
+			GeneralNames names = GeneralNames.getInstance(content(value));
+			for (GeneralName name: names.getNames())
+				if (name.getTagNo() == GeneralName.directoryName)
+					return new X500Principal(name.getName().toASN1Primitive().getEncoded());
+		} catch (Exception e)
+		{
+			throw new CRLException("Invalid certificate issuer extension of a CRL entry", e);
+		}
+		throw new CRLException("Certificate issuer extension of a CRL entry has no directory name");
+	}
+
+	private Date readTime(int pos, int limit) throws CRLException
+	{
+		int tag = tag(pos, limit);
+		if (tag != TAG_UTC_TIME && tag != TAG_GENERALIZED_TIME)
+			throw new CRLException("Invalid CRL encoding: time expected");
+		try
+		{
+			return Time.getInstance(parse(pos, end(pos, limit))).getDate();
+		} catch (Exception e)
+		{
+			throw new CRLException("Invalid time in CRL", e);
+		}
+	}
+
+	private String readOID(int pos) throws CRLException
+	{
+		expect(pos, TAG_OID);
+		try
+		{
+			return ASN1ObjectIdentifier.getInstance(parse(pos, end(pos, der.limit()))).getId();
+		} catch (Exception e)
+		{
+			throw new CRLException("Invalid object identifier in CRL", e);
+		}
+	}
+
+	private byte[] readAlgorithmParameters(int algorithm) throws CRLException
+	{
+		int algorithmEnd = end(algorithm, der.limit());
+		int params = end(contentStart(algorithm), algorithmEnd);
+		return params == algorithmEnd ? null : slice(params, algorithmEnd);
+	}
+
+	/**
+	 * @return signature bits or null if the signature is not octet aligned.
+	 */
+	private byte[] readSignature(int pos) throws CRLException
+	{
+		byte[] bitString = content(pos);
+		if (bitString.length == 0 || bitString[0] != 0)
+			return null;
+		byte[] ret = new byte[bitString.length - 1];
+		System.arraycopy(bitString, 1, ret, 0, ret.length);
+		return ret;
+	}
+
+	private Object parse(int start, int end) throws IOException
+	{
+		ASN1InputStream ais = new ASN1InputStream(
+				new ByteArrayInputStream(slice(start, end)), end - start);
+		try
+		{
+			return ais.readObject();
+		} finally
+		{
+			ais.close();
+		}
+	}
+
+	private boolean contentEquals(int pos, byte[] expected) throws CRLException
+	{
+		if (length(pos) != expected.length)
+			return false;
+		int start = contentStart(pos);
+		for (int i=0; i<expected.length; i++)
+			if (der.get(start+i) != expected[i])
+				return false;
+		return true;
+	}
+
+	private void expect(int pos, int tag) throws CRLException
+	{
+		if (tag(pos, der.limit()) != tag)
+			throw new CRLException("Invalid CRL encoding: unexpected tag at position " + pos);
+	}
+
+	/**
+	 * @return tag at the given position or -1 if the position is at the limit
+	 */
+	private int tag(int pos, int limit)
+	{
+		return pos < limit ? der.get(pos) & 0xff : -1;
+	}
+
+	private byte[] content(int pos) throws CRLException
+	{
+		int start = contentStart(pos);
+		return slice(start, start + length(pos));
+	}
+
+	private byte[] slice(int start, int end)
+	{
+		byte[] ret = new byte[end - start];
+		ByteBuffer src = der.duplicate();
+		src.position(start);
+		src.get(ret);
+		return ret;
+	}
+
+	private int contentStart(int pos) throws CRLException
+	{
+		return pos + 1 + getLengthOctets(der, pos + 1);
+	}
+
+	private int length(int pos) throws CRLException
+	{
+		return getLength(der, pos + 1);
+	}
+
+	/**
+	 * @return position after the element at the given position
+	 * @throws CRLException if the element exceeds the limit
+	 */
+	private int end(int pos, int limit) throws CRLException
+	{
+		return getEnd(der, pos, limit);
+	}
+
+	/**
+	 * @param der DER encoding
+	 * @param pos position of a DER element
+	 * @param limit end of the enclosing element
+	 * @return position after the element at the given position
+	 * @throws CRLException if the element is malformed or exceeds the limit
+	 */
+	static int getEnd(ByteBuffer der, int pos, int limit) throws CRLException
+	{
+		if (pos + 1 >= limit)
+			throw new CRLException("Invalid CRL encoding: truncated data");
+		long ret = (long) pos + 1 + getLengthOctets(der, pos + 1) + getLength(der, pos + 1);
+		if (ret > limit)
+			throw new CRLException("Invalid CRL encoding: truncated data");
+		return (int) ret;
+	}
+
+	/**
+	 * @param der DER encoding
+	 * @param pos position of a DER element
+	 * @return position of the contents of the element
+	 * @throws CRLException if the element is malformed
+	 */
+	static int getContentStart(ByteBuffer der, int pos) throws CRLException
+	{
+		return pos + 1 + getLengthOctets(der, pos + 1);
+	}
+
+	private static int getLengthOctets(ByteBuffer der, int pos) throws CRLException
+	{
+		if (pos >= der.limit())
+			throw new CRLException("Invalid CRL encoding: truncated data");
+		int first = der.get(pos) & 0xff;
+		return first < 0x80 ? 1 : 1 + (first & 0x7f);
+	}
+
+	private static int getLength(ByteBuffer der, int pos) throws CRLException
+	{
+		int first = der.get(pos) & 0xff;
+		if (first < 0x80)
+			return first;
+		int octets = first & 0x7f;
+		if (octets == 0)
+			throw new CRLException("Invalid CRL encoding: indefinite length is not allowed in DER");
+		if (octets > 4 || pos + octets >= der.limit())
+			throw new CRLException("Invalid CRL encoding: unsupported length");
+		long ret = 0;
+		for (int i=1; i<=octets; i++)
+			ret = (ret << 8) | (der.get(pos+i) & 0xff);
+		if (ret > Integer.MAX_VALUE)
+			throw new CRLException("Invalid CRL encoding: length is too large");
+		return (int) ret;
+	}
+
+	private static boolean isPEM(byte[] data)
+	{
+		for (byte b: data)
+		{
+			if (!Character.isWhitespace(b))
+				return b == '-';
+		}
+		return false;
+	}
+
+	private static byte[] decodePEM(byte[] data) throws CRLException
+	{
+		String pem = new String(data, 0, data.length, ASCII);
+		int begin = pem.indexOf(PEM_BEGIN);
+		int contentsStart = begin < 0 ? -1 : pem.indexOf('\n', begin);
+		int contentsEnd = contentsStart < 0 ? -1 : pem.indexOf(PEM_END, contentsStart);
+		if (contentsEnd < 0)
+			throw new CRLException("Invalid PEM encoding of CRL");
+		try
+		{
+			return Base64.decode(pem.substring(contentsStart, contentsEnd));
+		} catch (Exception e)
+		{
+			throw new CRLException("Invalid PEM encoding of CRL", e);
+		}
+	}
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.SoftReference;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.Certificate;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jce.provider.X509CRLObject;
+
+/**
+ * Memory efficient CRL. Keeps the DER encoding of the CRL, its header fields and extensions, and a
+ * {@link RevokedCertificatesIndex} of the revoked certificates. Revocation lookups use the index only.
+ * The fully parsed CRL is not retained: it is needed only to return the revoked entries as objects
+ * and to verify signatures with parameters. Then it is parsed again from the encoding and referenced
+ * softly. Instances are created by {@link CRLReader} or from a CRL parsed by the JCA factory.
+ * The encoding and the index are kept in buffers, which can be memory mapped 
+ * (see {@link MappedCRLCache}).
+ * <p>
+ * The CRL remembers the public key with which its signature was successfully verified.
+ * As a reloaded CRL is a new object, the mark is valid until the CRL is changed. See 
+ * {@link #isVerifiedWith(PublicKey)}.
+ *
+ * @author K. Benedyczak
+ */
+public class IndexedX509CRL extends X509CRL
+{
+	private static final byte[] DER_NULL = {0x05, 0x00};
+	
+	private final ByteBuffer encoded;
+	private final int hashCode;
+	private final int version;
+	private final X500Principal issuer;
+	private final Date thisUpdate;
+	private final Date nextUpdate;
+	private final String sigAlgName;
+	private final String sigAlgOID;
+	private final byte[] sigAlgParams;
+	private final byte[] signature;
+	private final Set<String> criticalExtensions;
+	private final Set<String> nonCriticalExtensions;
+	private final Map<String, byte[]> extensions;
+	private final boolean unsupportedCriticalExtension;
+	private final boolean signatureAlgorithmsMatch;
+	private final int tbsOffset;
+	private final int tbsLength;
+	private final boolean indirect;
+	private final RevokedCertificatesIndex index;
+	private SoftReference<X509CRL> parsed;
+	private volatile PublicKey verifiedKey;
+
+	/**
+	 * @param crl parsed CRL, its revoked entries are indexed. It is not referenced by the created object.
+	 * @throws CRLException if the CRL can not be encoded or its entries can not be read
+	 */
+	public IndexedX509CRL(X509CRL crl) throws CRLException
+	{
+		this(ByteBuffer.wrap(crl.getEncoded()), crl.getVersion(), crl.getIssuerX500Principal(), 
+				crl.getThisUpdate(), crl.getNextUpdate(), crl.getSigAlgName(), 
+				crl.getSigAlgOID(), crl.getSigAlgParams(), getSignature(crl), 
+				getExtensions(crl, crl.getCriticalExtensionOIDs()), 
+				getExtensions(crl, crl.getNonCriticalExtensionOIDs()),
+				X509CRLObject.isIndirectCRL(crl), 
+				RevokedCertificatesIndex.create(crl.getRevokedCertificates(), 
+						X509CRLObject.isIndirectCRL(crl)));
+	}
+
+	/**
+	 * Used by {@link CRLReader}.
+	 * @param encoded DER encoding, starting at position 0. It must not be modified later.
+	 * @param sigAlgName signature algorithm name or null if it should be taken from the parsed CRL
+	 * @param signature signature or null if it is malformed
+	 * @param criticalExtensions critical extensions (OID to DER encoded value) or null 
+	 * if the CRL has no extensions 
+	 * @param nonCriticalExtensions non critical extensions or null if the CRL has no extensions 
+	 */
+	IndexedX509CRL(ByteBuffer encoded, int version, X500Principal issuer, Date thisUpdate, 
+			Date nextUpdate, String sigAlgName, String sigAlgOID, byte[] sigAlgParams, 
+			byte[] signature, Map<String, byte[]> criticalExtensions, 
+			Map<String, byte[]> nonCriticalExtensions, boolean indirect, 
+			RevokedCertificatesIndex index) throws CRLException
+	{
+		this.encoded = encoded;
+		this.hashCode = computeHashCode(encoded);
+		this.version = version;
+		this.issuer = issuer;
+		this.thisUpdate = thisUpdate;
+		this.nextUpdate = nextUpdate;
+		this.sigAlgName = sigAlgName;
+		this.sigAlgOID = sigAlgOID;
+		this.sigAlgParams = sigAlgParams;
+		this.signature = signature;
+		this.extensions = new HashMap<String, byte[]>();
+		this.criticalExtensions = criticalExtensions == null ? null : 
+			Collections.unmodifiableSet(new HashSet<String>(criticalExtensions.keySet()));
+		this.nonCriticalExtensions = nonCriticalExtensions == null ? null : 
+			Collections.unmodifiableSet(new HashSet<String>(nonCriticalExtensions.keySet()));
+		if (criticalExtensions != null)
+			extensions.putAll(criticalExtensions);
+		if (nonCriticalExtensions != null)
+			extensions.putAll(nonCriticalExtensions);
+		this.unsupportedCriticalExtension = hasUnsupportedCriticalExtension(this.criticalExtensions);
+		this.indirect = indirect;
+		this.index = index;
+		this.parsed = new SoftReference<X509CRL>(null);
+		
+		//CertificateList ::= SEQUENCE { tbsCertList TBSCertList, signatureAlgorithm AlgorithmIdentifier, ...}
+		//TBSCertList ::= SEQUENCE { version Version OPTIONAL, signature AlgorithmIdentifier, ...}
+		int crlEnd = CRLReader.getEnd(encoded, 0, encoded.limit());
+		this.tbsOffset = CRLReader.getContentStart(encoded, 0);
+		int tbsEnd = CRLReader.getEnd(encoded, tbsOffset, crlEnd);
+		this.tbsLength = tbsEnd - tbsOffset;
+		int tbsSigAlg = CRLReader.getContentStart(encoded, tbsOffset);
+		if ((encoded.get(tbsSigAlg) & 0xff) == 0x02)
+			tbsSigAlg = CRLReader.getEnd(encoded, tbsSigAlg, tbsEnd);
+		int tbsSigAlgEnd = CRLReader.getEnd(encoded, tbsSigAlg, tbsEnd);
+		int sigAlgEnd = CRLReader.getEnd(encoded, tbsEnd, crlEnd);
+		this.signatureAlgorithmsMatch = regionEquals(encoded, tbsSigAlg, tbsSigAlgEnd, tbsEnd, sigAlgEnd);
+	}
+
+	private static boolean regionEquals(ByteBuffer data, int start1, int end1, int start2, int end2)
+	{
+		if (end1 - start1 != end2 - start2)
+			return false;
+		for (int i=0; i<end1-start1; i++)
+			if (data.get(start1+i) != data.get(start2+i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * The same rule as used by BouncyCastle: only the issuing distribution point and 
+	 * delta CRL indicator critical extensions are supported.
+	 */
+	private static boolean hasUnsupportedCriticalExtension(Set<String> critical)
+	{
+		if (critical == null)
+			return false;
+		Set<String> unsupported = new HashSet<String>(critical);
+		unsupported.remove(Extension.issuingDistributionPoint.getId());
+		unsupported.remove(Extension.deltaCRLIndicator.getId());
+		return !unsupported.isEmpty();
+	}
+
+	private static Map<String, byte[]> getExtensions(X509CRL crl, Set<String> oids)
+	{
+		if (oids == null)
+			return null;
+		Map<String, byte[]> ret = new HashMap<String, byte[]>();
+		for (String oid: oids)
+			ret.put(oid, crl.getExtensionValue(oid));
+		return ret;
+	}
+
+	/**
+	 * The same as {@link X509CRL#hashCode()}, so instances are interchangeable with other CRL 
+	 * implementations in hash based collections.
+	 */
+	private static int computeHashCode(ByteBuffer encoded)
+	{
+		int ret = 0;
+		for (int i=1; i<encoded.limit(); i++)
+			ret += encoded.get(i) * i;
+		return ret;
+	}
+
+	/**
+	 * @return the signature or null if it is malformed. Then the parsed CRL reports the problem,
+	 * when the signature is requested.
+	 */
+	private static byte[] getSignature(X509CRL crl)
+	{
+		try
+		{
+			return crl.getSignature();
+		} catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return index of the revoked certificates
+	 */
+	public RevokedCertificatesIndex getRevokedCertificatesIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return read only view of the DER encoding
+	 */
+	ByteBuffer getEncodingBuffer()
+	{
+		return encoded.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return true if this is an indirect CRL
+	 */
+	public boolean isIndirect()
+	{
+		return indirect;
+	}
+
+	/**
+	 * @return the fully parsed CRL, parsed again from the encoding if it was collected
+	 */
+	private synchronized X509CRL getParsed() throws CRLException
+	{
+		X509CRL ret = parsed.get();
+		if (ret == null)
+		{
+			ret = AbstractCRLStoreSPI.parseCRL(new ByteArrayInputStream(copy(0, encoded.limit())));
+			parsed = new SoftReference<X509CRL>(ret);
+		}
+		return ret;
+	}
+
+	private X509CRL getParsedUnchecked()
+	{
+		try
+		{
+			return getParsed();
+		} catch (CRLException e)
+		{
+			throw new IllegalStateException("Can not parse again a previously parsed CRL", e);
+		}
+	}
+
+	@Override
+	public boolean hasUnsupportedCriticalExtension()
+	{
+		return unsupportedCriticalExtension;
+	}
+
+	@Override
+	public Set<String> getCriticalExtensionOIDs()
+	{
+		return criticalExtensions;
+	}
+
+	@Override
+	public Set<String> getNonCriticalExtensionOIDs()
+	{
+		return nonCriticalExtensions;
+	}
+
+	@Override
+	public byte[] getExtensionValue(String oid)
+	{
+		byte[] ret = extensions.get(oid);
+		return ret == null ? null : ret.clone();
+	}
+
+	@Override
+	public boolean isRevoked(Certificate cert)
+	{
+		if (!(cert instanceof X509Certificate))
+			throw new IllegalArgumentException("X.509 CRL used with non X.509 Cert");
+		X509Certificate x509Cert = (X509Certificate) cert;
+		BigInteger serial = x509Cert.getSerialNumber();
+		X500Name certIssuer = X500Name.getInstance(x509Cert.getIssuerX500Principal().getEncoded());
+		for (int i = index.find(serial); index.hasSerial(i, serial); i++)
+		{
+			X500Principal entryIssuer = index.getCertificateIssuer(i);
+			if (entryIssuer == null)
+				entryIssuer = issuer;
+			if (certIssuer.equals(X500Name.getInstance(entryIssuer.getEncoded())))
+				return true;
+		}
+		return false;
+	}
+
+	private byte[] copy(int start, int length)
+	{
+		byte[] ret = new byte[length];
+		ByteBuffer src = encoded.duplicate();
+		src.position(start);
+		src.get(ret);
+		return ret;
+	}
+
+	@Override
+	public byte[] getEncoded() throws CRLException
+	{
+		return copy(0, encoded.limit());
+	}
+
+	/**
+	 * The signature is verified directly over the TBS part of the encoding, 
+	 * using the BouncyCastle provider. Only if the signature algorithm has parameters (as RSASSA-PSS), 
+	 * the CRL is parsed and verified by the BouncyCastle implementation.
+	 */
+	@Override
+	public void verify(PublicKey key) throws CRLException, NoSuchAlgorithmException,
+			InvalidKeyException, NoSuchProviderException, SignatureException
+	{
+		verify(key, BouncyCastleProvider.PROVIDER_NAME);
+	}
+
+	/**
+	 * The signature is always verified. After a successful verification the key is remembered,
+	 * see {@link #isVerifiedWith(PublicKey)}.
+	 */
+	@Override
+	public void verify(PublicKey key, String sigProvider) throws CRLException,
+			NoSuchAlgorithmException, InvalidKeyException,
+			NoSuchProviderException, SignatureException
+	{
+		Signature sig = createSignature(sigProvider);
+		if (sig == null)
+		{
+			if (sigProvider == null)
+				getParsed().verify(key);
+			else
+				getParsed().verify(key, sigProvider);
+			verifiedKey = key;
+			return;
+		}
+		if (!signatureAlgorithmsMatch)
+			throw new CRLException("Signature algorithm on CertificateList does not match TBSCertList.");
+		sig.initVerify(key);
+		ByteBuffer tbs = encoded.duplicate();
+		tbs.position(tbsOffset);
+		tbs.limit(tbsOffset + tbsLength);
+		sig.update(tbs);
+		if (!sig.verify(signature))
+			throw new SignatureException("CRL does not verify with supplied public key.");
+		verifiedKey = key;
+	}
+
+	/**
+	 * @param key public key
+	 * @return true if the signature of this CRL was already successfully verified with the key 
+	 */
+	public boolean isVerifiedWith(PublicKey key)
+	{
+		PublicKey verified = verifiedKey;
+		return verified != null && (verified == key || verified.equals(key));
+	}
+
+	/**
+	 * @return signature object for the CRL's algorithm or null if the parsed CRL must be used
+	 * for the verification.
+	 */
+	private Signature createSignature(String sigProvider)
+	{
+		if (signature == null)
+			return null;
+		if (sigAlgParams != null && !Arrays.equals(sigAlgParams, DER_NULL))
+			return null;
+		try
+		{
+			return sigProvider == null ? Signature.getInstance(sigAlgOID) : 
+				Signature.getInstance(sigAlgOID, sigProvider);
+		} catch (NoSuchAlgorithmException e)
+		{
+			return null;
+		} catch (NoSuchProviderException e)
+		{
+			return null;
+		}
+	}
+
+	@Override
+	public int getVersion()
+	{
+		return version;
+	}
+
+	@Override
+	public Principal getIssuerDN()
+	{
+		return issuer;
+	}
+
+	@Override
+	public X500Principal getIssuerX500Principal()
+	{
+		return issuer;
+	}
+
+	@Override
+	public Date getThisUpdate()
+	{
+		return thisUpdate == null ? null : new Date(thisUpdate.getTime());
+	}
+
+	@Override
+	public Date getNextUpdate()
+	{
+		return nextUpdate == null ? null : new Date(nextUpdate.getTime());
+	}
+
+	@Override
+	public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
+	{
+		if (index.find(serialNumber) < 0)
+			return null;
+		return getParsedUnchecked().getRevokedCertificate(serialNumber);
+	}
+
+	@Override
+	public Set<? extends X509CRLEntry> getRevokedCertificates()
+	{
+		if (index.size() == 0)
+			return null;
+		return getParsedUnchecked().getRevokedCertificates();
+	}
+
+	/**
+	 * The TBS part is cut out from the encoding, without parsing the CRL.
+	 */
+	@Override
+	public byte[] getTBSCertList() throws CRLException
+	{
+		return copy(tbsOffset, tbsLength);
+	}
+
+	@Override
+	public byte[] getSignature()
+	{
+		if (signature == null)
+			return getParsedUnchecked().getSignature();
+		return signature.clone();
+	}
+
+	@Override
+	public String getSigAlgName()
+	{
+		if (sigAlgName == null)
+			return getParsedUnchecked().getSigAlgName();
+		return sigAlgName;
+	}
+
+	@Override
+	public String getSigAlgOID()
+	{
+		return sigAlgOID;
+	}
+
+	@Override
+	public byte[] getSigAlgParams()
+	{
+		return sigAlgParams == null ? null : sigAlgParams.clone();
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+			return true;
+		if (other instanceof IndexedX509CRL)
+			return encoded.equals(((IndexedX509CRL)other).encoded);
+		if (!(other instanceof X509CRL))
+			return false;
+		try
+		{
+			return encoded.equals(ByteBuffer.wrap(((X509CRL)other).getEncoded()));
+		} catch (CRLException e)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getParsedUnchecked().toString();
+	}
+}
@@ -4,11 +4,8 @@
  */
 package eu.emi.security.authn.x509.helpers.crl;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.cert.CRLException;
@@ -18,14 +15,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 import javax.security.auth.x500.X500Principal;
 
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
-import eu.emi.security.authn.x509.helpers.CachedElement;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.trust.OpensslDirectoryIndex;
 import eu.emi.security.authn.x509.helpers.trust.OpensslTruststoreHelper;
 import eu.emi.security.authn.x509.impl.CRLParameters;
 import eu.emi.security.authn.x509.impl.X500NameUtils;
@@ -34,7 +31,9 @@ import eu.emi.security.authn.x509.impl.X500NameUtils;
 
 /**
  * Handles an Openssl-like CRL store. CRLs are loaded on demand from disk and cached in memory,
- * for no longer then updateInterval parameter.
+ * for no longer then updateInterval parameter. CRL files are found with the {@link OpensslDirectoryIndex}
+ * shared with the other lazy stores of the directory. Expired CRLs can be still used for a configured time,
+ * while being reloaded in background, see {@link #setMaxStaleness(long)}.
  * <p>
  * This class is thread safe.
  * </p> 
@@ -43,13 +42,21 @@ import eu.emi.security.authn.x509.impl.X500NameUtils;
  */
 public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 {
-	private static final String SUFFIX = "\\.r[0-9]+";
 	//constant state
-	private final File directory;
+	private final OpensslDirectoryIndex directoryIndex;
 	private final boolean openssl1Mode;
 	
 	//variable state
-	private Map<String, CachedElement<List<X509CRL>>> cachedCRLsByHash;
+	private final BoundedCache<String, List<X509CRL>> cachedCRLsByHash;
+	private final BoundedCache.Loader<String, List<X509CRL>> loader = 
+			new BoundedCache.Loader<String, List<X509CRL>>()
+	{
+		@Override
+		public List<X509CRL> load(String issuerHash)
+		{
+			return loadCRLsWithHash(issuerHash);
+		}
+	};
 
 	/**
 	 * Creates a new CRL store.
@@ -62,26 +69,56 @@ public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 	public LazyOpensslCRLStoreSpi(String path, long crlUpdateInterval, ObserversHandler observers,
 			boolean openssl1Mode) throws InvalidAlgorithmParameterException
 	{
-		super(new CRLParameters(Collections.singletonList(path),
-				crlUpdateInterval, 0, null), observers);
-		this.directory = new File(path);
+		this(path, crlUpdateInterval, observers, openssl1Mode, BoundedCache.DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a new CRL store.
+	 * @param path path
+	 * @param crlUpdateInterval crl update interval
+	 * @param observers observers handler
+	 * @param openssl1Mode openssl 1 mode
+	 * @param maxCacheEntries maximum number of issuers with cached CRLs
+	 * @throws InvalidAlgorithmParameterException invalid algorithm parameter exception
+	 */
+	public LazyOpensslCRLStoreSpi(String path, long crlUpdateInterval, ObserversHandler observers,
+			boolean openssl1Mode, int maxCacheEntries) throws InvalidAlgorithmParameterException
+	{
+		this(path, crlUpdateInterval, observers, openssl1Mode, maxCacheEntries, null);
+	}
+
+	/**
+	 * Creates a new CRL store.
+	 * @param path path
+	 * @param crlUpdateInterval crl update interval
+	 * @param observers observers handler
+	 * @param openssl1Mode openssl 1 mode
+	 * @param maxCacheEntries maximum number of issuers with cached CRLs
+	 * @param mappedCachePath directory of the {@link MappedCRLCache} or null to disable it
+	 * @throws InvalidAlgorithmParameterException invalid algorithm parameter exception
+	 */
+	public LazyOpensslCRLStoreSpi(String path, long crlUpdateInterval, ObserversHandler observers,
+			boolean openssl1Mode, int maxCacheEntries, String mappedCachePath) 
+					throws InvalidAlgorithmParameterException
+	{
+		super(createParameters(path, crlUpdateInterval, mappedCachePath), observers);
+		this.directoryIndex = OpensslDirectoryIndex.getInstance(path);
 		this.openssl1Mode = openssl1Mode;
-		cachedCRLsByHash = new WeakHashMap<String, CachedElement<List<X509CRL>>>();
+		cachedCRLsByHash = new BoundedCache<String, List<X509CRL>>(maxCacheEntries);
+	}
+
+	private static CRLParameters createParameters(String path, long crlUpdateInterval, 
+			String mappedCachePath)
+	{
+		CRLParameters ret = new CRLParameters(Collections.singletonList(path),
+				crlUpdateInterval, 0, null);
+		ret.setMappedCachePath(mappedCachePath);
+		return ret;
 	}
 
 	protected X509CRL loadCRL(File file) throws IOException, CRLException, URISyntaxException
 	{
-		InputStream is = new BufferedInputStream(new FileInputStream(file));
-		try
-		{
-			X509CRL ret = (X509CRL)factory.generateCRL(is);
-			if (ret == null)
-				throw new CRLException("Unknown problem when parsing/loading the CRL");
-			return ret;
-		} finally
-		{
-			is.close();
-		}
+		return loadCRLFile(file);
 	}
 	
 	@Override
@@ -95,6 +132,23 @@ public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 		return updateInterval;
 	}
 	
+	/**
+	 * @param maxStaleness time in ms for which expired CRLs are still used, while being
+	 * reloaded in background. See {@link BoundedCache#setMaxStaleness(long)}.
+	 */
+	public void setMaxStaleness(long maxStaleness)
+	{
+		cachedCRLsByHash.setMaxStaleness(maxStaleness);
+	}
+	
+	/**
+	 * @return statistics of the cache of CRLs loaded per issuer
+	 */
+	public CacheStatistics getCacheStatistics()
+	{
+		return cachedCRLsByHash.getStatistics();
+	}
+	
 	@Override
 	public void dispose()
 	{
@@ -109,6 +163,13 @@ public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 			notifyObservers(location.getAbsolutePath(), Severity.NOTIFICATION, null);
 		} catch (Exception e)
 		{
+			//removed after the directory was listed
+			if (!location.exists())
+			{
+				directoryIndex.invalidate();
+				if (mappedCache != null)
+					mappedCache.remove(location.getAbsolutePath());
+			}
 			notifyObservers(location.getAbsolutePath(), Severity.ERROR, e);
 			return null;
 		}
@@ -125,17 +186,16 @@ public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 	}
 	
 	@Override
-	protected synchronized Collection<X509CRL> getCRLForIssuer(X500Principal issuer)
+	protected Collection<X509CRL> getCRLForIssuer(X500Principal issuer)
 	{
 		String issuerHash = OpensslTruststoreHelper.getOpenSSLCAHash(issuer, openssl1Mode);
-		CachedElement<List<X509CRL>> cached = cachedCRLsByHash.get(issuerHash);
-		if (cached != null && !cached.isExpired(updateInterval))
-		{
-			return filterByIssuer(issuer, cached.getElement());
-		}
-		
-		Collection<File> crls = OpensslTruststoreHelper.getFilesWithRegexp(issuerHash+SUFFIX, directory); 
-		
+		List<X509CRL> crls = cachedCRLsByHash.getOrLoad(issuerHash, getUpdateInterval(), loader);
+		return filterByIssuer(issuer, crls);
+	}
+	
+	private List<X509CRL> loadCRLsWithHash(String issuerHash)
+	{
+		List<File> crls = directoryIndex.getCRLs(issuerHash, getUpdateInterval()); 
 		List<X509CRL> ret = new ArrayList<X509CRL>(crls.size());
 		for (File location: crls)
 		{
@@ -143,15 +203,14 @@ public class LazyOpensslCRLStoreSpi extends AbstractCRLStoreSPI
 			if (crl != null)
 				ret.add(crl);
 		}
-		
-		cachedCRLsByHash.put(issuerHash, new CachedElement<List<X509CRL>>(ret));
-		return filterByIssuer(issuer, ret);
+		recordLoadedCRLs(issuerHash, ret);
+		return Collections.unmodifiableList(ret);
 	}
 
 	@Override
 	protected synchronized Collection<X509CRL> getCRLWithMatcher(CRLSelector selectorRaw)
 	{
-		Collection<File> crls = OpensslTruststoreHelper.getFilesWithRegexp(".*" + SUFFIX, directory); 
+		List<File> crls = directoryIndex.getAllCRLs(updateInterval); 
 		List<X509CRL> ret = new ArrayList<X509CRL>();
 		for (File location: crls)
 		{
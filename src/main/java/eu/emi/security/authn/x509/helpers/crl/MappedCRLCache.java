@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Directory with CRLs stored together with their {@link RevokedCertificatesIndex}, in files
+ * which are memory mapped. CRLs obtained from the cache keep their encoding and index outside of
+ * the Java heap, in the operating system's page cache. Therefore large CRLs don't increase the heap
+ * size and the memory is shared by all JVMs using the same cache directory.
+ * After a restart a CRL is available again just after mapping its file, without parsing.
+ * <p>
+ * Each CRL is stored with its location and a stamp of its source (e.g. the modification time
+ * and length of the CRL file). The stored CRL is returned only when the stamp is not changed.
+ * The file header contains also a SHA-256 digest of the stored index and encoding, which is verified
+ * when the file is mapped, so a damaged or tampered file is never used instead of the CRL source.
+ * Files of CRLs which are removed from the store should be deleted with {@link #remove(String)}.
+ * Files are never modified in place: a new file is written and then renamed, so the mapped
+ * files are always complete and can be used by other processes while being updated.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author K. Benedyczak
+ */
+public class MappedCRLCache
+{
+	public static final String SUFFIX = ".crli";
+	private static final int MAGIC = 0x43524c49;
+	private static final int FORMAT_VERSION = 3;
+	private static final int DIGEST_LENGTH = 32;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	/**
+	 * @param directory directory of the cache, it is created if doesn't exist
+	 * @throws IOException if the directory can not be created
+	 */
+	public MappedCRLCache(File directory) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+			throw new IOException("Can not create the CRL cache directory " + directory);
+		this.directory = directory;
+	}
+
+	/**
+	 * @param location location of the CRL
+	 * @param lastModified modification time of the CRL source
+	 * @param length length of the CRL source
+	 * @return memory mapped CRL or null if it is not cached for the given stamp
+	 * or the cached file is unusable
+	 */
+	public IndexedX509CRL get(String location, long lastModified, long length)
+	{
+		File file = getFile(location);
+		if (!file.isFile())
+			return null;
+		try
+		{
+			return map(file, location, lastModified, length);
+		} catch (IOException e)
+		{
+			return null;
+		} catch (CRLException e)
+		{
+			return null;
+		} catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a CRL in the cache.
+	 * @param location location of the CRL
+	 * @param lastModified modification time of the CRL source
+	 * @param length length of the CRL source
+	 * @param crl the CRL
+	 * @return the stored CRL, memory mapped from the cache file
+	 * @throws IOException if the CRL can not be stored or mapped
+	 */
+	public IndexedX509CRL put(String location, long lastModified, long length, IndexedX509CRL crl)
+			throws IOException
+	{
+		File target = getFile(location);
+		File tmp = File.createTempFile(target.getName(), ".tmp", directory);
+		try
+		{
+			write(tmp, location, lastModified, length, crl);
+			if (!tmp.renameTo(target))
+			{
+				target.delete();
+				if (!tmp.renameTo(target))
+					throw new IOException("Can not rename " + tmp + " to " + target);
+			}
+		} finally
+		{
+			if (tmp.exists())
+				tmp.delete();
+		}
+		try
+		{
+			return map(target, location, lastModified, length);
+		} catch (CRLException e)
+		{
+			throw new IOException("Stored CRL can not be read from " + target, e);
+		}
+	}
+
+	/**
+	 * Deletes the stored CRL of the given location, if any.
+	 * @param location location of the CRL
+	 */
+	public void remove(String location)
+	{
+		getFile(location).delete();
+	}
+
+	/**
+	 * @param location location of the CRL
+	 * @return the file of the cached CRL
+	 */
+	public File getFile(String location)
+	{
+		String name = Hex.toHexString(createDigest().digest(location.getBytes(UTF8)));
+		return new File(directory, name + SUFFIX);
+	}
+
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("SHA-256 is not supported, JDK is misconfigured?", e);
+		}
+	}
+
+	private static byte[] digest(ByteBuffer index, ByteBuffer encoding)
+	{
+		MessageDigest digest = createDigest();
+		digest.update(index.duplicate());
+		digest.update(encoding.duplicate());
+		return digest.digest();
+	}
+
+	private static void write(File file, String location, long lastModified, long length,
+			IndexedX509CRL crl) throws IOException
+	{
+		ByteBuffer index = crl.getRevokedCertificatesIndex().getBuffer();
+		ByteBuffer encoding = crl.getEncodingBuffer();
+		byte[] locationBytes = location.getBytes(UTF8);
+		ByteBuffer header = ByteBuffer.allocate(36 + DIGEST_LENGTH + locationBytes.length);
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putLong(lastModified);
+		header.putLong(length);
+		header.putInt(locationBytes.length);
+		header.put(locationBytes);
+		header.putInt(index.remaining());
+		header.putInt(encoding.remaining());
+		header.put(digest(index, encoding));
+		header.flip();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			writeFully(channel, header);
+			writeFully(channel, index);
+			writeFully(channel, encoding);
+			channel.force(false);
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * @return CRL mapped from the file or null if the file is for a different location or stamp
+	 * or its contents does not match the stored digest
+	 */
+	private static IndexedX509CRL map(File file, String location, long lastModified, long length)
+			throws IOException, CRLException
+	{
+		MappedByteBuffer mapped;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally
+		{
+			raf.close();
+		}
+		if (mapped.limit() < 28 || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION)
+			return null;
+		if (mapped.getLong(8) != lastModified || mapped.getLong(16) != length)
+			return null;
+		int locationLength = mapped.getInt(24);
+		int pos = 28 + locationLength;
+		if (locationLength < 0 || (long)pos + 8 + DIGEST_LENGTH > mapped.limit())
+			return null;
+		byte[] storedLocation = new byte[locationLength];
+		mapped.position(28);
+		mapped.get(storedLocation);
+		if (!location.equals(new String(storedLocation, UTF8)))
+			return null;
+		int indexLength = mapped.getInt(pos);
+		int encodingLength = mapped.getInt(pos + 4);
+		byte[] storedDigest = new byte[DIGEST_LENGTH];
+		mapped.position(pos + 8);
+		mapped.get(storedDigest);
+		pos += 8 + DIGEST_LENGTH;
+		if (indexLength < 0 || encodingLength < 0 ||
+				(long)pos + indexLength + encodingLength != mapped.limit())
+			return null;
+		ByteBuffer indexBuffer = slice(mapped, pos, indexLength);
+		ByteBuffer encoding = slice(mapped, pos + indexLength, encodingLength);
+		if (!MessageDigest.isEqual(storedDigest, digest(indexBuffer, encoding)))
+			return null;
+		return CRLReader.read(encoding, new RevokedCertificatesIndex(indexBuffer));
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int start, int length)
+	{
+		ByteBuffer ret = buffer.duplicate();
+		ret.position(start);
+		ret.limit(start + length);
+		return ret.slice();
+	}
+}
@@ -13,6 +13,7 @@ import java.util.Timer;
 
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
 import eu.emi.security.authn.x509.helpers.trust.OpensslTruststoreHelper;
 import eu.emi.security.authn.x509.impl.CRLParameters;
 
@@ -36,13 +37,42 @@ public class OpensslCRLStoreSpi extends PlainCRLStoreSpi
 	public OpensslCRLStoreSpi(String path, long crlUpdateInterval, Timer t,	ObserversHandler observers,
 			boolean openssl1Mode) throws InvalidAlgorithmParameterException
 	{
-		super(new CRLParameters(Collections.singletonList(
-				path+File.separator+CRL_WILDCARD),
-				crlUpdateInterval, 0, null), t, observers);
+		this(path, crlUpdateInterval, t, observers, openssl1Mode, ParallelLoader.DEFAULT_PARALLELISM);
+	}
+	
+	/**
+	 * @param loadingParallelism maximum number of threads used to load CRLs
+	 */
+	public OpensslCRLStoreSpi(String path, long crlUpdateInterval, Timer t,	ObserversHandler observers,
+			boolean openssl1Mode, int loadingParallelism) throws InvalidAlgorithmParameterException
+	{
+		this(path, crlUpdateInterval, t, observers, openssl1Mode, loadingParallelism, null);
+	}
+	
+	/**
+	 * @param loadingParallelism maximum number of threads used to load CRLs
+	 * @param mappedCachePath directory of the {@link MappedCRLCache} or null to disable it
+	 */
+	public OpensslCRLStoreSpi(String path, long crlUpdateInterval, Timer t,	ObserversHandler observers,
+			boolean openssl1Mode, int loadingParallelism, String mappedCachePath) 
+					throws InvalidAlgorithmParameterException
+	{
+		super(createParameters(path, crlUpdateInterval, loadingParallelism, mappedCachePath), 
+				t, observers);
 		this.openssl1Mode = openssl1Mode;
 		super.start();
 	}
 	
+	private static CRLParameters createParameters(String path, long crlUpdateInterval, int loadingParallelism,
+			String mappedCachePath)
+	{
+		CRLParameters ret = new CRLParameters(Collections.singletonList(path+File.separator+CRL_WILDCARD),
+				crlUpdateInterval, 0, null);
+		ret.setLoadingParallelism(loadingParallelism);
+		ret.setMappedCachePath(mappedCachePath);
+		return ret;
+	}
+	
 	/**
 	 * Tries to load a CRL
 	 */
@@ -6,7 +6,6 @@ package eu.emi.security.authn.x509.helpers.crl;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.SoftReference;
@@ -28,11 +27,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.Semaphore;
 
 import javax.security.auth.x500.X500Principal;
 
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
+import eu.emi.security.authn.x509.helpers.DirectoryChangeListener;
+import eu.emi.security.authn.x509.helpers.DirectoryWatcher;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
 import eu.emi.security.authn.x509.helpers.WeakTimerTask;
 import eu.emi.security.authn.x509.helpers.pkipath.PlainStoreUtils;
 import eu.emi.security.authn.x509.impl.CRLParameters;
@@ -62,6 +65,9 @@ import eu.emi.security.authn.x509.impl.CRLParameters;
  * task can not download the CRL which was previously cached on disk, 
  * then the version from disk is returned. 
  * <p>
+ * Remote CRLs are downloaded concurrently, with a limit of simultaneous downloads from a single host. 
+ * Each CRL is available in the store as soon as it is loaded, without waiting for the whole update.
+ * <p>
  * This class is thread safe.
  * </p> 
  *    
@@ -73,8 +79,19 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 	private final PlainStoreUtils utils;
 	private Timer timer;
 	
+	private final Object updateLock = new Object();
+	private final DirectoryChangeListener changeListener = new DirectoryChangeListener()
+	{
+		@Override
+		public void filesChanged(Set<File> changedFiles, boolean overflow)
+		{
+			PlainCRLStoreSpi.this.filesChanged(changedFiles, overflow);
+		}
+	};
+	
 	//variable state
 	private Object intervalLock = new Object();
+	private DirectoryWatcher watcher;
 	private Map<X500Principal, Set<URL>> ca2location;
 	private Map<URL, SoftReference<X509CRL>> loadedCRLs;
 
@@ -94,6 +111,7 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 		
 		utils = new PlainStoreUtils(this.params.getDiskCachePath(), "-crl", 
 				this.params.getCrls());
+		utils.setConnectionsPerHost(this.params.getRemoteConnectionsPerHost());
 		timer = t;
 	}
 
@@ -108,21 +126,30 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 	
 	protected X509CRL loadCRL(URL url) throws IOException, CRLException, URISyntaxException
 	{
-		String protocol = url.getProtocol();
-		boolean local = false;
-		if (protocol.equalsIgnoreCase("file"))
-			local = true;
+		boolean local = PlainStoreUtils.isLocal(url);
 		X509CRL ret;
+		URLConnection conn;
 		try
 		{
-			URLConnection conn = url.openConnection();
 			if (!local)
 			{
-				conn.setConnectTimeout(params.getRemoteConnectionTimeout());
-				conn.setReadTimeout(params.getRemoteConnectionTimeout());
+				Semaphore permit = utils.acquireHostPermit(url);
+				try
+				{
+					X509CRL previous = getLoadedCRL(url);
+					conn = utils.openConnection(url, params.getRemoteConnectionTimeout(), 
+							previous != null);
+					if (PlainStoreUtils.isNotModified(conn))
+						return previous != null ? previous : loadCachedCRL(url);
+					ret = loadCrlWrapper(new BufferedInputStream(conn.getInputStream()));
+				} finally
+				{
+					permit.release();
+				}
+			} else
+			{
+				return loadCRLFile(new File(url.toURI()));
 			}
-			InputStream is = new BufferedInputStream(conn.getInputStream());
-			ret = loadCrlWrapper(is);
 		} catch (IOException e)
 		{
 			if (!local && params.getDiskCachePath() != null)
@@ -130,9 +157,7 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 				File input = utils.getCacheFile(url);
 				if (input.exists())
 				{
-					InputStream is = new BufferedInputStream(
-							new FileInputStream(input));
-					ret = loadCrlWrapper(is);
+					ret = loadCRLFile(input);
 					notifyObservers(url.toExternalForm(), Severity.WARNING,
 							new IOException("Warning: CRL was not loaded from its URL, " +
 							"but its previously cached copy was loaded from disk file " + input.getPath(), e));
@@ -143,10 +168,26 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 			throw e;
 		}
 		
-		if (!local)
-			utils.saveCacheFile(ret.getEncoded(), url);
-		
-		return ret;
+		utils.saveCacheFile(ret.getEncoded(), url, conn, ret.getNextUpdate());
+		return storeInMappedCache(url.toExternalForm(), -1, -1, ret);
+	}
+	
+	private X509CRL loadCachedCRL(URL url) throws IOException, CRLException, URISyntaxException
+	{
+		try
+		{
+			return loadCRLFile(utils.getCacheFile(url));
+		} catch (CRLException e)
+		{
+			utils.forgetValidators(url);
+			throw e;
+		}
+	}
+	
+	private synchronized X509CRL getLoadedCRL(URL url)
+	{
+		SoftReference<X509CRL> ref = loadedCRLs.get(url);
+		return ref == null ? null : ref.get();
 	}
 	
 	/**
@@ -158,9 +199,7 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 	 */
 	private X509CRL loadCrlWrapper(InputStream is) throws IOException, CRLException
 	{
-		X509CRL ret = (X509CRL)factory.generateCRL(is);
-		if (ret == null)
-			throw new CRLException("Unknown problem when parsing/loading the CRL");
+		X509CRL ret = generateCRL(is);
 		is.close();
 		return ret;
 	}
@@ -210,22 +249,50 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 				{
 					it.remove();
 					loadedCRLs.remove(u);
+					removeFromMappedCache(u);
+					recordLoadedCRLs(u.toExternalForm(), Collections.<X509CRL>emptyList());
 				}
 			}
 		}
 	}
 	
 	/**
-	 * For all URLs tries to load a CRL
+	 * For all URLs tries to load a CRL. CRLs are loaded in parallel, see {@link ParallelLoader}. 
+	 * Remote CRLs are downloaded with a separate parallelism, as their loading is not bound by CPU.
 	 */
 	private void reloadCRLs(Collection<URL> locations)
 	{
+		List<URL> remote = new ArrayList<URL>();
+		List<URL> local = new ArrayList<URL>();
 		for (URL location: locations)
 		{
-			reloadCRL(location);
+			if (PlainStoreUtils.isLocal(location))
+				local.add(location);
+			else
+				remote.add(location);
 		}
+		reloadCRLs(PlainStoreUtils.interleaveHosts(remote), params.getRemoteLoadingParallelism());
+		reloadCRLs(local, params.getLoadingParallelism());
+	}
+	
+	private void reloadCRLs(Collection<URL> locations, int parallelism)
+	{
+		ParallelLoader.loadAll(locations, parallelism, 
+				new ParallelLoader.Task<URL, X509CRL>()
+		{
+			@Override
+			public X509CRL load(URL location)
+			{
+				return reloadCRL(location);
+			}
+		});
 	}
 	
+	/**
+	 * Loads a CRL and adds it to the store. Invoked concurrently for different locations.
+	 * @param location CRL location
+	 * @return the loaded CRL or null if it can not be loaded
+	 */
 	protected X509CRL reloadCRL(URL location)
 	{
 		X509CRL crl;
@@ -252,6 +319,7 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 		}
 		set.add(location);
 		loadedCRLs.put(location, new SoftReference<X509CRL>(crl));
+		recordLoadedCRLs(location.toExternalForm(), Collections.singletonList(crl));
 	}
 	
 	/**
@@ -264,10 +332,103 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 	 */
 	private void update()
 	{
-		utils.establishWildcardsLocations();
-		removeStaleIssuerMapping();
-		reloadCRLs(utils.getURLLocations());
-		reloadCRLs(utils.getResolvedWildcards());
+		synchronized (updateLock)
+		{
+			utils.establishWildcardsLocations();
+			removeStaleIssuerMapping();
+			reloadCRLs(utils.getURLLocations());
+			reloadCRLs(utils.getResolvedWildcards());
+		}
+	}
+	
+	/**
+	 * Starts watching the directories of the wildcard locations for changes. Changed CRL files are 
+	 * reloaded without rescanning the whole store, after no other change was detected for the 
+	 * given delay. Periodic updates can be turned off when watching is enabled.
+	 * Requires Java 7. If the directories can not be watched, an error is reported to observers and 
+	 * only the periodic updates are used.
+	 * @param delay time in ms without subsequent changes, after which the changes are applied.
+	 */
+	public void watchDirectories(long delay)
+	{
+		synchronized (updateLock)
+		{
+			if (watcher != null)
+				watcher.dispose();
+			watcher = null;
+			Set<File> directories = utils.getWildcardDirectories();
+			if (directories.isEmpty())
+				return;
+			try
+			{
+				watcher = new DirectoryWatcher(directories, delay, changeListener);
+			} catch (IOException e)
+			{
+				notifyObservers(directories.toString(), Severity.ERROR, 
+						new IOException("Can not watch the CRL directories for changes", e));
+			}
+		}
+	}
+	
+	private void filesChanged(Set<File> changedFiles, boolean overflow)
+	{
+		synchronized (updateLock)
+		{
+			if (overflow)
+			{
+				update();
+				return;
+			}
+			for (File file: changedFiles)
+			{
+				if (!utils.isWildcardMatch(file))
+					continue;
+				URL url = PlainStoreUtils.toURL(file);
+				if (file.isFile())
+				{
+					utils.addResolvedWildcard(url);
+					reloadCRL(url);
+				} else
+				{
+					utils.removeResolvedWildcard(url);
+					removeCRL(url);
+				}
+			}
+		}
+	}
+	
+	protected synchronized void removeCRL(URL location)
+	{
+		loadedCRLs.remove(location);
+		for (Set<URL> locations: ca2location.values())
+			locations.remove(location);
+		removeFromMappedCache(location);
+		recordLoadedCRLs(location.toExternalForm(), Collections.<X509CRL>emptyList());
+	}
+	
+	/**
+	 * Deletes the mapped cache files of a removed location: of the local file or of the 
+	 * downloaded CRL and its disk cache copy.
+	 */
+	private void removeFromMappedCache(URL location)
+	{
+		if (mappedCache == null)
+			return;
+		try
+		{
+			if (PlainStoreUtils.isLocal(location))
+			{
+				mappedCache.remove(new File(location.toURI()).getAbsolutePath());
+			} else
+			{
+				mappedCache.remove(location.toExternalForm());
+				if (params.getDiskCachePath() != null)
+					mappedCache.remove(utils.getCacheFile(location).getAbsolutePath());
+			}
+		} catch (URISyntaxException e)
+		{
+			//such location can not be loaded, so it was never cached
+		}
 	}
 	
 	private void scheduleUpdate()
@@ -299,7 +460,7 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 
 
 	@Override
-	protected Collection<X509CRL> getCRLWithMatcher(CRLSelector selectorRaw)
+	protected synchronized Collection<X509CRL> getCRLWithMatcher(CRLSelector selectorRaw)
 	{
 		List<X509CRL> ret = new ArrayList<X509CRL>();
 		for (Set<URL> caLocations: ca2location.values())
@@ -323,6 +484,12 @@ public class PlainCRLStoreSpi extends AbstractCRLStoreSPI
 	public void dispose()
 	{
 		setUpdateInterval(-1);
+		synchronized (updateLock)
+		{
+			if (watcher != null)
+				watcher.dispose();
+			watcher = null;
+		}
 	}
 	
 	
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+
+/**
+ * Compact, immutable index of the revoked certificates of a CRL. Serial numbers are stored sorted,
+ * together with the revocation dates and reason codes, in a single buffer, so a lookup is a binary
+ * search over the buffer. Large CRLs don't need to keep an object per revoked entry in memory.
+ * The buffer is either on heap or memory mapped from a file, see {@link MappedCRLCache}.
+ * <p>
+ * For indirect CRLs the certificate issuer of each entry is also remembered, as a position in
+ * a table of the distinct issuers.
+ * <p>
+ * The index contains also a Bloom filter of the serial numbers. Most of the checked certificates 
+ * are not revoked, and for nearly all of them the filter gives the answer, without searching 
+ * the serials. This is especially important when the index is memory mapped.
+ * <p>
+ * Buffer layout: indirect flag (int), number of entries n (int), number of issuers (int), issuers 
+ * (each as length (int) and DER encoding), number of Bloom filter words w (int), w filter words 
+ * (long), n+1 serial offsets (int), n revocation dates (long), 
+ * n reasons (byte), n issuer positions (int, only for indirect CRLs), serial numbers 
+ * (DER encoded integer contents).
+ *
+ * @author K. Benedyczak
+ */
+public class RevokedCertificatesIndex
+{
+	/**
+	 * Reason code of entries without the reason code extension
+	 */
+	public static final int NO_REASON = -1;
+	/**
+	 * Reason code of entries with the reason code extension which can not be parsed
+	 */
+	public static final int INVALID_REASON = -2;
+	
+	private static final int BLOOM_BITS_PER_ENTRY = 10;
+	private static final int BLOOM_HASHES = 7;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final X500Principal[] issuers;
+	private final int bloomPos;
+	private final long bloomBits;
+	private final int offsetsPos;
+	private final int datesPos;
+	private final int reasonsPos;
+	private final int issuersPos;
+	private final int serialsPos;
+
+	/**
+	 * @param buffer index contents, starting at position 0
+	 * @throws CRLException if the buffer contents is malformed
+	 */
+	RevokedCertificatesIndex(ByteBuffer buffer) throws CRLException
+	{
+		this.buffer = buffer;
+		try
+		{
+			boolean indirect = buffer.getInt(0) != 0;
+			size = buffer.getInt(4);
+			int issuersCount = buffer.getInt(8);
+			if (size < 0 || issuersCount < 0 || (!indirect && issuersCount > 0))
+				throw new CRLException("Malformed index of revoked certificates");
+			int pos = 12;
+			issuers = indirect ? new X500Principal[issuersCount] : null;
+			for (int i=0; i<issuersCount; i++)
+			{
+				byte[] issuer = new byte[buffer.getInt(pos)];
+				ByteBuffer src = buffer.duplicate();
+				src.position(pos + 4);
+				src.get(issuer);
+				issuers[i] = new X500Principal(issuer);
+				pos += 4 + issuer.length;
+			}
+			int bloomWords = buffer.getInt(pos);
+			if (bloomWords < 0 || (size > 0 && bloomWords == 0))
+				throw new CRLException("Malformed index of revoked certificates");
+			bloomPos = pos + 4;
+			bloomBits = 64L * bloomWords;
+			offsetsPos = bloomPos + 8 * bloomWords;
+			datesPos = offsetsPos + 4 * (size + 1);
+			reasonsPos = datesPos + 8 * size;
+			issuersPos = reasonsPos + size;
+			serialsPos = issuersPos + (indirect ? 4 * size : 0);
+			if (serialsPos + buffer.getInt(offsetsPos + 4 * size) != buffer.limit())
+				throw new CRLException("Malformed index of revoked certificates");
+		} catch (RuntimeException e)
+		{
+			throw new CRLException("Malformed index of revoked certificates", e);
+		}
+	}
+
+	/**
+	 * @return duplicate of the buffer with the index contents
+	 */
+	ByteBuffer getBuffer()
+	{
+		return buffer.duplicate();
+	}
+
+	/**
+	 * @return number of revoked certificates
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param serial serial number
+	 * @return position of the first entry with the given serial number or -1 if there is no such entry.
+	 * Entries with the same serial number (possible in indirect CRLs) are at the subsequent positions.
+	 */
+	public int find(BigInteger serial)
+	{
+		byte[] key = serial.toByteArray();
+		if (!mightContain(key))
+			return -1;
+		int low = 0;
+		int high = size - 1;
+		int found = -1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int cmp = compare(mid, key);
+			if (cmp < 0)
+			{
+				low = mid + 1;
+			} else
+			{
+				if (cmp == 0)
+					found = mid;
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks the Bloom filter of the serial numbers.
+	 * @param serial serial number
+	 * @return false if there is no entry with the serial number. True if there is such entry, 
+	 * or (with a probability of about 1%) if there is no such entry.
+	 */
+	public boolean mightContain(BigInteger serial)
+	{
+		return mightContain(serial.toByteArray());
+	}
+
+	private boolean mightContain(byte[] serial)
+	{
+		if (size == 0)
+			return false;
+		long hash = hash(serial);
+		long hash1 = hash >>> 32;
+		long hash2 = (hash & 0xffffffffL) | 1;
+		for (int i=0; i<BLOOM_HASHES; i++)
+		{
+			long bit = (hash1 + i * hash2) % bloomBits;
+			if ((buffer.getLong(bloomPos + 8 * (int)(bit >>> 6)) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash with the MurmurHash3 finalizer.
+	 */
+	private static long hash(byte[] serial)
+	{
+		long ret = 0xcbf29ce484222325L;
+		for (byte b: serial)
+		{
+			ret ^= b & 0xff;
+			ret *= 0x100000001b3L;
+		}
+		ret ^= ret >>> 33;
+		ret *= 0xff51afd7ed558ccdL;
+		ret ^= ret >>> 33;
+		ret *= 0xc4ceb9fe1a85ec53L;
+		ret ^= ret >>> 33;
+		return ret;
+	}
+
+	/**
+	 * @param position entry position
+	 * @param serial serial number
+	 * @return true if the entry at the given position has the given serial number
+	 */
+	public boolean hasSerial(int position, BigInteger serial)
+	{
+		if (position < 0 || position >= size)
+			return false;
+		return compare(position, serial.toByteArray()) == 0;
+	}
+
+	public BigInteger getSerial(int position)
+	{
+		int offset = serialOffset(position);
+		byte[] serial = new byte[serialOffset(position+1) - offset];
+		for (int i=0; i<serial.length; i++)
+			serial[i] = buffer.get(serialsPos + offset + i);
+		return new BigInteger(serial);
+	}
+
+	public long getRevocationDate(int position)
+	{
+		return buffer.getLong(datesPos + 8 * position);
+	}
+
+	/**
+	 * @param position entry position
+	 * @return the reason code or {@link #NO_REASON} or {@link #INVALID_REASON}
+	 */
+	public int getReason(int position)
+	{
+		return buffer.get(reasonsPos + position);
+	}
+
+	/**
+	 * @param position entry position
+	 * @return issuer of the revoked certificate, only for indirect CRLs. Null otherwise.
+	 */
+	public X500Principal getCertificateIssuer(int position)
+	{
+		if (issuers == null)
+			return null;
+		int issuer = buffer.getInt(issuersPos + 4 * position);
+		return issuer < 0 ? null : issuers[issuer];
+	}
+
+	private int serialOffset(int position)
+	{
+		return buffer.getInt(offsetsPos + 4 * position);
+	}
+
+	/**
+	 * Compares the serial number of the given entry with a DER encoded integer numerically.
+	 */
+	private int compare(int position, byte[] key)
+	{
+		int offset = serialOffset(position);
+		int length = serialOffset(position+1) - offset;
+		int start = serialsPos + offset;
+		boolean aNegative = length > 0 && buffer.get(start) < 0;
+		boolean bNegative = key.length > 0 && key[0] < 0;
+		if (aNegative != bNegative)
+			return aNegative ? -1 : 1;
+		if (length != key.length)
+			return (length < key.length) != aNegative ? -1 : 1;
+		for (int i=0; i<length; i++)
+		{
+			int diff = (buffer.get(start+i) & 0xff) - (key[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two DER encoded integers numerically.
+	 */
+	private static int compare(byte[] a, byte[] b)
+	{
+		boolean aNegative = a.length > 0 && a[0] < 0;
+		boolean bNegative = b.length > 0 && b[0] < 0;
+		if (aNegative != bNegative)
+			return aNegative ? -1 : 1;
+		if (a.length != b.length)
+			return (a.length < b.length) != aNegative ? -1 : 1;
+		for (int i=0; i<a.length; i++)
+		{
+			int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return 0;
+	}
+
+	/**
+	 * Parses the reason code extension of a CRL entry.
+	 * @param extensionValue the DER encoded extension value or null
+	 * @return the reason code or {@link #NO_REASON} or {@link #INVALID_REASON}
+	 */
+	public static int parseReason(byte[] extensionValue)
+	{
+		if (extensionValue == null)
+			return NO_REASON;
+		try
+		{
+			ASN1Enumerated reason = ASN1Enumerated.getInstance(
+					ASN1OctetString.getInstance(extensionValue).getOctets());
+			int ret = reason.getValue().intValue();
+			return ret < 0 || ret > Byte.MAX_VALUE ? INVALID_REASON : ret;
+		} catch (Exception e)
+		{
+			return INVALID_REASON;
+		}
+	}
+
+	/**
+	 * Creates an index of all entries of a parsed CRL.
+	 * @param entries revoked certificates of the CRL, can be null
+	 * @param indirect whether the CRL is indirect
+	 * @return the index
+	 * @throws CRLException if the entries can not be read
+	 */
+	public static RevokedCertificatesIndex create(Iterable<? extends X509CRLEntry> entries,
+			boolean indirect) throws CRLException
+	{
+		Builder builder = new Builder(indirect);
+		if (entries == null)
+			return builder.build();
+		for (X509CRLEntry entry: entries)
+		{
+			builder.add(entry.getSerialNumber(), entry.getRevocationDate().getTime(),
+					parseReason(entry.getExtensionValue(Extension.reasonCode.getId())),
+					entry.getCertificateIssuer());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Collects entries in any order and builds the index.
+	 */
+	public static class Builder
+	{
+		private final boolean indirect;
+		private final List<Entry> entries = new ArrayList<Entry>();
+
+		/**
+		 * @param indirect whether entries of an indirect CRL are added
+		 */
+		public Builder(boolean indirect)
+		{
+			this.indirect = indirect;
+		}
+
+		/**
+		 * @param serial serial number of the revoked certificate
+		 * @param revocationDate revocation time
+		 * @param reason reason code, {@link RevokedCertificatesIndex#NO_REASON}
+		 * or {@link RevokedCertificatesIndex#INVALID_REASON}
+		 * @param certificateIssuer issuer of the certificate, used only for indirect CRLs
+		 */
+		public void add(BigInteger serial, long revocationDate, int reason,
+				X500Principal certificateIssuer)
+		{
+			if (reason > Byte.MAX_VALUE)
+				reason = INVALID_REASON;
+			entries.add(new Entry(serial.toByteArray(), revocationDate, reason,
+					indirect ? certificateIssuer : null, entries.size()));
+		}
+
+		public RevokedCertificatesIndex build()
+		{
+			Collections.sort(entries, ENTRY_COMPARATOR);
+			int size = entries.size();
+			Map<X500Principal, Integer> issuers = new LinkedHashMap<X500Principal, Integer>();
+			int issuersLength = 0;
+			int serialsLength = 0;
+			for (Entry entry: entries)
+			{
+				serialsLength += entry.serial.length;
+				if (entry.certificateIssuer != null && !issuers.containsKey(entry.certificateIssuer))
+				{
+					issuers.put(entry.certificateIssuer, issuers.size());
+					issuersLength += 4 + entry.certificateIssuer.getEncoded().length;
+				}
+			}
+			long[] bloom = createBloomFilter();
+			ByteBuffer buffer = ByteBuffer.allocate(16 + issuersLength + 8 * bloom.length + 
+					4 * (size + 1) + 8 * size +
+					size + (indirect ? 4 * size : 0) + serialsLength);
+			buffer.putInt(indirect ? 1 : 0);
+			buffer.putInt(size);
+			buffer.putInt(issuers.size());
+			for (X500Principal issuer: issuers.keySet())
+			{
+				byte[] encoded = issuer.getEncoded();
+				buffer.putInt(encoded.length);
+				buffer.put(encoded);
+			}
+			buffer.putInt(bloom.length);
+			for (long word: bloom)
+				buffer.putLong(word);
+			int offset = 0;
+			for (Entry entry: entries)
+			{
+				buffer.putInt(offset);
+				offset += entry.serial.length;
+			}
+			buffer.putInt(offset);
+			for (Entry entry: entries)
+				buffer.putLong(entry.revocationDate);
+			for (Entry entry: entries)
+				buffer.put((byte) entry.reason);
+			if (indirect)
+				for (Entry entry: entries)
+					buffer.putInt(entry.certificateIssuer == null ? -1 : 
+						issuers.get(entry.certificateIssuer));
+			for (Entry entry: entries)
+				buffer.put(entry.serial);
+			entries.clear();
+			buffer.flip();
+			try
+			{
+				return new RevokedCertificatesIndex(buffer);
+			} catch (CRLException e)
+			{
+				throw new IllegalStateException("BUG: created index is malformed", e);
+			}
+		}
+
+		private long[] createBloomFilter()
+		{
+			if (entries.isEmpty())
+				return new long[0];
+			long bits = Math.max(64L, (long) entries.size() * BLOOM_BITS_PER_ENTRY);
+			long[] ret = new long[(int) ((bits + 63) / 64)];
+			bits = 64L * ret.length;
+			for (Entry entry: entries)
+			{
+				long hash = hash(entry.serial);
+				long hash1 = hash >>> 32;
+				long hash2 = (hash & 0xffffffffL) | 1;
+				for (int i=0; i<BLOOM_HASHES; i++)
+				{
+					long bit = (hash1 + i * hash2) % bits;
+					ret[(int)(bit >>> 6)] |= 1L << bit;
+				}
+			}
+			return ret;
+		}
+	}
+
+	private static class Entry
+	{
+		private final byte[] serial;
+		private final long revocationDate;
+		private final int reason;
+		private final X500Principal certificateIssuer;
+		private final int order;
+
+		private Entry(byte[] serial, long revocationDate, int reason,
+				X500Principal certificateIssuer, int order)
+		{
+			this.serial = serial;
+			this.revocationDate = revocationDate;
+			this.reason = reason;
+			this.certificateIssuer = certificateIssuer;
+			this.order = order;
+		}
+	}
+
+	private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry e1, Entry e2)
+		{
+			int ret = RevokedCertificatesIndex.compare(e1.serial, e2.serial);
+			if (ret != 0)
+				return ret;
+			return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+		}
+	};
+}
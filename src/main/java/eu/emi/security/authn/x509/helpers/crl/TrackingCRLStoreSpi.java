@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.cert.CRL;
+import java.security.cert.CRLSelector;
+import java.security.cert.CertSelector;
+import java.security.cert.CertStoreException;
+import java.security.cert.CertStoreSpi;
+import java.security.cert.Certificate;
+import java.security.cert.X509CRL;
+import java.util.Collection;
+
+import eu.emi.security.authn.x509.helpers.pkipath.ResultLifetimeTracker;
+
+/**
+ * Short lived wrapper of a CRL store, records the next update time of all returned CRLs 
+ * in a {@link ResultLifetimeTracker}. 
+ * 
+ * @author K. Benedyczak
+ */
+public class TrackingCRLStoreSpi extends CertStoreSpi
+{
+	private final CertStoreSpi wrapped;
+	private final ResultLifetimeTracker tracker;
+	
+	public TrackingCRLStoreSpi(CertStoreSpi wrapped, ResultLifetimeTracker tracker) 
+			throws InvalidAlgorithmParameterException
+	{
+		super(null);
+		this.wrapped = wrapped;
+		this.tracker = tracker;
+	}
+
+	@Override
+	public Collection<? extends Certificate> engineGetCertificates(CertSelector selector) 
+			throws CertStoreException
+	{
+		return wrapped.engineGetCertificates(selector);
+	}
+
+	@Override
+	public Collection<? extends CRL> engineGetCRLs(CRLSelector selector) throws CertStoreException
+	{
+		Collection<? extends CRL> ret = wrapped.engineGetCRLs(selector);
+		for (CRL crl: ret)
+			if (crl instanceof X509CRL)
+				tracker.restrict(((X509CRL) crl).getNextUpdate());
+		return ret;
+	}
+}
@@ -4,10 +4,12 @@
  */
 package eu.emi.security.authn.x509.helpers.ns;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -16,9 +18,12 @@ import java.util.Map;
 import javax.security.auth.x500.X500Principal;
 
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
-import eu.emi.security.authn.x509.helpers.CachedElement;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
+import eu.emi.security.authn.x509.helpers.FileLedger;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
 import eu.emi.security.authn.x509.helpers.trust.OpensslTruststoreHelper;
+import eu.emi.security.authn.x509.helpers.trust.TrustAnchorSnapshot;
 
 /**
  * Policy store common code.
@@ -33,6 +38,11 @@ public abstract class AbstractNamespacesStore implements NamespacesStore
 	
 	protected final ObserversHandler observers;
 	protected boolean openssl1Mode;
+	private final FileLedger<List<NamespacePolicy>> ledger = new FileLedger<List<NamespacePolicy>>();
+	private final Object loadLock = new Object();
+	private List<String> loadedPaths;
+	private volatile int loadingParallelism = ParallelLoader.DEFAULT_PARALLELISM;
+	private volatile long generation = -1;
 
 	public AbstractNamespacesStore(ObserversHandler observers, boolean openssl1Mode)
 	{
@@ -64,10 +74,101 @@ public abstract class AbstractNamespacesStore implements NamespacesStore
 		return EMPTY;
 	}
 	
-	protected void tryLoadNsLocation(String location, List<NamespacePolicy> policies)
+	/**
+	 * @param loadingParallelism maximum number of threads used to load policy files, must be positive
+	 */
+	public void setLoadingParallelism(int loadingParallelism)
+	{
+		if (loadingParallelism <= 0)
+			throw new IllegalArgumentException("Loading parallelism must be positive");
+		this.loadingParallelism = loadingParallelism;
+	}
+	
+	/**
+	 * Remembers policies which were loaded from a file earlier, e.g. restored from a snapshot.
+	 * Unless the file was changed since then, it won't be parsed by the subsequent updates.
+	 * @param file policy file
+	 * @param lastModified modification time of the file when it was loaded
+	 * @param length size of the file when it was loaded
+	 * @param digest SHA-256 digest of the file contents
+	 * @param policies policies loaded from the file
+	 */
+	public void restorePolicies(File file, long lastModified, long length, byte[] digest, 
+			List<NamespacePolicy> policies)
+	{
+		ledger.put(file, lastModified, length, digest, policies);
+	}
+	
+	/**
+	 * Loads policies defined for all the given CA locations. Policy files which were not changed 
+	 * since the previous invocation are not parsed again.
+	 * @param locations CA certificate locations
+	 * @param policies list to which the loaded policies are added
+	 * @return true if the loaded policies may be different from those loaded by the previous invocation
+	 */
+	protected boolean tryLoadNsLocations(Collection<String> locations, List<NamespacePolicy> policies)
 	{
-		String path = OpensslTruststoreHelper.getNsFile(location, getFileSuffix());
-		policies.addAll(tryLoadNsPath(path));
+		synchronized (loadLock)
+		{
+			long modifications = ledger.getModificationCount();
+			List<String> paths = new ArrayList<String>(locations.size());
+			List<File> files = new ArrayList<File>(locations.size());
+			for (String location: locations)
+			{
+				String path = OpensslTruststoreHelper.getNsFile(location, getFileSuffix());
+				if (path == null)
+					continue;
+				paths.add(path);
+				files.add(new File(path));
+			}
+			List<List<NamespacePolicy>> loaded = ParallelLoader.loadAll(files, loadingParallelism, 
+					new ParallelLoader.Task<File, List<NamespacePolicy>>()
+			{
+				@Override
+				public List<NamespacePolicy> load(File file)
+				{
+					return tryLoadNsFile(file);
+				}
+			});
+			for (List<NamespacePolicy> filePolicies: loaded)
+				policies.addAll(filePolicies);
+			ledger.retainAll(files);
+			boolean changed = !paths.equals(loadedPaths) || 
+					modifications != ledger.getModificationCount();
+			loadedPaths = paths;
+			return changed;
+		}
+	}
+	
+	private List<NamespacePolicy> tryLoadNsFile(File file)
+	{
+		return tryLoadNsFile(file, new boolean[1]);
+	}
+	
+	/**
+	 * @param parsed its first element is set to true if the file was parsed, i.e. it was not loaded 
+	 * earlier or was changed since then
+	 */
+	private List<NamespacePolicy> tryLoadNsFile(File file, final boolean[] parsed)
+	{
+		if (!file.isFile())
+		{
+			ledger.remove(file);
+			return EMPTY;
+		}
+		List<NamespacePolicy> ret = ledger.get(file, new FileLedger.Loader<List<NamespacePolicy>>()
+		{
+			@Override
+			public List<NamespacePolicy> load(File f)
+			{
+				parsed[0] = true;
+				return tryLoadNsPath(f.getPath());
+			}
+		});
+		//listeners are notified about the unchanged files as before, validators ignore such notifications
+		if (!parsed[0])
+			observers.notifyObservers(file.getPath(), getNotificationType(), Severity.NOTIFICATION, null);
+		return ret == null ? EMPTY : ret;
 	}
 	
 	
@@ -120,10 +221,40 @@ public abstract class AbstractNamespacesStore implements NamespacesStore
 		return getPolicies(issuers, position);
 	}
 
+	/**
+	 * Loads policies from a file for a lazy store. The file is parsed only if it was not loaded yet 
+	 * or it was changed since it was loaded. In the latter case, as well as when a previously loaded 
+	 * file was removed, the generation of this store is changed.
+	 */
+	private List<NamespacePolicy> reloadNsFile(File file)
+	{
+		boolean known = ledger.contains(file);
+		boolean[] parsed = new boolean[1];
+		List<NamespacePolicy> ret = tryLoadNsFile(file, parsed);
+		if (known && (parsed[0] || !ledger.contains(file)))
+			generation = TrustAnchorSnapshot.nextGeneration();
+		return ret;
+	}
+	
+	/**
+	 * Useful for lazy stores, which can't announce changes of their contents as a result of 
+	 * {@link #setPolicies(Collection)}. 
+	 * @return generation of policies loaded with 
+	 * {@link #getCachedPolicies(BoundedCache, String, String, String, long)}, which is changed 
+	 * whenever a previously loaded policy file was modified or removed. The value is comparable with 
+	 * the generations of trust anchor snapshots, see {@link TrustAnchorSnapshot#nextGeneration()}.
+	 * -1 if nothing was changed.
+	 */
+	public long getGeneration()
+	{
+		return generation;
+	}
+	
 	/**
 	 * Utility method useful for lazy stores. Retrieves a cached policies for the given ca hash and issuer. 
 	 * If there is no policy in the cache then it is tried to load one from disk. The 
-	 * loaded policy is cached before being returned. 
+	 * loaded policy is cached before being returned. The policy file is parsed only if it was changed
+	 * since it was loaded, see {@link #getGeneration()}.
 	 * @param policies policies
 	 * @param definedForHash defined for hash
 	 * @param issuer issuer
@@ -131,23 +262,22 @@ public abstract class AbstractNamespacesStore implements NamespacesStore
 	 * @param maxTTL max TTL
 	 * @return cached policies
 	 */
-	protected List<NamespacePolicy> getCachedPolicies(Map<String, CachedElement<Map<String, List<NamespacePolicy>>>> policies,
-			String definedForHash, String issuer, String path, long maxTTL)
+	protected List<NamespacePolicy> getCachedPolicies(BoundedCache<String, Map<String, List<NamespacePolicy>>> policies,
+			String definedForHash, String issuer, final String path, long maxTTL)
 	{
-		CachedElement<Map<String, List<NamespacePolicy>>> cachedEntry = policies.get(definedForHash);
-		if (cachedEntry != null && !cachedEntry.isExpired(maxTTL))
-		{
-			Map<String, List<NamespacePolicy>> policiesMap = cachedEntry.getElement();
-			return policiesMap.get(issuer);
-		}
-		List<NamespacePolicy> loaded = tryLoadNsPath(path);
-		if (loaded != null)
+		Map<String, List<NamespacePolicy>> policiesMap = policies.getOrLoad(definedForHash, maxTTL, 
+				new BoundedCache.Loader<String, Map<String, List<NamespacePolicy>>>()
 		{
-			Map<String, List<NamespacePolicy>> current = new HashMap<String, List<NamespacePolicy>>();
-			for (NamespacePolicy policy: loaded)
-				addPolicyToMap(policy, current);
-			policies.put(definedForHash, new CachedElement<Map<String,List<NamespacePolicy>>>(current));
-		}
-		return loaded;
+			@Override
+			public Map<String, List<NamespacePolicy>> load(String key)
+			{
+				List<NamespacePolicy> loaded = path == null ? EMPTY : reloadNsFile(new File(path));
+				Map<String, List<NamespacePolicy>> current = new HashMap<String, List<NamespacePolicy>>();
+				for (NamespacePolicy policy: loaded)
+					addPolicyToMap(policy, current);
+				return current;
+			}
+		});
+		return policiesMap.get(issuer);
 	}
 }
@@ -33,12 +33,13 @@ public class EuGridPmaNamespacesStore extends AbstractEuGridPmaNamespacesStore
 	}
 	
 	@Override
-	public void setPolicies(Collection<String> locations)
+	public boolean setPolicies(Collection<String> locations)
 	{
 		List<NamespacePolicy> policies = new ArrayList<NamespacePolicy>();
-		for (String location: locations)
-			tryLoadNsLocation(location, policies);
+		if (!tryLoadNsLocations(locations, policies))
+			return false;
 		setPolicies(policies);
+		return true;
 	}
 	
 	protected synchronized void setPolicies(List<NamespacePolicy> policies) 
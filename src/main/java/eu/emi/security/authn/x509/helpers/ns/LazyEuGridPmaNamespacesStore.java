@@ -8,14 +8,14 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
-import eu.emi.security.authn.x509.helpers.CachedElement;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.trust.OpensslDirectoryIndex;
 
 /**
  * EuGridPMA namespace policies are loaded on demand by this store and are cached in memory. A
- * weak hash map is used to cache data. Additionally the data is cached for no longer then the 
+ * bounded size cache is used to cache data. Additionally the data is cached for no longer then the 
  * update interval, which in practice is the same as for the cooperating truststore.
  * This class it thread safe.
  * 
@@ -23,38 +23,68 @@ import eu.emi.security.authn.x509.helpers.ObserversHandler;
  */
 public class LazyEuGridPmaNamespacesStore extends AbstractEuGridPmaNamespacesStore
 {
-	private Map<String, CachedElement<Map<String, List<NamespacePolicy>>>> policiesByHash;
-	private Map<String, CachedElement<Map<String, List<NamespacePolicy>>>> policiesByName;
+	private BoundedCache<String, Map<String, List<NamespacePolicy>>> policiesByHash;
+	private BoundedCache<String, Map<String, List<NamespacePolicy>>> policiesByName;
 	protected final String directory;
 	protected final long updateInterval;
+	private final OpensslDirectoryIndex directoryIndex;
 	
 	public LazyEuGridPmaNamespacesStore(ObserversHandler observers, boolean openssl1Mode, String directory,
 			long updateInterval)
+	{
+		this(observers, openssl1Mode, directory, updateInterval, BoundedCache.DEFAULT_MAX_ENTRIES);
+	}
+	
+	public LazyEuGridPmaNamespacesStore(ObserversHandler observers, boolean openssl1Mode, String directory,
+			long updateInterval, int maxCacheEntries)
 	{
 		super(observers, openssl1Mode);
-		this.policiesByName = new WeakHashMap<String, CachedElement<Map<String, List<NamespacePolicy>>>>(150);
-		this.policiesByHash = new WeakHashMap<String, CachedElement<Map<String, List<NamespacePolicy>>>>(150);
+		this.policiesByName = new BoundedCache<String, Map<String, List<NamespacePolicy>>>(maxCacheEntries);
+		this.policiesByHash = new BoundedCache<String, Map<String, List<NamespacePolicy>>>(maxCacheEntries);
 		this.directory = directory;
 		this.updateInterval = updateInterval;
+		this.directoryIndex = OpensslDirectoryIndex.getInstance(directory);
 	}
 	
 	@Override
-	public void setPolicies(Collection<String> locations)
+	public boolean setPolicies(Collection<String> locations)
+	{
+		return false;
+	}
+
+	/**
+	 * @param maxStaleness time in ms for which expired policies are still used, while being
+	 * reloaded in background. See {@link BoundedCache#setMaxStaleness(long)}.
+	 */
+	public void setMaxStaleness(long maxStaleness)
 	{
+		policiesByHash.setMaxStaleness(maxStaleness);
+		policiesByName.setMaxStaleness(maxStaleness);
 	}
 
 	@Override
 	protected List<NamespacePolicy> getPoliciesByIssuerHash(String definedForHash,
 			String issuerHash)
 	{
-		String path = directory + File.separator + definedForHash + SUFFIX;
+		String path = getPath(definedForHash);
 		return getCachedPolicies(policiesByHash, definedForHash, issuerHash, path, updateInterval);
 	}
 
 	@Override
 	protected List<NamespacePolicy> getPoliciesByIssuerDn(String definedForHash, String issuerDn)
 	{
-		String path = directory + File.separator + definedForHash + SUFFIX;
+		String path = getPath(definedForHash);
 		return getCachedPolicies(policiesByName, definedForHash, issuerDn, path, updateInterval);
 	}
+	
+	/**
+	 * @return path of the policy file or null if there is no such file
+	 */
+	private String getPath(String definedForHash)
+	{
+		String name = definedForHash + SUFFIX;
+		if (!directoryIndex.contains(name, updateInterval))
+			return null;
+		return directory + File.separator + name;
+	}
 }
@@ -8,14 +8,14 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
-import eu.emi.security.authn.x509.helpers.CachedElement;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.trust.OpensslDirectoryIndex;
 
 /**
  * Globus EACL policies are loaded on demand by this store and are cached in memory. A
- * weak hash map is used to cache data. Additionally the data is cached for no longer then the 
+ * bounded size cache is used to cache data. Additionally the data is cached for no longer then the 
  * update interval, which in practice is the same as for the cooperating truststore.
  * <p>  
  * This class it thread safe.
@@ -31,28 +31,57 @@ public class LazyGlobusNamespacesStore extends AbstractGlobusNamespacesStore
 	 * The internal map is indexed with issuer names, i.e. the names of the CA subjects for which we have policies.
 	 * The value is a list with all the policies for the CA, in order of appearance in the policy file.
 	 */
-	protected Map<String, CachedElement<Map<String, List<NamespacePolicy>>>> policiesByName;
+	protected BoundedCache<String, Map<String, List<NamespacePolicy>>> policiesByName;
 	protected final String directory;
 	protected final long updateInterval;
+	private final OpensslDirectoryIndex directoryIndex;
 
 	public LazyGlobusNamespacesStore(ObserversHandler observers, boolean openssl1Mode, String directory,
 			long updateInterval)
+	{
+		this(observers, openssl1Mode, directory, updateInterval, BoundedCache.DEFAULT_MAX_ENTRIES);
+	}
+	
+	public LazyGlobusNamespacesStore(ObserversHandler observers, boolean openssl1Mode, String directory,
+			long updateInterval, int maxCacheEntries)
 	{
 		super(observers, openssl1Mode);
-		this.policiesByName = new WeakHashMap<String, CachedElement<Map<String, List<NamespacePolicy>>>>(1);
+		this.policiesByName = new BoundedCache<String, Map<String, List<NamespacePolicy>>>(maxCacheEntries);
 		this.directory = directory;
 		this.updateInterval = updateInterval;
+		this.directoryIndex = OpensslDirectoryIndex.getInstance(directory);
 	}
 	
 	@Override
-	public void setPolicies(Collection<String> locations)
+	public boolean setPolicies(Collection<String> locations)
+	{
+		return false;
+	}
+
+	/**
+	 * @param maxStaleness time in ms for which expired policies are still used, while being
+	 * reloaded in background. See {@link BoundedCache#setMaxStaleness(long)}.
+	 */
+	public void setMaxStaleness(long maxStaleness)
 	{
+		policiesByName.setMaxStaleness(maxStaleness);
 	}
 
 	@Override
 	protected List<NamespacePolicy> getPoliciesFor(String definedForHash, String issuerDn)
 	{
-		String path = directory + File.separator + definedForHash + SUFFIX;
+		String path = getPath(definedForHash);
 		return getCachedPolicies(policiesByName, definedForHash, issuerDn, path, updateInterval);
 	}
+	
+	/**
+	 * @return path of the policy file or null if there is no such file
+	 */
+	private String getPath(String definedForHash)
+	{
+		String name = definedForHash + SUFFIX;
+		if (!directoryIndex.contains(name, updateInterval))
+			return null;
+		return directory + File.separator + name;
+	}
 }
@@ -20,7 +20,13 @@ import javax.security.auth.x500.X500Principal;
  */
 public interface NamespacesStore
 {
-	public void setPolicies(Collection<String> locations);
+	/**
+	 * Loads policies defined for the given CA certificate locations. Stores loading policies
+	 * on demand can ignore this method.
+	 * @param locations CA certificate locations
+	 * @return true if the policies of the store were changed
+	 */
+	public boolean setPolicies(Collection<String> locations);
 	
 	/**
 	 * Gets namespace policies applicable for the CA. The CA must be present in the cert chain, 
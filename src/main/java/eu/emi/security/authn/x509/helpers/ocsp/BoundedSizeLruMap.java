@@ -6,10 +6,12 @@ package eu.emi.security.authn.x509.helpers.ocsp;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BoundedSizeLruMap<S, T> extends LinkedHashMap<S, T>
 {
 	private final int maxEntries;
+	private final AtomicLong evictions = new AtomicLong();
 
 	public BoundedSizeLruMap(int maxEntries)
 	{
@@ -20,6 +22,19 @@ public class BoundedSizeLruMap<S, T> extends LinkedHashMap<S, T>
 	@Override
 	protected boolean removeEldestEntry(Map.Entry<S, T> eldest)
 	{
-		return size() > maxEntries;
+		if (size() > maxEntries)
+		{
+			evictions.incrementAndGet();
+			return true;
+		}
+		return false;
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * @return how many entries were removed as the size limit was reached
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+}
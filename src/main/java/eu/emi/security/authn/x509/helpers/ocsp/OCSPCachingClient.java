@@ -6,8 +6,29 @@ package eu.emi.security.authn.x509.helpers.ocsp;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReq;
@@ -15,20 +36,50 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.SingleResp;
 
 import eu.emi.security.authn.x509.X509Credential;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
+import eu.emi.security.authn.x509.helpers.WeakTimerTask;
 
 /**
  * OCSP client which adds a cache layer on top of {@link OCSPClientImpl}.
  * There are two caches (all of them are configurable) consulted in the given order:
  * unresponsive responders cache (per responder); OCSP responses cache (per responder and checked certificate tuple).
  * <p>
+ * The in-memory caches live as long as the instance of this class, therefore to be effective the instance 
+ * should be long lived and shared, as it is done by validators.
+ * <p>
+ * Concurrent queries for the same certificate (the same response cache key) sent to the same responder 
+ * are coalesced: only one request is sent and its result, also an error, is shared by all the waiting 
+ * callers.
+ * <p>
+ * Optionally cached responses of the recently used certificates are refreshed in background, shortly 
+ * before they expire, see {@link #setPrefetchTime(long)}. The refreshes are triggered by a shared timer
+ * and are sent in parallel by a shared, bounded pool of daemon threads, so a slow responder does not 
+ * delay the refreshes of the other responses.
+ * <p>
  * This class is thread safe.
  * @author K. Benedyczak
  */
 public class OCSPCachingClient
 {
+	private static final Timer PREFETCH_TIMER = new Timer("caNl OCSP prefetch", true);
+	private static final long MIN_PREFETCH_PERIOD = 1000;
+	/**
+	 * Maximum number of OCSP queries sent in parallel by the background refreshes of all instances.
+	 */
+	public static final int MAX_PREFETCH_THREADS = 8;
+	private static final ThreadPoolExecutor PREFETCH_POOL = createPrefetchPool();
+	
 	private final long maxTtl;
 	private OCSPRespondersCache respondersCache;
 	private OCSPResponsesCache responsesCache;
+	private final ConcurrentHashMap<String, FutureTask<SingleResp>> inFlight = 
+			new ConcurrentHashMap<String, FutureTask<SingleResp>>();
+	private final ConcurrentHashMap<String, FutureTask<SingleResp[]>> inFlightBatches = 
+			new ConcurrentHashMap<String, FutureTask<SingleResp[]>>();
+	private final Map<String, RecentQuery> recentQueries = Collections.synchronizedMap(
+			new BoundedSizeLruMap<String, RecentQuery>(100));
+	private volatile long prefetchTime = -1;
+	private PrefetchTask prefetchTask;
 	
 	/**
 	 * 
@@ -44,6 +95,36 @@ public class OCSPCachingClient
 		respondersCache = new OCSPRespondersCache(maxTtl, diskPath, prefix);
 	}
 
+	/**
+	 * Enables refreshing of the cached responses in background. Responses of certificates which 
+	 * were queried since the last refresh are fetched again when they are going to expire in less then 
+	 * the given time. Therefore responses of the frequently checked certificates are always 
+	 * available in the cache. Failures of the background queries are ignored, the cached 
+	 * response is used until it expires. Has no effect if caching is disabled.
+	 * @param prefetchTime time in ms before the cached response expiry, when it is refreshed. 
+	 * Use a &lt;= 0 value to disable refreshing (the default).
+	 */
+	public synchronized void setPrefetchTime(long prefetchTime)
+	{
+		this.prefetchTime = prefetchTime;
+		if (prefetchTask != null)
+			prefetchTask.cancel();
+		prefetchTask = null;
+		if (prefetchTime <= 0 || maxTtl < 0)
+		{
+			recentQueries.clear();
+			return;
+		}
+		long period = Math.max(prefetchTime / 2, MIN_PREFETCH_PERIOD);
+		prefetchTask = new PrefetchTask(this);
+		PREFETCH_TIMER.schedule(prefetchTask, period, period);
+	}
+
+	public long getPrefetchTime()
+	{
+		return prefetchTime;
+	}
+
 	/**
 	 * Returns the checked certificate status.
 	 * @param responder mandatory - URL of the responder. HTTP or HTTPs, however in https mode the 
@@ -77,9 +158,9 @@ public class OCSPCachingClient
 	 * @throws IOException IO exception
 	 * @throws OCSPException OCSP exception
 	 */
-	public OCSPResult queryForCertificate(URL responder, X509Certificate toCheckCert,
-			X509Certificate issuerCert, X509Credential requester, boolean addNonce,
-			int timeout, OCSPClientImpl client) throws IOException, OCSPException
+	public OCSPResult queryForCertificate(final URL responder, final X509Certificate toCheckCert,
+			final X509Certificate issuerCert, final X509Credential requester, final boolean addNonce,
+			final int timeout, final OCSPClientImpl client) throws IOException, OCSPException
 	{
 		if (maxTtl < 0)
 		{
@@ -87,15 +168,229 @@ public class OCSPCachingClient
 					requester, addNonce, timeout);
 		}
 		
-		String responderKey = respondersCache.createResponderKey(issuerCert);
+		final String responderKey = respondersCache.createResponderKey(issuerCert);
 		respondersCache.checkCachedError(responderKey);
 		
-		String responseKey = responsesCache.createResponseKey(toCheckCert, issuerCert);		
+		final String responseKey = responsesCache.createResponseKey(toCheckCert, issuerCert);		
+		String flightKey = responder.toExternalForm() + " " + responseKey;
+		if (prefetchTime > 0)
+			recordQuery(flightKey, new RecentQuery(responder, toCheckCert, issuerCert, 
+					requester, addNonce, timeout, client, responderKey, responseKey));
 		SingleResp cachedResp = responsesCache.getCachedResp(responseKey, client, 
 				toCheckCert, issuerCert);
 		if (cachedResp != null)
 			return new OCSPResult(cachedResp);
 		
+		return new OCSPResult(coalesce(flightKey, new Callable<SingleResp>()
+		{
+			@Override
+			public SingleResp call() throws IOException, OCSPException
+			{
+				SingleResp cachedResp = responsesCache.getCachedResp(responseKey, client, 
+						toCheckCert, issuerCert);
+				if (cachedResp != null)
+					return cachedResp;
+				return query(responder, toCheckCert, issuerCert, requester, addNonce, timeout, 
+						client, responderKey, responseKey, true);
+			}
+		}));
+	}
+
+	/**
+	 * Returns the statuses of several certificates, obtained with a single request to the responder.
+	 * Certificates with a cached response are not included in the request. The received responses 
+	 * are cached separately for each certificate.
+	 * @param responder mandatory - URL of the responder
+	 * @param toCheckCerts mandatory certificates to be checked
+	 * @param issuerCerts mandatory certificates of the toCheckCerts issuers, in the same order
+	 * @param requester if not null, then it is assumed that request must be signed by the requester.
+	 * @param addNonce if true nonce will be added to the request and required in response
+	 * @param timeout timeout
+	 * @return results in the order of the checked certificates. The result is null if the 
+	 * certificate is not covered by a valid response (e.g. the responder doesn't support requests for 
+	 * multiple certificates).
+	 * @throws IOException IO exception
+	 * @throws OCSPException OCSP exception
+	 */
+	public OCSPResult[] queryForCertificates(URL responder, List<X509Certificate> toCheckCerts,
+			List<X509Certificate> issuerCerts, X509Credential requester, boolean addNonce,
+			int timeout) throws IOException, OCSPException
+	{
+		return queryForCertificates(responder, toCheckCerts, issuerCerts, requester, addNonce, timeout, 
+				new OCSPClientImpl());
+	}
+
+	/**
+	 * As {@link #queryForCertificates(URL, List, List, X509Credential, boolean, int)}, using a custom client.
+	 * As for the single certificate queries, a cached failure of the responder is thrown without 
+	 * sending a request and concurrent identical requests are coalesced. Failures to connect to 
+	 * the responder or to receive its answer in time are cached too. Other failures (e.g. HTTP error codes)
+	 * are not cached, as they might be caused only by the request for multiple certificates.
+	 * @param responder mandatory - URL of the responder
+	 * @param toCheckCerts mandatory certificates to be checked
+	 * @param issuerCerts mandatory certificates of the toCheckCerts issuers, in the same order
+	 * @param requester if not null, then it is assumed that request must be signed by the requester.
+	 * @param addNonce if true nonce will be added to the request and required in response
+	 * @param timeout timeout
+	 * @param client client to be used for network calls
+	 * @return results in the order of the checked certificates, null for certificates which are 
+	 * not covered by a valid response
+	 * @throws IOException IO exception
+	 * @throws OCSPException OCSP exception
+	 */
+	public OCSPResult[] queryForCertificates(final URL responder, List<X509Certificate> toCheckCerts,
+			List<X509Certificate> issuerCerts, final X509Credential requester, final boolean addNonce,
+			final int timeout, final OCSPClientImpl client) throws IOException, OCSPException
+	{
+		OCSPResult[] ret = new OCSPResult[toCheckCerts.size()];
+		final Set<String> responderKeys = new LinkedHashSet<String>();
+		if (maxTtl >= 0)
+		{
+			for (X509Certificate issuerCert: issuerCerts)
+				responderKeys.add(respondersCache.createResponderKey(issuerCert));
+			for (String responderKey: responderKeys)
+				respondersCache.checkCachedError(responderKey);
+		}
+		final String[] responseKeys = new String[toCheckCerts.size()];
+		List<Integer> toQuery = new ArrayList<Integer>();
+		for (int i=0; i<toCheckCerts.size(); i++)
+		{
+			if (maxTtl >= 0)
+			{
+				responseKeys[i] = responsesCache.createResponseKey(toCheckCerts.get(i), 
+						issuerCerts.get(i));
+				SingleResp cachedResp = responsesCache.getCachedResp(responseKeys[i], client, 
+						toCheckCerts.get(i), issuerCerts.get(i));
+				if (cachedResp != null)
+				{
+					ret[i] = new OCSPResult(cachedResp);
+					continue;
+				}
+			}
+			toQuery.add(i);
+		}
+		if (toQuery.isEmpty())
+			return ret;
+		
+		final List<X509Certificate> queriedCerts = new ArrayList<X509Certificate>(toQuery.size());
+		final List<X509Certificate> queriedIssuers = new ArrayList<X509Certificate>(toQuery.size());
+		final List<String> queriedKeys = new ArrayList<String>(toQuery.size());
+		StringBuilder flightKey = new StringBuilder(responder.toExternalForm());
+		for (int i: toQuery)
+		{
+			queriedCerts.add(toCheckCerts.get(i));
+			queriedIssuers.add(issuerCerts.get(i));
+			queriedKeys.add(responseKeys[i]);
+			flightKey.append(' ').append(responseKeys[i]);
+		}
+		SingleResp[] responses;
+		if (maxTtl < 0)
+		{
+			responses = queryBatch(responder, queriedCerts, queriedIssuers, requester, addNonce, 
+					timeout, client, responderKeys, queriedKeys);
+		} else
+		{
+			responses = coalesce(inFlightBatches, flightKey.toString(), new Callable<SingleResp[]>()
+			{
+				@Override
+				public SingleResp[] call() throws IOException, OCSPException
+				{
+					return queryBatch(responder, queriedCerts, queriedIssuers, requester, addNonce, 
+							timeout, client, responderKeys, queriedKeys);
+				}
+			});
+		}
+		for (int j=0; j<responses.length; j++)
+		{
+			if (responses[j] != null)
+				ret[toQuery.get(j)] = new OCSPResult(responses[j]);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return responses in the order of the queried certificates, null for certificates 
+	 * not covered by a valid response
+	 */
+	private SingleResp[] queryBatch(URL responder, List<X509Certificate> toCheckCerts, 
+			List<X509Certificate> issuerCerts, X509Credential requester, boolean addNonce,
+			int timeout, OCSPClientImpl client, Set<String> responderKeys, List<String> responseKeys) 
+					throws IOException, OCSPException
+	{
+		OCSPReq request = client.createRequest(toCheckCerts, issuerCerts, requester, addNonce);
+		OCSPResponseStructure responseWithMeta;
+		try
+		{
+			responseWithMeta = client.send(responder, request, timeout);
+		} catch (IOException e)
+		{
+			if (maxTtl >= 0 && isResponderUnavailable(e))
+				for (String responderKey: responderKeys)
+					respondersCache.addToCache(responderKey, e);
+			throw e;
+		}
+		OCSPResp fullResponse = responseWithMeta.getResponse();
+		byte[] nonce = OCSPClientImpl.extractNonce(request);
+		SingleResp[] ret = new SingleResp[toCheckCerts.size()];
+		for (int i=0; i<toCheckCerts.size(); i++)
+		{
+			try
+			{
+				ret[i] = client.verifyResponse(fullResponse, toCheckCerts.get(i), 
+						issuerCerts.get(i), nonce);
+			} catch (OCSPException e)
+			{
+				continue;
+			}
+			if (maxTtl >= 0)
+				responsesCache.addToCache(responseKeys.get(i), new OCSPResponseStructure(fullResponse, 
+						responseWithMeta.getMaxCache()), ret[i]);
+		}
+		return ret;
+	}
+
+	private static boolean isResponderUnavailable(IOException e)
+	{
+		return e instanceof SocketException || e instanceof SocketTimeoutException || 
+				e instanceof UnknownHostException;
+	}
+
+	/**
+	 * Runs the query or waits for the same query which is already running.
+	 */
+	private SingleResp coalesce(String flightKey, Callable<SingleResp> query) 
+			throws IOException, OCSPException
+	{
+		return coalesce(inFlight, flightKey, query);
+	}
+
+	private static <T> T coalesce(ConcurrentHashMap<String, FutureTask<T>> inFlight, String flightKey, 
+			Callable<T> query) throws IOException, OCSPException
+	{
+		FutureTask<T> task = new FutureTask<T>(query);
+		FutureTask<T> running = inFlight.putIfAbsent(flightKey, task);
+		if (running == null)
+		{
+			running = task;
+			try
+			{
+				task.run();
+			} finally
+			{
+				inFlight.remove(flightKey, task);
+			}
+		}
+		return getResult(running);
+	}
+
+	/**
+	 * @param cacheErrors whether a failure of the responder should be cached
+	 */
+	private SingleResp query(URL responder, X509Certificate toCheckCert,
+			X509Certificate issuerCert, X509Credential requester, boolean addNonce,
+			int timeout, OCSPClientImpl client, String responderKey, String responseKey,
+			boolean cacheErrors) throws IOException, OCSPException
+	{
 		OCSPReq request = client.createRequest(toCheckCert, issuerCert, requester, addNonce);
 		OCSPResponseStructure responseWithMeta;
 		try
@@ -103,7 +398,8 @@ public class OCSPCachingClient
 			responseWithMeta = client.send(responder, request, timeout);
 		} catch (IOException e)
 		{
-			respondersCache.addToCache(responderKey, e);
+			if (cacheErrors)
+				respondersCache.addToCache(responderKey, e);
 			throw e;
 		}
 		OCSPResp fullResponse = responseWithMeta.getResponse();
@@ -111,22 +407,230 @@ public class OCSPCachingClient
 		byte[] nonce = OCSPClientImpl.extractNonce(request);
 		SingleResp singleResp = client.verifyResponse(fullResponse, toCheckCert, issuerCert, nonce);
 		responsesCache.addToCache(responseKey, responseWithMeta, singleResp);
-		return new OCSPResult(singleResp);
+		return singleResp;
+	}
+
+	/**
+	 * Waits for the result of a query, possibly sent by another thread.
+	 */
+	private static <T> T getResult(FutureTask<T> task) throws IOException, OCSPException
+	{
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return task.get();
+				} catch (InterruptedException e)
+				{
+					interrupted = true;
+				} catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof OCSPException)
+						throw (OCSPException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException("OCSP query failed", cause);
+				}
+			}
+		} finally
+		{
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
 	}
 
 	
+	private void recordQuery(String flightKey, RecentQuery query)
+	{
+		synchronized (recentQueries)
+		{
+			RecentQuery recorded = recentQueries.get(flightKey);
+			if (recorded == null)
+				recentQueries.put(flightKey, query);
+			else
+				recorded.used = true;
+		}
+	}
+
+	/**
+	 * Refreshes the cached responses of the recently used certificates, which are going to expire soon.
+	 */
+	private void prefetch()
+	{
+		List<Map.Entry<String, RecentQuery>> queries;
+		synchronized (recentQueries)
+		{
+			queries = new ArrayList<Map.Entry<String, RecentQuery>>(recentQueries.entrySet());
+		}
+		long refreshTime = System.currentTimeMillis() + prefetchTime;
+		for (Map.Entry<String, RecentQuery> entry: queries)
+		{
+			RecentQuery query = entry.getValue();
+			Date expiry = responsesCache.getCacheExpiry(query.responseKey);
+			if (expiry == null)
+			{
+				if (!query.used)
+					recentQueries.remove(entry.getKey());
+				continue;
+			}
+			if (expiry.getTime() > refreshTime)
+				continue;
+			if (!query.used)
+			{
+				recentQueries.remove(entry.getKey());
+				continue;
+			}
+			if (inFlight.containsKey(entry.getKey()))
+				continue;
+			query.used = false;
+			try
+			{
+				PREFETCH_POOL.execute(new PrefetchQuery(entry.getKey(), query));
+			} catch (RejectedExecutionException e)
+			{
+				//all threads are busy, the query will be retried with the next prefetch run
+				query.used = true;
+			}
+		}
+	}
+
+	private void refresh(String flightKey, final RecentQuery query)
+	{
+		try
+		{
+			coalesce(flightKey, new Callable<SingleResp>()
+			{
+				@Override
+				public SingleResp call() throws IOException, OCSPException
+				{
+					return query(query.responder, query.toCheckCert, query.issuerCert, 
+							query.requester, query.addNonce, query.timeout, query.client,
+							query.responderKey, query.responseKey, false);
+				}
+			});
+		} catch (Exception e)
+		{
+			//ignored, the cached response is used until it expires
+		}
+	}
+
 	public void clearMemoryCache()
 	{
 		responsesCache.clearMemoryCache();
 		respondersCache.clearMemoryCache();
 	}
-}
-
+	
+	/**
+	 * @return statistics of the OCSP responses cache
+	 */
+	public CacheStatistics getStatistics()
+	{
+		return responsesCache.getStatistics();
+	}
 
+	/**
+	 * Arguments of a recently sent query, used to repeat it.
+	 */
+	private static class RecentQuery
+	{
+		private final URL responder;
+		private final X509Certificate toCheckCert;
+		private final X509Certificate issuerCert;
+		private final X509Credential requester;
+		private final boolean addNonce;
+		private final int timeout;
+		private final OCSPClientImpl client;
+		private final String responderKey;
+		private final String responseKey;
+		private volatile boolean used = true;
 
+		public RecentQuery(URL responder, X509Certificate toCheckCert, X509Certificate issuerCert,
+				X509Credential requester, boolean addNonce, int timeout, OCSPClientImpl client,
+				String responderKey, String responseKey)
+		{
+			this.responder = responder;
+			this.toCheckCert = toCheckCert;
+			this.issuerCert = issuerCert;
+			this.requester = requester;
+			this.addNonce = addNonce;
+			this.timeout = timeout;
+			this.client = client;
+			this.responderKey = responderKey;
+			this.responseKey = responseKey;
+		}
+	}
 
+	private static ThreadPoolExecutor createPrefetchPool()
+	{
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(0, MAX_PREFETCH_THREADS, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "caNl OCSP prefetch " + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
 
+	/**
+	 * Refreshes a single response, executed in the prefetch pool.
+	 */
+	private class PrefetchQuery implements Runnable
+	{
+		private final String flightKey;
+		private final RecentQuery query;
 
+		public PrefetchQuery(String flightKey, RecentQuery query)
+		{
+			this.flightKey = flightKey;
+			this.query = query;
+		}
 
+		@Override
+		public void run()
+		{
+			if (prefetchTime <= 0)
+				return;
+			refresh(flightKey, query);
+		}
+	}
 
+	private static class PrefetchTask extends WeakTimerTask<OCSPCachingClient>
+	{
+		public PrefetchTask(OCSPCachingClient partner)
+		{
+			super(partner);
+		}
 
+		@Override
+		public void run()
+		{
+			OCSPCachingClient partner = partnerRef.get();
+			if (partner == null)
+			{
+				cancel();
+				return;
+			}
+			try
+			{
+				partner.prefetch();
+			} catch (RuntimeException e)
+			{
+				//here we are really screwed up - there is a bug and no way to report it
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -18,6 +18,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -104,14 +105,34 @@ public class OCSPClientImpl
 	public OCSPReq createRequest(X509Certificate toCheckCert, 
 			X509Certificate issuerCert, X509Credential requester, boolean addNonce) 
 					throws OCSPException
+	{
+		return createRequest(Collections.singletonList(toCheckCert), Collections.singletonList(issuerCert),
+				requester, addNonce);
+	}
+
+	/**
+	 * Creates a single request for several certificates, possibly issued by different CAs.
+	 * @param toCheckCerts certificates to be checked
+	 * @param issuerCerts issuers of the checked certificates, in the same order
+	 * @param requester if not null, then the request is signed by the requester
+	 * @param addNonce if true nonce will be added to the request
+	 * @return the request
+	 * @throws OCSPException OCSP exception
+	 */
+	public OCSPReq createRequest(List<X509Certificate> toCheckCerts, 
+			List<X509Certificate> issuerCerts, X509Credential requester, boolean addNonce) 
+					throws OCSPException
 	{
 		OCSPReqBuilder generator = new OCSPReqBuilder();
-		CertificateID certId;
 		try
 		{
 			DigestCalculator digestCalc = new BcDigestCalculatorProvider().get(CertificateID.HASH_SHA1);
-			X509CertificateHolder issuerCertHolder = new JcaX509CertificateHolder(issuerCert);
-			certId = new CertificateID(digestCalc, issuerCertHolder, toCheckCert.getSerialNumber());
+			for (int i=0; i<toCheckCerts.size(); i++)
+			{
+				X509CertificateHolder issuerCertHolder = new JcaX509CertificateHolder(issuerCerts.get(i));
+				generator.addRequest(new CertificateID(digestCalc, issuerCertHolder, 
+						toCheckCerts.get(i).getSerialNumber()));
+			}
 		} catch (OperatorCreationException e1)
 		{
 			throw new OCSPException("Problem creating digester", e1);
@@ -120,7 +141,6 @@ public class OCSPClientImpl
 			throw new OCSPException("Issuer certificate is unsupported ", e);
 		}
 		
-		generator.addRequest(certId);
 		if (addNonce)
 		{
 			byte[] nonce = new byte[16];
@@ -428,6 +448,7 @@ public class OCSPClientImpl
 			CertificateID certId = new CertificateID(digCalc, issuerCertHolder, 
 					toFind.getSerialNumber());
 			return certId.getHashAlgOID().equals(checkedCertId.getHashAlgOID()) &&
+					certId.getSerialNumber().equals(checkedCertId.getSerialNumber()) &&
 					Arrays.equals(certId.getIssuerKeyHash(), checkedCertId.getIssuerKeyHash()) &&
 					Arrays.equals(certId.getIssuerNameHash(), checkedCertId.getIssuerNameHash());
 		} catch (OperatorCreationException e)
@@ -17,10 +17,13 @@ import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.SingleResp;
 
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
+
 
 /**
  * OCSP responses cache: in memory with disk persistence.
@@ -29,7 +32,11 @@ import org.bouncycastle.cert.ocsp.SingleResp;
  */
 public class OCSPResponsesCache extends OCSPCacheBase
 {
+	private BoundedSizeLruMap<String, ResponseCacheEntry> lruMap;
 	private Map<String, ResponseCacheEntry> responsesCache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
 	
 	/**
 	 * 
@@ -41,7 +48,8 @@ public class OCSPResponsesCache extends OCSPCacheBase
 	public OCSPResponsesCache(long maxTtl, File diskPath, String prefix)
 	{
 		super(maxTtl, diskPath, prefix);
-		responsesCache = Collections.synchronizedMap(new BoundedSizeLruMap<String, ResponseCacheEntry>(100));
+		lruMap = new BoundedSizeLruMap<String, ResponseCacheEntry>(100);
+		responsesCache = Collections.synchronizedMap(lruMap);
 	}
 
 	/**
@@ -61,21 +69,25 @@ public class OCSPResponsesCache extends OCSPCacheBase
 		{
 			File f = new File(diskPath, prefix + responseKey);
 			if (f.exists())
+			{
 				cachedResp = loadResponseFromDisk(f, client, toCheckCert, issuerCert);
+				if (cachedResp != null)
+					responsesCache.put(responseKey, cachedResp);
+			}
 		}
 		if (cachedResp == null)
+		{
+			misses.incrementAndGet();
 			return null;
+		}
 		
-		Date nextUpdate = cachedResp.response != null ? cachedResp.response.getNextUpdate() : null;
-		Date maxCacheValidity = new Date(cachedResp.cacheDate.getTime() + maxTtl);
-		if (nextUpdate != null && maxCacheValidity.after(nextUpdate))
-			maxCacheValidity = nextUpdate;
-		if (maxCacheValidity.after(cachedResp.maxValidity))
-			maxCacheValidity = cachedResp.maxValidity;
+		Date maxCacheValidity = getCacheValidity(cachedResp);
 		
 		Date now = new Date();
 		if (now.after(maxCacheValidity))
 		{
+			misses.incrementAndGet();
+			expirations.incrementAndGet();
 			responsesCache.remove(responseKey);
 			if (diskPath != null)
 			{
@@ -85,9 +97,31 @@ public class OCSPResponsesCache extends OCSPCacheBase
 			return null;
 		}
 		
+		hits.incrementAndGet();
 		return cachedResp.response;
 	}
 	
+	/**
+	 * @param responseKey response key
+	 * @return time when the response cached in memory expires or null if it is not cached in memory
+	 */
+	public Date getCacheExpiry(String responseKey)
+	{
+		ResponseCacheEntry cachedResp = responsesCache.get(responseKey);
+		return cachedResp == null ? null : getCacheValidity(cachedResp);
+	}
+	
+	private Date getCacheValidity(ResponseCacheEntry cachedResp)
+	{
+		Date nextUpdate = cachedResp.response != null ? cachedResp.response.getNextUpdate() : null;
+		Date maxCacheValidity = new Date(cachedResp.cacheDate.getTime() + maxTtl);
+		if (nextUpdate != null && maxCacheValidity.after(nextUpdate))
+			maxCacheValidity = nextUpdate;
+		if (maxCacheValidity.after(cachedResp.maxValidity))
+			maxCacheValidity = cachedResp.maxValidity;
+		return maxCacheValidity;
+	}
+	
 	public String createResponseKey(X509Certificate toCheckCert, X509Certificate issuerCert)
 	{
 		MessageDigest digest;
@@ -124,6 +158,15 @@ public class OCSPResponsesCache extends OCSPCacheBase
 		responsesCache.clear();
 	}
 	
+	/**
+	 * @return snapshot of the counters of this cache. Responses loaded from disk are counted as hits.
+	 */
+	public CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(hits.get(), misses.get(), lruMap.getEvictions(), 
+				expirations.get(), responsesCache.size());
+	}
+	
 	private void storeResponseToDisk(File f, OCSPResponseStructure fullResp) throws IOException
 	{
 		if (f.exists())
@@ -30,6 +30,7 @@ public class OCSPResult {
 	private Status status;
 	private Date revocationTime;
 	private String revocationReason;
+	private Date nextUpdate;
 
 	public OCSPResult(Status status)
 	{
@@ -41,6 +42,7 @@ public class OCSPResult {
 	
 	public OCSPResult(SingleResp resp)
 	{
+		nextUpdate = resp.getNextUpdate();
 		Object rStatus = resp.getCertStatus();
 		if (rStatus == null)
 			status = Status.good;
@@ -82,6 +84,14 @@ public class OCSPResult {
 		return revocationReason;
 	}
 	
+	/**
+	 * @return the next update time of the response or null if not available
+	 */
+	public Date getNextUpdate()
+	{
+		return nextUpdate;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -8,6 +8,7 @@ import java.security.cert.X509Certificate;
 
 import eu.emi.security.authn.x509.OCSPCheckingMode;
 import eu.emi.security.authn.x509.ValidationErrorCode;
+import eu.emi.security.authn.x509.helpers.pkipath.ResultLifetimeTracker;
 import eu.emi.security.authn.x509.helpers.pkipath.SimpleValidationErrorException;
 import eu.emi.security.authn.x509.helpers.revocation.RevocationChecker;
 import eu.emi.security.authn.x509.helpers.revocation.RevocationStatus;
@@ -20,11 +21,24 @@ public class OCSPRevocationChecker implements RevocationChecker
 {
 	private OCSPVerifier verifier;
 	private OCSPCheckingMode checkingMode;
+	private ResultLifetimeTracker lifetimeTracker;
 	
 	public OCSPRevocationChecker(OCSPVerifier verifier, OCSPCheckingMode checkingMode)
+	{
+		this(verifier, checkingMode, null);
+	}
+
+	/**
+	 * @param verifier verifier
+	 * @param checkingMode checking mode
+	 * @param lifetimeTracker if not null, then next update time of obtained responses is recorded in it
+	 */
+	public OCSPRevocationChecker(OCSPVerifier verifier, OCSPCheckingMode checkingMode, 
+			ResultLifetimeTracker lifetimeTracker)
 	{
 		this.verifier = verifier;
 		this.checkingMode = checkingMode;
+		this.lifetimeTracker = lifetimeTracker;
 	}
 
 	@Override
@@ -43,6 +57,8 @@ public class OCSPRevocationChecker implements RevocationChecker
 				throw e;
 			return RevocationStatus.unknown;
 		}
+		if (lifetimeTracker != null)
+			lifetimeTracker.restrict(status.getNextUpdate());
 		if (status.getStatus() == OCSPResult.Status.revoked)
 			throw new SimpleValidationErrorException(ValidationErrorCode.ocspCertRevoked, 
 					status.getRevocationTime(), status.getRevocationReason());
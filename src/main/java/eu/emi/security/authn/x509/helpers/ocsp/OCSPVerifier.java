@@ -11,7 +11,21 @@ import java.net.URL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1OctetString;
@@ -22,6 +36,7 @@ import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
 import eu.emi.security.authn.x509.OCSPParametes;
 import eu.emi.security.authn.x509.OCSPResponder;
@@ -35,41 +50,83 @@ import eu.emi.security.authn.x509.helpers.pkipath.SimpleValidationErrorException
 /**
  * OCSP checker - uses provided {@link OCSPParametes} to perform OCSP calls using 
  * {@link OCSPCachingClient} and returns the final response. Failures (exceptions) are reported via provided callback.
+ * <p>
+ * Responders are queried sequentially or, if {@link OCSPParametes#getHedgingDelay()} is not negative, 
+ * concurrently in a shared pool of daemon threads. Cancelled queries are interrupted, however a blocked 
+ * network read ends only after the connection timeout.
+ * <p>
+ * Statuses of several certificates (e.g. of a whole chain) can be obtained in advance with 
+ * {@link #queryInBatch(List, List)}, using a single request for all certificates served by the same responder. 
  * @author K. Benedyczak
  */
 public class OCSPVerifier 
 {
+	/**
+	 * Maximum number of threads sending the concurrent queries of all verifiers. When all of them are busy,
+	 * the queries are sent by the validating thread, i.e. sequentially.
+	 */
+	public static final int MAX_QUERY_THREADS = 64;
+	private static final ExecutorService QUERY_EXECUTOR = createQueryExecutor();
+	
 	private OCSPParametes params;
 	private ObserversHandler observers;
+	private OCSPCachingClient client;
+	private final Map<X509Certificate, BatchResult> batchResults = 
+			Collections.synchronizedMap(new HashMap<X509Certificate, BatchResult>());
 	public static String OCSP_CACHE_PFX = "ocspresp_";
 	
+	/**
+	 * Creates a verifier with its own, private OCSP cache. 
+	 * @param params OCSP parameters
+	 * @param observers observers handler
+	 */
 	public OCSPVerifier(OCSPParametes params, ObserversHandler observers)
+	{
+		this(params, createCachingClient(params), observers);
+	}
+
+	/**
+	 * Creates a verifier using a given (typically long lived and shared) OCSP client with cache.
+	 * @param params OCSP parameters
+	 * @param client caching client, should be created with {@link #createCachingClient(OCSPParametes)}
+	 * @param observers observers handler
+	 */
+	public OCSPVerifier(OCSPParametes params, OCSPCachingClient client, ObserversHandler observers)
 	{
 		this.params = params;
+		this.client = client;
 		this.observers = observers;
 	}
+	
+	/**
+	 * @param params OCSP parameters
+	 * @return a new caching client, configured according to the given parameters
+	 */
+	public static OCSPCachingClient createCachingClient(OCSPParametes params)
+	{
+		File diskCachePath = params.getDiskCachePath() == null ? null : new File(params.getDiskCachePath());
+		OCSPCachingClient client = new OCSPCachingClient(params.getCacheTtl(), diskCachePath, 
+				OCSP_CACHE_PFX);
+		client.setPrefetchTime(params.getPrefetchTime() * 1000L);
+		return client;
+	}
 
 	public OCSPResult verify(X509Certificate toCheck, X509Certificate issuerCert) throws SimpleValidationErrorException
 	{
-		List<OCSPResponder> certResponders = getOCSPUrls(toCheck, issuerCert);
-		OCSPResponder[] localResponders = params.getLocalResponders();
-		List<OCSPResponder> allResponders = new ArrayList<OCSPResponder>();
-		if (params.isPreferLocalResponders())
-		{
-			Collections.addAll(allResponders, localResponders);
-			allResponders.addAll(certResponders);
-		} else
-		{
-			allResponders.addAll(certResponders);
-			Collections.addAll(allResponders, localResponders);
-		}
-
+		OCSPResult stapled = getStapledResult(toCheck, issuerCert);
+		if (stapled != null)
+			return stapled;
+		BatchResult batched = batchResults.get(toCheck);
+		if (batched != null && batched.issuerCert.equals(issuerCert))
+			return batched.result;
+		
+		List<OCSPResponder> allResponders = getResponders(toCheck, issuerCert);
 		if (allResponders.size() == 0)
 			throw new SimpleValidationErrorException(ValidationErrorCode.ocspNoResponder);
 		
-		File diskCachePath = params.getDiskCachePath() == null ? null : new File(params.getDiskCachePath());
-		OCSPCachingClient client = new OCSPCachingClient(params.getCacheTtl(), diskCachePath, 
-				OCSP_CACHE_PFX);
+		if (params.getHedgingDelay() >= 0 && allResponders.size() > 1)
+			return verifyConcurrently(toCheck, allResponders, params.getHedgingDelay());
+		
 		for (int i=0; i<allResponders.size(); i++)
 		{
 			OCSPResponder responder = allResponders.get(i);
@@ -95,24 +152,11 @@ public class OCSPVerifier
 					status = client.queryForCertificate(responder.getAddress(), toCheck, 
 							responder.getCertificate(), null, params.isUseNonce(), 
 							params.getConntectTimeout());
-				} catch (IOException e)
-				{
-					observers.notifyObservers(responder.getAddress().toExternalForm(), 
-							StoreUpdateListener.OCSP, Severity.WARNING, e);
-					throw new SimpleValidationErrorException(ValidationErrorCode.ocspResponderQueryError,
-							responder.getAddress(), e.getMessage());
-				} catch (OCSPException e)
-				{
-					observers.notifyObservers(responder.getAddress().toExternalForm(), 
-							StoreUpdateListener.OCSP, Severity.WARNING, e);
-					throw new SimpleValidationErrorException(ValidationErrorCode.ocspResponseInvalid,
-							responder.getAddress(), e.getMessage());
 				} catch (Exception e)
 				{
 					observers.notifyObservers(responder.getAddress().toExternalForm(), 
 							StoreUpdateListener.OCSP, Severity.WARNING, e);
-					throw new SimpleValidationErrorException(ValidationErrorCode.ocspOtherError,
-							responder.getAddress(), e.toString());
+					throw createQueryError(responder, e);
 				}
 			}
 			if (status.getStatus() != OCSPResult.Status.unknown)
@@ -121,6 +165,212 @@ public class OCSPVerifier
 		return new OCSPResult(OCSPResult.Status.unknown);
 	}
 	
+	/**
+	 * Obtains statuses of the given certificates in advance. Certificates for which the same responder is
+	 * to be asked first are checked with a single OCSP request. The good and revoked statuses are 
+	 * remembered and returned by the subsequent {@link #verify(X509Certificate, X509Certificate)} calls 
+	 * for the same certificate and issuer. Other certificates are checked by those calls as usual, 
+	 * so all failures are ignored here.
+	 * @param toCheck certificates to be checked
+	 * @param issuerCerts issuers of the checked certificates, in the same order
+	 */
+	public void queryInBatch(List<X509Certificate> toCheck, List<X509Certificate> issuerCerts)
+	{
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		Map<String, URL> addresses = new HashMap<String, URL>();
+		List<OCSPResponder> firstResponders = new ArrayList<OCSPResponder>(toCheck.size());
+		for (int i=0; i<toCheck.size(); i++)
+		{
+			List<OCSPResponder> responders;
+			try
+			{
+				responders = getResponders(toCheck.get(i), issuerCerts.get(i));
+			} catch (SimpleValidationErrorException e)
+			{
+				responders = Collections.emptyList();
+			}
+			if (responders.isEmpty() || getStapledResult(toCheck.get(i), issuerCerts.get(i)) != null)
+			{
+				firstResponders.add(null);
+				continue;
+			}
+			OCSPResponder responder = responders.get(0);
+			firstResponders.add(responder);
+			String address = responder.getAddress().toExternalForm();
+			List<Integer> group = groups.get(address);
+			if (group == null)
+			{
+				group = new ArrayList<Integer>();
+				groups.put(address, group);
+				addresses.put(address, responder.getAddress());
+			}
+			group.add(i);
+		}
+		
+		for (Map.Entry<String, List<Integer>> group: groups.entrySet())
+		{
+			if (group.getValue().size() < 2)
+				continue;
+			List<X509Certificate> groupCerts = new ArrayList<X509Certificate>();
+			List<X509Certificate> groupIssuers = new ArrayList<X509Certificate>();
+			for (int i: group.getValue())
+			{
+				groupCerts.add(toCheck.get(i));
+				groupIssuers.add(firstResponders.get(i).getCertificate());
+			}
+			OCSPResult[] results;
+			try
+			{
+				results = client.queryForCertificates(addresses.get(group.getKey()), groupCerts, 
+						groupIssuers, null, params.isUseNonce(), params.getConntectTimeout());
+			} catch (Exception e)
+			{
+				continue;
+			}
+			for (int j=0; j<results.length; j++)
+			{
+				if (results[j] == null || results[j].getStatus() == OCSPResult.Status.unknown)
+					continue;
+				int i = group.getValue().get(j);
+				batchResults.put(toCheck.get(i), new BatchResult(issuerCerts.get(i), results[j]));
+			}
+		}
+	}
+	
+	private List<OCSPResponder> getResponders(X509Certificate toCheck, X509Certificate issuerCert) 
+			throws SimpleValidationErrorException
+	{
+		List<OCSPResponder> certResponders = getOCSPUrls(toCheck, issuerCert);
+		OCSPResponder[] localResponders = params.getLocalResponders();
+		List<OCSPResponder> allResponders = new ArrayList<OCSPResponder>();
+		if (params.isPreferLocalResponders())
+		{
+			Collections.addAll(allResponders, localResponders);
+			allResponders.addAll(certResponders);
+		} else
+		{
+			allResponders.addAll(certResponders);
+			Collections.addAll(allResponders, localResponders);
+		}
+		return allResponders;
+	}
+	
+	/**
+	 * @return good or revoked status from the response stapled to the connection being validated
+	 * or null if there is no such response
+	 */
+	private static OCSPResult getStapledResult(X509Certificate toCheck, X509Certificate issuerCert)
+	{
+		StapledOCSPResponses stapled = StapledOCSPResponses.getCurrent();
+		if (stapled == null)
+			return null;
+		SingleResp stapledResp = stapled.get(toCheck, issuerCert);
+		if (stapledResp == null)
+			return null;
+		OCSPResult status = new OCSPResult(stapledResp);
+		return status.getStatus() == OCSPResult.Status.unknown ? null : status;
+	}
+	
+	private static SimpleValidationErrorException createQueryError(OCSPResponder responder, Exception e)
+	{
+		if (e instanceof IOException)
+			return new SimpleValidationErrorException(ValidationErrorCode.ocspResponderQueryError,
+					responder.getAddress(), e.getMessage());
+		if (e instanceof OCSPException)
+			return new SimpleValidationErrorException(ValidationErrorCode.ocspResponseInvalid,
+					responder.getAddress(), e.getMessage());
+		return new SimpleValidationErrorException(ValidationErrorCode.ocspOtherError,
+				responder.getAddress(), e.toString());
+	}
+	
+	/**
+	 * Queries the responders concurrently. Responders are started in the order of the list, 
+	 * the next one after the delay or after the previous failed or returned unknown status.
+	 * The first good or revoked answer is returned, the other queries are cancelled.
+	 * As in the sequential mode, unknown status is returned if no responder gave an answer,
+	 * unless the last responder failed.
+	 */
+	private OCSPResult verifyConcurrently(final X509Certificate toCheck, List<OCSPResponder> responders, 
+			int delay) throws SimpleValidationErrorException
+	{
+		CompletionService<OCSPResult> completion = new ExecutorCompletionService<OCSPResult>(QUERY_EXECUTOR);
+		Map<Future<OCSPResult>, OCSPResponder> running = new HashMap<Future<OCSPResult>, OCSPResponder>();
+		Exception lastResponderError = null;
+		int started = 0;
+		boolean startNext = true;
+		try
+		{
+			while (started < responders.size() || !running.isEmpty())
+			{
+				if (started < responders.size() && (startNext || delay == 0))
+				{
+					startNext = false;
+					final OCSPResponder responder = responders.get(started++);
+					running.put(completion.submit(new Callable<OCSPResult>()
+					{
+						@Override
+						public OCSPResult call() throws Exception
+						{
+							return client.queryForCertificate(responder.getAddress(), toCheck, 
+									responder.getCertificate(), null, params.isUseNonce(), 
+									params.getConntectTimeout());
+						}
+					}), responder);
+					continue;
+				}
+				Future<OCSPResult> done = started < responders.size() ? 
+						completion.poll(delay, TimeUnit.MILLISECONDS) : completion.take();
+				startNext = true;
+				if (done == null)
+					continue;
+				OCSPResponder responder = running.remove(done);
+				try
+				{
+					OCSPResult status = done.get();
+					if (status.getStatus() != OCSPResult.Status.unknown)
+						return status;
+				} catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof Error)
+						throw (Error) e.getCause();
+					Exception cause = (Exception) e.getCause();
+					observers.notifyObservers(responder.getAddress().toExternalForm(), 
+							StoreUpdateListener.OCSP, Severity.WARNING, cause);
+					if (responder == responders.get(responders.size() - 1))
+						lastResponderError = cause;
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SimpleValidationErrorException(ValidationErrorCode.ocspOtherError,
+					responders.get(0).getAddress(), "Interrupted while waiting for OCSP responders");
+		} finally
+		{
+			for (Future<OCSPResult> future: running.keySet())
+				future.cancel(true);
+		}
+		if (lastResponderError != null)
+			throw createQueryError(responders.get(responders.size() - 1), lastResponderError);
+		return new OCSPResult(OCSPResult.Status.unknown);
+	}
+	
+	private static ExecutorService createQueryExecutor()
+	{
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(0, MAX_QUERY_THREADS, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "caNl OCSP query " + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+	
 	protected List<OCSPResponder> getOCSPUrls(X509Certificate certificate, X509Certificate issuerCert) 
 			throws SimpleValidationErrorException
 	{
@@ -173,5 +423,16 @@ public class OCSPVerifier
 
 		return ret;
 	}
-
+	
+	private static class BatchResult
+	{
+		private final X509Certificate issuerCert;
+		private final OCSPResult result;
+		
+		public BatchResult(X509Certificate issuerCert, OCSPResult result)
+		{
+			this.issuerCert = issuerCert;
+			this.result = result;
+		}
+	}
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.ocsp;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+/**
+ * Verified OCSP responses which were stapled by the peer to the TLS handshake (RFC 6066 and RFC 6961).
+ * The responses are made available to the {@link OCSPVerifier} for the time of a validation performed
+ * in the current thread (see {@link #setCurrent(StapledOCSPResponses)}), so no network queries
+ * are needed for the certificates covered by the stapled responses.
+ * <p>
+ * Each response is verified against the next certificate of the chain, as its issuer. Responses
+ * which are invalid, expired or can not be verified are ignored - the certificate is then checked
+ * with the configured OCSP responders as usual. Note that the responses are trusted only
+ * as much as the issuer used to verify them, what is assured by using a stapled response only
+ * when the validator checks the certificate with the same issuer.
+ *
+ * @author K. Benedyczak
+ */
+public class StapledOCSPResponses
+{
+	private static final ThreadLocal<StapledOCSPResponses> CURRENT = new ThreadLocal<StapledOCSPResponses>();
+
+	private final Map<X509Certificate, StapledResponse> responses =
+			new HashMap<X509Certificate, StapledResponse>();
+
+	/**
+	 * @param chain certificate chain of the peer
+	 * @param encodedResponses DER encoded OCSP responses, the n-th response is for the n-th certificate
+	 * of the chain. An empty array means that there is no response for the corresponding certificate.
+	 * @param client OCSP client used to verify the responses
+	 */
+	public StapledOCSPResponses(X509Certificate[] chain, List<byte[]> encodedResponses,
+			OCSPClientImpl client)
+	{
+		if (chain == null || encodedResponses == null)
+			return;
+		int num = Math.min(chain.length - 1, encodedResponses.size());
+		for (int i=0; i<num; i++)
+		{
+			byte[] encoded = encodedResponses.get(i);
+			if (encoded == null || encoded.length == 0)
+				continue;
+			try
+			{
+				OCSPResp response = new OCSPResp(encoded);
+				SingleResp verified = client.verifyResponse(response, chain[i], chain[i+1], null);
+				responses.put(chain[i], new StapledResponse(chain[i+1], verified));
+			} catch (IOException e)
+			{
+				//malformed, ignored
+			} catch (OCSPException e)
+			{
+				//not verified, ignored
+			}
+		}
+	}
+
+	/**
+	 * @return true if there is no verified response
+	 */
+	public boolean isEmpty()
+	{
+		return responses.isEmpty();
+	}
+
+	/**
+	 * @param toCheckCert certificate being checked
+	 * @param issuerCert issuer of the certificate being checked
+	 * @return verified stapled response of the certificate or null if there is no response
+	 * for the certificate issued by the given issuer
+	 */
+	public SingleResp get(X509Certificate toCheckCert, X509Certificate issuerCert)
+	{
+		StapledResponse response = responses.get(toCheckCert);
+		if (response == null || !response.issuerCert.equals(issuerCert))
+			return null;
+		return response.response;
+	}
+
+	/**
+	 * @return responses stapled to the connection being validated in the current thread
+	 * or null if there are none
+	 */
+	public static StapledOCSPResponses getCurrent()
+	{
+		return CURRENT.get();
+	}
+
+	/**
+	 * Sets the responses stapled to the connection which is validated by the current thread.
+	 * The caller must clear the responses after the validation, using null argument.
+	 * @param responses responses to be used or null to clear them
+	 */
+	public static void setCurrent(StapledOCSPResponses responses)
+	{
+		if (responses == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(responses);
+	}
+
+	private static class StapledResponse
+	{
+		private final X509Certificate issuerCert;
+		private final SingleResp response;
+
+		public StapledResponse(X509Certificate issuerCert, SingleResp response)
+		{
+			this.issuerCert = issuerCert;
+			this.response = response;
+		}
+	}
+}
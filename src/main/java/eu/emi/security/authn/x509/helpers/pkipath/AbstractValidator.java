@@ -4,9 +4,11 @@
  */
 package eu.emi.security.authn.x509.helpers.pkipath;
 
+import java.security.InvalidAlgorithmParameterException;
 import java.security.cert.CertPath;
 import java.security.cert.CertStore;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
@@ -19,17 +21,24 @@ import java.util.Set;
 import eu.emi.security.authn.x509.ProxySupport;
 import eu.emi.security.authn.x509.RevocationParameters;
 import eu.emi.security.authn.x509.StoreUpdateListener;
+import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
 import eu.emi.security.authn.x509.ValidationError;
 import eu.emi.security.authn.x509.ValidationErrorCode;
 import eu.emi.security.authn.x509.ValidationErrorListener;
 import eu.emi.security.authn.x509.ValidationResult;
 import eu.emi.security.authn.x509.X509CertChainValidator;
 import eu.emi.security.authn.x509.X509CertChainValidatorExt;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
 import eu.emi.security.authn.x509.helpers.crl.AbstractCRLStoreSPI;
 import eu.emi.security.authn.x509.helpers.crl.SimpleCRLStore;
+import eu.emi.security.authn.x509.helpers.crl.TrackingCRLStoreSpi;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPCachingClient;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPVerifier;
+import eu.emi.security.authn.x509.helpers.trust.TrustAnchorSnapshot;
 import eu.emi.security.authn.x509.helpers.trust.TrustAnchorStore;
 import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.ValidationResultCacheParameters;
 
 /**
  * Base implementation of {@link X509CertChainValidator}.
@@ -37,6 +46,8 @@ import eu.emi.security.authn.x509.impl.CertificateUtils;
  * providing trusted CAs. The implementation validates certificates using 
  * the {@link BCCertPathValidator}.
  * <p>
+ * Optionally validation results can be cached, see {@link ValidationResultCacheParameters}. 
+ * <p>
  * This class is thread safe and its extensions should also guarantee this.
  * 
  * @author K. Benedyczak
@@ -55,6 +66,8 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	protected BCCertPathValidator validator;
 	private ProxySupport proxySupport;
 	private RevocationParameters revocationMode;
+	private OCSPCachingClient ocspClient;
+	private ValidationResultCache resultCache;
 	protected boolean disposed;
 	
 	/**
@@ -70,6 +83,7 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	public AbstractValidator(Collection<? extends StoreUpdateListener> initialListeners)
 	{
 		observers = new ObserversHandler(initialListeners);
+		observers.addObserver(new ResultCacheInvalidator());
 		listeners = new LinkedHashSet<ValidationErrorListener>();
 	}
 
@@ -91,7 +105,12 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 			this.crlStore = crlStore;
 		this.validator = new BCCertPathValidator();
 		this.proxySupport = proxySupport;
+		//re-initialization with the same OCSP settings must not drop the cached responses
+		if (ocspClient == null || this.revocationMode == null || 
+				this.revocationMode.getOcspParameters() != revocationCheckingMode.getOcspParameters())
+			this.ocspClient = OCSPVerifier.createCachingClient(revocationCheckingMode.getOcspParameters());
 		this.revocationMode = revocationCheckingMode;
+		invalidateResultCache();
 	}
 	
 	/**
@@ -121,24 +140,47 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	@Override
 	public ValidationResult validate(X509Certificate[] certChain)
 	{
-		return validate(certChain, caStore.getTrustAnchors());
+		return validate(certChain, getTrustAnchorStore().getSnapshot());
 	}
 
+	/**
+	 * @param certChain chain to be validated
+	 * @param anchors trust anchors. If those are given as {@link TrustAnchorSnapshot} then cached
+	 * results are bound to the snapshot generation.
+	 * @return validation result
+	 */
 	protected ValidationResult validate(X509Certificate[] certChain, Set<TrustAnchor> anchors)
 	{
 		if (isDisposed())
 			throw new IllegalStateException("The validator instance was disposed");
+		ValidationResultCache cache = getResultCache();
 		ValidationResult result;
-		try
+		if (cache == null)
 		{
-			result = validator.validate(certChain, getProxySupport() == ProxySupport.ALLOW, anchors,
-					new SimpleCRLStore(crlStore), revocationMode, observers);
-		} catch (CertificateException e)
+			result = performValidation(certChain, anchors, null);
+		} else
 		{
-			e.printStackTrace();
-			ValidationError error = new ValidationError(certChain, -1, ValidationErrorCode.inputError, 
-					e.toString());
-			result = new ValidationResult(false, Collections.singletonList(error));
+			String key = null;
+			try
+			{
+				key = cache.createKey(certChain);
+			} catch (CertificateEncodingException e)
+			{
+				//not cacheable, will fail in validation
+			}
+			long trustGeneration = anchors instanceof TrustAnchorSnapshot ? 
+					((TrustAnchorSnapshot) anchors).getGeneration() : -1;
+			long crlGeneration = crlStore.getContentGeneration();
+			result = key == null ? null : cache.get(key, trustGeneration, crlGeneration);
+			if (result == null)
+			{
+				long generation = cache.getGeneration();
+				ResultLifetimeTracker tracker = new ResultLifetimeTracker();
+				result = performValidation(certChain, anchors, tracker);
+				if (key != null)
+					cache.put(key, certChain, result, tracker, generation, trustGeneration,
+							crlGeneration);
+			}
 		}
 
 		if (!result.isValid())
@@ -154,6 +196,41 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 		return result;
 	}
 	
+	/**
+	 * Performs the actual validation of the chain. The returned result is not yet processed by
+	 * the validation listeners and can be cached. Extensions can override this method to add 
+	 * additional checks.
+	 * @param certChain chain to be validated
+	 * @param anchors trust anchors
+	 * @param lifetimeTracker if not null then it should be used to record the time after which the 
+	 * result may change, e.g. next update of used CRLs.
+	 * @return validation result
+	 */
+	protected ValidationResult performValidation(X509Certificate[] certChain, Set<TrustAnchor> anchors,
+			ResultLifetimeTracker lifetimeTracker)
+	{
+		CertStore crls;
+		try
+		{
+			crls = lifetimeTracker == null ? new SimpleCRLStore(crlStore) : 
+				new SimpleCRLStore(new TrackingCRLStoreSpi(crlStore, lifetimeTracker));
+		} catch (InvalidAlgorithmParameterException e)
+		{
+			throw new RuntimeException("BUG: TrackingCRLStoreSpi can not be initialized", e);
+		}
+		try
+		{
+			return validator.validate(certChain, getProxySupport() == ProxySupport.ALLOW, anchors,
+					crls, revocationMode, observers, getOCSPClient(), lifetimeTracker);
+		} catch (CertificateException e)
+		{
+			e.printStackTrace();
+			ValidationError error = new ValidationError(certChain, -1, ValidationErrorCode.inputError, 
+					e.toString());
+			return new ValidationResult(false, Collections.singletonList(error));
+		}
+	}
+	
 	protected void processErrorList(List<ValidationError> errors)
 	{
 		for (int i=0; i<errors.size(); i++)
@@ -171,9 +248,14 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	 * {@inheritDoc}
 	 */
 	@Override
-	public synchronized X509Certificate[] getTrustedIssuers()
+	public X509Certificate[] getTrustedIssuers()
+	{
+		return getTrustAnchorStore().getTrustedCertificates();
+	}
+	
+	protected synchronized TrustAnchorStore getTrustAnchorStore()
 	{
-		return caStore.getTrustedCertificates();
+		return caStore;
 	}
 	
 
@@ -235,6 +317,54 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 		return revocationMode;
 	}
 	
+	/**
+	 * Returns statistics of the in-memory OCSP responses cache. The cache is shared by all validations
+	 * performed with this validator.
+	 * @return current OCSP cache statistics
+	 */
+	public CacheStatistics getOCSPCacheStatistics()
+	{
+		return getOCSPClient().getStatistics();
+	}
+	
+	protected synchronized OCSPCachingClient getOCSPClient()
+	{
+		return ocspClient;
+	}
+	
+	/**
+	 * Configures the cache of validation results. Any previously cached results are dropped.
+	 * @param settings cache settings. If the cache is not enabled in the settings, the cache is turned off.
+	 */
+	public synchronized void setResultCacheSettings(ValidationResultCacheParameters settings)
+	{
+		resultCache = settings != null && settings.isEnabled() ? new ValidationResultCache(settings) : null;
+	}
+	
+	/**
+	 * @return statistics of the validation results cache or null if the cache is not enabled
+	 */
+	public CacheStatistics getResultCacheStatistics()
+	{
+		ValidationResultCache cache = getResultCache();
+		return cache == null ? null : cache.getStatistics();
+	}
+	
+	protected synchronized ValidationResultCache getResultCache()
+	{
+		return resultCache;
+	}
+	
+	/**
+	 * Drops all cached validation results.
+	 */
+	protected void invalidateResultCache()
+	{
+		ValidationResultCache cache = getResultCache();
+		if (cache != null)
+			cache.invalidate();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -242,6 +372,8 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	public synchronized void dispose()
 	{
 		disposed = true;
+		ocspClient.setPrefetchTime(-1);
+		ocspClient.clearMemoryCache();
 		observers.removeAllObservers();
 		crlStore.dispose();
 		caStore.dispose();
@@ -269,4 +401,26 @@ public abstract class AbstractValidator implements X509CertChainValidatorExt
 	{
 		observers.addObserver(listener);
 	}
+
+	/**
+	 * Drops cached validation results whenever trust material is (re)loaded. Trust anchors, namespace
+	 * policies and CRLs are ignored, as their changes are detected with the trust anchor snapshot 
+	 * generations and CRL store content generations. Note that CRL and namespace notifications 
+	 * are sent for every file on each update, even if it was not changed.
+	 */
+	private class ResultCacheInvalidator implements StoreUpdateListener
+	{
+		@Override
+		public void loadingNotification(String location, String type, Severity level, Exception cause)
+		{
+			if (StoreUpdateListener.OCSP.equals(type))
+				return;
+			if (StoreUpdateListener.CA_CERT.equals(type) || StoreUpdateListener.CRL.equals(type))
+				return;
+			if (StoreUpdateListener.EUGRIDPMA_NAMESPACE.equals(type) || 
+					StoreUpdateListener.EACL_NAMESPACE.equals(type))
+				return;
+			invalidateResultCache();
+		}
+	}
 }
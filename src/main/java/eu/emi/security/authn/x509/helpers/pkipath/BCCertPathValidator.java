@@ -45,6 +45,7 @@ import eu.emi.security.authn.x509.ValidationResult;
 import eu.emi.security.authn.x509.helpers.CertificateHelpers;
 import eu.emi.security.authn.x509.helpers.JavaAndBCStyle;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPCachingClient;
 import eu.emi.security.authn.x509.helpers.pkipath.bc.FixedBCPKIXCertPathReviewer;
 import eu.emi.security.authn.x509.helpers.proxy.ExtendedProxyType;
 import eu.emi.security.authn.x509.helpers.proxy.ProxyHelper;
@@ -113,6 +114,33 @@ public class BCCertPathValidator
 			Set<TrustAnchor> trustAnchors, CertStore crlStore, 
 			RevocationParameters revocationParams, ObserversHandler observersHandler)
 			throws CertificateException
+	{
+		return validate(toCheck, proxySupport, trustAnchors, crlStore, revocationParams, 
+				observersHandler, null, null);
+	}
+	
+	/**
+	 * As {@link #validate(X509Certificate[], boolean, Set, CertStore, RevocationParameters, ObserversHandler)}
+	 * but allows for using a shared OCSP client, so OCSP responses are cached between subsequent validations
+	 * and for tracking how long the validation result remains valid.
+	 * 
+	 * @param toCheck chain to check
+	 * @param proxySupport proxy support
+	 * @param trustAnchors trust anchors
+	 * @param crlStore crl store
+	 * @param revocationParams revocation params
+	 * @param observersHandler observers handler
+	 * @param ocspClient OCSP client to be used. If null then a new one is created for each revocation check.
+	 * @param lifetimeTracker if not null then next update times of the used OCSP responses are recorded in it
+	 * @return validation result
+	 * @throws CertificateException if some of the certificates in the chain can not 
+	 * be parsed
+	 */
+	public ValidationResult validate(X509Certificate[] toCheck, boolean proxySupport,
+			Set<TrustAnchor> trustAnchors, CertStore crlStore, 
+			RevocationParameters revocationParams, ObserversHandler observersHandler,
+			OCSPCachingClient ocspClient, ResultLifetimeTracker lifetimeTracker)
+			throws CertificateException
 	{
 		if (toCheck == null || toCheck.length == 0)
 			throw new IllegalArgumentException("Chain to be validated must be non-empty");
@@ -134,7 +162,7 @@ public class BCCertPathValidator
 		if (!proxySupport || !ProxyUtils.isProxy(toCheck))
 		{
 			ExtPKIXParameters2 params = createPKIXParameters(toCheck, proxySupport, 
-					trustAnchors, crlStore, revocationParams, observersHandler);
+					trustAnchors, crlStore, revocationParams, observersHandler, ocspClient, lifetimeTracker);
 			List<X509Certificate> chain = checkNonProxyChain(toCheck, params, errors, unresolvedExtensions, 0, toCheck);
 			return new ValidationResult(errors.size() == 0, errors, unresolvedExtensions, chain);
 		}
@@ -155,7 +183,7 @@ public class BCCertPathValidator
 			proxyChain[i] = toCheck[i];
 		
 		ExtPKIXParameters2 params = createPKIXParameters(baseChain, proxySupport, 
-				trustAnchors, crlStore, revocationParams, observersHandler);
+				trustAnchors, crlStore, revocationParams, observersHandler, ocspClient, lifetimeTracker);
 		List<X509Certificate> validatedChain = checkNonProxyChain(baseChain, params, errors, unresolvedExtensions, split+1, toCheck);
 			
 		Set<TrustAnchor> trustForProxyChain;
@@ -176,7 +204,8 @@ public class BCCertPathValidator
 	
 	protected ExtPKIXParameters2 createPKIXParameters(X509Certificate[] toCheck, boolean proxySupport,
 			Set<TrustAnchor> trustAnchors, CertStore crlStore, 
-			RevocationParameters revocationParams, ObserversHandler observersHandler)
+			RevocationParameters revocationParams, ObserversHandler observersHandler,
+			OCSPCachingClient ocspClient, ResultLifetimeTracker lifetimeTracker)
 	{
 		X509CertSelector endSelector = new X509CertSelector();
 		endSelector.setCertificate(toCheck[0]);
@@ -209,6 +238,8 @@ public class BCCertPathValidator
 				baseBuilder, baseOfBase, trustAnchors, observersHandler);
 		paramsBuilder.setRevocationParams(revocationParams);
 		paramsBuilder.setProxySupport(proxySupport);
+		paramsBuilder.setOcspClient(ocspClient);
+		paramsBuilder.setLifetimeTracker(lifetimeTracker);
 		return paramsBuilder.build();
 	}
 	
@@ -285,7 +316,8 @@ public class BCCertPathValidator
 			Set<String> unresolvedExtensions, int posDelta, X509Certificate[] cc) 
 					throws CertificateException
 	{
-		NonValidatingCertPathBuilder builder = new NonValidatingCertPathBuilder();
+		NonValidatingCertPathBuilder builder = new NonValidatingCertPathBuilder(
+				params.getTrustAnchorIndex());
 		List<CertPath> certPaths;
 		List<ValidationError> buildPathErrors = null;
 		try
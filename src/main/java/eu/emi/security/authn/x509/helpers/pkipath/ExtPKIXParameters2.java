@@ -18,6 +18,8 @@ import eu.emi.security.authn.x509.OCSPCheckingMode;
 import eu.emi.security.authn.x509.OCSPParametes;
 import eu.emi.security.authn.x509.RevocationParameters;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPCachingClient;
+import eu.emi.security.authn.x509.helpers.trust.TrustAnchorIndex;
 
 /**
  * Extended PKIX parameters with additional settings related to 
@@ -33,6 +35,9 @@ public class ExtPKIXParameters2 implements CertPathParameters
 		private RevocationParameters revocationParams;
 		private ObserversHandler observers;
 		private PKIXParameters baseOfBase;
+		private OCSPCachingClient ocspClient;
+		private ResultLifetimeTracker lifetimeTracker;
+		private TrustAnchorIndex trustAnchorIndex;
 		
 		public Builder(PKIXExtendedParameters.Builder baseBuilder, 
 				PKIXParameters baseOfBase, Set<TrustAnchor> trustAnchors,
@@ -63,6 +68,18 @@ public class ExtPKIXParameters2 implements CertPathParameters
 			return this;
 		}
 
+		public Builder setOcspClient(OCSPCachingClient ocspClient)
+		{
+			this.ocspClient = ocspClient;
+			return this;
+		}
+
+		public Builder setLifetimeTracker(ResultLifetimeTracker lifetimeTracker)
+		{
+			this.lifetimeTracker = lifetimeTracker;
+			return this;
+		}
+
 		public Builder setTrustAnchors(Set<TrustAnchor> trustAnchors)
 		{
 			if (trustAnchors == null)
@@ -76,6 +93,7 @@ public class ExtPKIXParameters2 implements CertPathParameters
 							+ "of type java.security.cert.TrustAnchor");
 			}
 			baseBuilder.setTrustAnchors(trustAnchors);
+			trustAnchorIndex = TrustAnchorIndex.getIndex(trustAnchors);
 			return this;
 		}
 		
@@ -94,6 +112,9 @@ public class ExtPKIXParameters2 implements CertPathParameters
 	protected final boolean proxySupport;
 	protected final RevocationParameters revocationParams;
 	protected final ObserversHandler observers;
+	protected final OCSPCachingClient ocspClient;
+	protected final ResultLifetimeTracker lifetimeTracker;
+	protected final TrustAnchorIndex trustAnchorIndex;
 
 	public ExtPKIXParameters2(PKIXExtendedParameters base, PKIXExtendedBuilderParameters baseExt, Builder builder)
 	{
@@ -103,6 +124,9 @@ public class ExtPKIXParameters2 implements CertPathParameters
 		this.revocationParams = builder.revocationParams;
 		this.observers = builder.observers;
 		this.proxySupport = builder.proxySupport;
+		this.ocspClient = builder.ocspClient;
+		this.lifetimeTracker = builder.lifetimeTracker;
+		this.trustAnchorIndex = builder.trustAnchorIndex;
 	}
 
 	public PKIXExtendedParameters getBaseParameters()
@@ -136,6 +160,30 @@ public class ExtPKIXParameters2 implements CertPathParameters
 		return observers;
 	}
 
+	/**
+	 * @return shared OCSP client or null if a private one should be used
+	 */
+	public OCSPCachingClient getOcspClient()
+	{
+		return ocspClient;
+	}
+
+	/**
+	 * @return tracker of the validation result lifetime or null if not used
+	 */
+	public ResultLifetimeTracker getLifetimeTracker()
+	{
+		return lifetimeTracker;
+	}
+
+	/**
+	 * @return index of the trust anchors, the same set as returned by the base parameters
+	 */
+	public TrustAnchorIndex getTrustAnchorIndex()
+	{
+		return trustAnchorIndex;
+	}
+
 	@Override
 	public String toString()
 	{
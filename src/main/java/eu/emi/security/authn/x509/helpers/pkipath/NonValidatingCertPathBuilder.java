@@ -44,6 +44,7 @@ import org.bouncycastle.jce.provider.PKIXCertPathBuilderSpi;
 import eu.emi.security.authn.x509.ValidationError;
 import eu.emi.security.authn.x509.ValidationErrorCode;
 import eu.emi.security.authn.x509.helpers.pkipath.bc.CertPathValidatorUtilitiesCanl;
+import eu.emi.security.authn.x509.helpers.trust.TrustAnchorIndex;
 import eu.emi.security.authn.x509.impl.CertificateUtils;
 import eu.emi.security.authn.x509.impl.FormatMode;
 
@@ -59,9 +60,24 @@ import eu.emi.security.authn.x509.impl.FormatMode;
  */
 public class NonValidatingCertPathBuilder
 {
+	private final TrustAnchorIndex trustAnchorIndex;
 	private ValidationErrorException certPathException;
 	private List<CertPath> result;
 	
+	public NonValidatingCertPathBuilder()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param trustAnchorIndex index of the trust anchors from the parameters, used to find issuers
+	 * without scanning all the trust anchors. If null then trust anchors from the parameters are scanned. 
+	 */
+	public NonValidatingCertPathBuilder(TrustAnchorIndex trustAnchorIndex)
+	{
+		this.trustAnchorIndex = trustAnchorIndex;
+	}
+	
 	/**
 	 * Build a CertPath using the given parameter.
 	 * 
@@ -132,7 +148,8 @@ public class NonValidatingCertPathBuilder
 			try
 			{
 				ta = CertPathValidatorUtilitiesCanl.findTrustAnchorPublic(tbvCert,
-						pkixParams.getBaseParameters().getTrustAnchors(), 
+						trustAnchorIndex != null ? trustAnchorIndex :
+							pkixParams.getBaseParameters().getTrustAnchors(), 
 						pkixParams.getBaseParameters().getSigProvider());
 			} catch (AnnotatedException e1)
 			{
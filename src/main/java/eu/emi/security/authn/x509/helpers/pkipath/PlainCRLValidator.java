@@ -46,6 +46,7 @@ public abstract class PlainCRLValidator extends AbstractValidator
 {
 	protected PlainCRLStoreSpi crlStoreImpl;
 	protected RevocationParametersExt revocationParameters; //for CRL store recreation
+	protected long directoryWatchDelay = -1;
 	protected static final Timer timer=new Timer("caNl validator (PlainCRL) timer", true);
 
 	/**
@@ -89,6 +90,18 @@ public abstract class PlainCRLValidator extends AbstractValidator
 		}
 	}
 	
+	/**
+	 * Starts watching local CRL directories for changes.
+	 * @param delay delay of applying changes in ms. See {@link PlainCRLStoreSpi#watchDirectories(long)}.
+	 * Use a &lt;= 0 value to stop watching.
+	 */
+	protected void setDirectoryWatchDelay(long delay)
+	{
+		directoryWatchDelay = delay;
+		if (delay > 0)
+			crlStoreImpl.watchDirectories(delay);
+	}
+	
 	/**
 	 * Returns a copy (so modifications won't change this validator internal state)
 	 * of revocation parameters.
@@ -146,6 +159,8 @@ public abstract class PlainCRLValidator extends AbstractValidator
 		crlStoreImpl.dispose();
 		revocationParameters.getCrlParameters().setCrls(crls);
 		crlStoreImpl = createCRLStore(revocationParameters.getCrlParameters(), timer);
+		if (directoryWatchDelay > 0)
+			crlStoreImpl.watchDirectories(directoryWatchDelay);
 		init(null, crlStoreImpl, getProxySupport(), getRevocationCheckingMode());
 	}
 
@@ -4,17 +4,31 @@
  */
 package eu.emi.security.authn.x509.helpers.pkipath;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
@@ -25,10 +39,28 @@ import eu.emi.security.authn.x509.impl.CertificateUtils;
 /**
  * Class for CA or CRL stores with utility methods for handling list 
  * of locations as wildcards or URLs.
+ * <p>
+ * Remote locations are downloaded with conditional HTTP requests when possible: the ETag and Last-Modified
+ * validators returned by the server are remembered (also in the disk cache, next to the cached file) and
+ * sent with the subsequent requests. When the server answers that the resource was not modified,
+ * the store can use the previously loaded contents without downloading and parsing it again.
+ * <p>
+ * Remote locations are usually downloaded concurrently. To not overload a single server, the number
+ * of simultaneous downloads from one host is limited, see {@link #acquireHostPermit(URL)}.
  * @author K. Benedyczak
  */
 public class PlainStoreUtils
 {
+	public static final int DEFAULT_REMOTE_PARALLELISM = 16;
+	public static final int DEFAULT_CONNECTIONS_PER_HOST = 2;
+	private static final String VALIDATORS_SUFFIX = ".validators";
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String NEXT_UPDATE = "nextUpdate";
+	
+	private final Map<String, Properties> validators = new ConcurrentHashMap<String, Properties>();
+	private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+	private int connectionsPerHost = DEFAULT_CONNECTIONS_PER_HOST;
 	private String diskPath;
 	private String suffix;
 	private final List<String> srcLocations;
@@ -81,6 +113,240 @@ public class PlainStoreUtils
 		os.close();
 	}
 	
+	/**
+	 * Saves a downloaded file in the disk cache (if enabled) and remembers its validators, 
+	 * so the subsequent downloads can be conditional.
+	 * @param what contents to be cached
+	 * @param url location
+	 * @param conn connection used to download the contents
+	 * @param nextUpdate time after which the contents is known to be outdated, so conditional
+	 * requests shouldn't be used anymore. Can be null.
+	 * @throws URISyntaxException URI syntax exception
+	 * @throws IOException IO exception
+	 */
+	public void saveCacheFile(byte[] what, URL url, URLConnection conn, Date nextUpdate) 
+			throws URISyntaxException, IOException
+	{
+		saveCacheFile(what, url);
+		Properties received = new Properties();
+		if (conn.getHeaderField(ETAG) != null)
+			received.setProperty(ETAG, conn.getHeaderField(ETAG));
+		if (conn.getHeaderField(LAST_MODIFIED) != null)
+			received.setProperty(LAST_MODIFIED, conn.getHeaderField(LAST_MODIFIED));
+		if (received.isEmpty())
+		{
+			forgetValidators(url);
+			return;
+		}
+		if (nextUpdate != null)
+			received.setProperty(NEXT_UPDATE, String.valueOf(nextUpdate.getTime()));
+		validators.put(url.toExternalForm(), received);
+		if (diskPath == null)
+			return;
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(getValidatorsFile(url)));
+		try
+		{
+			received.store(os, null);
+		} finally
+		{
+			os.close();
+		}
+	}
+	
+	/**
+	 * Forgets validators of a location, so the next request won't be conditional.
+	 * @param url location
+	 * @throws URISyntaxException URI syntax exception
+	 */
+	public void forgetValidators(URL url) throws URISyntaxException
+	{
+		validators.remove(url.toExternalForm());
+		if (diskPath != null)
+			getValidatorsFile(url).delete();
+	}
+	
+	/**
+	 * Opens a connection to a remote location. The request is conditional if validators 
+	 * of the previous download are known, the previously downloaded contents is available 
+	 * and it is not outdated.
+	 * @param url location
+	 * @param timeout connect and read timeout in ms
+	 * @param previousAvailable whether the caller has the previously downloaded contents. If false,
+	 * the request is conditional only if the contents is in the disk cache.
+	 * @return connection, use {@link #isNotModified(URLConnection)} to check whether the previous 
+	 * contents can be used.
+	 * @throws IOException IO exception
+	 * @throws URISyntaxException URI syntax exception
+	 */
+	public URLConnection openConnection(URL url, int timeout, boolean previousAvailable) 
+			throws IOException, URISyntaxException
+	{
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(timeout);
+		conn.setReadTimeout(timeout);
+		if (!(conn instanceof HttpURLConnection))
+			return conn;
+		Properties known = getValidators(url, previousAvailable);
+		if (known == null)
+			return conn;
+		if (known.getProperty(ETAG) != null)
+			conn.setRequestProperty("If-None-Match", known.getProperty(ETAG));
+		if (known.getProperty(LAST_MODIFIED) != null)
+			conn.setRequestProperty("If-Modified-Since", known.getProperty(LAST_MODIFIED));
+		return conn;
+	}
+	
+	/**
+	 * @param conn connection opened with {@link #openConnection(URL, int, boolean)}
+	 * @return true if the server responded that the resource was not modified
+	 * @throws IOException IO exception
+	 */
+	public static boolean isNotModified(URLConnection conn) throws IOException
+	{
+		if (!(conn instanceof HttpURLConnection))
+			return false;
+		return ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+	}
+	
+	private Properties getValidators(URL url, boolean previousAvailable) 
+			throws URISyntaxException
+	{
+		boolean cached = diskPath != null && getCacheFile(url).isFile();
+		if (!previousAvailable && !cached)
+			return null;
+		Properties ret = validators.get(url.toExternalForm());
+		if (ret == null && cached)
+		{
+			ret = loadValidators(url);
+			if (ret == null)
+				return null;
+			validators.put(url.toExternalForm(), ret);
+		}
+		if (ret == null)
+			return null;
+		String nextUpdate = ret.getProperty(NEXT_UPDATE);
+		if (nextUpdate != null && Long.parseLong(nextUpdate) < System.currentTimeMillis())
+			return null;
+		return ret;
+	}
+	
+	private Properties loadValidators(URL url) throws URISyntaxException
+	{
+		File file = getValidatorsFile(url);
+		if (!file.isFile())
+			return null;
+		Properties ret = new Properties();
+		try
+		{
+			InputStream is = new BufferedInputStream(new FileInputStream(file));
+			try
+			{
+				ret.load(is);
+			} finally
+			{
+				is.close();
+			}
+			if (ret.getProperty(NEXT_UPDATE) != null)
+				Long.parseLong(ret.getProperty(NEXT_UPDATE));
+		} catch (IOException e)
+		{
+			return null;
+		} catch (NumberFormatException e)
+		{
+			return null;
+		}
+		return ret;
+	}
+	
+	private File getValidatorsFile(URL url) throws URISyntaxException
+	{
+		return new File(getCacheFile(url).getPath() + VALIDATORS_SUFFIX);
+	}
+	
+	/**
+	 * Blocks until a download from the host of the given URL is allowed. The returned permit 
+	 * must be released after the download is finished.
+	 * @param url remote location
+	 * @return the acquired permit
+	 */
+	public Semaphore acquireHostPermit(URL url)
+	{
+		Semaphore permit;
+		synchronized (hostPermits)
+		{
+			String host = url.getHost().toLowerCase();
+			permit = hostPermits.get(host);
+			if (permit == null)
+			{
+				permit = new Semaphore(connectionsPerHost);
+				hostPermits.put(host, permit);
+			}
+		}
+		permit.acquireUninterruptibly();
+		return permit;
+	}
+	
+	/**
+	 * @param connectionsPerHost maximum number of simultaneous downloads from a single host, 
+	 * must be positive. Downloads which are already in progress are not affected.
+	 */
+	public void setConnectionsPerHost(int connectionsPerHost)
+	{
+		if (connectionsPerHost <= 0)
+			throw new IllegalArgumentException("Number of connections per host must be positive");
+		synchronized (hostPermits)
+		{
+			this.connectionsPerHost = connectionsPerHost;
+			hostPermits.clear();
+		}
+	}
+	
+	public int getConnectionsPerHost()
+	{
+		synchronized (hostPermits)
+		{
+			return connectionsPerHost;
+		}
+	}
+	
+	/**
+	 * @param url location
+	 * @return true if the location is a local file
+	 */
+	public static boolean isLocal(URL url)
+	{
+		return url.getProtocol().equalsIgnoreCase("file");
+	}
+	
+	/**
+	 * Orders remote locations so that the consecutive ones are from different hosts, 
+	 * whenever possible. When such a list is downloaded concurrently, the downloads from a 
+	 * single slow host do not occupy all the downloading threads.
+	 * @param locations remote locations
+	 * @return the reordered locations
+	 */
+	public static List<URL> interleaveHosts(Collection<URL> locations)
+	{
+		Map<String, List<URL>> perHost = new LinkedHashMap<String, List<URL>>();
+		for (URL location: locations)
+		{
+			String host = location.getHost().toLowerCase();
+			List<URL> hostLocations = perHost.get(host);
+			if (hostLocations == null)
+			{
+				hostLocations = new ArrayList<URL>();
+				perHost.put(host, hostLocations);
+			}
+			hostLocations.add(location);
+		}
+		List<URL> ret = new ArrayList<URL>(locations.size());
+		for (int i=0; ret.size() < locations.size(); i++)
+			for (List<URL> hostLocations: perHost.values())
+				if (i < hostLocations.size())
+					ret.add(hostLocations.get(i));
+		return ret;
+	}
+	
 	/**
 	 * resolves one wildcard and add results to the resolvedWildcardLocations list
 	 * @param wildcard
@@ -113,6 +379,65 @@ public class PlainStoreUtils
 		}
 	}
 
+	/**
+	 * @return directories in which wildcard locations are resolved
+	 */
+	public Set<File> getWildcardDirectories()
+	{
+		Set<File> ret = new LinkedHashSet<File>();
+		for (String loc: wildcardLocations)
+			ret.add(new File(loc).getAbsoluteFile().getParentFile());
+		return ret;
+	}
+	
+	/**
+	 * @param file file
+	 * @return true if the file is matching any of the wildcard locations. The file need not to exist.
+	 */
+	public boolean isWildcardMatch(File file)
+	{
+		File absFile = file.getAbsoluteFile();
+		for (String loc: wildcardLocations)
+		{
+			File wildcard = new File(loc).getAbsoluteFile();
+			if (wildcard.getParentFile().equals(absFile.getParentFile()) && 
+					new WildcardFileFilter(wildcard.getName()).accept(absFile))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds a location to the resolved wildcards, if it is not yet present there. 
+	 * Useful to update the list without resolving all wildcards again.
+	 * @param u location
+	 */
+	public void addResolvedWildcard(URL u)
+	{
+		if (!resolvedWildcardLocations.contains(u))
+			resolvedWildcardLocations.add(u);
+	}
+	
+	/**
+	 * Removes a location from the resolved wildcards. 
+	 * @param u location
+	 */
+	public void removeResolvedWildcard(URL u)
+	{
+		resolvedWildcardLocations.remove(u);
+	}
+	
+	public static URL toURL(File file)
+	{
+		try
+		{
+			return file.getAbsoluteFile().toURI().toURL();
+		} catch (MalformedURLException e)
+		{
+			throw new RuntimeException("Can't convert File to URL?", e);
+		}
+	}
+	
 	public boolean isPresent(URL u)
 	{
 		return urlLocations.contains(u) || resolvedWildcardLocations.contains(u);
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.pkipath;
+
+import java.util.Date;
+
+/**
+ * Collects, during a single validation, the earliest time after which the validation result 
+ * may change, e.g. next update time of the consulted CRLs and OCSP responses. Additionally 
+ * it is recorded whether the revocation status of any certificate was not determined, 
+ * e.g. because the OCSP responder was not available.
+ * 
+ * @author K. Benedyczak
+ */
+public class ResultLifetimeTracker
+{
+	private long validUntil = Long.MAX_VALUE;
+	private boolean revocationUndetermined;
+
+	/**
+	 * Restricts the lifetime of the result.
+	 * @param until time after which the result may be outdated. If null nothing is changed.
+	 */
+	public synchronized void restrict(Date until)
+	{
+		if (until != null && until.getTime() < validUntil)
+			validUntil = until.getTime();
+	}
+
+	/**
+	 * @return time (in ms) of the earliest recorded limit or {@link Long#MAX_VALUE} if there was no limit
+	 */
+	public synchronized long getValidUntil()
+	{
+		return validUntil;
+	}
+
+	/**
+	 * Records that revocation checking was performed but it was not possible to verify the status 
+	 * of a certificate, either as the result was unknown or as the checking failed in a soft mode.
+	 */
+	public synchronized void markRevocationUndetermined()
+	{
+		revocationUndetermined = true;
+	}
+
+	/**
+	 * @return true if revocation status of any certificate was not determined
+	 */
+	public synchronized boolean isRevocationUndetermined()
+	{
+		return revocationUndetermined;
+	}
+}
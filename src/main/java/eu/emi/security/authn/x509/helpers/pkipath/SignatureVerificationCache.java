@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.pkipath;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
+import eu.emi.security.authn.x509.helpers.crl.IndexedX509CRL;
+import eu.emi.security.authn.x509.helpers.ocsp.BoundedSizeLruMap;
+
+/**
+ * Process wide cache of successfully verified signatures of certificates and CRLs.
+ * The same CA certificates and CRLs are verified over and over again, for each validated chain,
+ * while the outcome of a signature verification depends only on the signed data, the signature and
+ * the public key. Therefore the cache is not related to validation time nor to the trust settings
+ * of a particular validator and is shared by all validators of the JVM.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the verifying public key, signature algorithm,
+ * the signed (TBS) part and the signature. Only successful verifications are remembered, failures are
+ * always reported by the underlying verify operation. 
+ * <p>
+ * CRLs loaded by the CRL stores ({@link IndexedX509CRL}) are not put in the cache: such CRL remembers
+ * the key with which it was verified itself. Therefore its large TBS part is not hashed for each 
+ * check, and the CRL is verified again only after it is reloaded or with a different key 
+ * (e.g. of a changed trust anchor).
+ * <p>
+ * This class is thread safe.
+ *
+ * @author K. Benedyczak
+ */
+public class SignatureVerificationCache
+{
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	private static final SignatureVerificationCache INSTANCE =
+			new SignatureVerificationCache(DEFAULT_MAX_ENTRIES);
+
+	private final BoundedSizeLruMap<String, Boolean> verified;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public SignatureVerificationCache(int maxEntries)
+	{
+		this.verified = new BoundedSizeLruMap<String, Boolean>(maxEntries);
+	}
+
+	/**
+	 * @return the JVM wide instance
+	 */
+	public static SignatureVerificationCache getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Verifies the certificate's signature, unless it was already verified with the same key.
+	 * @param cert certificate to be verified
+	 * @param key issuer's public key
+	 * @param sigProvider JCA provider to be used for verification or null to use the default one
+	 * @throws GeneralSecurityException if the signature is invalid or can not be verified
+	 */
+	public void verify(X509Certificate cert, PublicKey key, String sigProvider)
+			throws GeneralSecurityException
+	{
+		String cacheKey;
+		try
+		{
+			cacheKey = createKey(key, cert.getSigAlgOID(), cert.getTBSCertificate(),
+				cert.getSignature());
+		} catch (CertificateEncodingException e)
+		{
+			cacheKey = null;
+		}
+		if (isVerified(cacheKey))
+			return;
+		if (sigProvider == null)
+			cert.verify(key);
+		else
+			cert.verify(key, sigProvider);
+		markVerified(cacheKey);
+	}
+
+	/**
+	 * Verifies the CRL's signature, unless it was already verified with the same key.
+	 * @param crl CRL to be verified
+	 * @param key issuer's public key
+	 * @throws GeneralSecurityException if the signature is invalid or can not be verified
+	 */
+	public void verify(X509CRL crl, PublicKey key) throws GeneralSecurityException
+	{
+		if (crl instanceof IndexedX509CRL)
+		{
+			verify((IndexedX509CRL) crl, key);
+			return;
+		}
+		String cacheKey;
+		try
+		{
+			cacheKey = createKey(key, crl.getSigAlgOID(), crl.getTBSCertList(), crl.getSignature());
+		} catch (CRLException e)
+		{
+			cacheKey = null;
+		}
+		if (isVerified(cacheKey))
+			return;
+		crl.verify(key);
+		markVerified(cacheKey);
+	}
+
+	private void verify(IndexedX509CRL crl, PublicKey key) throws GeneralSecurityException
+	{
+		if (crl.isVerifiedWith(key))
+		{
+			hits.incrementAndGet();
+			return;
+		}
+		misses.incrementAndGet();
+		crl.verify(key);
+	}
+
+	public synchronized void clear()
+	{
+		verified.clear();
+	}
+
+	public synchronized CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(hits.get(), misses.get(), verified.getEvictions(), 0,
+				verified.size());
+	}
+
+	private synchronized boolean isVerified(String cacheKey)
+	{
+		if (cacheKey != null && verified.get(cacheKey) != null)
+		{
+			hits.incrementAndGet();
+			return true;
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	private synchronized void markVerified(String cacheKey)
+	{
+		if (cacheKey != null)
+			verified.put(cacheKey, Boolean.TRUE);
+	}
+
+	private static String createKey(PublicKey key, String sigAlgOid, byte[] tbs, byte[] signature)
+	{
+		byte[] encodedKey = key.getEncoded();
+		if (encodedKey == null)
+			return null;
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("JDK problem: SHA-256 hash not supported by any provider!", e);
+		}
+		update(digest, encodedKey);
+		update(digest, sigAlgOid.getBytes());
+		update(digest, tbs);
+		update(digest, signature);
+		return Hex.toHexString(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, byte[] data)
+	{
+		digest.update(new byte[] {(byte)(data.length >>> 24), (byte)(data.length >>> 16),
+				(byte)(data.length >>> 8), (byte)data.length});
+		digest.update(data);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.pkipath;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
+import eu.emi.security.authn.x509.helpers.ocsp.BoundedSizeLruMap;
+import eu.emi.security.authn.x509.impl.ValidationResultCacheParameters;
+
+/**
+ * In-memory cache of validation results, keyed by a digest of the validated chain.
+ * <p>
+ * Each entry is valid no longer then: the configured TTL (different for positive and negative results),
+ * the earliest notAfter time of the certificates in the validated chain and the time limit recorded
+ * with {@link ResultLifetimeTracker} during validation (next update of CRLs and OCSP responses).
+ * Positive results, for which the revocation status was not determined (e.g. OCSP responder was 
+ * not available in a soft checking mode), are cached no longer then the negative TTL.
+ * Entries are bound to the generation of the trust anchors snapshot and to the content generation 
+ * of the CRL store used to compute them and are not returned when those generations change.
+ * Additionally the whole cache can be invalidated, e.g. when the validator is reconfigured: each 
+ * invalidation increases the cache generation number and entries computed with an older generation 
+ * are dropped.
+ * <p>
+ * Cached results are copied, so callers can freely modify both the stored and returned objects.
+ * This class is thread safe.
+ *
+ * @author K. Benedyczak
+ */
+public class ValidationResultCache
+{
+	private final long positiveTtl;
+	private final long negativeTtl;
+	private final BoundedSizeLruMap<String, CacheEntry> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private long generation;
+
+	public ValidationResultCache(ValidationResultCacheParameters params)
+	{
+		this.positiveTtl = params.getPositiveTtl();
+		this.negativeTtl = params.getNegativeTtl();
+		this.cache = new BoundedSizeLruMap<String, CacheEntry>(params.getMaxEntries());
+	}
+
+	/**
+	 * @param chain chain to be validated
+	 * @return cache key of the chain
+	 * @throws CertificateEncodingException if any of the certificates can not be encoded
+	 */
+	public String createKey(X509Certificate[] chain) throws CertificateEncodingException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("JDK problem: SHA-256 hash not supported by any provider!", e);
+		}
+		for (X509Certificate cert: chain)
+		{
+			byte[] der = cert.getEncoded();
+			digest.update(new byte[] {(byte)(der.length >>> 24), (byte)(der.length >>> 16),
+					(byte)(der.length >>> 8), (byte)der.length});
+			digest.update(der);
+		}
+		return Hex.toHexString(digest.digest());
+	}
+
+	/**
+	 * @param key chain key
+	 * @param trustGeneration generation of the trust anchors which are currently used
+	 * @param crlGeneration content generation of the CRL store which is currently used
+	 * @return a copy of the cached result or null if there is no valid cached result
+	 */
+	public synchronized ValidationResult get(String key, long trustGeneration, long crlGeneration)
+	{
+		CacheEntry entry = cache.get(key);
+		if (entry == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		if (entry.generation != generation || entry.trustGeneration != trustGeneration ||
+				entry.crlGeneration != crlGeneration || System.currentTimeMillis() > entry.validUntil)
+		{
+			cache.remove(key);
+			misses.incrementAndGet();
+			expirations.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copy(entry.result);
+	}
+
+	/**
+	 * @return the current generation. It should be obtained before starting a validation
+	 * and passed to {@link #put(String, X509Certificate[], ValidationResult, ResultLifetimeTracker, long, long, long)}
+	 */
+	public synchronized long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Stores a result, if it is cacheable.
+	 * @param key chain key
+	 * @param chain the validated chain
+	 * @param result the validation result, before any further processing by validation listeners
+	 * @param tracker tracker used during validation
+	 * @param startGeneration generation obtained before validation was started. If trust material
+	 * was updated in the meantime, the result is not stored.
+	 * @param trustGeneration generation of the trust anchors used in validation
+	 * @param crlGeneration content generation of the CRL store, obtained before validation was started
+	 */
+	public synchronized void put(String key, X509Certificate[] chain, ValidationResult result,
+			ResultLifetimeTracker tracker, long startGeneration, long trustGeneration, long crlGeneration)
+	{
+		if (startGeneration != generation)
+			return;
+		long ttl = result.isValid() ? positiveTtl : negativeTtl;
+		if (result.isValid() && tracker.isRevocationUndetermined())
+			ttl = Math.min(ttl, negativeTtl);
+		if (ttl <= 0)
+			return;
+		long now = System.currentTimeMillis();
+		long validUntil = Math.min(now + ttl, tracker.getValidUntil());
+		for (X509Certificate cert: chain)
+			validUntil = Math.min(validUntil, cert.getNotAfter().getTime());
+		List<X509Certificate> validChain = result.getValidChain();
+		if (validChain != null)
+			for (X509Certificate cert: validChain)
+				validUntil = Math.min(validUntil, cert.getNotAfter().getTime());
+		if (validUntil <= now)
+			return;
+		cache.put(key, new CacheEntry(copy(result), validUntil, generation, trustGeneration, 
+				crlGeneration));
+	}
+
+	/**
+	 * Drops all cached results. Validations which are in progress will not store their results.
+	 */
+	public synchronized void invalidate()
+	{
+		generation++;
+		cache.clear();
+	}
+
+	public synchronized CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(hits.get(), misses.get(), cache.getEvictions(),
+				expirations.get(), cache.size());
+	}
+
+	private static ValidationResult copy(ValidationResult src)
+	{
+		List<X509Certificate> validChain = src.getValidChain() == null ? null :
+			new ArrayList<X509Certificate>(src.getValidChain());
+		return new ValidationResult(src.isValid(), src.getErrors(),
+				new HashSet<String>(src.getUnresolvedCriticalExtensions()), validChain);
+	}
+
+	private static class CacheEntry
+	{
+		private final ValidationResult result;
+		private final long validUntil;
+		private final long generation;
+		private final long trustGeneration;
+		private final long crlGeneration;
+
+		public CacheEntry(ValidationResult result, long validUntil, long generation, long trustGeneration,
+				long crlGeneration)
+		{
+			this.result = result;
+			this.validUntil = validUntil;
+			this.generation = generation;
+			this.trustGeneration = trustGeneration;
+			this.crlGeneration = crlGeneration;
+		}
+	}
+}
@@ -79,6 +79,7 @@ import org.bouncycastle.util.StoreException;
 import org.bouncycastle.x509.X509AttributeCertificate;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
 
+import eu.emi.security.authn.x509.helpers.pkipath.SignatureVerificationCache;
 
 class CertPathValidatorUtilities
 {
@@ -1332,14 +1333,7 @@ class CertPathValidatorUtilities
                                                 String sigProvider)
         throws GeneralSecurityException
     {
-        if (sigProvider == null)
-        {
-            cert.verify(publicKey);
-        }
-        else
-        {
-            cert.verify(publicKey, sigProvider);
-        }
+        SignatureVerificationCache.getInstance().verify(cert, publicKey, sigProvider);
     }
 
     static void checkCRLsNotEmpty(Set crls, Object cert)
@@ -54,6 +54,7 @@ import org.bouncycastle.x509.X509AttributeCertificate;
 
 import eu.emi.security.authn.x509.ValidationErrorCode;
 import eu.emi.security.authn.x509.helpers.pkipath.SimpleValidationErrorException;
+import eu.emi.security.authn.x509.helpers.trust.TrustAnchorIndex;
 
 /**
  * Exposes otherwise hidden methods from {@link CertPathValidatorUtilitiesCanl} plus in some
@@ -63,11 +64,14 @@ import eu.emi.security.authn.x509.helpers.pkipath.SimpleValidationErrorException
 public class CertPathValidatorUtilitiesCanl extends CertPathValidatorUtilities
 {
 	/*
-	 * Delegates to BC method, added to be public. 
+	 * Delegates to BC method, added to be public. If the trust anchors are indexed, only
+	 * the anchors with a matching subject are checked.
 	 */
 	public static TrustAnchor findTrustAnchorPublic(X509Certificate cert, Set<?> trustAnchors,
 			String sigProvider) throws AnnotatedException
 	{
+		if (trustAnchors instanceof TrustAnchorIndex)
+			trustAnchors = ((TrustAnchorIndex) trustAnchors).getIssuerCandidates(cert);
 		return CertPathValidatorUtilities.findTrustAnchor(cert, trustAnchors, sigProvider);
 	}
 
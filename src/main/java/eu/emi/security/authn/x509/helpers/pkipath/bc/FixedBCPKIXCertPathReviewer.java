@@ -90,6 +90,8 @@ import org.bouncycastle.x509.CertPathReviewerException;
 import org.bouncycastle.x509.PKIXCertPathReviewer;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
 
+import eu.emi.security.authn.x509.CrlCheckingMode;
+import eu.emi.security.authn.x509.OCSPCheckingMode;
 import eu.emi.security.authn.x509.RevocationParameters;
 import eu.emi.security.authn.x509.RevocationParameters.RevocationCheckingOrder;
 import eu.emi.security.authn.x509.helpers.ocsp.OCSPRevocationChecker;
@@ -119,6 +121,8 @@ public class FixedBCPKIXCertPathReviewer extends PKIXCertPathReviewer
     
     private boolean initialized;
     
+    private OCSPVerifier ocspVerifier;
+    
     /** 
      * Initializes the PKIXCertPathReviewer with the given {@link CertPath} and {@link PKIXParameters} params
      * @param certPath the {@link CertPath} to validate
@@ -506,7 +510,8 @@ private void checkSignatures()
         try
         {
             X509Certificate cert = (X509Certificate) certs.get(certs.size() - 1);
-            Collection trustColl = getTrustAnchors(cert,pkixParams.getBaseParameters().getTrustAnchors());
+            Collection trustColl = getTrustAnchors(cert,
+                    pkixParams.getTrustAnchorIndex().getIssuerCandidates(cert));
             if (trustColl.size() > 1)
             {
                 // conflicting trust anchors                
@@ -635,6 +640,11 @@ private void checkSignatures()
         X509Certificate cert = null;
         int i;
 
+        if (pkixParams.getBaseParameters().isRevocationEnabled())
+        {
+            queryOCSPInBatch(pkixParams, trust);
+        }
+
         for (int index = certs.size() - 1; index >= 0; index--)
         {
             //
@@ -1725,9 +1735,8 @@ private void checkSignatures()
 	    RevocationParameters params = paramsPKIX.getRevocationParams();
 	    CRLRevocationChecker crlChecker = new CRLRevocationChecker(paramsPKIX, validDate, 
 			    workingPublicKey, certs, params.getCrlCheckingMode());
-	    OCSPVerifier ocspVerifier = new OCSPVerifier(params.getOcspParameters(), paramsPKIX.getObservers());
-	    OCSPRevocationChecker ocspChecker = new OCSPRevocationChecker(ocspVerifier, 
-			    params.getOcspParameters().getCheckingMode());
+	    OCSPRevocationChecker ocspChecker = new OCSPRevocationChecker(getOCSPVerifier(paramsPKIX), 
+			    params.getOcspParameters().getCheckingMode(), paramsPKIX.getLifetimeTracker());
 	    List<RevocationChecker> revCheckers = new ArrayList<RevocationChecker>(2);
 
 	    if (params.getOrder().equals(RevocationCheckingOrder.CRL_OCSP))
@@ -1741,12 +1750,69 @@ private void checkSignatures()
 	    }
 	    
 	    
+	    boolean verified = false;
 	    for (RevocationChecker checker: revCheckers)
 	    {
 		    RevocationStatus status = checker.checkRevocation(cert, sign);
-		    if (status == RevocationStatus.verified && !params.isUseAllEnabled())
-			    return;
+		    if (status == RevocationStatus.verified)
+		    {
+			    if (!params.isUseAllEnabled())
+				    return;
+			    verified = true;
+		    }
+	    }
+	    
+	    //the revocation was checked but soft-failed or its result was not known
+	    if (!verified && paramsPKIX.getLifetimeTracker() != null && 
+			    (params.getCrlCheckingMode() != CrlCheckingMode.IGNORE || 
+			    params.getOcspParameters().getCheckingMode() != OCSPCheckingMode.IGNORE))
+		    paramsPKIX.getLifetimeTracker().markRevocationUndetermined();
+    }
+    
+    /**
+     * Obtains OCSP statuses of all certificates of the path in advance, so the certificates 
+     * served by the same responder are checked with a single request. Not performed when OCSP 
+     * is likely not to be used, i.e. when it is disabled or used only if CRLs are not available.
+     */
+    protected void queryOCSPInBatch(ExtPKIXParameters2 paramsPKIX, TrustAnchor trust)
+    {
+	    RevocationParameters params = paramsPKIX.getRevocationParams();
+	    if (params.getOcspParameters().getCheckingMode() == OCSPCheckingMode.IGNORE)
+		    return;
+	    if (params.getOrder().equals(RevocationCheckingOrder.CRL_OCSP) && !params.isUseAllEnabled())
+		    return;
+	    List<X509Certificate> toCheck = new ArrayList<X509Certificate>();
+	    List<X509Certificate> issuers = new ArrayList<X509Certificate>();
+	    for (int index = certs.size() - 1; index >= 0; index--)
+	    {
+		    X509Certificate issuer;
+		    if (index == certs.size() - 1)
+			    issuer = trust == null ? null : trust.getTrustedCert();
+		    else
+			    issuer = (X509Certificate) certs.get(index + 1);
+		    if (issuer == null)
+			    continue;
+		    toCheck.add((X509Certificate) certs.get(index));
+		    issuers.add(issuer);
+	    }
+	    if (toCheck.size() > 1)
+		    getOCSPVerifier(paramsPKIX).queryInBatch(toCheck, issuers);
+    }
+    
+    /**
+     * @return OCSP verifier used for all certificates of the path
+     */
+    protected OCSPVerifier getOCSPVerifier(ExtPKIXParameters2 paramsPKIX)
+    {
+	    if (ocspVerifier == null)
+	    {
+		    RevocationParameters params = paramsPKIX.getRevocationParams();
+		    ocspVerifier = paramsPKIX.getOcspClient() == null ? 
+				    new OCSPVerifier(params.getOcspParameters(), paramsPKIX.getObservers()) :
+				    new OCSPVerifier(params.getOcspParameters(), paramsPKIX.getOcspClient(), 
+						    paramsPKIX.getObservers());
 	    }
+	    return ocspVerifier;
     }
     
     protected Vector getCRLDistUrls(CRLDistPoint crlDistPoints)
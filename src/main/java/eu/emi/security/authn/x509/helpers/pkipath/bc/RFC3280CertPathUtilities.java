@@ -67,6 +67,8 @@ import org.bouncycastle.jce.provider.PKIXNameConstraintValidator;
 import org.bouncycastle.jce.provider.PKIXNameConstraintValidatorException;
 import org.bouncycastle.util.Arrays;
 
+import eu.emi.security.authn.x509.helpers.pkipath.SignatureVerificationCache;
+
 class RFC3280CertPathUtilities
 {
     private static final PKIXCRLUtil CRL_UTIL = new PKIXCRLUtil();
@@ -597,7 +599,7 @@ class RFC3280CertPathUtilities
             PublicKey key = (PublicKey)it.next();
             try
             {
-                crl.verify(key);
+                SignatureVerificationCache.getInstance().verify(crl, key);
                 return key;
             }
             catch (Exception e)
@@ -620,7 +622,7 @@ class RFC3280CertPathUtilities
             X509CRL crl = (X509CRL)it.next();
             try
             {
-                crl.verify(key);
+                SignatureVerificationCache.getInstance().verify(crl, key);
                 return crl;
             }
             catch (Exception e)
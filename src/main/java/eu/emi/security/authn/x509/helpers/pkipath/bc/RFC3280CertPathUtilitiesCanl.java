@@ -26,11 +26,17 @@ OTHER DEALINGS IN THE SOFTWARE.
  */
 package eu.emi.security.authn.x509.helpers.pkipath.bc;
 
+import java.math.BigInteger;
 import java.security.PublicKey;
+import java.security.cert.CRL;
 import java.security.cert.CRLException;
+import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
 import java.security.cert.X509CRL;
+import java.security.cert.X509CRLSelector;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -59,6 +65,8 @@ import org.bouncycastle.jce.provider.AnnotatedException;
 import org.bouncycastle.jce.provider.X509CRLObject;
 
 import eu.emi.security.authn.x509.ValidationErrorCode;
+import eu.emi.security.authn.x509.helpers.crl.IndexedX509CRL;
+import eu.emi.security.authn.x509.helpers.crl.RevokedCertificatesIndex;
 import eu.emi.security.authn.x509.helpers.pkipath.ExtPKIXParameters2;
 import eu.emi.security.authn.x509.helpers.pkipath.SimpleValidationErrorException;
 
@@ -91,6 +99,9 @@ public class RFC3280CertPathUtilitiesCanl extends RFC3280CertPathUtilities
 			Date validDate, X509Certificate sign, PublicKey workingPublicKey,
 			List<?> certPathCerts, JcaJceHelper jcaHelper) throws SimpleValidationErrorException
 	{
+		if (isNotRevokedByVerifiedCRL(paramsPKIX.getBaseParameters(), cert, validDate, workingPublicKey))
+			return;
+		
 		SimpleValidationErrorException lastException = null;
 		CRLDistPoint crldp = null;
 		try
@@ -229,6 +240,55 @@ public class RFC3280CertPathUtilitiesCanl extends RFC3280CertPathUtilities
 		}
 	}
 
+	/**
+	 * Fast path of {@link #checkCRLs2(ExtPKIXParameters2, X509Certificate, Date, X509Certificate, PublicKey, List, JcaJceHelper)}
+	 * for the most common case: the issuer of the certificate has a single, complete CRL which is fresh, 
+	 * has no extensions limiting its scope, was already verified with the issuer's key 
+	 * (see {@link IndexedX509CRL#isVerifiedWith(PublicKey)}) and whose Bloom filter rules the certificate out. 
+	 * Such a CRL covers all reasons for all certificates of the issuer, so the full processing of 
+	 * the certificate's distribution points would find the certificate not revoked too.
+	 * <p>
+	 * The CRL must be valid at the validation date and, as in the full processing, must not be expired
+	 * at the current time. In all other cases the full processing decides.
+	 * @return true if the certificate is known not to be revoked. If false, the full processing is required.
+	 */
+	private static boolean isNotRevokedByVerifiedCRL(PKIXExtendedParameters paramsPKIX, X509Certificate cert,
+			Date validDate, PublicKey workingPublicKey)
+	{
+		Date now = new Date();
+		if (validDate.after(now))
+			return false;
+		if (paramsPKIX.isUseDeltasEnabled() || !paramsPKIX.getCRLStores().isEmpty() ||
+				paramsPKIX.getValidityModel() == PKIXExtendedParameters.CHAIN_VALIDITY_MODEL)
+			return false;
+		X509CRLSelector selector = new X509CRLSelector();
+		selector.addIssuer(cert.getIssuerX500Principal());
+		List<CRL> crls = new ArrayList<CRL>(1);
+		try
+		{
+			for (CertStore store: paramsPKIX.getCertStores())
+				crls.addAll(store.getCRLs(selector));
+		} catch (CertStoreException e)
+		{
+			return false;
+		}
+		if (crls.size() != 1 || !(crls.get(0) instanceof IndexedX509CRL))
+			return false;
+		IndexedX509CRL crl = (IndexedX509CRL) crls.get(0);
+		//validDate is not after now, so the CRL not expired now is also not expired at validDate 
+		if (crl.isIndirect() || crl.getNextUpdate() == null || !crl.getNextUpdate().after(now) ||
+				crl.getThisUpdate().after(validDate) || cert.getNotAfter().before(crl.getThisUpdate()))
+			return false;
+		Set<String> criticalExtensions = crl.getCriticalExtensionOIDs();
+		if ((criticalExtensions != null && !criticalExtensions.isEmpty()) ||
+				crl.getExtensionValue(Extension.issuingDistributionPoint.getId()) != null ||
+				crl.getExtensionValue(Extension.deltaCRLIndicator.getId()) != null)
+			return false;
+		if (!crl.isVerifiedWith(workingPublicKey))
+			return false;
+		return !crl.getRevokedCertificatesIndex().mightContain(cert.getSerialNumber());
+	}
+
 	/**
 	 * Checks a distribution point for revocation information for the
 	 * certificate <code>cert</code>.
@@ -671,6 +731,11 @@ public class RFC3280CertPathUtilitiesCanl extends RFC3280CertPathUtilities
 	protected static void getCertStatus(Date validDate, X509CRL crl, Object cert,
 			CertStatus certStatus) throws SimpleValidationErrorException
 	{
+		if (crl instanceof IndexedX509CRL)
+		{
+			getCertStatus(validDate, (IndexedX509CRL) crl, cert, certStatus);
+			return;
+		}
 		X509CRLEntry crl_entry = null;
 
 		boolean isIndirect;
@@ -757,6 +822,56 @@ public class RFC3280CertPathUtilitiesCanl extends RFC3280CertPathUtilities
 		}
 	}	
 	
+	/**
+	 * The same as {@link #getCertStatus(Date, X509CRL, Object, CertStatus)} but uses the index of 
+	 * revoked certificates, so CRL entries are not created. Certificates which are not revoked 
+	 * are in most cases recognized by the Bloom filter of the index, before anything else is checked. 
+	 */
+	private static void getCertStatus(Date validDate, IndexedX509CRL crl, Object cert,
+			CertStatus certStatus) throws SimpleValidationErrorException
+	{
+		RevokedCertificatesIndex index = crl.getRevokedCertificatesIndex();
+		BigInteger serial = CertPathValidatorUtilitiesCanl.getSerialNumber(cert);
+		if (!index.mightContain(serial))
+			return;
+		
+		X500Name certIssuer = PrincipalUtils.getEncodedIssuerPrincipal(cert);
+		if (!crl.isIndirect() && !certIssuer.equals(PrincipalUtils.getIssuerPrincipal(crl)))
+			return; // not for our issuer, ignore
+		
+		for (int i = index.find(serial); index.hasSerial(i, serial); i++)
+		{
+			if (crl.isIndirect())
+			{
+				X500Principal certificateIssuer = index.getCertificateIssuer(i);
+				X500Name entryIssuer = certificateIssuer == null ? 
+						PrincipalUtils.getIssuerPrincipal(crl) : 
+						X500Name.getInstance(certificateIssuer.getEncoded());
+				if (!certIssuer.equals(entryIssuer))
+					continue;
+			}
+			
+			int reasonCode = index.getReason(i);
+			if (reasonCode == RevokedCertificatesIndex.INVALID_REASON)
+				throw new SimpleValidationErrorException(ValidationErrorCode.crlReasonExtError);
+			long revocationDate = index.getRevocationDate(i);
+			
+			// for reason keyCompromise, caCompromise, aACompromise or
+			// unspecified
+			if (!(validDate.getTime() < revocationDate)
+					|| reasonCode == RevokedCertificatesIndex.NO_REASON 
+					|| reasonCode == 0 || reasonCode == 1
+					|| reasonCode == 2 || reasonCode == 8)
+			{
+				// (i) or (j) (1) and (2)
+				certStatus.setCertStatus(reasonCode == RevokedCertificatesIndex.NO_REASON ? 
+						CRLReason.unspecified : reasonCode);
+				certStatus.setRevocationDate(new Date(revocationDate));
+			}
+			return;
+		}
+	}
+	
 	/*
 	 * Code from pre 1-52 update of canl TODO - remove after tests of the new version
 	private static void getCertStatus(Date validDate, X509CRL crl, Object cert,
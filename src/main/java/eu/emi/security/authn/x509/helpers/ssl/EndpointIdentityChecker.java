@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.ssl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.util.IPAddress;
+
+/**
+ * Checks the identity of a server against its certificate, in the same way as the JDK does when
+ * the endpoint identification algorithm is set in {@link javax.net.ssl.SSLParameters}.
+ * The 'HTTPS' (RFC 2818) and 'LDAPS' (RFC 2830) algorithms are supported:
+ * <ul>
+ * <li> an IP address is matched only against the IP addresses of the Subject Alternative Name,
+ * <li> a host name is matched against the dNSNames of the Subject Alternative Name, or against
+ * the most specific Common Name of the subject if there is no dNSName,
+ * <li> in the HTTPS mode wildcards are allowed in each label of the name but the last one,
+ * in the LDAPS mode only in the leftmost label. A wildcard matches a fragment of a single label.
+ * </ul>
+ * Contrary to the {@link HostnameToCertificateChecker} no name resolution is ever performed and
+ * the 'service/hostname' syntax of the Common Name is not supported.
+ *
+ * @author K. Benedyczak
+ */
+public class EndpointIdentityChecker
+{
+	public static final String HTTPS = "HTTPS";
+	public static final String LDAPS = "LDAPS";
+
+	/**
+	 * @param algorithm endpoint identification algorithm, HTTPS or LDAPS
+	 * @param host the server's host name or IP address
+	 * @param certificate the server's certificate
+	 * @throws CertificateException if the certificate doesn't match the host or the algorithm
+	 * is not supported
+	 */
+	public static void checkIdentity(String algorithm, String host, X509Certificate certificate)
+			throws CertificateException
+	{
+		boolean leftmostWildcardOnly;
+		if (HTTPS.equalsIgnoreCase(algorithm))
+			leftmostWildcardOnly = false;
+		else if (LDAPS.equalsIgnoreCase(algorithm))
+			leftmostWildcardOnly = true;
+		else
+			throw new CertificateException("Unknown endpoint identification algorithm: " + algorithm);
+
+		if (host.startsWith("[") && host.endsWith("]"))
+			host = host.substring(1, host.length() - 1);
+		boolean matches = IPAddress.isValid(host) ? matchesIP(host, certificate) :
+			matchesDNS(host, certificate, leftmostWildcardOnly);
+		if (!matches)
+			throw new CertificateException("The peer's certificate with subject's DN " +
+					certificate.getSubjectX500Principal().getName() +
+					" doesn't match the peer's host name " + host);
+	}
+
+	private static boolean matchesIP(String host, X509Certificate certificate) throws CertificateException
+	{
+		//both are literal addresses, so no name resolution is performed
+		byte[] address = toAddress(host);
+		for (String ip: getAltNames(certificate, GeneralName.iPAddress))
+		{
+			if (IPAddress.isValid(ip) && Arrays.equals(address, toAddress(ip)))
+				return true;
+		}
+		return false;
+	}
+
+	private static byte[] toAddress(String literal) throws CertificateException
+	{
+		try
+		{
+			return InetAddress.getByName(literal).getAddress();
+		} catch (UnknownHostException e)
+		{
+			throw new CertificateException("Invalid IP address " + literal, e);
+		}
+	}
+
+	private static boolean matchesDNS(String host, X509Certificate certificate,
+			boolean leftmostWildcardOnly) throws CertificateException
+	{
+		String name = normalize(host);
+		List<String> dnsNames = getAltNames(certificate, GeneralName.dNSName);
+		if (dnsNames.isEmpty())
+		{
+			String cn = new HostnameToCertificateChecker().getMostSpecificCN(
+					certificate.getSubjectX500Principal());
+			return cn != null && matchesPattern(name, normalize(cn), leftmostWildcardOnly);
+		}
+		for (String dnsName: dnsNames)
+		{
+			if (matchesPattern(name, normalize(dnsName), leftmostWildcardOnly))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean matchesPattern(String name, String pattern, boolean leftmostWildcardOnly)
+	{
+		String[] nameLabels = name.split("\\.", -1);
+		String[] patternLabels = pattern.split("\\.", -1);
+		if (nameLabels.length != patternLabels.length)
+			return false;
+		int last = patternLabels.length - 1;
+		if (patternLabels[last].indexOf('*') >= 0)
+			return false;
+		for (int i=0; i<patternLabels.length; i++)
+		{
+			boolean wildcardAllowed = i == 0 || !leftmostWildcardOnly;
+			if (!wildcardAllowed && patternLabels[i].indexOf('*') >= 0)
+				return false;
+			if (!HostnameToCertificateChecker.matchesDNS(nameLabels[i], patternLabels[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private static String normalize(String name)
+	{
+		String ret = name.toLowerCase(Locale.ENGLISH);
+		if (ret.endsWith("."))
+			ret = ret.substring(0, ret.length() - 1);
+		return ret;
+	}
+
+	private static List<String> getAltNames(X509Certificate certificate, int type)
+			throws CertificateException
+	{
+		List<String> ret = new ArrayList<String>();
+		Collection<List<?>> altNames = certificate.getSubjectAlternativeNames();
+		if (altNames == null)
+			return ret;
+		for (List<?> altName: altNames)
+		{
+			if (((Integer) altName.get(0)).intValue() == type)
+				ret.add((String) altName.get(1));
+		}
+		return ret;
+	}
+}
@@ -4,14 +4,30 @@
  */
 package eu.emi.security.authn.x509.helpers.ssl;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.security.AlgorithmConstraints;
+import java.security.CryptoPrimitive;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
 
 import eu.emi.security.authn.x509.ValidationResult;
 import eu.emi.security.authn.x509.X509CertChainValidator;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPClientImpl;
+import eu.emi.security.authn.x509.helpers.ocsp.StapledOCSPResponses;
 
 /**
  * Implementation of {@link TrustManager} which uses a configured {@link X509CertChainValidator}
@@ -29,12 +45,26 @@ import eu.emi.security.authn.x509.X509CertChainValidator;
  * a sleep before throwing an exception by checkClientTrusted(). But it is hard to provide a good value, and what is
  * more this timeout is obviously slowing the invalid connection dropping, what might be used to perform DoS attacs.
  * Therefore there is no solution implemented.  
+ * <p>
+ * When checking a server, OCSP responses stapled by the server to the TLS handshake are verified 
+ * and used by the validator's OCSP checking instead of querying the responders. The stapled responses
+ * are available only on Java 9 and newer, on older versions the responders are always queried.
+ * <p>
+ * As this class is a {@link X509ExtendedTrustManager}, the JDK doesn't wrap it and doesn't perform
+ * on its own the checks configured in the connection's {@link SSLParameters}. Therefore the peer's 
+ * certificates are checked against the algorithm constraints set there and, if an endpoint 
+ * identification algorithm is set, the server's host name is checked against its certificate 
+ * with {@link EndpointIdentityChecker}, as the JDK would do. 
  * 
  * @author K. Benedyczak
  */
-public class SSLTrustManager implements X509TrustManager
+public class SSLTrustManager extends X509ExtendedTrustManager
 {
+	private static final Set<CryptoPrimitive> SIGNATURE_PRIMITIVES = 
+			Collections.unmodifiableSet(EnumSet.of(CryptoPrimitive.SIGNATURE));
+	private static final Method GET_STATUS_RESPONSES = getStatusResponsesMethod();
 	protected X509CertChainValidator validator;
+	private final OCSPClientImpl ocspClient = new OCSPClientImpl();
 	
 	public SSLTrustManager(X509CertChainValidator validator)
 	{
@@ -61,6 +91,174 @@ public class SSLTrustManager implements X509TrustManager
 		checkIfTrusted(chain);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException
+	{
+		checkIfTrusted(chain);
+		if (socket instanceof SSLSocket)
+			checkAlgorithmConstraints(chain, ((SSLSocket) socket).getSSLParameters());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException
+	{
+		checkIfTrusted(chain);
+		if (engine != null)
+			checkAlgorithmConstraints(chain, engine.getSSLParameters());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException
+	{
+		if (socket instanceof SSLSocket)
+		{
+			SSLSocket sslSocket = (SSLSocket) socket;
+			checkServerTrusted(chain, sslSocket.getHandshakeSession(), sslSocket.getSSLParameters());
+		} else
+			checkIfTrusted(chain);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException
+	{
+		if (engine != null)
+			checkServerTrusted(chain, engine.getHandshakeSession(), engine.getSSLParameters());
+		else
+			checkIfTrusted(chain);
+	}
+
+	protected void checkServerTrusted(X509Certificate[] chain, SSLSession session, 
+			SSLParameters sslParams) throws CertificateException
+	{
+		StapledOCSPResponses stapled = getStapledResponses(chain, session);
+		if (stapled == null)
+		{
+			checkIfTrusted(chain);
+		} else
+		{
+			StapledOCSPResponses.setCurrent(stapled);
+			try
+			{
+				checkIfTrusted(chain);
+			} finally
+			{
+				StapledOCSPResponses.setCurrent(null);
+			}
+		}
+		checkAlgorithmConstraints(chain, sslParams);
+		checkEndpointIdentity(chain, session, sslParams);
+	}
+
+	/**
+	 * @return verified OCSP responses stapled by the server or null if there are none
+	 */
+	protected StapledOCSPResponses getStapledResponses(X509Certificate[] chain, SSLSession session)
+	{
+		if (!(session instanceof ExtendedSSLSession))
+			return null;
+		List<byte[]> encoded = getStatusResponses((ExtendedSSLSession) session);
+		if (encoded == null || encoded.isEmpty())
+			return null;
+		StapledOCSPResponses stapled = new StapledOCSPResponses(chain, encoded, ocspClient);
+		return stapled.isEmpty() ? null : stapled;
+	}
+
+	/**
+	 * The {@link ExtendedSSLSession#getStatusResponses()} is available since Java 9, so it is 
+	 * called reflectively.
+	 * @return the stapled responses or null if they are not available 
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<byte[]> getStatusResponses(ExtendedSSLSession session)
+	{
+		if (GET_STATUS_RESPONSES == null)
+			return null;
+		try
+		{
+			return (List<byte[]>) GET_STATUS_RESPONSES.invoke(session);
+		} catch (IllegalAccessException e)
+		{
+			return null;
+		} catch (InvocationTargetException e)
+		{
+			return null;
+		}
+	}
+
+	private static Method getStatusResponsesMethod()
+	{
+		try
+		{
+			return ExtendedSSLSession.class.getMethod("getStatusResponses");
+		} catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Checks the keys and signature algorithms of the peer's certificates against the algorithm
+	 * constraints of the connection. The signature of the last certificate of the chain is not checked
+	 * if it is self issued, as it is not relevant for a trust anchor.
+	 */
+	protected void checkAlgorithmConstraints(X509Certificate[] chain, SSLParameters sslParams) 
+			throws CertificateException
+	{
+		AlgorithmConstraints constraints = sslParams == null ? null : sslParams.getAlgorithmConstraints();
+		if (constraints == null || chain == null)
+			return;
+		for (int i=0; i<chain.length; i++)
+		{
+			X509Certificate cert = chain[i];
+			if (!constraints.permits(SIGNATURE_PRIMITIVES, cert.getPublicKey()))
+				throw new CertificateException("The public key of the peer's certificate with " +
+						"subject's DN " + cert.getSubjectX500Principal().getName() + 
+						" is not permitted by the algorithm constraints");
+			boolean permitted;
+			if (i+1 < chain.length)
+				permitted = constraints.permits(SIGNATURE_PRIMITIVES, cert.getSigAlgName(), 
+						chain[i+1].getPublicKey(), null);
+			else if (!cert.getIssuerX500Principal().equals(cert.getSubjectX500Principal()))
+				permitted = constraints.permits(SIGNATURE_PRIMITIVES, cert.getSigAlgName(), null);
+			else
+				permitted = true;
+			if (!permitted)
+				throw new CertificateException("The signature algorithm " + cert.getSigAlgName() + 
+						" of the peer's certificate with subject's DN " + 
+						cert.getSubjectX500Principal().getName() + 
+						" is not permitted by the algorithm constraints");
+		}
+	}
+
+	protected void checkEndpointIdentity(X509Certificate[] chain, SSLSession session, 
+			SSLParameters sslParams) throws CertificateException
+	{
+		if (sslParams == null || sslParams.getEndpointIdentificationAlgorithm() == null)
+			return;
+		String host = session == null ? null : session.getPeerHost();
+		if (host == null)
+			throw new CertificateException("The peer's host name is unknown, " +
+					"its identity can not be checked");
+		EndpointIdentityChecker.checkIdentity(sslParams.getEndpointIdentificationAlgorithm(), 
+				host, chain[0]);
+	}
+
 	protected void checkIfTrusted(X509Certificate[] certChain) throws CertificateException
 	{
 		ValidationResult result = validator.validate(certChain);
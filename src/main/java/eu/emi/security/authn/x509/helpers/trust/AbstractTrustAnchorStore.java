@@ -6,7 +6,10 @@ package eu.emi.security.authn.x509.helpers.trust;
 
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Set;
 
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
@@ -15,23 +18,59 @@ import eu.emi.security.authn.x509.impl.X500NameUtils;
 
 /**
  * Base implementation of Trust Anchor stores. Provides observers support and utility methods to warn
- * about expired certs.
+ * about expired certs. 
+ * <p>
+ * The contents of the store is kept as an immutable {@link TrustAnchorSnapshot}, which is 
+ * atomically replaced by extensions with {@link #publish(Collection)} whenever trust anchors are reloaded.
+ * Therefore reads never block nor copy the trust anchors.
  *  
  * @author K. Benedyczak
  */
 public abstract class AbstractTrustAnchorStore implements TrustAnchorStore 
 {
 	protected final ObserversHandler observers;
-	private long updateInterval;
+	private volatile long updateInterval;
+	private volatile TrustAnchorSnapshot snapshot;
 	
 	public AbstractTrustAnchorStore(long updateInterval, ObserversHandler observers)
 	{
 		this.observers = observers;
 		this.updateInterval = updateInterval;
+		this.snapshot = TrustAnchorSnapshot.empty();
+	}
+	
+	/**
+	 * Replaces the current contents of the store.
+	 * @param anchors the new trust anchors
+	 */
+	protected void publish(Collection<? extends TrustAnchor> anchors)
+	{
+		snapshot = new TrustAnchorSnapshot(anchors);
+	}
+	
+	@Override
+	public TrustAnchorSnapshot getSnapshot()
+	{
+		return snapshot;
+	}
+	
+	/**
+	 * @return immutable set of trust anchors, shared between callers until the next update
+	 */
+	@Override
+	public Set<TrustAnchor> getTrustAnchors()
+	{
+		return getSnapshot();
+	}
+	
+	@Override
+	public X509Certificate[] getTrustedCertificates()
+	{
+		return getSnapshot().getTrustedCertificates();
 	}
 	
 	@Override
-	public synchronized long getUpdateInterval()
+	public long getUpdateInterval()
 	{
 		return updateInterval;
 	}
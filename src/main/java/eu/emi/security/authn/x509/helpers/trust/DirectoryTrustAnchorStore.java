@@ -13,18 +13,26 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.io.FileUtils;
 
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
+import eu.emi.security.authn.x509.helpers.DirectoryChangeListener;
+import eu.emi.security.authn.x509.helpers.DirectoryWatcher;
+import eu.emi.security.authn.x509.helpers.FileLedger;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
 import eu.emi.security.authn.x509.helpers.pkipath.PlainStoreUtils;
 import eu.emi.security.authn.x509.impl.CertificateUtils;
 import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
@@ -32,6 +40,11 @@ import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
 /**
  * Retrieves CA certificates from locations given as local paths with wildcards
  * or URLs.
+ * <p>
+ * Trust anchors loaded from local files are remembered in a {@link FileLedger}, so periodic updates
+ * parse only the files which were changed. The store contents is republished only if
+ * anything was changed. Locations are loaded in parallel, see {@link ParallelLoader}. The number of 
+ * simultaneous downloads from a single host is limited.
  * @author K. Benedyczak
  */
 public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
@@ -39,7 +52,20 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 	private final PlainStoreUtils utils;
 	private final int connTimeout;
 	private final String cacheDir;
-	protected Set<TrustAnchorExt> anchors;
+	private final Object updateLock = new Object();
+	private final DirectoryChangeListener changeListener = new DirectoryChangeListener()
+	{
+		@Override
+		public void filesChanged(Set<File> changedFiles, boolean overflow)
+		{
+			DirectoryTrustAnchorStore.this.filesChanged(changedFiles, overflow);
+		}
+	};
+	private final FileLedger<Set<TrustAnchorExt>> ledger = new FileLedger<Set<TrustAnchorExt>>();
+	private Map<URL, Set<TrustAnchorExt>> anchorsPerLocation = new HashMap<URL, Set<TrustAnchorExt>>();
+	private DirectoryWatcher watcher;
+	private volatile int loadingParallelism = ParallelLoader.DEFAULT_PARALLELISM;
+	private volatile int remoteLoadingParallelism = PlainStoreUtils.DEFAULT_REMOTE_PARALLELISM;
 	protected Encoding encoding;
 
 
@@ -51,6 +77,20 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 				updateInterval, encoding, listeners, false);
 	}
 
+	/**
+	 * @param loadingParallelism maximum number of threads used to load trust anchors
+	 */
+	public DirectoryTrustAnchorStore(List<String> locations, String diskCache,
+			int connectionTimeout, Timer t, long updateInterval, Encoding encoding,
+			ObserversHandler listeners, int loadingParallelism)
+	{
+		this(locations, diskCache, connectionTimeout, t, 
+				updateInterval, encoding, listeners, true);
+		setLoadingParallelism(loadingParallelism);
+		update();
+		scheduleUpdate();
+	}
+
 	protected DirectoryTrustAnchorStore(List<String> locations, String diskCache,
 			int connectionTimeout, Timer t, long updateInterval, Encoding encoding, 
 			ObserversHandler observers, boolean noFirstUpdate)
@@ -61,7 +101,6 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 			throw new IllegalArgumentException("Remote connection timeout must be a non negative number");
 		this.connTimeout = connectionTimeout;
 		this.cacheDir = diskCache;
-		anchors = new HashSet<TrustAnchorExt>();
 		this.encoding = encoding;
 		if (!noFirstUpdate)
 		{
@@ -72,21 +111,38 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 
 	protected X509Certificate[] loadCerts(URL url) throws IOException, URISyntaxException, CertificateEncodingException
 	{
-		String protocol = url.getProtocol();
-		boolean local = false;
-		if (protocol.equalsIgnoreCase("file"))
-			local = true;
+		boolean local = PlainStoreUtils.isLocal(url);
 		X509Certificate[] ret;
+		URLConnection conn;
 		try
 		{
-			URLConnection conn = url.openConnection();
 			if (!local)
 			{
-				conn.setConnectTimeout(connTimeout);
-				conn.setReadTimeout(connTimeout);
+				Semaphore permit = utils.acquireHostPermit(url);
+				try
+				{
+					X509Certificate[] previous = getLoadedCerts(url);
+					conn = utils.openConnection(url, connTimeout, previous != null);
+					if (PlainStoreUtils.isNotModified(conn))
+					{
+						ret = previous != null ? previous : loadCachedCerts(url);
+						observers.notifyObservers(url.toExternalForm(),
+								StoreUpdateListener.CA_CERT,
+								Severity.NOTIFICATION, null);
+						return ret;
+					}
+					ret = CertificateUtils.loadCertificates(
+							new BufferedInputStream(conn.getInputStream()), getEncoding());
+				} finally
+				{
+					permit.release();
+				}
+			} else
+			{
+				conn = url.openConnection();
+				ret = CertificateUtils.loadCertificates(
+						new BufferedInputStream(conn.getInputStream()), getEncoding());
 			}
-			InputStream is = new BufferedInputStream(conn.getInputStream());
-			ret = CertificateUtils.loadCertificates(is, getEncoding());
 			observers.notifyObservers(url.toExternalForm(),
 					StoreUpdateListener.CA_CERT,
 					Severity.NOTIFICATION, null);
@@ -97,10 +153,7 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 				File input = utils.getCacheFile(url);
 				if (input.exists())
 				{
-					InputStream is = new BufferedInputStream(
-							new FileInputStream(input));
-					ret = CertificateUtils.loadCertificates(is, getEncoding());
-					is.close();
+					ret = loadCachedCerts(url);
 					observers.notifyObservers(url.toExternalForm(),
 							StoreUpdateListener.CA_CERT,
 							Severity.WARNING,
@@ -114,45 +167,247 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 		}
 		
 		if (!local && ret.length == 1)
-			utils.saveCacheFile(ret[0].getEncoded(), url);
+			utils.saveCacheFile(ret[0].getEncoded(), url, conn, null);
 		
 		return ret;
 	}
 
+	/**
+	 * The disk cache holds certificates in the DER form, regardless of the store encoding.
+	 */
+	private X509Certificate[] loadCachedCerts(URL url) throws IOException, URISyntaxException
+	{
+		InputStream is = new BufferedInputStream(new FileInputStream(utils.getCacheFile(url)));
+		try
+		{
+			return CertificateUtils.loadCertificates(is, Encoding.DER);
+		} catch (IOException e)
+		{
+			utils.forgetValidators(url);
+			throw e;
+		} finally
+		{
+			is.close();
+		}
+	}
+	
+	private synchronized X509Certificate[] getLoadedCerts(URL url)
+	{
+		Set<TrustAnchorExt> anchors = anchorsPerLocation.get(url);
+		if (anchors == null)
+			return null;
+		X509Certificate[] ret = new X509Certificate[anchors.size()];
+		int i=0;
+		for (TrustAnchorExt anchor: anchors)
+			ret[i++] = anchor.getTrustedCert();
+		return ret;
+	}
+
 	/**
 	 * For all URLs tries to load a CA cert. Information for extensions:
-	 * this method is guaranteed to be called once per update.
+	 * this method is guaranteed to be called once per full update. Local files which 
+	 * were not changed since the previous update are not parsed again.
 	 *
 	 * @param locations a collection of URLs
 	 */
 	protected void reloadCerts(Collection<URL> locations)
 	{
-		Set<TrustAnchorExt> tmpAnchors = new HashSet<TrustAnchorExt>();
-		for (URL location: locations)
+		List<URL> all = new ArrayList<URL>(locations);
+		List<Set<TrustAnchorExt>> results = loadAnchorsCached(all);
+		Map<URL, Set<TrustAnchorExt>> loaded = new HashMap<URL, Set<TrustAnchorExt>>();
+		List<File> files = new ArrayList<File>();
+		for (int i=0; i<all.size(); i++)
 		{
-			X509Certificate[] certs;
-			try
+			File file = toLocalFile(all.get(i));
+			if (file != null)
+				files.add(file);
+			if (results.get(i) != null)
+				loaded.put(all.get(i), results.get(i));
+		}
+		ledger.retainAll(files);
+		synchronized(this)
+		{
+			boolean changed = !loaded.equals(anchorsPerLocation);
+			anchorsPerLocation = loaded;
+			publishLoadedAnchors(changed);
+		}
+	}
+
+	/**
+	 * Reloads only the given locations, the remaining trust anchors are kept.
+	 * @param modified locations which were added or modified
+	 * @param removed locations which were removed
+	 */
+	protected void reloadChangedCerts(Collection<URL> modified, Collection<URL> removed)
+	{
+		List<URL> all = new ArrayList<URL>(modified);
+		List<Set<TrustAnchorExt>> results = loadAnchorsCached(all);
+		Map<URL, Set<TrustAnchorExt>> loaded = new HashMap<URL, Set<TrustAnchorExt>>();
+		for (int i=0; i<all.size(); i++)
+			loaded.put(all.get(i), results.get(i));
+		for (URL location: removed)
+		{
+			File file = toLocalFile(location);
+			if (file != null)
+				ledger.remove(file);
+		}
+		synchronized(this)
+		{
+			Map<URL, Set<TrustAnchorExt>> previous = new HashMap<URL, Set<TrustAnchorExt>>(
+					anchorsPerLocation);
+			for (URL location: removed)
+				anchorsPerLocation.remove(location);
+			for (Map.Entry<URL, Set<TrustAnchorExt>> entry: loaded.entrySet())
 			{
-				certs = loadCerts(location);
-			} catch (Exception e)
+				if (entry.getValue() == null)
+					anchorsPerLocation.remove(entry.getKey());
+				else
+					anchorsPerLocation.put(entry.getKey(), entry.getValue());
+			}
+			publishLoadedAnchors(!previous.equals(anchorsPerLocation));
+		}
+	}
+	
+	/**
+	 * Remote locations are downloaded with a separate parallelism, as their loading is not bound by CPU.
+	 * @return results in the order of locations
+	 */
+	private List<Set<TrustAnchorExt>> loadAnchorsCached(List<URL> locations)
+	{
+		List<URL> remote = new ArrayList<URL>();
+		List<URL> local = new ArrayList<URL>();
+		for (URL location: locations)
+		{
+			if (PlainStoreUtils.isLocal(location))
+				local.add(location);
+			else
+				remote.add(location);
+		}
+		if (remote.isEmpty())
+			return loadAnchorsCached(local, loadingParallelism);
+		
+		Map<URL, Set<TrustAnchorExt>> loaded = new HashMap<URL, Set<TrustAnchorExt>>();
+		remote = PlainStoreUtils.interleaveHosts(remote);
+		List<Set<TrustAnchorExt>> remoteResults = loadAnchorsCached(remote, remoteLoadingParallelism);
+		for (int i=0; i<remote.size(); i++)
+			loaded.put(remote.get(i), remoteResults.get(i));
+		List<Set<TrustAnchorExt>> localResults = loadAnchorsCached(local, loadingParallelism);
+		for (int i=0; i<local.size(); i++)
+			loaded.put(local.get(i), localResults.get(i));
+		List<Set<TrustAnchorExt>> ret = new ArrayList<Set<TrustAnchorExt>>(locations.size());
+		for (URL location: locations)
+			ret.add(loaded.get(location));
+		return ret;
+	}
+	
+	private List<Set<TrustAnchorExt>> loadAnchorsCached(List<URL> locations, int parallelism)
+	{
+		return ParallelLoader.loadAll(locations, parallelism, 
+				new ParallelLoader.Task<URL, Set<TrustAnchorExt>>()
+		{
+			@Override
+			public Set<TrustAnchorExt> load(URL location)
 			{
-				observers.notifyObservers(location.toExternalForm(), 
-						StoreUpdateListener.CA_CERT,
-						Severity.ERROR, e);
-				continue;
+				return loadAnchorsCached(location, toLocalFile(location));
 			}
-			for (X509Certificate cert: certs)
+		});
+	}
+	
+	private Set<TrustAnchorExt> loadAnchorsCached(final URL location, File file)
+	{
+		if (file == null)
+			return loadAnchors(location);
+		final boolean[] parsed = new boolean[1];
+		Set<TrustAnchorExt> ret = ledger.get(file, new FileLedger.Loader<Set<TrustAnchorExt>>()
+		{
+			@Override
+			public Set<TrustAnchorExt> load(File f)
 			{
-				checkValidity(location.toExternalForm(), cert, false);
-				TrustAnchorExt anchor = new TrustAnchorExt(cert, null);
-				tmpAnchors.add(anchor);
+				parsed[0] = true;
+				return loadAnchors(location);
 			}
+		});
+		if (ret != null && !parsed[0])
+		{
+			observers.notifyObservers(location.toExternalForm(), StoreUpdateListener.CA_CERT,
+					Severity.NOTIFICATION, null);
+			for (TrustAnchorExt anchor: ret)
+				checkValidity(location.toExternalForm(), anchor.getTrustedCert(), false);
 		}
-		synchronized(this)
+		return ret;
+	}
+	
+	private static File toLocalFile(URL location)
+	{
+		if (!location.getProtocol().equalsIgnoreCase("file"))
+			return null;
+		return FileUtils.toFile(location);
+	}
+	
+	/**
+	 * Remembers trust anchors which were loaded from a local file earlier, e.g. restored from a snapshot.
+	 * Unless the file was changed since then, it won't be parsed by the subsequent updates.
+	 * @param file file from which the anchors were loaded
+	 * @param lastModified modification time of the file when it was loaded
+	 * @param length size of the file when it was loaded
+	 * @param digest SHA-256 digest of the file contents
+	 * @param anchors trust anchors loaded from the file
+	 */
+	protected void restoreAnchors(File file, long lastModified, long length, byte[] digest, 
+			Set<TrustAnchorExt> anchors)
+	{
+		ledger.put(file, lastModified, length, digest, anchors);
+	}
+	
+	/**
+	 * Loads trust anchors from a single location. Invoked concurrently for different locations.
+	 * @param location location
+	 * @return loaded trust anchors or null if nothing can be loaded from the location 
+	 */
+	protected Set<TrustAnchorExt> loadAnchors(URL location)
+	{
+		X509Certificate[] certs;
+		try
+		{
+			certs = loadCerts(location);
+		} catch (Exception e)
 		{
-			anchors.clear();
-			anchors.addAll(tmpAnchors);
+			observers.notifyObservers(location.toExternalForm(), 
+					StoreUpdateListener.CA_CERT,
+					Severity.ERROR, e);
+			return null;
+		}
+		Set<TrustAnchorExt> ret = new HashSet<TrustAnchorExt>();
+		for (X509Certificate cert: certs)
+		{
+			checkValidity(location.toExternalForm(), cert, false);
+			ret.add(new TrustAnchorExt(cert, null));
 		}
+		return ret;
+	}
+	
+	private void publishLoadedAnchors(boolean changed)
+	{
+		if (anchorsUpdated(anchorsPerLocation.keySet()))
+			changed = true;
+		if (!changed)
+			return;
+		Set<TrustAnchorExt> all = new HashSet<TrustAnchorExt>();
+		for (Set<TrustAnchorExt> anchors: anchorsPerLocation.values())
+			all.addAll(anchors);
+		publish(all);
+	}
+	
+	/**
+	 * Invoked (with lock held) after each update, before the store contents is published. 
+	 * This implementation does nothing, extensions can override it to load additional trust material.
+	 * @param locations all locations from which trust anchors are loaded
+	 * @return true if the additional trust material was changed, so the store contents must 
+	 * be republished even if the trust anchors are the same.
+	 */
+	protected boolean anchorsUpdated(Collection<URL> locations)
+	{
+		return false;
 	}
 	
 	/**
@@ -165,29 +420,92 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 	 */
 	public void update()
 	{
-		utils.establishWildcardsLocations();
-		List<URL> resolvedLocations = new ArrayList<URL>();
-		resolvedLocations.addAll(utils.getURLLocations());
-		resolvedLocations.addAll(utils.getResolvedWildcards());
-		reloadCerts(resolvedLocations);
+		synchronized (updateLock)
+		{
+			utils.establishWildcardsLocations();
+			List<URL> resolvedLocations = new ArrayList<URL>();
+			resolvedLocations.addAll(utils.getURLLocations());
+			resolvedLocations.addAll(utils.getResolvedWildcards());
+			reloadCerts(resolvedLocations);
+		}
 	}
 	
-	@Override
-	public synchronized Set<TrustAnchor> getTrustAnchors()
+	/**
+	 * Starts watching the directories of the wildcard locations for changes. Changed files are 
+	 * reloaded without rescanning the whole store, after no other change was detected for the 
+	 * given delay. Periodic updates can be turned off when watching is enabled. 
+	 * Requires Java 7. If the directories can not be watched, an error is reported to observers and 
+	 * only the periodic updates are used.
+	 * @param delay time in ms without subsequent changes, after which the changes are applied.
+	 */
+	public synchronized void watchDirectories(long delay)
 	{
-		Set<TrustAnchor> ret = new HashSet<TrustAnchor>();
-		ret.addAll(anchors);
-		return ret;
+		if (watcher != null)
+			watcher.dispose();
+		Set<File> directories = utils.getWildcardDirectories();
+		if (directories.isEmpty())
+			return;
+		try
+		{
+			watcher = new DirectoryWatcher(directories, delay, changeListener);
+		} catch (IOException e)
+		{
+			observers.notifyObservers(directories.toString(), StoreUpdateListener.CA_CERT,
+					Severity.ERROR, new IOException("Can not watch the truststore " +
+							"directories for changes", e));
+		}
 	}
-
+	
+	/**
+	 * @param file changed file
+	 * @return true if the file can contain trust material of this store
+	 */
+	protected boolean isWatchedFile(File file)
+	{
+		return utils.isWildcardMatch(file);
+	}
+	
+	private void filesChanged(Set<File> changedFiles, boolean overflow)
+	{
+		synchronized (updateLock)
+		{
+			if (overflow)
+			{
+				update();
+				return;
+			}
+			List<URL> modified = new ArrayList<URL>();
+			List<URL> removed = new ArrayList<URL>();
+			for (File file: changedFiles)
+			{
+				if (!isWatchedFile(file))
+					continue;
+				URL url = PlainStoreUtils.toURL(file);
+				if (file.isFile())
+				{
+					utils.addResolvedWildcard(url);
+					modified.add(url);
+				} else
+				{
+					utils.removeResolvedWildcard(url);
+					removed.add(url);
+				}
+			}
+			if (!modified.isEmpty() || !removed.isEmpty())
+				reloadChangedCerts(modified, removed);
+		}
+	}
+	
 	@Override
-	public synchronized X509Certificate[] getTrustedCertificates()
+	public void dispose()
 	{
-		X509Certificate[] ret = new X509Certificate[anchors.size()];
-		int i=0;
-		for (TrustAnchor ta: anchors)
-			ret[i++] = ta.getTrustedCert();
-		return ret;
+		super.dispose();
+		synchronized (this)
+		{
+			if (watcher != null)
+				watcher.dispose();
+			watcher = null;
+		}
 	}
 	
 	public List<String> getLocations()
@@ -195,6 +513,46 @@ public class DirectoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 		return utils.getLocations();
 	}
 	
+	/**
+	 * @param loadingParallelism maximum number of threads used to load trust anchors 
+	 * by the subsequent updates, must be positive
+	 */
+	public void setLoadingParallelism(int loadingParallelism)
+	{
+		if (loadingParallelism <= 0)
+			throw new IllegalArgumentException("Loading parallelism must be positive");
+		this.loadingParallelism = loadingParallelism;
+	}
+	
+	public int getLoadingParallelism()
+	{
+		return loadingParallelism;
+	}
+	
+	/**
+	 * @param remoteLoadingParallelism maximum number of certificates downloaded concurrently 
+	 * from remote URLs by the subsequent updates, must be positive
+	 * @param connectionsPerHost maximum number of certificates downloaded concurrently 
+	 * from a single host, must be positive
+	 */
+	public void setRemoteLoadingLimits(int remoteLoadingParallelism, int connectionsPerHost)
+	{
+		if (remoteLoadingParallelism <= 0)
+			throw new IllegalArgumentException("Remote loading parallelism must be positive");
+		utils.setConnectionsPerHost(connectionsPerHost);
+		this.remoteLoadingParallelism = remoteLoadingParallelism;
+	}
+	
+	public int getRemoteLoadingParallelism()
+	{
+		return remoteLoadingParallelism;
+	}
+	
+	public int getConnectionsPerHost()
+	{
+		return utils.getConnectionsPerHost();
+	}
+	
 	public int getConnTimeout()
 	{
 		return connTimeout;
@@ -9,7 +9,6 @@ import java.security.KeyStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,8 +24,6 @@ import eu.emi.security.authn.x509.helpers.ObserversHandler;
 public class JDKInMemoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 {
 	protected KeyStore keystore;
-	protected Set<TrustAnchor> anchors;
-	protected X509Certificate[] ca;
 	
 	public JDKInMemoryTrustAnchorStore(KeyStore ks) throws KeyStoreException
 	{
@@ -38,14 +35,13 @@ public class JDKInMemoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 	{
 		super(timer, updateInterval, observers);
 		this.keystore = ks;
-		anchors = new HashSet<TrustAnchor>();
 		load();
 	}
 	
 	protected void load() throws KeyStoreException
 	{
 		Enumeration<String> aliases = keystore.aliases();
-		anchors.clear();
+		Set<TrustAnchor> anchors = new HashSet<TrustAnchor>();
 		while (aliases.hasMoreElements())
 		{
 			String alias = aliases.nextElement();
@@ -73,25 +69,7 @@ public class JDKInMemoryTrustAnchorStore extends TimedTrustAnchorStoreBase
 				x509Cert, true);
 			anchors.add(new TrustAnchor(x509Cert, null));
 		}
-		ca = new X509Certificate[anchors.size()];
-		int i=0;
-		for (TrustAnchor anchor: anchors)
-			ca[i++] = anchor.getTrustedCert();
-	}
-	
-	
-	@Override
-	public Set<TrustAnchor> getTrustAnchors()
-	{
-		Set<TrustAnchor> ret = new HashSet<TrustAnchor>();
-		ret.addAll(anchors);
-		return ret;
-	}
-
-	@Override
-	public X509Certificate[] getTrustedCertificates()
-	{
-		return Arrays.copyOf(ca, ca.length);
+		publish(anchors);
 	}
 	
 	public KeyStore getKeyStore()
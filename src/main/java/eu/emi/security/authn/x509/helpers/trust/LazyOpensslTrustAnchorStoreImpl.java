@@ -8,18 +8,20 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.security.auth.x500.X500Principal;
 
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
 import eu.emi.security.authn.x509.helpers.CachedElement;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
 import eu.emi.security.authn.x509.helpers.ns.LazyEuGridPmaNamespacesStore;
@@ -41,28 +43,56 @@ import eu.emi.security.authn.x509.impl.X500NameUtils;
  * This class (contrary to the {@link OpensslTrustAnchorStoreImpl}) doesn't extend {@link DirectoryTrustAnchorStore} 
  * and therefore certificates (and all corresponding files) are not loaded at startup and kept in memory.
  * The files are loaded on-demand and are only cached in memory for no longer then the updateInterval is. 
+ * Files are found with the {@link OpensslDirectoryIndex} shared with the other lazy stores of the directory.
  * 
  * @author K. Benedyczak
  */
 public class LazyOpensslTrustAnchorStoreImpl extends AbstractTrustAnchorStore implements OpensslTrustAnchorStore
 {
 	public static final String CERTS_REGEXP = "........\\.[0-9]+";
-	protected CachedElement<Set<TrustAnchorExt>> cachedAnchors;
-	protected Map<X500Principal, CachedElement<Set<TrustAnchorExt>>> cachedAnchorsPerIssuer;
+	protected volatile CachedElement<TrustAnchorSnapshot> cachedAnchors;
+	protected BoundedCache<X500Principal, Set<TrustAnchorExt>> cachedAnchorsPerIssuer;
+	private final BoundedCache.Loader<X500Principal, Set<TrustAnchorExt>> loader = 
+			new BoundedCache.Loader<X500Principal, Set<TrustAnchorExt>>()
+	{
+		@Override
+		public Set<TrustAnchorExt> load(X500Principal subject)
+		{
+			return loadTrustAnchorsWithSubject(subject);
+		}
+	};
 	private boolean openssl1Mode;
-	private NamespacesStore pmaNsStore;
-	private NamespacesStore globusNsStore;
-	private File baseDirectory;
+	private LazyEuGridPmaNamespacesStore pmaNsStore;
+	private LazyGlobusNamespacesStore globusNsStore;
+	private final OpensslDirectoryIndex directoryIndex;
+	private volatile long perIssuerGeneration;
 	
 	public LazyOpensslTrustAnchorStoreImpl(String basePath, long updateInterval, 
 			ObserversHandler observers, boolean openssl1Mode)
+	{
+		this(basePath, updateInterval, observers, openssl1Mode, BoundedCache.DEFAULT_MAX_ENTRIES);
+	}
+	
+	/**
+	 * @param basePath truststore directory
+	 * @param updateInterval maximum time in ms for which the loaded trust material is cached
+	 * @param observers observers handler
+	 * @param openssl1Mode openssl 1 mode
+	 * @param maxCacheEntries maximum number of subjects with cached trust anchors, and of CAs 
+	 * with cached namespace policies
+	 */
+	public LazyOpensslTrustAnchorStoreImpl(String basePath, long updateInterval, 
+			ObserversHandler observers, boolean openssl1Mode, int maxCacheEntries)
 	{
 		super(updateInterval, observers);
-		this.baseDirectory = new File(basePath);
+		this.directoryIndex = OpensslDirectoryIndex.getInstance(basePath);
 		this.openssl1Mode = openssl1Mode;
-		this.cachedAnchorsPerIssuer = new WeakHashMap<X500Principal, CachedElement<Set<TrustAnchorExt>>>(150);
-		pmaNsStore = new LazyEuGridPmaNamespacesStore(observers, openssl1Mode, basePath, updateInterval);
-		globusNsStore = new LazyGlobusNamespacesStore(observers, openssl1Mode, basePath, updateInterval);
+		this.cachedAnchorsPerIssuer = new TrustAnchorsCache(maxCacheEntries);
+		this.perIssuerGeneration = TrustAnchorSnapshot.nextGeneration();
+		pmaNsStore = new LazyEuGridPmaNamespacesStore(observers, openssl1Mode, basePath, updateInterval,
+				maxCacheEntries);
+		globusNsStore = new LazyGlobusNamespacesStore(observers, openssl1Mode, basePath, updateInterval,
+				maxCacheEntries);
 	}
 	
 	protected X509Certificate tryLoadCertInternal(File file)
@@ -78,6 +108,9 @@ public class LazyOpensslTrustAnchorStoreImpl extends AbstractTrustAnchorStore im
 			return cert;
 		} catch (Exception e)
 		{
+			//removed after the directory was listed
+			if (!file.exists())
+				directoryIndex.invalidate();
 			observers.notifyObservers(file.getAbsolutePath(), StoreUpdateListener.CA_CERT,
 					Severity.ERROR, e);
 			return null;
@@ -118,37 +151,56 @@ public class LazyOpensslTrustAnchorStoreImpl extends AbstractTrustAnchorStore im
 
 	private Set<TrustAnchorExt> loadTrustAnchors()
 	{
-		Collection<File> certs = OpensslTruststoreHelper.getFilesWithRegexp(CERTS_REGEXP, baseDirectory);
+		List<File> certs = directoryIndex.getAllCertificates(getUpdateInterval());
 		Set<TrustAnchorExt> ret = new HashSet<TrustAnchorExt>(certs.size());
 		for (File cert: certs)
 			tryLoadCert(cert, ret);
 		return ret;
 	}
 	
+	/**
+	 * Loads all trust anchors if they were not loaded yet or the previously loaded ones have expired.
+	 * Otherwise the cached snapshot is returned without locking.
+	 */
 	@Override
-	public synchronized Set<TrustAnchor> getTrustAnchors()
+	public TrustAnchorSnapshot getSnapshot()
 	{
-		if (cachedAnchors == null || cachedAnchors.isExpired(getUpdateInterval()))
+		CachedElement<TrustAnchorSnapshot> cached = cachedAnchors;
+		if (cached != null && !cached.isExpired(getUpdateInterval()))
+			return cached.getElement();
+		synchronized (this)
 		{
-			Set<TrustAnchorExt> loaded = loadTrustAnchors();
-			cachedAnchors = new CachedElement<Set<TrustAnchorExt>>(loaded);
+			if (cachedAnchors == null || cachedAnchors.isExpired(getUpdateInterval()))
+			{
+				Set<TrustAnchorExt> loaded = loadTrustAnchors();
+				cachedAnchors = new CachedElement<TrustAnchorSnapshot>(new TrustAnchorSnapshot(loaded));
+			}
+			return cachedAnchors.getElement();
 		}
-		Set<TrustAnchor> ret = new HashSet<TrustAnchor>();
-		ret.addAll(cachedAnchors.getElement());
-		return ret;
 	}
 
-	@Override
-	public X509Certificate[] getTrustedCertificates()
+	/**
+	 * Allows for using expired trust anchors and namespace policies for the given time after their expiration,
+	 * while they are reloaded in background. This way validations are not delayed by reloading
+	 * of trust material, unless it was not used for a long time.
+	 * @param maxStaleness maximum time in ms for which expired trust material can be used. 
+	 * Use a &lt;= 0 value to reload expired trust material synchronously (the default).
+	 */
+	public void setMaxStaleness(long maxStaleness)
 	{
-		Set<TrustAnchor> anchors = getTrustAnchors();
-		X509Certificate[] ret = new X509Certificate[anchors.size()];
-		int i=0;
-		for (TrustAnchor ta: anchors)
-			ret[i++] = ta.getTrustedCert();
-		return ret;
+		cachedAnchorsPerIssuer.setMaxStaleness(maxStaleness);
+		pmaNsStore.setMaxStaleness(maxStaleness);
+		globusNsStore.setMaxStaleness(maxStaleness);
 	}
-
+	
+	/**
+	 * @return statistics of the cache of trust anchors loaded per subject
+	 */
+	public CacheStatistics getCacheStatistics()
+	{
+		return cachedAnchorsPerIssuer.getStatistics();
+	}
+	
 	@Override
 	public void dispose()
 	{
@@ -157,49 +209,88 @@ public class LazyOpensslTrustAnchorStoreImpl extends AbstractTrustAnchorStore im
 	/**
 	 * Algorithm is as follows: for each certificate subject in chain, and for the issuer of the last 
 	 * certificate in chain, it is tried to load a trust anchor defined for such subject. If successful
-	 * then also it is tried recursively to load all parent trust anchors for the loaded one.
-	 *  
+	 * then also it is tried to load all parent trust anchors for the loaded one, up to the self signed ones.
+	 * <p>
+	 * Trust anchors are loaded and cached per subject. Only one thread loads trust anchors of a given subject,
+	 * the other threads requiring them wait for its result. Threads using cached trust anchors are not blocked.
+	 * Expired trust anchors may be used while being reloaded in background, see {@link #setMaxStaleness(long)}.
+	 * <p>
+	 * The generation of the returned snapshot changes whenever any of the on-demand loaded trust anchors
+	 * or namespace policies is reloaded from disk with a changed contents.
+	 * 
 	 * @param certChain certificate chain
 	 * @return set of trust anchors for a given certificate chain
 	 */
-	public Set<TrustAnchor> getTrustAnchorsFor(X509Certificate[] certChain)
+	public TrustAnchorSnapshot getTrustAnchorsFor(X509Certificate[] certChain)
 	{
-		Set<TrustAnchorExt> ret = new HashSet<TrustAnchorExt>();
+		//obtained before loading: concurrent reload must result in an outdated generation, never the opposite.
+		//Generations are increasing, so the maximum changes whenever any of them is changed.
+		long generation = Math.max(perIssuerGeneration, 
+				Math.max(pmaNsStore.getGeneration(), globusNsStore.getGeneration()));
+		LinkedList<X500Principal> toLoad = new LinkedList<X500Principal>();
 		for (X509Certificate c: certChain)
+			toLoad.add(c.getSubjectX500Principal());
+		toLoad.add(certChain[certChain.length-1].getIssuerX500Principal());
+		
+		Set<X500Principal> processed = new HashSet<X500Principal>();
+		Set<TrustAnchorExt> ret = new HashSet<TrustAnchorExt>();
+		while (!toLoad.isEmpty())
 		{
-			tryLoadTAFor(c.getSubjectX500Principal(), ret);
+			X500Principal subject = toLoad.removeFirst();
+			if (!processed.add(subject))
+				continue;
+			for (TrustAnchorExt anchor: cachedAnchorsPerIssuer.getOrLoad(subject, 
+					getUpdateInterval(), loader))
+			{
+				ret.add(anchor);
+				X500Principal certIssuer = anchor.getTrustedCert().getIssuerX500Principal();
+				if (!X500NameUtils.rfc3280Equal(certIssuer, subject))
+					toLoad.add(certIssuer);
+			}
 		}
-		tryLoadTAFor(certChain[certChain.length-1].getIssuerX500Principal(), ret);
-		
-		return new HashSet<TrustAnchor>(ret);
+		return new TrustAnchorSnapshot(ret, generation);
 	}
 	
-	private synchronized void tryLoadTAFor(X500Principal issuer, Set<TrustAnchorExt> ret)
+	private Set<TrustAnchorExt> loadTrustAnchorsWithSubject(X500Principal subject)
 	{
-		CachedElement<Set<TrustAnchorExt>> cached = cachedAnchorsPerIssuer.get(issuer);
-		if (cached != null && !cached.isExpired(getUpdateInterval()))
-		{
-			ret.addAll(cached.getElement());
-			return;
-		}
-		Set<TrustAnchorExt> toCache = new HashSet<TrustAnchorExt>();
-		String hash = OpensslTruststoreHelper.getOpenSSLCAHash(issuer, openssl1Mode);
-		Collection<File> certs = OpensslTruststoreHelper.getFilesWithRegexp(hash+"\\.[0-9]+", baseDirectory);
+		Set<TrustAnchorExt> loaded = new HashSet<TrustAnchorExt>();
+		String hash = OpensslTruststoreHelper.getOpenSSLCAHash(subject, openssl1Mode);
+		List<File> certs = directoryIndex.getCertificates(hash, getUpdateInterval());
 		for (File file: certs)
 		{
 			X509Certificate cert = tryLoadCertInternal(file);
-			if (X500NameUtils.rfc3280Equal(cert.getSubjectX500Principal(), issuer))
-			{
-				toCache.add(new TrustAnchorExt(cert, null));
-				X500Principal certIssuer = cert.getIssuerX500Principal();
-				if (!X500NameUtils.rfc3280Equal(certIssuer, issuer))
-					tryLoadTAFor(certIssuer, toCache);
-			}
+			if (cert != null && X500NameUtils.rfc3280Equal(cert.getSubjectX500Principal(), subject))
+				loaded.add(new TrustAnchorExt(cert, null));
 		}
+		return Collections.unmodifiableSet(loaded);
+	}
+	
+	/**
+	 * Bumps the generation when the reloaded trust anchors of a subject differ from the previously 
+	 * loaded ones. Non empty sets of loaded anchors are remembered also after they are expired or evicted
+	 * from the cache, what requires memory proportional to the number of CA certificates in the truststore.
+	 * A first load of anchors of a subject doesn't change the generation: the previously cached 
+	 * validation results didn't use them, with the exception of negative results of chains 
+	 * issued by newly added CAs, which are dropped after their (short) time to live.
+	 */
+	private class TrustAnchorsCache extends BoundedCache<X500Principal, Set<TrustAnchorExt>>
+	{
+		private final ConcurrentHashMap<X500Principal, Set<TrustAnchorExt>> loadedAnchors = 
+				new ConcurrentHashMap<X500Principal, Set<TrustAnchorExt>>();
 		
-		ret.addAll(toCache);
-		cachedAnchorsPerIssuer.put(issuer, new CachedElement<Set<TrustAnchorExt>>(toCache));
+		public TrustAnchorsCache(int maxEntries)
+		{
+			super(maxEntries);
+		}
+
+		@Override
+		public void put(X500Principal key, Set<TrustAnchorExt> value, long loadTime)
+		{
+			super.put(key, value, loadTime);
+			Set<TrustAnchorExt> previous = value.isEmpty() ? loadedAnchors.remove(key) : 
+				loadedAnchors.put(key, value);
+			if (previous != null && !previous.equals(value))
+				perIssuerGeneration = TrustAnchorSnapshot.nextGeneration();
+		}
 	}
 }
-
-
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import eu.emi.security.authn.x509.helpers.CachedElement;
+
+/**
+ * In-memory index of an OpenSSL style truststore directory. The directory is listed once and its files
+ * are grouped by the subject hash which prefixes their names, so the stores loading the truststore
+ * contents on demand can find CA certificates, CRLs and namespace files in constant time,
+ * without listing the directory on each cache miss.
+ * <p>
+ * The listing is refreshed when it is older then the maximum age given by the caller, what in practice
+ * is the update interval of the querying store, or after {@link #invalidate()} is called. The stores 
+ * invalidate the index when a listed file turns out to be removed, so the other files removed
+ * or added in the meantime are noticed too.
+ * A single instance is shared by all the stores using the same directory, see {@link #getInstance(String)}.
+ * <p>
+ * This class is thread safe. Queries do not block unless the listing must be refreshed.
+ *
+ * @author K. Benedyczak
+ */
+public class OpensslDirectoryIndex
+{
+	private static final Pattern HASHED_FILE = Pattern.compile("^(.{8})\\.(r?)[0-9]+$");
+	private static final Pattern CRL_FILE = Pattern.compile("^.*\\.r[0-9]+$");
+	private static final Map<File, WeakReference<OpensslDirectoryIndex>> INSTANCES =
+			new HashMap<File, WeakReference<OpensslDirectoryIndex>>();
+
+	private final File directory;
+	private volatile CachedElement<Listing> listing;
+
+	public OpensslDirectoryIndex(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * @param directory truststore directory
+	 * @return the index of the given directory which is shared with other users of the directory
+	 */
+	public static OpensslDirectoryIndex getInstance(String directory)
+	{
+		File key = new File(directory).getAbsoluteFile();
+		synchronized (INSTANCES)
+		{
+			Iterator<WeakReference<OpensslDirectoryIndex>> it = INSTANCES.values().iterator();
+			while (it.hasNext())
+				if (it.next().get() == null)
+					it.remove();
+			WeakReference<OpensslDirectoryIndex> ref = INSTANCES.get(key);
+			OpensslDirectoryIndex ret = ref == null ? null : ref.get();
+			if (ret == null)
+			{
+				ret = new OpensslDirectoryIndex(key);
+				INSTANCES.put(key, new WeakReference<OpensslDirectoryIndex>(ret));
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * @param hash subject hash
+	 * @param maxAge maximum age of the directory listing in ms
+	 * @return files named HASH.NUM, never null
+	 */
+	public List<File> getCertificates(String hash, long maxAge)
+	{
+		return get(getListing(maxAge).certsByHash, hash);
+	}
+
+	/**
+	 * @param hash issuer subject hash
+	 * @param maxAge maximum age of the directory listing in ms
+	 * @return files named HASH.rNUM, never null
+	 */
+	public List<File> getCRLs(String hash, long maxAge)
+	{
+		return get(getListing(maxAge).crlsByHash, hash);
+	}
+
+	/**
+	 * @param maxAge maximum age of the directory listing in ms
+	 * @return all files which look like a certificate file, i.e. have an 8 characters long name
+	 * followed by a number extension. Never null.
+	 */
+	public List<File> getAllCertificates(long maxAge)
+	{
+		return Collections.unmodifiableList(getListing(maxAge).allCerts);
+	}
+
+	/**
+	 * @param maxAge maximum age of the directory listing in ms
+	 * @return all files with the .rNUM extension. Never null.
+	 */
+	public List<File> getAllCRLs(long maxAge)
+	{
+		return Collections.unmodifiableList(getListing(maxAge).allCrls);
+	}
+
+	/**
+	 * @param name file name
+	 * @param maxAge maximum age of the directory listing in ms
+	 * @return true if the directory contains a file with the given name
+	 */
+	public boolean contains(String name, long maxAge)
+	{
+		return getListing(maxAge).names.contains(name);
+	}
+
+	/**
+	 * Forces to list the directory again on the next query. Should be called when a change
+	 * of the directory contents is known.
+	 */
+	public void invalidate()
+	{
+		listing = null;
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	private Listing getListing(long maxAge)
+	{
+		CachedElement<Listing> current = listing;
+		if (current != null && !current.isExpired(maxAge))
+			return current.getElement();
+		synchronized (this)
+		{
+			current = listing;
+			if (current == null || current.isExpired(maxAge))
+			{
+				current = new CachedElement<Listing>(new Listing(directory.listFiles()));
+				listing = current;
+			}
+			return current.getElement();
+		}
+	}
+
+	private static List<File> get(Map<String, List<File>> map, String hash)
+	{
+		List<File> ret = map.get(hash);
+		if (ret == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(ret);
+	}
+
+	private static class Listing
+	{
+		private final Map<String, List<File>> certsByHash = new HashMap<String, List<File>>();
+		private final Map<String, List<File>> crlsByHash = new HashMap<String, List<File>>();
+		private final List<File> allCerts = new ArrayList<File>();
+		private final List<File> allCrls = new ArrayList<File>();
+		private final Set<String> names = new HashSet<String>();
+
+		public Listing(File[] files)
+		{
+			if (files == null)
+				return;
+			for (File file: files)
+			{
+				if (!file.isFile())
+					continue;
+				String name = file.getName();
+				names.add(name);
+				Matcher m = HASHED_FILE.matcher(name);
+				if (m.matches())
+				{
+					boolean crl = m.group(2).length() > 0;
+					addTo(crl ? crlsByHash : certsByHash, m.group(1), file);
+					if (!crl)
+						allCerts.add(file);
+				}
+				if (CRL_FILE.matcher(name).matches())
+					allCrls.add(file);
+			}
+		}
+
+		private static void addTo(Map<String, List<File>> map, String hash, File file)
+		{
+			List<File> list = map.get(hash);
+			if (list == null)
+			{
+				list = new ArrayList<File>(1);
+				map.put(hash, list);
+			}
+			list.add(file);
+		}
+	}
+}
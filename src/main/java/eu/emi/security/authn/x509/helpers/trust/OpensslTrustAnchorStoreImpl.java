@@ -19,8 +19,12 @@ import java.util.Timer;
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.StoreUpdateListener.Severity;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
+import eu.emi.security.authn.x509.helpers.ns.AbstractEuGridPmaNamespacesStore;
+import eu.emi.security.authn.x509.helpers.ns.AbstractGlobusNamespacesStore;
 import eu.emi.security.authn.x509.helpers.ns.EuGridPmaNamespacesStore;
 import eu.emi.security.authn.x509.helpers.ns.GlobusNamespacesStore;
+import eu.emi.security.authn.x509.helpers.ns.NamespacePolicy;
 import eu.emi.security.authn.x509.helpers.ns.NamespacesStore;
 import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
 
@@ -44,11 +48,25 @@ public class OpensslTrustAnchorStoreImpl extends DirectoryTrustAnchorStore imple
 	private boolean loadEuGridPmaNs;
 	private boolean loadGlobusNs;
 	private boolean openssl1Mode;
-	private NamespacesStore pmaNsStore;
-	private NamespacesStore globusNsStore;
+	private EuGridPmaNamespacesStore pmaNsStore;
+	private GlobusNamespacesStore globusNsStore;
 	
 	public OpensslTrustAnchorStoreImpl(String basePath,	Timer t, long updateInterval, boolean loadGlobusNs,
 			boolean loadEuGridPmaNs, ObserversHandler observers, boolean openssl1Mode)
+	{
+		this(basePath, t, updateInterval, loadGlobusNs, loadEuGridPmaNs, observers, openssl1Mode, null,
+				ParallelLoader.DEFAULT_PARALLELISM);
+	}
+	
+	/**
+	 * @param snapshot if not null, the store is initialized with the contents of the given
+	 * {@link OpensslTruststoreSnapshot}, so that only the files changed after the snapshot was
+	 * created are parsed. If the snapshot is outdated or can not be read, it is ignored.
+	 * @param loadingParallelism maximum number of threads used to load certificates and namespaces
+	 */
+	public OpensslTrustAnchorStoreImpl(String basePath,	Timer t, long updateInterval, boolean loadGlobusNs,
+			boolean loadEuGridPmaNs, ObserversHandler observers, boolean openssl1Mode, File snapshot,
+			int loadingParallelism)
 	{
 		super(Collections.singletonList(basePath+File.separator+CERT_WILDCARD), 
 				null, 0, t, updateInterval, Encoding.PEM, observers, true);
@@ -57,35 +75,96 @@ public class OpensslTrustAnchorStoreImpl extends DirectoryTrustAnchorStore imple
 		globusNsStore = new GlobusNamespacesStore(observers, openssl1Mode);
 		this.loadEuGridPmaNs = loadEuGridPmaNs;
 		this.loadGlobusNs = loadGlobusNs;
+		setLoadingParallelism(loadingParallelism);
+		if (snapshot != null)
+			restoreSnapshot(snapshot, basePath);
 		update();
 		scheduleUpdate();
 	}
 	
-	/**
-	 * For all URLs tries to load a CA cert and namespaces
-	 */
-	@Override
-	protected void reloadCerts(Collection<URL> locations)
+	private void restoreSnapshot(File snapshot, String basePath)
 	{
-		List<String> correctLocations = new ArrayList<String>();
-		Set<TrustAnchorExt> tmpAnchors = new HashSet<TrustAnchorExt>();
-		
-		for (URL location: locations)
+		OpensslTruststoreSnapshot loaded;
+		try
+		{
+			loaded = OpensslTruststoreSnapshot.load(snapshot, basePath, openssl1Mode);
+		} catch (IOException e)
 		{
-			boolean loaded = tryLoadCert(location, tmpAnchors);
-			if (loaded)
-				correctLocations.add(location.getPath());
+			observers.notifyObservers(snapshot.getPath(), StoreUpdateListener.CA_CERT, Severity.WARNING, 
+					new IOException("The truststore snapshot can not be used, " +
+							"all truststore files will be loaded", e));
+			return;
 		}
-		
-		synchronized(this)
+		if (loaded == null)
+			return;
+		for (OpensslTruststoreSnapshot.Entry<X509Certificate> entry: loaded.getCertificates())
 		{
-			anchors.clear();
-			anchors.addAll(tmpAnchors);
-			if (loadEuGridPmaNs)
-				pmaNsStore.setPolicies(correctLocations);
-			if (loadGlobusNs)
-				globusNsStore.setPolicies(correctLocations);
+			Set<TrustAnchorExt> anchors = new HashSet<TrustAnchorExt>(1);
+			anchors.add(new TrustAnchorExt(entry.getValue(), null));
+			restoreAnchors(entry.getFile(), entry.getLastModified(), entry.getLength(), 
+					entry.getDigest(), anchors);
 		}
+		if (loadEuGridPmaNs)
+			for (OpensslTruststoreSnapshot.Entry<List<NamespacePolicy>> entry: loaded.getEuGridPmaPolicies())
+				pmaNsStore.restorePolicies(entry.getFile(), entry.getLastModified(), entry.getLength(), 
+						entry.getDigest(), entry.getValue());
+		if (loadGlobusNs)
+			for (OpensslTruststoreSnapshot.Entry<List<NamespacePolicy>> entry: loaded.getGlobusPolicies())
+				globusNsStore.restorePolicies(entry.getFile(), entry.getLastModified(), entry.getLength(), 
+						entry.getDigest(), entry.getValue());
+	}
+	
+	/**
+	 * Loads a CA cert, only if the location is named properly.
+	 */
+	@Override
+	protected Set<TrustAnchorExt> loadAnchors(URL location)
+	{
+		Set<TrustAnchorExt> ret = new HashSet<TrustAnchorExt>(1);
+		return tryLoadCert(location, ret) ? ret : null;
+	}
+	
+	/**
+	 * Reloads namespaces of all correctly loaded CAs
+	 */
+	@Override
+	protected boolean anchorsUpdated(Collection<URL> locations)
+	{
+		List<String> correctLocations = new ArrayList<String>(locations.size());
+		for (URL location: locations)
+			correctLocations.add(location.getPath());
+		boolean changed = false;
+		if (loadEuGridPmaNs)
+			changed |= pmaNsStore.setPolicies(correctLocations);
+		if (loadGlobusNs)
+			changed |= globusNsStore.setPolicies(correctLocations);
+		return changed;
+	}
+	
+	/**
+	 * Only CA certificates and namespace definitions are relevant, not CRLs.
+	 */
+	@Override
+	protected boolean isWatchedFile(File file)
+	{
+		String name = file.getName();
+		if (!super.isWatchedFile(file))
+			return false;
+		return name.matches(OpensslTruststoreHelper.CERT_REGEXP) || 
+				name.endsWith(AbstractEuGridPmaNamespacesStore.SUFFIX) || 
+				name.endsWith(AbstractGlobusNamespacesStore.SUFFIX);
+	}
+	
+	/**
+	 * Sets the parallelism of loading both certificates and namespace policies.
+	 * @param loadingParallelism maximum number of threads used, must be positive
+	 */
+	@Override
+	public void setLoadingParallelism(int loadingParallelism)
+	{
+		super.setLoadingParallelism(loadingParallelism);
+		pmaNsStore.setLoadingParallelism(loadingParallelism);
+		globusNsStore.setLoadingParallelism(loadingParallelism);
 	}
 	
 	protected boolean tryLoadCert(URL location, Set<TrustAnchorExt> tmpAnchors)
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import eu.emi.security.authn.x509.helpers.FileLedger;
+import eu.emi.security.authn.x509.helpers.ns.AbstractEuGridPmaNamespacesStore;
+import eu.emi.security.authn.x509.helpers.ns.AbstractGlobusNamespacesStore;
+import eu.emi.security.authn.x509.helpers.ns.EuGridPmaNamespacesParser;
+import eu.emi.security.authn.x509.helpers.ns.GlobusNamespacesParser;
+import eu.emi.security.authn.x509.helpers.ns.NamespacePolicy;
+import eu.emi.security.authn.x509.helpers.ns.NamespacesParser;
+import eu.emi.security.authn.x509.helpers.ns.OpensslNamespacePolicyImpl;
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+/**
+ * Binary snapshot of an OpenSSL style truststore directory: CA certificates in DER form and compiled
+ * EuGridPMA and Globus namespace policies, each recorded together with the state of the file it was
+ * loaded from (modification time, size and SHA-256 digest). The {@link OpensslTrustAnchorStoreImpl}
+ * can be started from a snapshot: its contents is restored to the store's file ledgers, so the initial
+ * load only checks the files' state instead of opening and parsing all of them. Files changed after the
+ * snapshot was created are detected and loaded as usual.
+ * <p>
+ * A snapshot is created with {@link #create(String, boolean, File)} or from the command line
+ * with the {@link #main(String[])} method. It is used only if it was created for the same directory
+ * and hash format and if the modification time of the directory was not changed since then, i.e. no file
+ * was added, removed or renamed. Therefore the snapshot file should not be stored in the truststore
+ * directory. Snapshots are read with a memory mapping.
+ * <p>
+ * OpenSSL hashes are not stored: the hash of each certificate is compared with its file name when the
+ * snapshot is created and only matching certificates are included, so no hashing is needed when 
+ * the snapshot is restored. Neither is a subject or key identifier index stored, as the store which 
+ * restores the snapshot needs all the certificates decoded to publish them as trust anchors, and the 
+ * {@link TrustAnchorIndex} is built from those in a single pass (the key identifier index on first use).
+ *
+ * @author K. Benedyczak
+ */
+public class OpensslTruststoreSnapshot
+{
+	private static final int MAGIC = 0x63614E6C;
+	private static final int VERSION = 1;
+	private static final byte TYPE_CERT = 0;
+	private static final byte TYPE_EUGRIDPMA_NS = 1;
+	private static final byte TYPE_GLOBUS_NS = 2;
+	private static final int DIGEST_LENGTH = 32;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final List<Entry<X509Certificate>> certificates = new ArrayList<Entry<X509Certificate>>();
+	private final List<Entry<List<NamespacePolicy>>> euGridPmaPolicies =
+			new ArrayList<Entry<List<NamespacePolicy>>>();
+	private final List<Entry<List<NamespacePolicy>>> globusPolicies =
+			new ArrayList<Entry<List<NamespacePolicy>>>();
+
+	private OpensslTruststoreSnapshot()
+	{
+	}
+
+	/**
+	 * Creates a snapshot of a truststore directory. Only the files which would be successfully
+	 * loaded by {@link OpensslTrustAnchorStoreImpl} are included.
+	 * @param directory truststore directory
+	 * @param openssl1Mode whether the files are named with the openssl 1.0 hashes
+	 * @param snapshot output file
+	 * @throws IOException if the snapshot can not be written
+	 */
+	public static void create(String directory, boolean openssl1Mode, File snapshot) throws IOException
+	{
+		File dir = new File(directory).getAbsoluteFile();
+		long dirModified = dir.lastModified();
+		File[] files = dir.listFiles();
+		if (files == null)
+			throw new IOException("Can not list the truststore directory " + dir);
+
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot)));
+		try
+		{
+			List<File> certFiles = new ArrayList<File>();
+			for (File file: files)
+				if (file.isFile() && file.getName().matches(OpensslTruststoreHelper.CERT_REGEXP))
+					certFiles.add(file);
+			Collections.sort(certFiles);
+
+			os.writeInt(MAGIC);
+			os.writeInt(VERSION);
+			os.writeBoolean(openssl1Mode);
+			writeString(os, dir.getPath());
+			os.writeLong(dirModified);
+			for (File certFile: certFiles)
+			{
+				long lastModified = certFile.lastModified();
+				long length = certFile.length();
+				X509Certificate cert = loadCertificate(certFile, openssl1Mode);
+				if (cert == null)
+					continue;
+				writeCertificate(os, certFile, lastModified, length, cert);
+				String hash = OpensslTruststoreHelper.getFileHash(certFile.getPath(),
+						OpensslTruststoreHelper.CERT_REGEXP);
+				File pmaNs = new File(dir, hash + AbstractEuGridPmaNamespacesStore.SUFFIX);
+				writePolicies(os, TYPE_EUGRIDPMA_NS, pmaNs,
+						new EuGridPmaNamespacesParser(pmaNs.getPath(), openssl1Mode));
+				File globusNs = new File(dir, hash + AbstractGlobusNamespacesStore.SUFFIX);
+				writePolicies(os, TYPE_GLOBUS_NS, globusNs,
+						new GlobusNamespacesParser(globusNs.getPath()));
+			}
+			os.writeByte(-1);
+		} finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Loads a snapshot.
+	 * @param snapshot snapshot file
+	 * @param directory truststore directory which is going to be loaded
+	 * @param openssl1Mode whether the truststore is going to be loaded with the openssl 1.0 hashes
+	 * @return the loaded snapshot or null if the snapshot was created for a different directory
+	 * or hash format, or if the directory was modified since the snapshot was created.
+	 * @throws IOException if the snapshot can not be read or is corrupted
+	 */
+	public static OpensslTruststoreSnapshot load(File snapshot, String directory, boolean openssl1Mode)
+			throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer, new File(directory).getAbsoluteFile(), openssl1Mode);
+		} catch (BufferUnderflowException e)
+		{
+			throw new IOException("The truststore snapshot " + snapshot + " is truncated", e);
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return certificates of the snapshot, with the state of their files
+	 */
+	public List<Entry<X509Certificate>> getCertificates()
+	{
+		return Collections.unmodifiableList(certificates);
+	}
+
+	/**
+	 * @return EuGridPMA namespace policies of the snapshot, grouped by files, with the state of the files
+	 */
+	public List<Entry<List<NamespacePolicy>>> getEuGridPmaPolicies()
+	{
+		return Collections.unmodifiableList(euGridPmaPolicies);
+	}
+
+	/**
+	 * @return Globus namespace policies of the snapshot, grouped by files, with the state of the files
+	 */
+	public List<Entry<List<NamespacePolicy>>> getGlobusPolicies()
+	{
+		return Collections.unmodifiableList(globusPolicies);
+	}
+
+	private static OpensslTruststoreSnapshot read(ByteBuffer buffer, File dir, boolean openssl1Mode)
+			throws IOException
+	{
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("The file is not a truststore snapshot");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported version of the truststore snapshot: " + version);
+		boolean snapshotOpenssl1Mode = buffer.get() != 0;
+		String snapshotDir = readString(buffer);
+		long dirModified = buffer.getLong();
+		if (snapshotOpenssl1Mode != openssl1Mode || !snapshotDir.equals(dir.getPath()) ||
+				dirModified != dir.lastModified())
+			return null;
+
+		OpensslTruststoreSnapshot ret = new OpensslTruststoreSnapshot();
+		byte type;
+		while ((type = buffer.get()) != -1)
+		{
+			File file = new File(dir, readString(buffer));
+			long lastModified = buffer.getLong();
+			long length = buffer.getLong();
+			byte[] digest = new byte[DIGEST_LENGTH];
+			buffer.get(digest);
+			switch (type)
+			{
+			case TYPE_CERT:
+				byte[] der = new byte[buffer.getInt()];
+				buffer.get(der);
+				X509Certificate cert = CertificateUtils.loadCertificate(new ByteArrayInputStream(der),
+						Encoding.DER);
+				ret.certificates.add(new Entry<X509Certificate>(file, lastModified, length, digest, cert));
+				break;
+			case TYPE_EUGRIDPMA_NS:
+				ret.euGridPmaPolicies.add(new Entry<List<NamespacePolicy>>(file, lastModified, length,
+						digest, readPolicies(buffer)));
+				break;
+			case TYPE_GLOBUS_NS:
+				ret.globusPolicies.add(new Entry<List<NamespacePolicy>>(file, lastModified, length,
+						digest, readPolicies(buffer)));
+				break;
+			default:
+				throw new IOException("The truststore snapshot is corrupted, unknown entry type " + type);
+			}
+		}
+		return ret;
+	}
+
+	private static List<NamespacePolicy> readPolicies(ByteBuffer buffer) throws IOException
+	{
+		int size = buffer.getInt();
+		List<NamespacePolicy> ret = new ArrayList<NamespacePolicy>(size);
+		for (int i=0; i<size; i++)
+		{
+			String issuer = readString(buffer);
+			String subject = readString(buffer);
+			String definedFor = readString(buffer);
+			boolean permit = buffer.get() != 0;
+			String identification = readString(buffer);
+			ret.add(new OpensslNamespacePolicyImpl(issuer, subject, definedFor, permit, identification));
+		}
+		return ret;
+	}
+
+	private static X509Certificate loadCertificate(File file, boolean openssl1Mode)
+	{
+		InputStream is = null;
+		try
+		{
+			is = new BufferedInputStream(new FileInputStream(file));
+			X509Certificate[] certs = CertificateUtils.loadCertificates(is, Encoding.PEM);
+			if (certs.length != 1)
+				return null;
+			String fileHash = OpensslTruststoreHelper.getFileHash(file.getPath(),
+					OpensslTruststoreHelper.CERT_REGEXP);
+			String certHash = OpensslTruststoreHelper.getOpenSSLCAHash(
+					certs[0].getSubjectX500Principal(), openssl1Mode);
+			return fileHash.equalsIgnoreCase(certHash) ? certs[0] : null;
+		} catch (IOException e)
+		{
+			return null;
+		} finally
+		{
+			closeQuietly(is);
+		}
+	}
+
+	private static void writeCertificate(DataOutputStream os, File file, long lastModified, long length,
+			X509Certificate cert) throws IOException
+	{
+		byte[] der;
+		try
+		{
+			der = cert.getEncoded();
+		} catch (CertificateEncodingException e)
+		{
+			throw new IOException("Can not encode the certificate from " + file, e);
+		}
+		if (!writeFileState(os, TYPE_CERT, file, lastModified, length))
+			return;
+		os.writeInt(der.length);
+		os.write(der);
+	}
+
+	/**
+	 * Policy files which do not exist or can not be parsed are skipped, the store will report the
+	 * problem when loading them.
+	 */
+	private static void writePolicies(DataOutputStream os, byte type, File file, NamespacesParser parser)
+			throws IOException
+	{
+		if (!file.isFile())
+			return;
+		long lastModified = file.lastModified();
+		long length = file.length();
+		List<NamespacePolicy> policies;
+		try
+		{
+			policies = parser.parse();
+		} catch (IOException e)
+		{
+			return;
+		}
+		for (NamespacePolicy policy: policies)
+			if (!(policy instanceof OpensslNamespacePolicyImpl))
+				return;
+		if (!writeFileState(os, type, file, lastModified, length))
+			return;
+		os.writeInt(policies.size());
+		for (NamespacePolicy policy: policies)
+		{
+			OpensslNamespacePolicyImpl p = (OpensslNamespacePolicyImpl) policy;
+			writeString(os, p.getIssuer());
+			writeString(os, p.getSuject());
+			writeString(os, p.getDefinedFor());
+			os.writeBoolean(p.isPermit());
+			writeString(os, p.getIdentification());
+		}
+	}
+
+	/**
+	 * Writes entry header with the file state recorded before the file was parsed. Entries of files 
+	 * which were modified in the meantime or so recently that a subsequent modification could go 
+	 * unnoticed are skipped.
+	 * @return false if the entry should be skipped
+	 */
+	private static boolean writeFileState(DataOutputStream os, byte type, File file, long lastModified,
+			long length) throws IOException
+	{
+		byte[] digest = FileLedger.digest(file);
+		if (digest == null || file.lastModified() != lastModified || file.length() != length ||
+				System.currentTimeMillis() - lastModified < FileLedger.RACY_PERIOD)
+			return false;
+		os.writeByte(type);
+		writeString(os, file.getName());
+		os.writeLong(lastModified);
+		os.writeLong(length);
+		os.write(digest);
+		return true;
+	}
+
+	private static void writeString(DataOutputStream os, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(UTF8);
+		os.writeInt(bytes.length);
+		os.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void closeQuietly(InputStream is)
+	{
+		if (is == null)
+			return;
+		try
+		{
+			is.close();
+		} catch (IOException e)
+		{
+			//ignored
+		}
+	}
+
+	/**
+	 * Creates a truststore snapshot.
+	 * @param args truststore directory, output file and optionally 'legacy' to use the pre openssl 1.0 hashes
+	 * @throws IOException if the snapshot can not be written
+	 */
+	public static void main(String... args) throws IOException
+	{
+		if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("legacy")))
+		{
+			System.err.println("Usage: OpensslTruststoreSnapshot <truststore directory> " +
+					"<snapshot file> [legacy]");
+			System.exit(1);
+		}
+		create(args[0], args.length < 3, new File(args[1]));
+	}
+
+	/**
+	 * Object loaded from a truststore file, with the state of the file.
+	 * @param <T> type of the loaded object
+	 */
+	public static class Entry<T>
+	{
+		private final File file;
+		private final long lastModified;
+		private final long length;
+		private final byte[] digest;
+		private final T value;
+
+		public Entry(File file, long lastModified, long length, byte[] digest, T value)
+		{
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.digest = digest;
+			this.value = value;
+		}
+
+		public File getFile()
+		{
+			return file;
+		}
+
+		public long getLastModified()
+		{
+			return lastModified;
+		}
+
+		public long getLength()
+		{
+			return length;
+		}
+
+		/**
+		 * @return SHA-256 digest of the file contents
+		 */
+		public byte[] getDigest()
+		{
+			return digest;
+		}
+
+		public T getValue()
+		{
+			return value;
+		}
+	}
+}
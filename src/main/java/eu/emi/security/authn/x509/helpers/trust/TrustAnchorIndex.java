@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Immutable set of trust anchors, which additionally provides constant time lookups of trust anchors
+ * by subject and subject key identifier. Trust anchor stores build it once
+ * per each update of their contents, so it can be returned to callers without copying
+ * and used during validation instead of linear scans of the whole set.
+ * <p>
+ * The subject index is built eagerly, the key identifier index on first use.
+ * Trust anchors defined only with a CA name and public key are indexed by subject only.
+ *
+ * @author K. Benedyczak
+ */
+public class TrustAnchorIndex extends AbstractSet<TrustAnchor>
+{
+	private final Set<TrustAnchor> anchors;
+	private final Map<X500Principal, List<TrustAnchor>> bySubject;
+	private Map<String, List<TrustAnchor>> bySubjectKeyId;
+	private Set<TrustAnchor> withoutSubjectKeyId;
+
+	public TrustAnchorIndex(Collection<? extends TrustAnchor> anchors)
+	{
+		this.anchors = Collections.unmodifiableSet(new HashSet<TrustAnchor>(anchors));
+		this.bySubject = new HashMap<X500Principal, List<TrustAnchor>>();
+		for (TrustAnchor anchor: this.anchors)
+		{
+			X500Principal subject = getSubject(anchor);
+			if (subject != null)
+				addTo(bySubject, subject, anchor);
+		}
+	}
+
+	/**
+	 * @param anchors trust anchors
+	 * @return the argument if it is already an index, otherwise a new index of the given anchors
+	 */
+	public static TrustAnchorIndex getIndex(Set<TrustAnchor> anchors)
+	{
+		if (anchors instanceof TrustAnchorIndex)
+			return (TrustAnchorIndex) anchors;
+		return new TrustAnchorIndex(anchors);
+	}
+
+	/**
+	 * @param subject subject name
+	 * @return trust anchors with the given subject, never null
+	 */
+	public Set<TrustAnchor> getBySubject(X500Principal subject)
+	{
+		return toSet(bySubject.get(subject));
+	}
+
+	/**
+	 * @param cert certificate
+	 * @return trust anchors which are possible issuers of the given certificate, i.e. those whose
+	 * subject is equal to the certificate's issuer. If the certificate has an authority key identifier, 
+	 * the anchors with a different subject key identifier are skipped, unless no anchor matches it. 
+	 * Signatures are not checked. Never null.
+	 */
+	public Set<TrustAnchor> getIssuerCandidates(X509Certificate cert)
+	{
+		Set<TrustAnchor> candidates = getBySubject(cert.getIssuerX500Principal());
+		if (candidates.size() < 2)
+			return candidates;
+		byte[] keyId = getAuthorityKeyIdentifier(cert);
+		if (keyId == null)
+			return candidates;
+		Set<TrustAnchor> byKeyId = getBySubjectKeyIdentifier(keyId);
+		Set<TrustAnchor> ret = new HashSet<TrustAnchor>();
+		for (TrustAnchor candidate: candidates)
+			if (byKeyId.contains(candidate) || hasNoSubjectKeyIdentifier(candidate))
+				ret.add(candidate);
+		return ret.isEmpty() ? candidates : Collections.unmodifiableSet(ret);
+	}
+
+	/**
+	 * @param keyId subject key identifier
+	 * @return trust anchors with certificates having the given subject key identifier, never null
+	 */
+	public synchronized Set<TrustAnchor> getBySubjectKeyIdentifier(byte[] keyId)
+	{
+		buildKeyIdIndex();
+		return toSet(bySubjectKeyId.get(Hex.toHexString(keyId)));
+	}
+
+	private synchronized boolean hasNoSubjectKeyIdentifier(TrustAnchor anchor)
+	{
+		buildKeyIdIndex();
+		return withoutSubjectKeyId.contains(anchor);
+	}
+
+	private void buildKeyIdIndex()
+	{
+		if (bySubjectKeyId != null)
+			return;
+		bySubjectKeyId = new HashMap<String, List<TrustAnchor>>();
+		withoutSubjectKeyId = new HashSet<TrustAnchor>();
+		for (TrustAnchor anchor: anchors)
+		{
+			byte[] ski = getSubjectKeyIdentifier(anchor.getTrustedCert());
+			if (ski != null)
+				addTo(bySubjectKeyId, Hex.toHexString(ski), anchor);
+			else
+				withoutSubjectKeyId.add(anchor);
+		}
+	}
+
+	@Override
+	public Iterator<TrustAnchor> iterator()
+	{
+		return anchors.iterator();
+	}
+
+	@Override
+	public int size()
+	{
+		return anchors.size();
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return anchors.contains(o);
+	}
+
+	private static X500Principal getSubject(TrustAnchor anchor)
+	{
+		if (anchor.getTrustedCert() != null)
+			return anchor.getTrustedCert().getSubjectX500Principal();
+		return anchor.getCA();
+	}
+
+	private static byte[] getSubjectKeyIdentifier(X509Certificate cert)
+	{
+		if (cert == null)
+			return null;
+		byte[] ext = cert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+		if (ext == null)
+			return null;
+		try
+		{
+			return ASN1OctetString.getInstance(ASN1OctetString.getInstance(ext).getOctets()).getOctets();
+		} catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static byte[] getAuthorityKeyIdentifier(X509Certificate cert)
+	{
+		byte[] ext = cert.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+		if (ext == null)
+			return null;
+		try
+		{
+			return AuthorityKeyIdentifier.getInstance(
+					ASN1OctetString.getInstance(ext).getOctets()).getKeyIdentifier();
+		} catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static <T> void addTo(Map<T, List<TrustAnchor>> map, T key, TrustAnchor anchor)
+	{
+		List<TrustAnchor> list = map.get(key);
+		if (list == null)
+		{
+			list = new ArrayList<TrustAnchor>(1);
+			map.put(key, list);
+		}
+		list.add(anchor);
+	}
+
+	private static Set<TrustAnchor> toSet(List<TrustAnchor> list)
+	{
+		if (list == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(new HashSet<TrustAnchor>(list));
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable, indexed contents of a trust anchor store, as of a given moment. Stores publish
+ * a new snapshot after each update, so readers can use the current one without locking nor copying.
+ * <p>
+ * Each snapshot has a generation number, which is unique in the JVM and grows with each published
+ * snapshot. Caches of data derived from trust anchors can simply remember the generation and drop 
+ * their entries when a snapshot with a different generation is in use.
+ *
+ * @author K. Benedyczak
+ */
+public class TrustAnchorSnapshot extends TrustAnchorIndex
+{
+	private static final AtomicLong GENERATIONS = new AtomicLong();
+	
+	private final long generation;
+	private final X509Certificate[] certificates;
+
+	/**
+	 * Creates a snapshot with a new generation number.
+	 * @param anchors trust anchors
+	 */
+	public TrustAnchorSnapshot(Collection<? extends TrustAnchor> anchors)
+	{
+		this(anchors, nextGeneration());
+	}
+
+	/**
+	 * @param anchors trust anchors
+	 * @param generation generation of the snapshot, should be obtained with {@link #nextGeneration()}
+	 */
+	public TrustAnchorSnapshot(Collection<? extends TrustAnchor> anchors, long generation)
+	{
+		super(anchors);
+		this.generation = generation;
+		List<X509Certificate> certs = new ArrayList<X509Certificate>(anchors.size());
+		for (TrustAnchor anchor: this)
+			if (anchor.getTrustedCert() != null)
+				certs.add(anchor.getTrustedCert());
+		this.certificates = certs.toArray(new X509Certificate[certs.size()]);
+	}
+
+	/**
+	 * @return a new generation number, greater than all previously returned
+	 */
+	public static long nextGeneration()
+	{
+		return GENERATIONS.incrementAndGet();
+	}
+
+	/**
+	 * @return an empty snapshot
+	 */
+	public static TrustAnchorSnapshot empty()
+	{
+		return new TrustAnchorSnapshot(Collections.<TrustAnchor>emptySet());
+	}
+
+	public long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * @return a copy of the array of trusted certificates
+	 */
+	public X509Certificate[] getTrustedCertificates()
+	{
+		return certificates.clone();
+	}
+}
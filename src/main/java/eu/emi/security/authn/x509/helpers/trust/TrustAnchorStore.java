@@ -15,6 +15,11 @@ import java.util.Set;
 public interface TrustAnchorStore
 {
 	public Set<TrustAnchor> getTrustAnchors();
+	/**
+	 * @return the current contents of the store. The returned object is immutable and can be 
+	 * used without any locking.
+	 */
+	public TrustAnchorSnapshot getSnapshot();
 	public X509Certificate[] getTrustedCertificates();
 	public void dispose();
 	public long getUpdateInterval();
@@ -9,6 +9,9 @@ import java.security.cert.CertStoreParameters;
 import java.util.ArrayList;
 import java.util.List;
 
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
+import eu.emi.security.authn.x509.helpers.pkipath.PlainStoreUtils;
+
 /**
  * Manages configuration of CRL sources, used in non-openssl truststores.
  * @author K. Benedyczak
@@ -20,6 +23,10 @@ public class CRLParameters implements CertStoreParameters, Serializable
 	private long crlUpdateInterval;
 	private int remoteConnectionTimeout;
 	private String diskCachePath;
+	private int loadingParallelism = ParallelLoader.DEFAULT_PARALLELISM;
+	private int remoteLoadingParallelism = PlainStoreUtils.DEFAULT_REMOTE_PARALLELISM;
+	private int remoteConnectionsPerHost = PlainStoreUtils.DEFAULT_CONNECTIONS_PER_HOST;
+	private String mappedCachePath;
 	
 
 	/**
@@ -60,8 +67,13 @@ public class CRLParameters implements CertStoreParameters, Serializable
 	{
 		List<String> copy = new ArrayList<String>();
 		copy.addAll(crls);
-		return new CRLParameters(copy, crlUpdateInterval,  
+		CRLParameters ret = new CRLParameters(copy, crlUpdateInterval,  
 				remoteConnectionTimeout, diskCachePath);
+		ret.setLoadingParallelism(loadingParallelism);
+		ret.setRemoteLoadingParallelism(remoteLoadingParallelism);
+		ret.setRemoteConnectionsPerHost(remoteConnectionsPerHost);
+		ret.setMappedCachePath(mappedCachePath);
+		return ret;
 	}
 	
 	public String getDiskCachePath()
@@ -94,6 +106,71 @@ public class CRLParameters implements CertStoreParameters, Serializable
 		this.crls = crls;
 	}
 
+	public int getLoadingParallelism()
+	{
+		return loadingParallelism;
+	}
+
+	/**
+	 * @param loadingParallelism maximum number of threads used to load local CRL files, must be positive.
+	 * By default it is the number of available processors.
+	 */
+	public void setLoadingParallelism(int loadingParallelism)
+	{
+		if (loadingParallelism <= 0)
+			throw new IllegalArgumentException("Loading parallelism must be positive");
+		this.loadingParallelism = loadingParallelism;
+	}
+
+	public int getRemoteLoadingParallelism()
+	{
+		return remoteLoadingParallelism;
+	}
+
+	/**
+	 * @param remoteLoadingParallelism maximum number of CRLs downloaded concurrently from remote URLs, 
+	 * must be positive. The default is {@value PlainStoreUtils#DEFAULT_REMOTE_PARALLELISM}.
+	 */
+	public void setRemoteLoadingParallelism(int remoteLoadingParallelism)
+	{
+		if (remoteLoadingParallelism <= 0)
+			throw new IllegalArgumentException("Remote loading parallelism must be positive");
+		this.remoteLoadingParallelism = remoteLoadingParallelism;
+	}
+
+	public int getRemoteConnectionsPerHost()
+	{
+		return remoteConnectionsPerHost;
+	}
+
+	/**
+	 * @param remoteConnectionsPerHost maximum number of CRLs downloaded concurrently from a single host, 
+	 * must be positive. The default is {@value PlainStoreUtils#DEFAULT_CONNECTIONS_PER_HOST}.
+	 */
+	public void setRemoteConnectionsPerHost(int remoteConnectionsPerHost)
+	{
+		if (remoteConnectionsPerHost <= 0)
+			throw new IllegalArgumentException("Number of connections per host must be positive");
+		this.remoteConnectionsPerHost = remoteConnectionsPerHost;
+	}
+
+	public String getMappedCachePath()
+	{
+		return mappedCachePath;
+	}
+
+	/**
+	 * @param mappedCachePath path to a directory where loaded CRLs are stored together with 
+	 * the index of their revoked certificates. The CRLs are used from memory mapped files of this 
+	 * directory, so they are kept outside of the Java heap and shared by all processes using the 
+	 * same directory. After a restart, CRLs from the unchanged files are not parsed again. 
+	 * null (the default) disables the mapped cache.
+	 */
+	public void setMappedCachePath(String mappedCachePath)
+	{
+		this.mappedCachePath = mappedCachePath;
+	}
+
 	public long getCrlUpdateInterval()
 	{
 		return crlUpdateInterval;
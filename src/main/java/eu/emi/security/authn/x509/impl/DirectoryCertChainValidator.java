@@ -66,8 +66,14 @@ public class DirectoryCertChainValidator extends PlainCRLValidator
 		super(params.getRevocationSettings(), params.getInitialListeners());
 		trustStore = new DirectoryTrustAnchorStore(trustedLocations, diskCache, 
 				connectionTimeoutCA, timer, truststoreUpdateInterval, encoding, 
-				observers);
+				observers, params.getLoadingParallelism());
+		if (params.getDirectoryWatchDelay() > 0)
+		{
+			setDirectoryWatchDelay(params.getDirectoryWatchDelay());
+			trustStore.watchDirectories(params.getDirectoryWatchDelay());
+		}
 		init(trustStore, crlStoreImpl, params.isAllowProxy(), params.getRevocationSettings());
+		setResultCacheSettings(params.getResultCacheSettings());
 	}
 	
 	/**
@@ -168,7 +174,9 @@ public class DirectoryCertChainValidator extends PlainCRLValidator
 		trustStore = new DirectoryTrustAnchorStore(trustedLocations, 
 				trustStore.getCacheDir(), trustStore.getConnTimeout(), 
 				timer, savedUpdateInterval, 
-				trustStore.getEncoding(), observers);
+				trustStore.getEncoding(), observers, trustStore.getLoadingParallelism());
+		if (directoryWatchDelay > 0)
+			trustStore.watchDirectories(directoryWatchDelay);
 		init(trustStore, null, getProxySupport(), getRevocationCheckingMode());
 	}
 	
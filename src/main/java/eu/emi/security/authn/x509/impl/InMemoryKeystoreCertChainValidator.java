@@ -53,6 +53,7 @@ public class InMemoryKeystoreCertChainValidator extends PlainCRLValidator
 		super(params.getRevocationSettings(), params.getInitialListeners());
 		store = new JDKInMemoryTrustAnchorStore(keystore);
 		init(store, crlStoreImpl, params.isAllowProxy(), params.getRevocationSettings());
+		setResultCacheSettings(params.getResultCacheSettings());
 	}
 	
 	/**
@@ -57,6 +57,7 @@ public class KeystoreCertChainValidator extends PlainCRLValidator
 		store = new JDKFSTrustAnchorStore(truststorePath, password, type, 
 				timer, truststoreUpdateInterval, observers);
 		init(store, crlStoreImpl, params.isAllowProxy(), params.getRevocationSettings());
+		setResultCacheSettings(params.getResultCacheSettings());
 	}
 
 	/**
@@ -4,7 +4,7 @@
  */
 package eu.emi.security.authn.x509.impl;
 
-
+import java.io.File;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
@@ -15,11 +15,13 @@ import java.util.Timer;
 import eu.emi.security.authn.x509.NamespaceCheckingMode;
 import eu.emi.security.authn.x509.ValidationError;
 import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.helpers.CacheStatistics;
 import eu.emi.security.authn.x509.helpers.crl.AbstractCRLStoreSPI;
 import eu.emi.security.authn.x509.helpers.crl.LazyOpensslCRLStoreSpi;
 import eu.emi.security.authn.x509.helpers.crl.OpensslCRLStoreSpi;
 import eu.emi.security.authn.x509.helpers.ns.NamespaceChecker;
 import eu.emi.security.authn.x509.helpers.pkipath.AbstractValidator;
+import eu.emi.security.authn.x509.helpers.pkipath.ResultLifetimeTracker;
 import eu.emi.security.authn.x509.helpers.trust.LazyOpensslTrustAnchorStoreImpl;
 import eu.emi.security.authn.x509.helpers.trust.OpensslTrustAnchorStore;
 import eu.emi.security.authn.x509.helpers.trust.OpensslTrustAnchorStoreImpl;
@@ -107,23 +109,38 @@ public class OpensslCertChainValidator extends AbstractValidator
 		this.namespaceMode = namespaceMode;
 		trustStore = lazyMode ?  
 				new LazyOpensslTrustAnchorStoreImpl(directory, updateInterval, 
-						observers, openssl1Mode)
+						observers, openssl1Mode, params.getLazyCacheMaxEntries())
 				:
 				new OpensslTrustAnchorStoreImpl(directory, timer, updateInterval, 
 						namespaceMode.globusEnabled(), namespaceMode.euGridPmaEnabled(), 
-						observers, openssl1Mode);
+						observers, openssl1Mode, params.getTruststoreSnapshot() == null ? null : 
+							new File(params.getTruststoreSnapshot()), 
+						params.getLoadingParallelism());
 		try
 		{
 			crlStore = lazyMode ? 
-				new LazyOpensslCRLStoreSpi(directory, updateInterval, observers, openssl1Mode)
+				new LazyOpensslCRLStoreSpi(directory, updateInterval, observers, openssl1Mode,
+						params.getLazyCacheMaxEntries(), params.getCrlMappedCachePath())
 				:
-				new OpensslCRLStoreSpi(directory, updateInterval, timer, observers, openssl1Mode);
+				new OpensslCRLStoreSpi(directory, updateInterval, timer, observers, openssl1Mode, 
+						params.getLoadingParallelism(), params.getCrlMappedCachePath());
 		} catch (InvalidAlgorithmParameterException e)
 		{
 			throw new RuntimeException("BUG: OpensslCRLStoreSpi " +
 					"can not be initialized", e);
 		}
+		if (lazyMode)
+		{
+			((LazyOpensslTrustAnchorStoreImpl) trustStore).setMaxStaleness(params.getLazyCacheMaxStaleness());
+			((LazyOpensslCRLStoreSpi) crlStore).setMaxStaleness(params.getLazyCacheMaxStaleness());
+		}
+		if (!lazyMode && params.getDirectoryWatchDelay() > 0)
+		{
+			((OpensslTrustAnchorStoreImpl) trustStore).watchDirectories(params.getDirectoryWatchDelay());
+			((OpensslCRLStoreSpi) crlStore).watchDirectories(params.getDirectoryWatchDelay());
+		}
 		init(trustStore, crlStore, params.isAllowProxy(), params.getRevocationSettings());
+		setResultCacheSettings(params.getResultCacheSettings());
 	}
 	
 	/**
@@ -201,6 +218,28 @@ public class OpensslCertChainValidator extends AbstractValidator
 		crlStore.setUpdateInterval(updateInterval);
 	}
 
+	/**
+	 * @return statistics of the cache of on-demand loaded trust anchors or null if the validator 
+	 * is not in the lazy mode
+	 */
+	public CacheStatistics getTrustAnchorCacheStatistics()
+	{
+		if (!lazyMode)
+			return null;
+		return ((LazyOpensslTrustAnchorStoreImpl) trustStore).getCacheStatistics();
+	}
+
+	/**
+	 * @return statistics of the cache of on-demand loaded CRLs or null if the validator 
+	 * is not in the lazy mode
+	 */
+	public CacheStatistics getCRLCacheStatistics()
+	{
+		if (!lazyMode)
+			return null;
+		return ((LazyOpensslCRLStoreSpi) crlStore).getCacheStatistics();
+	}
+
 	@Override
 	public void dispose()
 	{
@@ -222,15 +261,23 @@ public class OpensslCertChainValidator extends AbstractValidator
 			anchors = lazyTAStore.getTrustAnchorsFor(certChain);
 		} else
 		{
-			anchors = trustStore.getTrustAnchors(); 
+			anchors = trustStore.getSnapshot();
 		}
-		ValidationResult result = super.validate(certChain, anchors); 
-		
+		return super.validate(certChain, anchors); 
+	}
+	
+	/**
+	 * Extends the base validation with namespaces checking.
+	 */
+	@Override
+	protected ValidationResult performValidation(X509Certificate[] certChain, Set<TrustAnchor> anchors,
+			ResultLifetimeTracker lifetimeTracker)
+	{
+		ValidationResult result = super.performValidation(certChain, anchors, lifetimeTracker); 
 		
 		NamespaceChecker checker = new NamespaceChecker(namespaceMode, trustStore.getPmaNsStore(), 
 				trustStore.getGlobusNsStore());
 		List<ValidationError> errors = checker.check(certChain);
-		processErrorList(errors);
 		result.addErrors(errors);
 
 		return result;
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.impl;
+
+/**
+ * Manages configuration of the optional cache of validation results, which can be used by all validators.
+ * When enabled, the result of validation of a certificate chain is remembered and returned again
+ * when the very same chain is validated. A cached result is never used after the earliest expiration time
+ * of the chain certificates, after the earliest next update time of the CRLs and OCSP responses used
+ * during its validation, and after any update of the trust material of the validator.
+ * <p>
+ * Positive (successful) and negative results are cached for (possibly) different periods. By default
+ * the cache is disabled.
+ *
+ * @author K. Benedyczak
+ */
+public class ValidationResultCacheParameters implements Cloneable
+{
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private long positiveTtl;
+	private long negativeTtl;
+	private int maxEntries;
+
+	/**
+	 * Creates parameters with the cache turned off.
+	 */
+	public ValidationResultCacheParameters()
+	{
+		this(0, 0, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param positiveTtl maximum time in ms for which a successful validation result is cached.
+	 * Use a &lt;= 0 value to disable caching of successful results.
+	 * @param negativeTtl maximum time in ms for which a failed validation result is cached.
+	 * Use a &lt;= 0 value to disable caching of failed results.
+	 * @param maxEntries maximum number of cached results. When the limit is reached the least recently
+	 * used entries are removed.
+	 */
+	public ValidationResultCacheParameters(long positiveTtl, long negativeTtl, int maxEntries)
+	{
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive");
+		this.positiveTtl = positiveTtl;
+		this.negativeTtl = negativeTtl;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return true if either positive or negative results shall be cached
+	 */
+	public boolean isEnabled()
+	{
+		return positiveTtl > 0 || negativeTtl > 0;
+	}
+
+	public long getPositiveTtl()
+	{
+		return positiveTtl;
+	}
+
+	public void setPositiveTtl(long positiveTtl)
+	{
+		this.positiveTtl = positiveTtl;
+	}
+
+	public long getNegativeTtl()
+	{
+		return negativeTtl;
+	}
+
+	public void setNegativeTtl(long negativeTtl)
+	{
+		this.negativeTtl = negativeTtl;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries)
+	{
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive");
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public ValidationResultCacheParameters clone()
+	{
+		return new ValidationResultCacheParameters(positiveTtl, negativeTtl, maxEntries);
+	}
+}
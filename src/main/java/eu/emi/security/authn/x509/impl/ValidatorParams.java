@@ -11,6 +11,8 @@ import eu.emi.security.authn.x509.ProxySupport;
 import eu.emi.security.authn.x509.RevocationParameters;
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.X509CertChainValidator;
+import eu.emi.security.authn.x509.helpers.BoundedCache;
+import eu.emi.security.authn.x509.helpers.ParallelLoader;
 
 /**
  * Contains parameters common for all {@link X509CertChainValidator} implementations.
@@ -24,6 +26,13 @@ public class ValidatorParams
 	protected ProxySupport allowProxy;
 	protected Collection<? extends StoreUpdateListener> initialListeners;
 	protected RevocationParameters revocationSettings;
+	protected ValidationResultCacheParameters resultCacheSettings = new ValidationResultCacheParameters();
+	protected long directoryWatchDelay = -1;
+	protected int lazyCacheMaxEntries = BoundedCache.DEFAULT_MAX_ENTRIES;
+	protected long lazyCacheMaxStaleness = -1;
+	protected String truststoreSnapshot;
+	protected int loadingParallelism = ParallelLoader.DEFAULT_PARALLELISM;
+	protected String crlMappedCachePath;
 	
 	/**
 	 * Default constructor: proxies are allowed, no initial update listeners,
@@ -108,4 +117,152 @@ public class ValidatorParams
 	{
 		this.revocationSettings = revocationSettings;
 	}
+
+	/**
+	 * @return settings of the validation results cache
+	 */
+	public ValidationResultCacheParameters getResultCacheSettings()
+	{
+		return resultCacheSettings;
+	}
+
+	/**
+	 * @param resultCacheSettings settings of the validation results cache
+	 */
+	public void setResultCacheSettings(ValidationResultCacheParameters resultCacheSettings)
+	{
+		this.resultCacheSettings = resultCacheSettings;
+	}
+
+	/**
+	 * @return delay of applying changes detected in watched truststore and CRL directories, 
+	 * or a value &lt;= 0 if directories are not watched.
+	 */
+	public long getDirectoryWatchDelay()
+	{
+		return directoryWatchDelay;
+	}
+
+	/**
+	 * Enables watching of the local truststore and CRL directories for changes, using the operating 
+	 * system notifications (requires Java 7). Created, modified and removed files are reloaded 
+	 * as soon as no further changes were noticed for the given delay, what allows for 
+	 * turning off (or significantly increasing) the periodic update interval. 
+	 * Supported by the directory based validators and the OpenSSL validator in the non-lazy mode.
+	 * By default directories are not watched.
+	 * @param directoryWatchDelay delay in ms of applying changes. Use a &lt;= 0 value to disable watching.
+	 */
+	public void setDirectoryWatchDelay(long directoryWatchDelay)
+	{
+		this.directoryWatchDelay = directoryWatchDelay;
+	}
+
+	/**
+	 * @return maximum number of entries of each of the in-memory caches of on-demand loaded trust material
+	 */
+	public int getLazyCacheMaxEntries()
+	{
+		return lazyCacheMaxEntries;
+	}
+
+	/**
+	 * Sets the maximum number of entries in each of the in-memory caches used by validators 
+	 * loading trust material on demand (the OpenSSL validator in the lazy mode): of trust anchors 
+	 * per subject, CRLs per issuer and namespace policies per CA. Cached entries expire after 
+	 * the validator's update interval. The default is {@value BoundedCache#DEFAULT_MAX_ENTRIES}.
+	 * @param lazyCacheMaxEntries maximum number of cached entries, must be positive
+	 */
+	public void setLazyCacheMaxEntries(int lazyCacheMaxEntries)
+	{
+		if (lazyCacheMaxEntries <= 0)
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive");
+		this.lazyCacheMaxEntries = lazyCacheMaxEntries;
+	}
+
+	/**
+	 * @return time in ms for which expired entries of the caches of on-demand loaded trust material
+	 * are still used, while being reloaded in background
+	 */
+	public long getLazyCacheMaxStaleness()
+	{
+		return lazyCacheMaxStaleness;
+	}
+
+	/**
+	 * Sets for how long the validators loading trust material on demand may still use
+	 * an expired cache entry (a trust anchor, CRL or namespace policy), while its fresh version is 
+	 * loaded in background. Validations requiring such entries are therefore not delayed by disk reads.
+	 * Entries expired for longer are reloaded before use. By default (a &lt;= 0 value) expired 
+	 * entries are always reloaded before use.
+	 * @param lazyCacheMaxStaleness maximum staleness of cache entries in ms
+	 */
+	public void setLazyCacheMaxStaleness(long lazyCacheMaxStaleness)
+	{
+		this.lazyCacheMaxStaleness = lazyCacheMaxStaleness;
+	}
+
+	/**
+	 * @return path of the truststore snapshot or null if not set
+	 */
+	public String getTruststoreSnapshot()
+	{
+		return truststoreSnapshot;
+	}
+
+	/**
+	 * Sets a path of a binary truststore snapshot, created with 
+	 * {@link eu.emi.security.authn.x509.helpers.trust.OpensslTruststoreSnapshot}. The OpenSSL validator 
+	 * in the non-lazy mode starts with the certificates and namespace policies of the snapshot and 
+	 * parses only the files which were changed since the snapshot was created. The snapshot is 
+	 * ignored if the truststore directory was modified (a file was added, removed or renamed) since 
+	 * it was created. By default no snapshot is used.
+	 * @param truststoreSnapshot path of the snapshot file or null to disable
+	 */
+	public void setTruststoreSnapshot(String truststoreSnapshot)
+	{
+		this.truststoreSnapshot = truststoreSnapshot;
+	}
+
+	/**
+	 * @return maximum number of threads used to load trust material
+	 */
+	public int getLoadingParallelism()
+	{
+		return loadingParallelism;
+	}
+
+	/**
+	 * Sets the maximum number of threads used by validators to load their truststore files (and
+	 * CRLs of the OpenSSL validator) during the initial load and subsequent updates. CRLs configured
+	 * with {@link CRLParameters} are loaded with the parallelism set there. 
+	 * The default is the number of available processors.
+	 * @param loadingParallelism maximum number of threads, must be positive. Use 1 to load in a single thread.
+	 */
+	public void setLoadingParallelism(int loadingParallelism)
+	{
+		if (loadingParallelism <= 0)
+			throw new IllegalArgumentException("Loading parallelism must be positive");
+		this.loadingParallelism = loadingParallelism;
+	}
+
+	/**
+	 * @return directory of the memory mapped CRL cache or null if not set
+	 */
+	public String getCrlMappedCachePath()
+	{
+		return crlMappedCachePath;
+	}
+
+	/**
+	 * Sets a directory where the OpenSSL validator stores its CRLs together with the index of 
+	 * the revoked certificates. The CRLs are then used from memory mapped files, outside of 
+	 * the Java heap, and the memory is shared by all processes using the same directory. After 
+	 * a restart CRLs are not parsed again, unless their files were changed. CRLs configured with 
+	 * {@link CRLParameters} use the directory set there. By default no mapped cache is used.
+	 * @param crlMappedCachePath path of the directory or null to disable
+	 */
+	public void setCrlMappedCachePath(String crlMappedCachePath)
+	{
+		this.crlMappedCachePath = crlMappedCachePath;
+	}
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BoundedCacheTest
+{
+	@Test
+	public void shouldEvictOldestEntries() throws Exception
+	{
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(2);
+		cache.put("a", "A", 10);
+		Thread.sleep(5);
+		cache.put("b", "B", 20);
+		Thread.sleep(5);
+		cache.put("c", "C", 30);
+		
+		assertNull(cache.get("a", 100000));
+		assertEquals("B", cache.get("b", 100000));
+		assertEquals("C", cache.get("c", 100000));
+		
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(2, stats.getSize());
+		assertEquals(1, stats.getEvictions());
+		assertEquals(2, stats.getHits());
+		assertEquals(1, stats.getMisses());
+		assertEquals(3, stats.getLoads());
+		assertEquals(60, stats.getTotalLoadTime());
+	}
+
+	@Test
+	public void shouldExpireEntries() throws Exception
+	{
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10);
+		cache.put("a", "A", 0);
+		Thread.sleep(20);
+		assertEquals("A", cache.get("a", 100000));
+		assertNull(cache.get("a", 5));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getStatistics().getExpirations());
+	}
+
+	@Test
+	public void shouldReturnStaleEntryAndRefreshInBackground() throws Exception
+	{
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10);
+		cache.setMaxStaleness(100000);
+		final AtomicInteger loads = new AtomicInteger();
+		BoundedCache.Loader<String, String> loader = new BoundedCache.Loader<String, String>()
+		{
+			@Override
+			public String load(String key)
+			{
+				return key + loads.incrementAndGet();
+			}
+		};
+		assertEquals("a1", cache.getOrLoad("a", 5, loader));
+		Thread.sleep(20);
+		assertEquals("a1", cache.getOrLoad("a", 5, loader));
+		
+		for (int i=0; i<100 && cache.getStatistics().getLoads() < 2; i++)
+			Thread.sleep(20);
+		assertEquals(2, loads.get());
+		assertEquals("a2", cache.getOrLoad("a", 100000, loader));
+		assertEquals(2, cache.getStatistics().getLoads());
+	}
+}
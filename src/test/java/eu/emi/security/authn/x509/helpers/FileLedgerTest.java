@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class FileLedgerTest
+{
+	private int loads;
+	
+	private FileLedger.Loader<String> loader = new FileLedger.Loader<String>()
+	{
+		@Override
+		public String load(File file)
+		{
+			loads++;
+			try
+			{
+				return FileUtils.readFileToString(file, "US-ASCII");
+			} catch (IOException e)
+			{
+				return null;
+			}
+		}
+	};
+	
+	@Test
+	public void shouldParseOnlyChangedFiles() throws Exception
+	{
+		File file = new File("target/test-tmp/ledger/file.txt");
+		FileUtils.deleteQuietly(file.getParentFile());
+		FileUtils.writeStringToFile(file, "first", "US-ASCII");
+		FileLedger<String> ledger = new FileLedger<String>();
+		
+		assertEquals("first", ledger.get(file, loader));
+		assertEquals("first", ledger.get(file, loader));
+		assertEquals(1, loads);
+		long modifications = ledger.getModificationCount();
+		
+		file.setLastModified(file.lastModified() - 10000);
+		assertEquals("first", ledger.get(file, loader));
+		assertEquals(1, loads);
+		assertEquals(modifications, ledger.getModificationCount());
+		
+		FileUtils.writeStringToFile(file, "second", "US-ASCII");
+		assertEquals("second", ledger.get(file, loader));
+		assertEquals(2, loads);
+		
+		ledger.retainAll(Collections.<File>emptyList());
+		assertEquals(0, ledger.size());
+		FileUtils.deleteQuietly(file.getParentFile());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ParallelLoaderTest
+{
+	@Test
+	public void shouldReturnResultsInOrderOfSources()
+	{
+		List<Integer> sources = new ArrayList<Integer>();
+		for (int i=0; i<100; i++)
+			sources.add(i);
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		List<String> results = ParallelLoader.loadAll(sources, 4, new ParallelLoader.Task<Integer, String>()
+		{
+			@Override
+			public String load(Integer source)
+			{
+				threads.add(Thread.currentThread());
+				try
+				{
+					Thread.sleep(2);
+				} catch (InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+				return source % 10 == 0 ? null : "r" + source;
+			}
+		});
+		assertEquals(100, results.size());
+		for (int i=0; i<100; i++)
+			assertEquals(i % 10 == 0 ? null : "r" + i, results.get(i));
+		assertTrue(threads.size() > 1);
+		assertTrue(threads.size() <= 4);
+	}
+
+	@Test
+	public void shouldLoadAllSourcesBeforeRethrowingFailure()
+	{
+		final AtomicInteger loaded = new AtomicInteger();
+		try
+		{
+			ParallelLoader.loadAll(Collections.nCopies(20, "x"), 3, new ParallelLoader.Task<String, String>()
+			{
+				@Override
+				public String load(String source)
+				{
+					if (loaded.incrementAndGet() == 5)
+						throw new IllegalStateException("failed");
+					return source;
+				}
+			});
+			fail("Exception not rethrown");
+		} catch (IllegalStateException e)
+		{
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(20, loaded.get());
+	}
+
+	@Test
+	public void shouldNotUseMoreThreadsThenPoolLimit()
+	{
+		int sources = ParallelLoader.MAX_WORKERS * 3;
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		List<String> results = ParallelLoader.loadAll(Collections.nCopies(sources, "x"), sources, 
+				new ParallelLoader.Task<String, String>()
+		{
+			@Override
+			public String load(String source)
+			{
+				threads.add(Thread.currentThread());
+				try
+				{
+					Thread.sleep(5);
+				} catch (InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+				return source;
+			}
+		});
+		assertEquals(sources, results.size());
+		assertTrue(threads.size() <= ParallelLoader.MAX_WORKERS + 1);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class CRLReaderTest
+{
+	private static final String NIST = "src/test/resources/NIST/";
+	
+	@Test
+	public void shouldReadTheSameCRLAsFactory() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		X509CRL parsed = AbstractCRLStoreSPI.parseCRL(new ByteArrayInputStream(data));
+		
+		IndexedX509CRL crl = CRLReader.read(data);
+		
+		assertTrue(crl.equals(parsed));
+		assertEquals(parsed.getIssuerX500Principal(), crl.getIssuerX500Principal());
+		assertEquals(parsed.getThisUpdate(), crl.getThisUpdate());
+		assertEquals(parsed.getNextUpdate(), crl.getNextUpdate());
+		assertEquals(parsed.getVersion(), crl.getVersion());
+		assertEquals(parsed.getSigAlgOID(), crl.getSigAlgOID());
+		assertArrayEquals(parsed.getSignature(), crl.getSignature());
+		assertArrayEquals(parsed.getTBSCertList(), crl.getTBSCertList());
+		assertEquals(parsed.getRevokedCertificates().size(), 
+				crl.getRevokedCertificatesIndex().size());
+	}
+
+	@Test
+	public void shouldVerifySignatureOfReadCRL() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		X509Certificate ca = CertificateUtils.loadCertificate(
+				new FileInputStream(NIST + "certs/GoodCACert.crt"), Encoding.DER);
+		X509Certificate otherCa = CertificateUtils.loadCertificate(
+				new FileInputStream(NIST + "certs/TrustAnchorRootCertificate.crt"), Encoding.DER);
+		IndexedX509CRL crl = CRLReader.read(data);
+		
+		crl.verify(ca.getPublicKey());
+		try
+		{
+			crl.verify(otherCa.getPublicKey());
+			fail("CRL verified with a wrong key");
+		} catch (SignatureException e)
+		{
+			//OK
+		}
+	}
+
+	@Test
+	public void shouldReadPEMCRL() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(
+				"src/test/resources/truststores/maincacrl.pem"));
+		X509CRL parsed = AbstractCRLStoreSPI.parseCRL(new ByteArrayInputStream(data));
+		
+		IndexedX509CRL crl = CRLReader.read(data);
+		
+		assertTrue(crl.equals(parsed));
+	}
+
+	@Test
+	public void shouldRejectMalformedCRL() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		byte[] truncated = new byte[data.length - 10];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		try
+		{
+			CRLReader.read(truncated);
+			fail("Truncated CRL was read");
+		} catch (CRLException e)
+		{
+			//OK
+		}
+	}
+
+	@Test
+	public void shouldAcceptLengthsAbove16MiB() throws Exception
+	{
+		int length = 0x01000000 + 10;
+		ByteBuffer der = ByteBuffer.allocate(6 + length);
+		der.put(new byte[] {0x30, (byte)0x84, 0x01, 0x00, 0x00, 0x0A});
+		
+		assertEquals(der.limit(), CRLReader.getEnd(der, 0, der.limit()));
+		assertEquals(6, CRLReader.getContentStart(der, 0));
+	}
+
+	@Test
+	public void shouldRejectLengthsAboveIntegerRange() throws Exception
+	{
+		ByteBuffer der = ByteBuffer.wrap(new byte[] {0x30, (byte)0x84, (byte)0x80, 0x00, 0x00, 0x00, 0x00});
+		try
+		{
+			CRLReader.getEnd(der, 0, Integer.MAX_VALUE);
+			fail("Too large length was accepted");
+		} catch (CRLException e)
+		{
+			//OK
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+
+import org.junit.Test;
+
+public class IndexedX509CRLTest
+{
+	private static X509CRL parse(String file) throws Exception
+	{
+		InputStream is = new FileInputStream("src/test/resources/NIST/crls/" + file);
+		try
+		{
+			return AbstractCRLStoreSPI.parseCRL(is);
+		} finally
+		{
+			is.close();
+		}
+	}
+	
+	@Test
+	public void shouldFindRevokedSerials() throws Exception
+	{
+		X509CRL parsed = parse("GoodCACRL.crl");
+		IndexedX509CRL crl = new IndexedX509CRL(parsed);
+		RevokedCertificatesIndex index = crl.getRevokedCertificatesIndex();
+		
+		assertEquals(2, index.size());
+		int position = index.find(BigInteger.valueOf(14));
+		assertTrue(position >= 0);
+		assertEquals(1, index.getReason(position));
+		assertEquals(parsed.getRevokedCertificate(BigInteger.valueOf(14)).getRevocationDate().getTime(),
+				index.getRevocationDate(position));
+		assertEquals(-1, index.find(BigInteger.valueOf(16)));
+		assertNull(crl.getRevokedCertificate(BigInteger.valueOf(16)));
+		assertNotNull(crl.getRevokedCertificate(BigInteger.valueOf(15)));
+	}
+	
+	@Test
+	public void shouldBeInterchangeableWithParsedCRL() throws Exception
+	{
+		X509CRL parsed = parse("GoodCACRL.crl");
+		IndexedX509CRL crl = new IndexedX509CRL(parsed);
+		
+		assertTrue(crl.equals(parsed));
+		assertEquals(parsed.hashCode(), crl.hashCode());
+		assertArrayEquals(parsed.getTBSCertList(), crl.getTBSCertList());
+		assertEquals(parsed.getNonCriticalExtensionOIDs(), crl.getNonCriticalExtensionOIDs());
+		assertEquals(parsed.getNextUpdate(), crl.getNextUpdate());
+	}
+	
+	@Test
+	public void shouldSortSerialsNumerically() throws Exception
+	{
+		RevokedCertificatesIndex.Builder builder = new RevokedCertificatesIndex.Builder(false);
+		long[] serials = {300, 5, -1, 128, 0, -300, 127};
+		for (long serial: serials)
+			builder.add(BigInteger.valueOf(serial), serial, RevokedCertificatesIndex.NO_REASON, null);
+		RevokedCertificatesIndex index = builder.build();
+		
+		long[] sorted = {-300, -1, 0, 5, 127, 128, 300};
+		for (int i=0; i<sorted.length; i++)
+		{
+			assertEquals(BigInteger.valueOf(sorted[i]), index.getSerial(i));
+			assertEquals(i, index.find(BigInteger.valueOf(sorted[i])));
+			assertEquals(sorted[i], index.getRevocationDate(i));
+		}
+		assertFalse(index.hasSerial(index.find(BigInteger.valueOf(1)), BigInteger.valueOf(1)));
+	}
+
+	@Test
+	public void shouldFilterNotRevokedSerials() throws Exception
+	{
+		RevokedCertificatesIndex.Builder builder = new RevokedCertificatesIndex.Builder(false);
+		for (int i=0; i<1000; i++)
+			builder.add(BigInteger.valueOf(2 * i), i, RevokedCertificatesIndex.NO_REASON, null);
+		RevokedCertificatesIndex index = builder.build();
+		
+		int positives = 0;
+		for (int i=0; i<1000; i++)
+		{
+			assertTrue(index.mightContain(BigInteger.valueOf(2 * i)));
+			if (index.mightContain(BigInteger.valueOf(2 * i + 1)))
+				positives++;
+		}
+		assertTrue("Too many false positives: " + positives, positives < 50);
+		assertFalse(new RevokedCertificatesIndex.Builder(false).build().mightContain(BigInteger.ONE));
+	}
+}
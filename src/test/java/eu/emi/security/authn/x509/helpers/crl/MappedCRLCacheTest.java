@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class MappedCRLCacheTest
+{
+	private static final String NIST = "src/test/resources/NIST/";
+	private File dir = new File("target/test-tmp/mapped-crls");
+
+	@Before
+	public void setup() throws Exception
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void shouldReturnStoredCRLForTheSameStamp() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		IndexedX509CRL crl = CRLReader.read(data);
+		X509Certificate ca = CertificateUtils.loadCertificate(
+				new FileInputStream(NIST + "certs/GoodCACert.crt"), Encoding.DER);
+		new MappedCRLCache(dir).put("location", 1000, data.length, crl);
+
+		IndexedX509CRL mapped = new MappedCRLCache(dir).get("location", 1000, data.length);
+
+		assertNotNull(mapped);
+		assertTrue(mapped.equals(crl));
+		assertEquals(crl.hashCode(), mapped.hashCode());
+		assertEquals(crl.getIssuerX500Principal(), mapped.getIssuerX500Principal());
+		assertEquals(crl.getNextUpdate(), mapped.getNextUpdate());
+		RevokedCertificatesIndex index = mapped.getRevokedCertificatesIndex();
+		assertEquals(2, index.size());
+		assertEquals(1, index.getReason(index.find(BigInteger.valueOf(14))));
+		assertEquals(-1, index.find(BigInteger.valueOf(1)));
+		mapped.verify(ca.getPublicKey());
+	}
+
+	@Test
+	public void shouldNotReturnCRLForChangedStamp() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		MappedCRLCache cache = new MappedCRLCache(dir);
+		cache.put("location", 1000, data.length, CRLReader.read(data));
+
+		assertNull(cache.get("location", 1001, data.length));
+		assertNull(cache.get("location", 1000, data.length + 1));
+		assertNull(cache.get("other", 1000, data.length));
+	}
+
+	@Test
+	public void shouldIgnoreCorruptedFile() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		MappedCRLCache cache = new MappedCRLCache(dir);
+		File file = cache.getFile("location");
+		cache.put("location", 1000, data.length, CRLReader.read(data));
+		byte[] stored = FileUtils.readFileToByteArray(file);
+		byte[] truncated = new byte[stored.length - 20];
+		System.arraycopy(stored, 0, truncated, 0, truncated.length);
+		FileUtils.writeByteArrayToFile(file, truncated);
+
+		assertNull(cache.get("location", 1000, data.length));
+	}
+
+	@Test
+	public void shouldIgnoreFileWithModifiedContents() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		MappedCRLCache cache = new MappedCRLCache(dir);
+		File file = cache.getFile("location");
+		cache.put("location", 1000, data.length, CRLReader.read(data));
+		byte[] stored = FileUtils.readFileToByteArray(file);
+		stored[stored.length - data.length - 1] ^= 1;
+		FileUtils.writeByteArrayToFile(file, stored);
+
+		assertNull(cache.get("location", 1000, data.length));
+	}
+
+	@Test
+	public void shouldRemoveStoredCRL() throws Exception
+	{
+		byte[] data = FileUtils.readFileToByteArray(new File(NIST + "crls/GoodCACRL.crl"));
+		MappedCRLCache cache = new MappedCRLCache(dir);
+		cache.put("location", 1000, data.length, CRLReader.read(data));
+
+		cache.remove("location");
+
+		assertFalse(cache.getFile("location").exists());
+		assertNull(cache.get("location", 1000, data.length));
+	}
+}
@@ -4,9 +4,13 @@
  */
 package eu.emi.security.authn.x509.helpers.pkipath;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -26,4 +30,18 @@ public class PlainStoreUtilsTest
 			fail("Shouldn't get exception");
 		}
 	}
+
+	@Test
+	public void shouldInterleaveLocationsOfDifferentHosts() throws Exception
+	{
+		URL a1 = new URL("http://a.example.org/1.crl");
+		URL a2 = new URL("http://a.example.org/2.crl");
+		URL a3 = new URL("http://A.example.org/3.crl");
+		URL b1 = new URL("http://b.example.org/1.crl");
+		URL c1 = new URL("http://c.example.org/1.crl");
+		
+		List<URL> ordered = PlainStoreUtils.interleaveHosts(Arrays.asList(a1, a2, a3, b1, c1));
+		
+		assertEquals(Arrays.asList(a1, b1, c1, a2, a3), ordered);
+	}
 }
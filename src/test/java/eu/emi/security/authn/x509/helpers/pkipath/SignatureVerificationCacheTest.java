@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.pkipath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.helpers.crl.CRLReader;
+import eu.emi.security.authn.x509.helpers.crl.IndexedX509CRL;
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class SignatureVerificationCacheTest
+{
+	@Test
+	public void shouldRememberOnlySuccessfulVerifications() throws Exception
+	{
+		X509Certificate[] chain = CertificateUtils.loadCertificateChain(
+				new FileInputStream("src/test/resources/test-pems/certAndCa.pem"), Encoding.PEM);
+		SignatureVerificationCache cache = new SignatureVerificationCache(10);
+		
+		cache.verify(chain[0], chain[1].getPublicKey(), null);
+		cache.verify(chain[0], chain[1].getPublicKey(), null);
+		assertEquals(1, cache.getStatistics().getHits());
+		assertEquals(1, cache.getStatistics().getMisses());
+		assertEquals(1, cache.getStatistics().getSize());
+		
+		for (int i=0; i<2; i++)
+		{
+			try
+			{
+				cache.verify(chain[0], chain[0].getPublicKey(), null);
+				fail("Verification with a wrong key succeeded");
+			} catch (GeneralSecurityException e)
+			{
+				//OK
+			}
+		}
+		assertEquals(1, cache.getStatistics().getHits());
+		assertEquals(1, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void shouldUseVerificationMarkOfIndexedCRL() throws Exception
+	{
+		String nist = "src/test/resources/NIST/";
+		IndexedX509CRL crl = CRLReader.read(FileUtils.readFileToByteArray(
+				new File(nist + "crls/GoodCACRL.crl")));
+		X509Certificate ca = CertificateUtils.loadCertificate(
+				new FileInputStream(nist + "certs/GoodCACert.crt"), Encoding.DER);
+		X509Certificate otherCa = CertificateUtils.loadCertificate(
+				new FileInputStream(nist + "certs/TrustAnchorRootCertificate.crt"), Encoding.DER);
+		SignatureVerificationCache cache = new SignatureVerificationCache(10);
+		
+		cache.verify(crl, ca.getPublicKey());
+		cache.verify(crl, ca.getPublicKey());
+		assertEquals(1, cache.getStatistics().getHits());
+		assertEquals(1, cache.getStatistics().getMisses());
+		assertEquals(0, cache.getStatistics().getSize());
+		assertTrue(crl.isVerifiedWith(ca.getPublicKey()));
+		
+		try
+		{
+			cache.verify(crl, otherCa.getPublicKey());
+			fail("Verification with a wrong key succeeded");
+		} catch (GeneralSecurityException e)
+		{
+			//OK
+		}
+		assertFalse(crl.isVerifiedWith(otherCa.getPublicKey()));
+		assertTrue(crl.isVerifiedWith(ca.getPublicKey()));
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.pkipath;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.ValidationResult;
+import eu.emi.security.authn.x509.impl.ValidationResultCacheParameters;
+import eu.emi.security.authn.x509.ocsp.OCSPTestCA;
+
+public class ValidationResultCacheTest
+{
+	@Test
+	public void shouldDropResultsComputedWithOtherCRLGeneration() throws Exception
+	{
+		ValidationResultCache cache = new ValidationResultCache(
+				new ValidationResultCacheParameters(60000, 60000, 10));
+		X509Certificate[] chain = new X509Certificate[] {new OCSPTestCA().getCertificate()};
+		String key = cache.createKey(chain);
+
+		cache.put(key, chain, new ValidationResult(true), new ResultLifetimeTracker(),
+				cache.getGeneration(), 1, 5);
+
+		assertNotNull(cache.get(key, 1, 5));
+		assertNull(cache.get(key, 1, 6));
+	}
+
+	@Test
+	public void shouldNotCachePositiveResultWithUndeterminedRevocationForPositiveTtl() throws Exception
+	{
+		ValidationResultCache cache = new ValidationResultCache(
+				new ValidationResultCacheParameters(60000, 0, 10));
+		X509Certificate[] chain = new X509Certificate[] {new OCSPTestCA().getCertificate()};
+		String key = cache.createKey(chain);
+		ResultLifetimeTracker tracker = new ResultLifetimeTracker();
+		tracker.markRevocationUndetermined();
+
+		cache.put(key, chain, new ValidationResult(true), tracker, cache.getGeneration(), 1, 1);
+
+		assertNull(cache.get(key, 1, 1));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.ssl;
+
+import static org.junit.Assert.fail;
+
+import java.io.FileInputStream;
+import java.security.AlgorithmConstraints;
+import java.security.AlgorithmParameters;
+import java.security.CryptoPrimitive;
+import java.security.Key;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+
+import javax.net.ssl.SSLParameters;
+
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class EndpointIdentityCheckerTest
+{
+	private static final String PFX = "src/test/resources/glite-utiljava/trusted-certs/";
+
+	@Test
+	public void shouldMatchAltNamesWithHttpsRules() throws Exception
+	{
+		X509Certificate cert = load("trusted_altname.cert");
+
+		assertMatches("HTTPS", "ja.hoo.org", cert);
+		assertMatches("HTTPS", "JA.hoo.org.", cert);
+		assertMatches("HTTPS", "joo.haa.org", cert);
+		assertMatches("HTTPS", "ga.easda.com", cert);
+		assertMatches("HTTPS", "123.124.220.1", cert);
+		assertNotMatches("HTTPS", "ja.ja.hoo.org", cert);
+		assertNotMatches("HTTPS", "da.easda.com", cert);
+		assertNotMatches("HTTPS", "123.124.220.12", cert);
+		//CN is not used when dNSName is present
+		assertNotMatches("HTTPS", "xxx.foo.bar", cert);
+	}
+
+	@Test
+	public void shouldAllowWildcardOnlyInLeftmostLabelWithLdaps() throws Exception
+	{
+		X509Certificate cert = load("trusted_altname.cert");
+
+		assertMatches("LDAPS", "ja.hoo.org", cert);
+		assertNotMatches("LDAPS", "ga.easda.com", cert);
+	}
+
+	@Test
+	public void shouldUseCommonNameOnlyForHostNames() throws Exception
+	{
+		X509Certificate cert = load("trusted_server2.cert");
+
+		assertMatches("HTTPS", "xxx2.foo.bar", cert);
+		assertNotMatches("HTTPS", "xxx.foo.bar", cert);
+		assertNotMatches("HTTPS", "123.124.220.1", cert);
+	}
+
+	@Test
+	public void shouldNotResolveUnknownHosts() throws Exception
+	{
+		assertNotMatches("HTTPS", "no-such-host.invalid", load("trusted_altname.cert"));
+	}
+
+	@Test
+	public void shouldRejectUnknownAlgorithm() throws Exception
+	{
+		assertNotMatches("FOO", "ja.hoo.org", load("trusted_altname.cert"));
+	}
+
+	@Test
+	public void shouldCheckAlgorithmConstraints() throws Exception
+	{
+		X509Certificate[] chain = new X509Certificate[] {load("trusted_altname.cert")};
+		SSLTrustManager trustManager = new SSLTrustManager(null);
+		SSLParameters params = new SSLParameters();
+		trustManager.checkAlgorithmConstraints(chain, params);
+
+		params.setAlgorithmConstraints(new DenyingConstraints("MD5"));
+		try
+		{
+			trustManager.checkAlgorithmConstraints(chain, params);
+			fail("MD5 signature was accepted");
+		} catch (CertificateException e)
+		{
+			//OK
+		}
+		params.setAlgorithmConstraints(new DenyingConstraints("SHA1"));
+		trustManager.checkAlgorithmConstraints(chain, params);
+	}
+
+	private static void assertMatches(String algorithm, String host, X509Certificate cert)
+			throws CertificateException
+	{
+		EndpointIdentityChecker.checkIdentity(algorithm, host, cert);
+	}
+
+	private static void assertNotMatches(String algorithm, String host, X509Certificate cert)
+	{
+		try
+		{
+			EndpointIdentityChecker.checkIdentity(algorithm, host, cert);
+			fail("Host " + host + " was accepted");
+		} catch (CertificateException e)
+		{
+			//OK
+		}
+	}
+
+	private static X509Certificate load(String file) throws Exception
+	{
+		return CertificateUtils.loadCertificate(new FileInputStream(PFX + file), Encoding.PEM);
+	}
+
+	private static class DenyingConstraints implements AlgorithmConstraints
+	{
+		private final String denied;
+
+		public DenyingConstraints(String denied)
+		{
+			this.denied = denied;
+		}
+
+		@Override
+		public boolean permits(Set<CryptoPrimitive> primitives, String algorithm,
+				AlgorithmParameters parameters)
+		{
+			return !algorithm.toUpperCase().contains(denied);
+		}
+
+		@Override
+		public boolean permits(Set<CryptoPrimitive> primitives, Key key)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean permits(Set<CryptoPrimitive> primitives, String algorithm, Key key,
+				AlgorithmParameters parameters)
+		{
+			return permits(primitives, algorithm, parameters);
+		}
+	}
+}
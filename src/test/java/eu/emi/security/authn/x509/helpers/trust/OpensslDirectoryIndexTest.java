@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.helpers.ObserversHandler;
+
+public class OpensslDirectoryIndexTest
+{
+	private static final String DIR = "src/test/resources/glite-utiljava/grid-security/certificates";
+	
+	@Test
+	public void shouldIndexFilesByHash()
+	{
+		OpensslDirectoryIndex index = new OpensslDirectoryIndex(new File(DIR));
+		
+		assertEquals(1, index.getCertificates("2537774a", 100000).size());
+		assertEquals("2537774a.0", index.getCertificates("2537774a", 100000).get(0).getName());
+		assertEquals(1, index.getCRLs("2537774a", 100000).size());
+		assertEquals("2537774a.r0", index.getCRLs("2537774a", 100000).get(0).getName());
+		assertEquals(0, index.getCertificates("00000000", 100000).size());
+		assertTrue(index.contains("2537774a.namespaces", 100000));
+		assertTrue(index.contains("2537774a.signing_policy", 100000));
+		assertFalse(index.contains("00000000.namespaces", 100000));
+		assertEquals(FileUtils.listFiles(new File(DIR), new String[] {"0"}, false).size(), 
+				index.getAllCertificates(100000).size());
+		assertSame(OpensslDirectoryIndex.getInstance(DIR), OpensslDirectoryIndex.getInstance(DIR));
+	}
+	
+	@Test
+	public void shouldRefreshListingWhenInvalidated() throws Exception
+	{
+		File dir = new File("target/test-tmp/openssl-index");
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+		OpensslDirectoryIndex index = new OpensslDirectoryIndex(dir);
+		assertEquals(0, index.getAllCertificates(100000).size());
+		
+		FileUtils.copyFileToDirectory(new File(DIR, "2537774a.0"), dir);
+		assertEquals(0, index.getAllCertificates(100000).size());
+		index.invalidate();
+		assertEquals(1, index.getCertificates("2537774a", 100000).size());
+		FileUtils.deleteDirectory(dir);
+	}
+	
+	@Test
+	public void shouldBeInvalidatedByStoreWhenListedFileIsMissing() throws Exception
+	{
+		File dir = new File("target/test-tmp/openssl-index-store");
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+		FileUtils.copyFileToDirectory(new File(DIR, "2537774a.0"), dir);
+		OpensslDirectoryIndex index = OpensslDirectoryIndex.getInstance(dir.getPath());
+		LazyOpensslTrustAnchorStoreImpl store = new LazyOpensslTrustAnchorStoreImpl(dir.getPath(), 
+				100000, new ObserversHandler(), false);
+		assertEquals(1, index.getAllCertificates(100000).size());
+		
+		new File(dir, "2537774a.0").delete();
+		FileUtils.copyFileToDirectory(new File(DIR, "2d0b98c8.0"), dir);
+		assertEquals(0, store.getSnapshot().size());
+		assertEquals(1, index.getCertificates("2d0b98c8", 100000).size());
+		store.dispose();
+		FileUtils.deleteDirectory(dir);
+	}
+}
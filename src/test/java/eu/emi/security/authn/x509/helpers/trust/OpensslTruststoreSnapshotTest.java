@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.security.cert.TrustAnchor;
+import java.util.List;
+import java.util.Timer;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ns.NamespacePolicy;
+
+public class OpensslTruststoreSnapshotTest
+{
+	private static final String DIR = "src/test/resources/glite-utiljava/grid-security/certificates";
+	private static final String HASH = "2537774a";
+	private File dir = new File("target/test-tmp/openssl-snapshot/certificates");
+	private File snapshot = new File("target/test-tmp/openssl-snapshot/snapshot.bin");
+	private Timer timer = new Timer(true);
+
+	@Before
+	public void setup() throws Exception
+	{
+		FileUtils.deleteDirectory(dir.getParentFile());
+		FileUtils.copyDirectory(new File(DIR), dir);
+	}
+
+	@After
+	public void cleanup() throws Exception
+	{
+		timer.cancel();
+		FileUtils.deleteDirectory(dir.getParentFile());
+	}
+
+	@Test
+	public void shouldRestoreTruststoreContents() throws Exception
+	{
+		OpensslTruststoreSnapshot.create(dir.getPath(), false, snapshot);
+		OpensslTruststoreSnapshot loaded = OpensslTruststoreSnapshot.load(snapshot, dir.getPath(), false);
+		assertNotNull(loaded);
+		assertEquals(FileUtils.listFiles(dir, new String[] {"0"}, false).size(),
+				loaded.getCertificates().size());
+		assertFalse(loaded.getEuGridPmaPolicies().isEmpty());
+		assertFalse(loaded.getGlobusPolicies().isEmpty());
+
+		OpensslTrustAnchorStoreImpl plain = createStore(null);
+		OpensslTrustAnchorStoreImpl restored = createStore(snapshot);
+		assertEquals(plain.getTrustAnchors(), restored.getTrustAnchors());
+		X500Principal[] ca = getCA(restored);
+		assertEquals(plain.getPmaNsStore().getPolicies(ca, 0).size(),
+				restored.getPmaNsStore().getPolicies(ca, 0).size());
+		assertEquals(plain.getGlobusNsStore().getPolicies(ca, 0).size(),
+				restored.getGlobusNsStore().getPolicies(ca, 0).size());
+		plain.dispose();
+		restored.dispose();
+	}
+
+	@Test
+	public void shouldLoadFilesChangedAfterSnapshot() throws Exception
+	{
+		OpensslTruststoreSnapshot.create(dir.getPath(), false, snapshot);
+		FileUtils.writeStringToFile(new File(dir, HASH + ".namespaces"), "", "US-ASCII");
+
+		OpensslTrustAnchorStoreImpl restored = createStore(snapshot);
+		List<NamespacePolicy> policies = restored.getPmaNsStore().getPolicies(getCA(restored), 0);
+		assertNull(policies);
+		restored.dispose();
+	}
+
+	@Test
+	public void shouldIgnoreSnapshotOfModifiedDirectory() throws Exception
+	{
+		OpensslTruststoreSnapshot.create(dir.getPath(), false, snapshot);
+		dir.setLastModified(dir.lastModified() - 10000);
+		assertNull(OpensslTruststoreSnapshot.load(snapshot, dir.getPath(), false));
+		assertNull(OpensslTruststoreSnapshot.load(snapshot, dir.getPath(), true));
+	}
+
+	private OpensslTrustAnchorStoreImpl createStore(File snapshot)
+	{
+		return new OpensslTrustAnchorStoreImpl(dir.getPath(), timer, -1, true, true,
+				new ObserversHandler(), false, snapshot, 2);
+	}
+
+	private X500Principal[] getCA(OpensslTrustAnchorStoreImpl store)
+	{
+		for (TrustAnchor anchor: store.getTrustAnchors())
+		{
+			X500Principal subject = anchor.getTrustedCert().getSubjectX500Principal();
+			if (OpensslTruststoreHelper.getOpenSSLCAHash(subject, false).equals(HASH))
+				return new X500Principal[] {subject};
+		}
+		throw new IllegalStateException("No CA with hash " + HASH);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TrustAnchorIndexTest
+{
+	private static final long HOUR = 3600000L;
+	private static KeyPair oldKey;
+	private static KeyPair newKey;
+	private static X509Certificate oldCA;
+	private static X509Certificate newCA;
+
+	@BeforeClass
+	public static void createCAs() throws Exception
+	{
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(1024);
+		oldKey = generator.generateKeyPair();
+		newKey = generator.generateKeyPair();
+		oldCA = createCertificate("CN=CA", 1, "CN=CA", oldKey.getPublic(), oldKey, true);
+		newCA = createCertificate("CN=CA", 2, "CN=CA", newKey.getPublic(), newKey, true);
+	}
+
+	@Test
+	public void shouldFindAnchorsBySubject() throws Exception
+	{
+		TrustAnchorIndex index = new TrustAnchorIndex(Arrays.asList(new TrustAnchor(oldCA, null),
+				new TrustAnchor(new X500Principal("CN=Other"), newKey.getPublic(), null)));
+
+		assertEquals(1, index.getBySubject(new X500Principal("CN=CA")).size());
+		assertEquals(1, index.getBySubject(new X500Principal("CN=Other")).size());
+		assertTrue(index.getBySubject(new X500Principal("CN=Missing")).isEmpty());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void shouldSelectIssuerCandidateByAuthorityKeyIdentifier() throws Exception
+	{
+		TrustAnchor oldAnchor = new TrustAnchor(oldCA, null);
+		TrustAnchor newAnchor = new TrustAnchor(newCA, null);
+		TrustAnchorIndex index = new TrustAnchorIndex(Arrays.asList(oldAnchor, newAnchor));
+		X509Certificate cert = createCertificate("CN=CA", 3, "CN=User",
+				KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic(), newKey, false);
+
+		Set<TrustAnchor> candidates = index.getIssuerCandidates(cert);
+
+		assertEquals(Collections.singleton(newAnchor), candidates);
+	}
+
+	@Test
+	public void shouldReturnAllSubjectMatchesWhenNoKeyIdentifierMatches() throws Exception
+	{
+		TrustAnchor oldAnchor = new TrustAnchor(oldCA, null);
+		TrustAnchor newAnchor = new TrustAnchor(newCA, null);
+		TrustAnchorIndex index = new TrustAnchorIndex(Arrays.asList(oldAnchor, newAnchor));
+		KeyPair otherKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+		X509Certificate cert = createCertificate("CN=CA", 3, "CN=User", otherKey.getPublic(),
+				otherKey, false);
+
+		Set<TrustAnchor> candidates = index.getIssuerCandidates(cert);
+
+		assertEquals(2, candidates.size());
+	}
+
+	@Test
+	public void shouldFindAnchorBySubjectKeyIdentifier() throws Exception
+	{
+		TrustAnchorIndex index = new TrustAnchorIndex(Arrays.asList(new TrustAnchor(oldCA, null),
+				new TrustAnchor(newCA, null)));
+		byte[] ski = new JcaX509ExtensionUtils().createSubjectKeyIdentifier(
+				newKey.getPublic()).getKeyIdentifier();
+
+		Set<TrustAnchor> found = index.getBySubjectKeyIdentifier(ski);
+
+		assertEquals(1, found.size());
+		assertEquals(newCA, found.iterator().next().getTrustedCert());
+	}
+
+	private static X509Certificate createCertificate(String issuer, long serial, String subject,
+			PublicKey key, KeyPair issuerKey, boolean ca) throws Exception
+	{
+		Date now = new Date();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name(issuer),
+				BigInteger.valueOf(serial), new Date(now.getTime() - HOUR),
+				new Date(now.getTime() + HOUR), new X500Name(subject), key);
+		JcaX509ExtensionUtils utils = new JcaX509ExtensionUtils();
+		if (ca)
+			builder.addExtension(Extension.subjectKeyIdentifier, false,
+					utils.createSubjectKeyIdentifier(key));
+		else
+			builder.addExtension(Extension.authorityKeyIdentifier, false,
+					utils.createAuthorityKeyIdentifier(issuerKey.getPublic()));
+		return new JcaX509CertificateConverter().getCertificate(builder.build(
+				new JcaContentSignerBuilder("SHA256withRSA").build(issuerKey.getPrivate())));
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.helpers.trust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Timer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class TrustAnchorSnapshotTest
+{
+	private static final String SRC = "src/test/resources/glite-utiljava/grid-security/certificates/";
+	private File dir = new File("target/test-tmp/trust-snapshot");
+	private Timer timer = new Timer(true);
+
+	@Before
+	public void setup() throws Exception
+	{
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+		FileUtils.copyFile(new File(SRC + "2537774a.0"), new File(dir, "2537774a.0"));
+	}
+
+	@After
+	public void cleanup() throws Exception
+	{
+		timer.cancel();
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void snapshotShouldBeImmutable() throws Exception
+	{
+		DirectoryTrustAnchorStore store = createStore();
+		TrustAnchorSnapshot snapshot = store.getSnapshot();
+		assertEquals(1, snapshot.size());
+		TrustAnchor anchor = snapshot.iterator().next();
+
+		try
+		{
+			snapshot.add(new TrustAnchor(anchor.getTrustedCert(), null));
+			fail("Snapshot was modified");
+		} catch (UnsupportedOperationException e)
+		{
+			//OK
+		}
+		try
+		{
+			snapshot.clear();
+			fail("Snapshot was cleared");
+		} catch (UnsupportedOperationException e)
+		{
+			//OK
+		}
+		Iterator<TrustAnchor> it = snapshot.iterator();
+		it.next();
+		try
+		{
+			it.remove();
+			fail("Snapshot was modified with iterator");
+		} catch (UnsupportedOperationException e)
+		{
+			//OK
+		}
+		X509Certificate[] certs = snapshot.getTrustedCertificates();
+		certs[0] = null;
+		assertEquals(anchor.getTrustedCert(), snapshot.getTrustedCertificates()[0]);
+		store.dispose();
+	}
+
+	@Test
+	public void snapshotShouldNotDependOnSourceCollection() throws Exception
+	{
+		X509Certificate cert = createStore().getTrustedCertificates()[0];
+		Set<TrustAnchor> source = new HashSet<TrustAnchor>();
+		source.add(new TrustAnchor(cert, null));
+		TrustAnchorSnapshot snapshot = new TrustAnchorSnapshot(source);
+
+		source.clear();
+
+		assertEquals(1, snapshot.size());
+		assertEquals(1, snapshot.getTrustedCertificates().length);
+	}
+
+	@Test
+	public void generationShouldChangeOnlyWhenContentsChange() throws Exception
+	{
+		DirectoryTrustAnchorStore store = createStore();
+		TrustAnchorSnapshot first = store.getSnapshot();
+
+		store.update();
+		assertSame(first, store.getSnapshot());
+
+		FileUtils.copyFile(new File(SRC + "2d0b98c8.0"), new File(dir, "2d0b98c8.0"));
+		store.update();
+		TrustAnchorSnapshot second = store.getSnapshot();
+		assertNotSame(first, second);
+		assertTrue(second.getGeneration() > first.getGeneration());
+		assertEquals(2, second.size());
+		assertEquals("Published snapshot was modified", 1, first.size());
+
+		new File(dir, "2d0b98c8.0").delete();
+		store.update();
+		TrustAnchorSnapshot third = store.getSnapshot();
+		assertTrue(third.getGeneration() > second.getGeneration());
+		assertEquals(1, third.size());
+		store.dispose();
+	}
+
+	@Test
+	public void lazyGenerationShouldChangeOnlyWhenReloadedAnchorsChange() throws Exception
+	{
+		FileUtils.copyFile(new File(SRC + "2d0b98c8.0"), new File(dir, "2d0b98c8.0"));
+		LazyOpensslTrustAnchorStoreImpl store = new LazyOpensslTrustAnchorStoreImpl(dir.getPath(), 
+				1, new ObserversHandler(), false);
+		X509Certificate[] slashChain = new X509Certificate[] {loadCert("2d0b98c8.0")};
+		X509Certificate[] subCaChain = new X509Certificate[] {loadCert("2537774a.0")};
+		long first = store.getTrustAnchorsFor(slashChain).getGeneration();
+		
+		Thread.sleep(20);
+		store.getTrustAnchorsFor(slashChain);
+		store.getTrustAnchorsFor(subCaChain);
+		assertEquals("Reload of unchanged or other anchors changed the generation", 
+				first, store.getTrustAnchorsFor(slashChain).getGeneration());
+		
+		new File(dir, "2d0b98c8.0").delete();
+		Thread.sleep(20);
+		TrustAnchorSnapshot reloaded = store.getTrustAnchorsFor(slashChain);
+		assertEquals(0, reloaded.size());
+		assertTrue(store.getTrustAnchorsFor(slashChain).getGeneration() > first);
+	}
+
+	@Test
+	public void generationsShouldBeUniqueAcrossSnapshots()
+	{
+		Set<TrustAnchor> empty = Collections.emptySet();
+		TrustAnchorSnapshot a = new TrustAnchorSnapshot(empty);
+		TrustAnchorSnapshot b = new TrustAnchorSnapshot(empty);
+		assertTrue(b.getGeneration() > a.getGeneration());
+	}
+
+	private static X509Certificate loadCert(String name) throws Exception
+	{
+		InputStream is = new FileInputStream(SRC + name);
+		try
+		{
+			return CertificateUtils.loadCertificate(is, Encoding.PEM);
+		} finally
+		{
+			is.close();
+		}
+	}
+
+	private DirectoryTrustAnchorStore createStore()
+	{
+		return new DirectoryTrustAnchorStore(Collections.singletonList(dir.getPath() + "/*.0"), null,
+				5000, timer, -1, Encoding.PEM, new ObserversHandler(), 1);
+	}
+}
@@ -7,6 +7,7 @@ package eu.emi.security.authn.x509.impl;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
@@ -15,6 +16,7 @@ import java.security.cert.CertStoreSpi;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLSelector;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -23,10 +25,15 @@ import java.util.Timer;
 import static org.junit.Assert.*;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.bouncycastle.util.encoders.Base64;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import eu.emi.security.authn.x509.RiskyIntegrationTests;
 import eu.emi.security.authn.x509.StoreUpdateListener;
 import eu.emi.security.authn.x509.helpers.ObserversHandler;
@@ -221,7 +228,7 @@ public class CRLTest
 		store.start();
 		
 		checkCRL("CN=Polish Grid CA,O=GRID,C=PL", store, 1);
-		String[] ls = dir.list();
+		String[] ls = dir.list(new SuffixFileFilter("-crl.der"));
 		assertTrue(ls.length == 2);
 		assertTrue(ls[0].equals(base64URL1) || ls[1].equals(base64URL1));
 
@@ -235,6 +242,58 @@ public class CRLTest
 		store.dispose();
 	}
 
+	@Test
+	public void testConditionalRemoteLoad() throws Exception
+	{
+		File dir = initDir();
+		final byte[] crl = FileUtils.readFileToByteArray(
+				new File("src/test/resources/test-pems/crls/relaxationsubca.crl"));
+		final List<Integer> responses = Collections.synchronizedList(new ArrayList<Integer>());
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/crl", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+				{
+					responses.add(304);
+					exchange.sendResponseHeaders(304, -1);
+				} else
+				{
+					responses.add(200);
+					exchange.sendResponseHeaders(200, crl.length);
+					exchange.getResponseBody().write(crl);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		try
+		{
+			Timer t = new Timer(true);
+			List<String> crls = Collections.singletonList("http://127.0.0.1:" + 
+					server.getAddress().getPort() + "/crl");
+			CRLParameters params = new CRLParameters(crls, -1, 5000, dir.getPath());
+			
+			PlainCRLStoreSpi store = new PlainCRLStoreSpi(params, t, new ObserversHandler());
+			store.start();
+			checkCRL("CN=the subca CA,OU=Relaxation,O=Utopia,L=Tropic,C=UG", store, 1);
+			store.dispose();
+			
+			store = new PlainCRLStoreSpi(params, t, new ObserversHandler());
+			store.start();
+			checkCRL("CN=the subca CA,OU=Relaxation,O=Utopia,L=Tropic,C=UG", store, 1);
+			store.dispose();
+			
+			assertEquals(Arrays.asList(200, 304), responses);
+		} finally
+		{
+			server.stop(0);
+		}
+	}
+
 	@Test
 	@Category(RiskyIntegrationTests.class)
 	public void testMemoryFootprint() throws Exception
@@ -4,11 +4,17 @@
  */
 package eu.emi.security.authn.x509.impl;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 
 import org.junit.Test;
@@ -58,6 +64,163 @@ public class OpensslValidatorTest
 		validator1.dispose();
 	}
 	
+	@Test
+	public void testResultCache() throws Exception
+	{
+		ValidatorParams params = new ValidatorParams();
+		params.setResultCacheSettings(new ValidationResultCacheParameters(60000, 60000, 10));
+		OpensslCertChainValidator validator1 = new OpensslCertChainValidator(
+				"src/test/resources/glite-utiljava/grid-security/certificates-newhash",
+				true, NamespaceCheckingMode.EUGRIDPMA_GLOBUS, -1, params, false);
+		X509Certificate[] cert = CertificateUtils.loadCertificateChain(new FileInputStream("src/test/resources/glite-utiljava/slash-certs/slash_client_slash.cert"), Encoding.PEM);
+		for (int i=0; i<3; i++)
+		{
+			ValidationResult result = validator1.validate(cert);
+			Assert.assertTrue(result.toString(), result.isValid());
+		}
+		Assert.assertEquals(2, validator1.getResultCacheStatistics().getHits());
+		Assert.assertEquals(1, validator1.getResultCacheStatistics().getMisses());
+		Assert.assertEquals(1, validator1.getResultCacheStatistics().getSize());
+
+		InputStream is = new FileInputStream("src/test/resources/test-pems/expiredcert.pem");
+		X509Certificate[] expired = CertificateUtils.loadCertificateChain(is, Encoding.PEM);
+		Assert.assertFalse(validator1.validate(expired).isValid());
+		Assert.assertFalse(validator1.validate(expired).isValid());
+		Assert.assertEquals("Result for an expired chain was cached", 
+				1, validator1.getResultCacheStatistics().getSize());
+		validator1.dispose();
+	}
+	
+	@Test
+	public void cachedResultsShouldSurviveUpdateWithoutChanges() throws Exception
+	{
+		ValidatorParams params = new ValidatorParams();
+		params.setResultCacheSettings(new ValidationResultCacheParameters(60000, 60000, 10));
+		OpensslCertChainValidator validator = new OpensslCertChainValidator(
+				"src/test/resources/glite-utiljava/grid-security/certificates-newhash",
+				true, NamespaceCheckingMode.EUGRIDPMA_GLOBUS, 100, params, false);
+		X509Certificate[] cert = CertificateUtils.loadCertificateChain(new FileInputStream(
+				"src/test/resources/glite-utiljava/slash-certs/slash_client_slash.cert"), Encoding.PEM);
+		Assert.assertTrue(validator.validate(cert).isValid());
+		
+		//a few updates of the truststore, namespaces and CRLs
+		Thread.sleep(400);
+		Assert.assertTrue(validator.validate(cert).isValid());
+		
+		Assert.assertEquals("Update of unchanged trust material dropped the cached result", 
+				1, validator.getResultCacheStatistics().getHits());
+		validator.dispose();
+	}
+	
+	@Test
+	public void cachedResultsShouldSurviveLazyReloadWithoutChanges() throws Exception
+	{
+		ValidatorParams params = new ValidatorParams();
+		params.setResultCacheSettings(new ValidationResultCacheParameters(60000, 60000, 10));
+		OpensslCertChainValidator validator = new OpensslCertChainValidator(
+				"src/test/resources/glite-utiljava/grid-security/certificates-newhash",
+				true, NamespaceCheckingMode.EUGRIDPMA_GLOBUS, 100, params, true);
+		X509Certificate[] cert = CertificateUtils.loadCertificateChain(new FileInputStream(
+				"src/test/resources/glite-utiljava/slash-certs/slash_client_slash.cert"), Encoding.PEM);
+		//the first validation loads CRLs, so its result is outdated immediately
+		Assert.assertTrue(validator.validate(cert).isValid());
+		Assert.assertTrue(validator.validate(cert).isValid());
+		long hits = validator.getResultCacheStatistics().getHits();
+		
+		Thread.sleep(300);
+		Assert.assertTrue(validator.validate(cert).isValid());
+		
+		Assert.assertEquals("Reload of unchanged trust material dropped the cached result", 
+				hits + 1, validator.getResultCacheStatistics().getHits());
+		validator.dispose();
+	}
+	
+	@Test
+	public void testDirectoryWatching() throws Exception
+	{
+		File dir = new File("target/test-tmp/openssl-watched");
+		FileUtils.deleteDirectory(dir);
+		dir.mkdirs();
+		ValidatorParams params = new ValidatorParams();
+		params.setDirectoryWatchDelay(100);
+		OpensslCertChainValidator validator = new OpensslCertChainValidator(dir.getPath(), false, 
+				NamespaceCheckingMode.IGNORE, -1, params, false);
+		Assert.assertEquals(0, validator.getTrustedIssuers().length);
+		
+		File src = new File("src/test/resources/glite-utiljava/grid-security/certificates");
+		FileUtils.copyFile(new File(src, "2537774a.0"), new File(dir, "2537774a.0"));
+		waitForIssuers(validator, 1);
+		new File(dir, "2537774a.0").delete();
+		waitForIssuers(validator, 0);
+		validator.dispose();
+	}
+	
+	private static void waitForIssuers(OpensslCertChainValidator validator, int expected) throws Exception
+	{
+		for (int i=0; i<200 && validator.getTrustedIssuers().length != expected; i++)
+			Thread.sleep(50);
+		Assert.assertEquals(expected, validator.getTrustedIssuers().length);
+	}
+	
+	@Test
+	public void testConcurrentLazyLoading() throws Exception
+	{
+		final Map<String, Integer> loads = new HashMap<String, Integer>();
+		ValidatorParams params = new ValidatorParams();
+		params.setInitialListeners(Collections.singleton(new StoreUpdateListener()
+		{
+			@Override
+			public void loadingNotification(String location, String type, Severity level,
+					Exception cause)
+			{
+				if (!type.equals(StoreUpdateListener.CA_CERT) || level != Severity.NOTIFICATION)
+					return;
+				synchronized (loads)
+				{
+					Integer num = loads.get(location);
+					loads.put(location, num == null ? 1 : num + 1);
+				}
+			}
+		}));
+		final OpensslCertChainValidator validator = new OpensslCertChainValidator(
+				"src/test/resources/glite-utiljava/grid-security/certificates",
+				false, NamespaceCheckingMode.IGNORE, 600000, params, true);
+		final X509Certificate[] cert = CertificateUtils.loadCertificateChain(new FileInputStream(
+				"src/test/resources/glite-utiljava/subsubca-certs/subsubca_client_slash.cert"), Encoding.PEM);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger valid = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i=0; i<threads.length; i++)
+		{
+			threads[i] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+					} catch (InterruptedException e)
+					{
+						return;
+					}
+					if (validator.validate(cert).isValid())
+						valid.incrementAndGet();
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread t: threads)
+			t.join();
+		validator.dispose();
+		
+		Assert.assertEquals(threads.length, valid.get());
+		Assert.assertFalse(loads.isEmpty());
+		for (Map.Entry<String, Integer> entry: loads.entrySet())
+			Assert.assertEquals(entry.getKey() + " loaded many times", 
+					Integer.valueOf(1), entry.getValue());
+	}
+	
 	@Test
 	public void testValidatorNoCRL() throws Exception
 	{
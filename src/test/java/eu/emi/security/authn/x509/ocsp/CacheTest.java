@@ -11,6 +11,8 @@ import java.net.ConnectException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -128,6 +130,9 @@ public class CacheTest
 		assertEquals(0, client.fullQuery);
 		assertEquals(2, client.lowlevelQuery);
 		assertEquals(2, client.verifications);
+		assertEquals(1, memCaching.getStatistics().getHits());
+		assertEquals(2, memCaching.getStatistics().getMisses());
+		assertEquals(1, memCaching.getStatistics().getExpirations());
 		
 		File dir = new File("target/ocsp_cache");
 		FileUtils.deleteDirectory(dir);
@@ -252,20 +257,70 @@ public class CacheTest
 		assertEquals(0, client.fullQuery);
 		assertEquals(2, client.lowlevelQuery);
 		assertEquals(0, client.verifications);
+		assertEquals(0, memAndDiskCaching.getStatistics().getHits());
+		assertEquals(2, memAndDiskCaching.getStatistics().getMisses());
 		
 		FileUtils.deleteDirectory(diskCache);
 	}
-}
-
-
-
-
-
-
-
-
-
-
-
-
 
+	@Test
+	public void shouldCoalesceConcurrentQueries() throws Exception
+	{
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger sent = new AtomicInteger();
+		final OCSPClientImpl client = new OCSPClientImpl()
+		{
+			@Override
+			public OCSPResponseStructure send(URL responder, OCSPReq requestO, int timeout)
+					throws IOException
+			{
+				sent.incrementAndGet();
+				try
+				{
+					release.await();
+				} catch (InterruptedException e)
+				{
+					throw new IOException(e);
+				}
+				throw new IOException("Responder is down");
+			}
+		};
+		final URL responder = new URL("http://127.100.100.100");
+		final X509Certificate toCheck = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/terena-ssl.pem"), Encoding.PEM);
+		final X509Certificate issuerCert = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/usertrust-ca.pem"), Encoding.PEM);
+		final OCSPCachingClient caching = new OCSPCachingClient(10000, null, "cache_");
+		final AtomicInteger errors = new AtomicInteger();
+		
+		Thread[] threads = new Thread[5];
+		for (int i=0; i<threads.length; i++)
+		{
+			threads[i] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						caching.queryForCertificate(responder, toCheck, issuerCert, 
+								null, false, 5000, client);
+					} catch (IOException e)
+					{
+						errors.incrementAndGet();
+					} catch (OCSPException e)
+					{
+						//wrong
+					}
+				}
+			};
+			threads[i].start();
+		}
+		Thread.sleep(500);
+		release.countDown();
+		for (Thread thread: threads)
+			thread.join();
+		
+		assertEquals(1, sent.get());
+		assertEquals(threads.length, errors.get());
+	}
+}
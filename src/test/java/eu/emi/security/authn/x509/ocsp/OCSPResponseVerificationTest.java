@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPClientImpl;
+
+public class OCSPResponseVerificationTest
+{
+	@Test
+	public void shouldAcceptResponseForCheckedCertificate() throws Exception
+	{
+		OCSPTestCA ca = new OCSPTestCA();
+		OCSPResp response = new OCSPResp(ca.createResponse(ca.getCertificate().getSerialNumber()));
+
+		SingleResp verified = new OCSPClientImpl().verifyResponse(response, ca.getCertificate(), 
+				ca.getCA(), null);
+
+		assertEquals(ca.getCertificate().getSerialNumber(), verified.getCertID().getSerialNumber());
+	}
+
+	@Test
+	public void shouldRejectResponseForOtherSerialOfTheSameIssuer() throws Exception
+	{
+		OCSPTestCA ca = new OCSPTestCA();
+		OCSPResp response = new OCSPResp(ca.createResponse(BigInteger.valueOf(11)));
+
+		try
+		{
+			new OCSPClientImpl().verifyResponse(response, ca.getCertificate(), ca.getCA(), null);
+			fail("Response for other certificate was accepted");
+		} catch (OCSPException e)
+		{
+			//ok
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.ocsp;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Test CA with a generated key, issuing a certificate and signing OCSP responses.
+ */
+public class OCSPTestCA
+{
+	private static final long HOUR = 3600000L;
+
+	private final KeyPairGenerator generator;
+	private final KeyPair caKey;
+	private final X509Certificate ca;
+	private final X509Certificate cert;
+
+	public OCSPTestCA() throws Exception
+	{
+		generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		caKey = generator.generateKeyPair();
+		ca = createCertificate("CN=Test CA", BigInteger.ONE, "CN=Test CA", caKey.getPublic(),
+				caKey.getPrivate());
+		cert = createCertificate("CN=Test CA", BigInteger.TEN, "CN=Server",
+				generator.generateKeyPair().getPublic(), caKey.getPrivate());
+	}
+
+	public X509Certificate getCA()
+	{
+		return ca;
+	}
+
+	public X509Certificate getCertificate()
+	{
+		return cert;
+	}
+
+	/**
+	 * @return encoded response signed by the CA, stating that the certificate with the given serial is revoked
+	 */
+	public byte[] createResponse(BigInteger serial) throws Exception
+	{
+		return createResponse(serial, caKey.getPrivate());
+	}
+
+	/**
+	 * @return encoded response signed with a key not related to the CA
+	 */
+	public byte[] createBadlySignedResponse(BigInteger serial) throws Exception
+	{
+		return createResponse(serial, generator.generateKeyPair().getPrivate());
+	}
+
+	private byte[] createResponse(BigInteger serial, PrivateKey signingKey) throws Exception
+	{
+		CertificateID certId = new CertificateID(
+				new BcDigestCalculatorProvider().get(CertificateID.HASH_SHA1),
+				new JcaX509CertificateHolder(ca), serial);
+		Date now = new Date();
+		BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(new X500Name("CN=Test CA")));
+		builder.addResponse(certId, new RevokedStatus(new Date(now.getTime() - HOUR), 1),
+				new Date(now.getTime() - 60000), new Date(now.getTime() + HOUR), null);
+		ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(signingKey);
+		BasicOCSPResp basic = builder.build(signer, null, now);
+		return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basic).getEncoded();
+	}
+
+	private static X509Certificate createCertificate(String issuer, BigInteger serial, String subject,
+			PublicKey key, PrivateKey signingKey) throws Exception
+	{
+		Date now = new Date();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name(issuer),
+				serial, new Date(now.getTime() - HOUR), new Date(now.getTime() + HOUR),
+				new X500Name(subject), key);
+		ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(signingKey);
+		return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.OCSPCheckingMode;
+import eu.emi.security.authn.x509.OCSPParametes;
+import eu.emi.security.authn.x509.OCSPResponder;
+import eu.emi.security.authn.x509.X509Credential;
+import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPCachingClient;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPResult;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPVerifier;
+import eu.emi.security.authn.x509.impl.CertificateUtils;
+import eu.emi.security.authn.x509.impl.CertificateUtils.Encoding;
+
+public class OCSPVerifierTest
+{
+	/**
+	 * The "dead" responder blocks until released. If it was not released in 30s (what happens only when 
+	 * the verifier waits for it) this is recorded.
+	 */
+	private static class MockCachingClient extends OCSPCachingClient
+	{
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile boolean deadResponderAwaited = false;
+		
+		public MockCachingClient()
+		{
+			super(-1, null, null);
+		}
+
+		@Override
+		public OCSPResult queryForCertificate(URL responder, X509Certificate toCheckCert,
+				X509Certificate issuerCert, X509Credential requester, boolean addNonce,
+				int timeout) throws IOException, OCSPException
+		{
+			if (responder.getHost().equals("dead"))
+			{
+				try
+				{
+					if (!release.await(30, TimeUnit.SECONDS))
+						deadResponderAwaited = true;
+				} catch (InterruptedException e)
+				{
+					//cancelled
+				}
+				throw new IOException("Responder is dead");
+			}
+			return new OCSPResult(OCSPResult.Status.good);
+		}
+	}
+
+	private static class BatchCachingClient extends OCSPCachingClient
+	{
+		private int singleQueries = 0;
+		private int batchQueries = 0;
+		private int batchSize = 0;
+
+		public BatchCachingClient()
+		{
+			super(-1, null, null);
+		}
+
+		@Override
+		public OCSPResult queryForCertificate(URL responder, X509Certificate toCheckCert,
+				X509Certificate issuerCert, X509Credential requester, boolean addNonce,
+				int timeout) throws IOException, OCSPException
+		{
+			singleQueries++;
+			return new OCSPResult(OCSPResult.Status.good);
+		}
+
+		@Override
+		public OCSPResult[] queryForCertificates(URL responder, List<X509Certificate> toCheckCerts,
+				List<X509Certificate> issuerCerts, X509Credential requester, boolean addNonce,
+				int timeout) throws IOException, OCSPException
+		{
+			batchQueries++;
+			batchSize = toCheckCerts.size();
+			OCSPResult[] ret = new OCSPResult[toCheckCerts.size()];
+			for (int i=0; i<ret.length; i++)
+				ret[i] = new OCSPResult(OCSPResult.Status.good);
+			return ret;
+		}
+	}
+
+	@Test
+	public void shouldQueryCertificatesOfTheSameResponderInBatch() throws Exception
+	{
+		X509Certificate toCheck = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/terena-ssl.pem"), Encoding.PEM);
+		X509Certificate issuerCert = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/usertrust-ca.pem"), Encoding.PEM);
+		OCSPResponder[] responders = {new OCSPResponder(new URL("http://responder"), issuerCert)};
+		OCSPParametes params = new OCSPParametes(OCSPCheckingMode.REQUIRE, responders, -1, null);
+		BatchCachingClient client = new BatchCachingClient();
+		OCSPVerifier verifier = new OCSPVerifier(params, client, new ObserversHandler());
+
+		verifier.queryInBatch(Arrays.asList(toCheck, issuerCert), Arrays.asList(issuerCert, issuerCert));
+		OCSPResult result1 = verifier.verify(toCheck, issuerCert);
+		OCSPResult result2 = verifier.verify(issuerCert, issuerCert);
+
+		assertEquals(1, client.batchQueries);
+		assertEquals(2, client.batchSize);
+		assertEquals(0, client.singleQueries);
+		assertEquals(OCSPResult.Status.good, result1.getStatus());
+		assertEquals(OCSPResult.Status.good, result2.getStatus());
+
+		verifier.verify(toCheck, toCheck);
+		assertEquals(1, client.singleQueries);
+	}
+
+	@Test
+	public void shouldNotWaitForDeadResponderInHedgedMode() throws Exception
+	{
+		X509Certificate toCheck = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/terena-ssl.pem"), Encoding.PEM);
+		X509Certificate issuerCert = CertificateUtils.loadCertificate(
+				new FileInputStream("src/test/resources/ocsp/usertrust-ca.pem"), Encoding.PEM);
+		OCSPResponder[] responders = {
+				new OCSPResponder(new URL("http://dead"), issuerCert),
+				new OCSPResponder(new URL("http://alive"), issuerCert)
+		};
+		OCSPParametes params = new OCSPParametes(OCSPCheckingMode.REQUIRE, responders, -1, null);
+		params.setHedgingDelay(100);
+		MockCachingClient client = new MockCachingClient();
+		OCSPVerifier verifier = new OCSPVerifier(params, client, new ObserversHandler());
+
+		OCSPResult result = verifier.verify(toCheck, issuerCert);
+		boolean deadResponderAwaited = client.deadResponderAwaited;
+		client.release.countDown();
+
+		assertEquals(OCSPResult.Status.good, result.getStatus());
+		assertFalse(deadResponderAwaited);
+	}
+}
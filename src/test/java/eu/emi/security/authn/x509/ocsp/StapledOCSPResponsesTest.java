@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 ICM Uniwersytet Warszawski All rights reserved.
+ * See LICENCE.txt file for licensing information.
+ */
+package eu.emi.security.authn.x509.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.junit.Test;
+
+import eu.emi.security.authn.x509.OCSPCheckingMode;
+import eu.emi.security.authn.x509.OCSPParametes;
+import eu.emi.security.authn.x509.OCSPResponder;
+import eu.emi.security.authn.x509.X509Credential;
+import eu.emi.security.authn.x509.helpers.ObserversHandler;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPCachingClient;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPClientImpl;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPResult;
+import eu.emi.security.authn.x509.helpers.ocsp.OCSPVerifier;
+import eu.emi.security.authn.x509.helpers.ocsp.StapledOCSPResponses;
+
+public class StapledOCSPResponsesTest
+{
+	private static class FailingCachingClient extends OCSPCachingClient
+	{
+		public FailingCachingClient()
+		{
+			super(-1, null, null);
+		}
+
+		@Override
+		public OCSPResult queryForCertificate(URL responder, X509Certificate toCheckCert,
+				X509Certificate issuerCert, X509Credential requester, boolean addNonce,
+				int timeout) throws IOException, OCSPException
+		{
+			fail("Responder was queried");
+			return null;
+		}
+	}
+
+	private OCSPTestCA testCA;
+	private X509Certificate ca;
+	private X509Certificate cert;
+
+	public StapledOCSPResponsesTest() throws Exception
+	{
+		testCA = new OCSPTestCA();
+		ca = testCA.getCA();
+		cert = testCA.getCertificate();
+	}
+
+	@Test
+	public void shouldUseVerifiedResponse() throws Exception
+	{
+		byte[] response = testCA.createResponse(cert.getSerialNumber());
+		StapledOCSPResponses stapled = new StapledOCSPResponses(new X509Certificate[] {cert, ca},
+				Arrays.asList(response, new byte[0]), new OCSPClientImpl());
+
+		assertNotNull(stapled.get(cert, ca));
+		assertNull(stapled.get(cert, cert));
+		assertNull(stapled.get(ca, ca));
+	}
+
+	@Test
+	public void shouldIgnoreResponseForOtherCertificate() throws Exception
+	{
+		byte[] response = testCA.createResponse(BigInteger.valueOf(11));
+		StapledOCSPResponses stapled = new StapledOCSPResponses(new X509Certificate[] {cert, ca},
+				Arrays.asList(response), new OCSPClientImpl());
+
+		assertTrue(stapled.isEmpty());
+	}
+
+	@Test
+	public void shouldIgnoreInvalidResponses() throws Exception
+	{
+		byte[] badlySigned = testCA.createBadlySignedResponse(cert.getSerialNumber());
+		StapledOCSPResponses stapled = new StapledOCSPResponses(new X509Certificate[] {cert, ca},
+				Arrays.asList(badlySigned), new OCSPClientImpl());
+		assertTrue(stapled.isEmpty());
+
+		stapled = new StapledOCSPResponses(new X509Certificate[] {cert, ca},
+				Arrays.asList(new byte[] {1, 2, 3}), new OCSPClientImpl());
+		assertTrue(stapled.isEmpty());
+	}
+
+	@Test
+	public void shouldNotQueryRespondersForStapledCertificate() throws Exception
+	{
+		byte[] response = testCA.createResponse(cert.getSerialNumber());
+		OCSPResponder[] responders = {new OCSPResponder(new URL("http://responder"), ca)};
+		OCSPParametes params = new OCSPParametes(OCSPCheckingMode.REQUIRE, responders, -1, null);
+		OCSPVerifier verifier = new OCSPVerifier(params, new FailingCachingClient(),
+				new ObserversHandler());
+
+		StapledOCSPResponses.setCurrent(new StapledOCSPResponses(new X509Certificate[] {cert, ca},
+				Arrays.asList(response), new OCSPClientImpl()));
+		OCSPResult result;
+		try
+		{
+			result = verifier.verify(cert, ca);
+		} finally
+		{
+			StapledOCSPResponses.setCurrent(null);
+		}
+
+		assertEquals(OCSPResult.Status.revoked, result.getStatus());
+		assertNull(StapledOCSPResponses.getCurrent());
+	}
+}